@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures the {@link FileListParser} on a synthetic file list held in
+ * memory and compares it with the parser used before, which split every line
+ * and replaced the escapes with regular expressions. For every parser, the
+ * lines per second and the bytes allocated per line by the parsing thread are
+ * printed. Some names contain escaped quotes, ampersands and commas. This
+ * class is in the package of the parser, which is not public.
+ * 
+ * "strings" creates the Strings of every line, as
+ * {@link ServerConnector#getFileList()} does, "index" adds the lines to a
+ * {@link FileIndex}, as {@link ServerConnector#getFileIndex()} does. The
+ * bytes allocated by "index" include the growing arrays of the
+ * {@link FileIndex}.
+ * 
+ * Arguments: lines (1000000), rounds (5).
+ */
+public class FileListParserBenchmark {
+
+	/**
+	 * The date format of the parser used before.
+	 */
+	private static final SimpleDateFormat LEGACY_FORMAT = new SimpleDateFormat(
+			"yyyy-MM-dd hh:mm:ss.S");
+
+	/**
+	 * Creates the file list.
+	 * 
+	 * @param lines
+	 *            The number of lines.
+	 * @return The file list encoded in UTF-8.
+	 * @throws IOException
+	 */
+	private static byte[] createList(int lines) throws IOException {
+		Random random = new Random(42L);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(lines * 120);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			sb.setLength(0);
+			sb.append("\"dir").append(i % 100).append("/file ").append(i);
+			switch (i % 10) {
+			case 0:
+				sb.append(" &quot;quoted&quot;");
+				break;
+			case 1:
+				sb.append(" &amp; more");
+				break;
+			case 2:
+				sb.append(", with comma");
+				break;
+			default:
+				sb.append(".txt");
+			}
+			sb.append("\",\"");
+			for (int j = 0; j < 4; j++) {
+				sb.append(String.format("%016x", random.nextLong()));
+			}
+			sb.append(String.format(Locale.ENGLISH,
+					"\",\"2012-%02d-%02d %02d:%02d:%02d.%d\",\"UPLOADED\"\n",
+					1 + random.nextInt(12), 1 + random.nextInt(28),
+					random.nextInt(24), random.nextInt(60),
+					random.nextInt(60), random.nextInt(10)));
+			out.write(sb.toString().getBytes("UTF-8"));
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the bytes allocated by the current thread, if the JVM can tell.
+	 * 
+	 * @return The number of bytes or -1.
+	 */
+	private static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1L;
+	}
+
+	/**
+	 * Parses the file list with the parser used before.
+	 * 
+	 * @param in
+	 *            The {@link Reader}.
+	 * @return The number of valid lines.
+	 * @throws IOException
+	 */
+	private static int parseLegacy(Reader in) throws IOException {
+		BufferedReader br = new BufferedReader(in);
+		int count = 0;
+		String line;
+		while ((line = br.readLine()) != null) {
+			if ("".equals(line) || line.length() < 3) {
+				continue;
+			}
+			String[] parts = line.substring(1, line.length() - 1).split(
+					"\",\"");
+			if (parts.length != 4) {
+				continue;
+			}
+			for (int i = 0; i < parts.length; i++) {
+				parts[i] = parts[i].replaceAll("&quot;", "\"").replaceAll(
+						"&amp;", "&");
+			}
+			Date date;
+			try {
+				date = FileListParserBenchmark.LEGACY_FORMAT.parse(parts[2]);
+			} catch (ParseException e) {
+				continue;
+			}
+			if (date.getTime() != 0L) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parses the file list with the {@link FileListParser}.
+	 * 
+	 * @param in
+	 *            The {@link Reader}.
+	 * @param index
+	 *            The {@link FileIndex} to add the lines to or
+	 *            <code>null</code>, if the Strings of the fields shall be
+	 *            created.
+	 * @return The number of valid lines.
+	 * @throws IOException
+	 */
+	private static int parse(Reader in, FileIndex index) throws IOException {
+		FileListParser parser = new FileListParser(in);
+		int count = 0;
+		while (parser.next()) {
+			if (index != null) {
+				parser.addTo(index);
+			} else if (parser.getName() != null
+					&& parser.getHashedName() != null
+					&& parser.getState() != null && parser.getLastMod() != 0L) {
+				count++;
+			}
+		}
+		return index == null ? count : index.size();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		byte[] list = FileListParserBenchmark.createList(lines);
+		System.out.println(String.format(Locale.ENGLISH,
+				"%d lines, %.1f MB", lines, list.length / 1e6));
+		String[] labels = { "legacy", "strings", "index" };
+		for (int round = 1; round <= rounds; round++) {
+			System.out.println("Round " + round);
+			for (int p = 0; p < labels.length; p++) {
+				Reader in = new InputStreamReader(new ByteArrayInputStream(
+						list), "UTF-8");
+				long allocated = FileListParserBenchmark.getAllocatedBytes();
+				long start = System.nanoTime();
+				int count;
+				if (p == 0) {
+					count = FileListParserBenchmark.parseLegacy(in);
+				} else {
+					count = FileListParserBenchmark.parse(in, p == 1 ? null
+							: new FileIndex(null));
+				}
+				long nanos = System.nanoTime() - start;
+				allocated = FileListParserBenchmark.getAllocatedBytes()
+						- allocated;
+				System.out.println(String.format(Locale.ENGLISH,
+						"%-8s %8d lines %12.0f lines/s %8.1f bytes/line",
+						labels[p], count, count / (nanos / 1e9), allocated
+								/ (double) count));
+			}
+		}
+	}
+}
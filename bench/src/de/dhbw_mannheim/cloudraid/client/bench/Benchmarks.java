@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Helpers shared by the benchmark runners.
+ */
+final class Benchmarks {
+
+	/**
+	 * The user name and password of the account used by the benchmarks.
+	 */
+	static final String USER = "bench";
+
+	/**
+	 * The seed of the {@link Random} creating the test data.
+	 */
+	static final long SEED = 42L;
+
+	/**
+	 * Returns a numeric command line argument.
+	 * 
+	 * @param args
+	 *            The command line arguments.
+	 * @param index
+	 *            The index of the argument.
+	 * @param defaultValue
+	 *            The value used, if the argument is missing.
+	 * @return The value.
+	 */
+	static long argument(String[] args, int index, long defaultValue) {
+		if (args.length <= index) {
+			return defaultValue;
+		}
+		return Long.parseLong(args[index]);
+	}
+
+	/**
+	 * Creates a temporary file deleted when the JVM exits.
+	 * 
+	 * @param size
+	 *            The size of the file in bytes.
+	 * @param text
+	 *            true for lines of a log file, false for random bytes.
+	 * @return The file.
+	 * @throws IOException
+	 */
+	static File createFile(long size, boolean text) throws IOException {
+		File file = File.createTempFile("cloudraid-bench", ".dat");
+		file.deleteOnExit();
+		Random random = new Random(Benchmarks.SEED);
+		byte[] buffer = new byte[64 * 1024];
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			long line = 0L;
+			long left = size;
+			while (left > 0L) {
+				byte[] data;
+				if (text) {
+					data = String.format(Locale.ENGLISH,
+							"%08d INFO request %d took %d ms%n", line++,
+							random.nextInt(100000), random.nextInt(1000))
+							.getBytes("US-ASCII");
+				} else {
+					random.nextBytes(buffer);
+					data = buffer;
+				}
+				int len = (int) Math.min(left, data.length);
+				os.write(data, 0, len);
+				left -= len;
+			}
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Creates a {@link FakeServer} with the account used by the benchmarks.
+	 * 
+	 * @return The {@link FakeServer}.
+	 */
+	static FakeServer createServer() {
+		FakeServer server = new FakeServer();
+		server.addUser(Benchmarks.USER, Benchmarks.USER);
+		return server;
+	}
+
+	/**
+	 * Prints the result of a measurement.
+	 * 
+	 * @param label
+	 *            The name of the measurement.
+	 * @param ops
+	 *            The number of operations.
+	 * @param bytes
+	 *            The number of bytes transferred or 0.
+	 * @param nanos
+	 *            The time in nanoseconds.
+	 */
+	static void report(String label, long ops, long bytes, long nanos) {
+		double seconds = nanos / 1e9;
+		System.out.println(String.format(Locale.ENGLISH,
+				"%-28s %8d ops %10.1f ops/s %9.1f MB/s %9.1f ms", label, ops,
+				ops / seconds, bytes / seconds / 1e6, nanos / 1e6));
+	}
+
+	private Benchmarks() {
+	}
+}
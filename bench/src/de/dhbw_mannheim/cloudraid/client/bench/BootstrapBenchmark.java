@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.util.Locale;
+
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.api.ServerInfo;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Measures the time from creating a {@link ServerConnector} until it is
+ * logged in. The first start checks the server with a request to
+ * <code>/api/info/</code> after a failed attempt to use HTTPS, as the
+ * stand-in speaks plain HTTP only; the further starts use the
+ * {@link ServerInfo} kept for the server and send the login only. Each
+ * request is delayed by the latency of the stand-in server, which stands for
+ * the round trip to a remote server.
+ * 
+ * Arguments: latency of the stand-in server in milliseconds (20), rounds
+ * (5).
+ */
+public class BootstrapBenchmark {
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		long latency = Benchmarks.argument(args, 0, 20L);
+		int rounds = (int) Benchmarks.argument(args, 1, 5L);
+		FakeServer server = Benchmarks.createServer();
+		server.setLatency(latency);
+		FakeHttpServer standIn = new FakeHttpServer(server);
+		try {
+			ServerConnection con = standIn.getServerConnection(
+					Benchmarks.USER, Benchmarks.USER);
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				ServerInfo.forget("localhost:" + standIn.getPort());
+				BootstrapBenchmark.run("server checked", con, server);
+				BootstrapBenchmark.run("server info kept", con, server);
+			}
+		} finally {
+			standIn.stop();
+		}
+	}
+
+	/**
+	 * Creates a {@link ServerConnector}, logs in and prints the time needed
+	 * and the requests sent.
+	 * 
+	 * @param label
+	 *            The name of the measurement.
+	 * @param con
+	 *            The {@link ServerConnection}.
+	 * @param server
+	 *            The {@link FakeServer} counting the requests.
+	 * @throws Exception
+	 */
+	private static void run(String label, ServerConnection con,
+			FakeServer server) throws Exception {
+		long requests = server.getRequestCount();
+		long start = System.nanoTime();
+		ServerConnector sc = new ServerConnector(con,
+				new PlainConnectionPool());
+		sc.login();
+		double time = (System.nanoTime() - start) / 1e6;
+		System.out.println(String.format(Locale.ENGLISH,
+				"%-20s %3d requests %9.1f ms", label,
+				server.getRequestCount() - requests, time));
+		sc.logout();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.File;
+import java.util.Locale;
+
+import de.dhbw_mannheim.cloudraid.client.api.FileIndex;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Measures the start of a client with and without the file list written to
+ * the cache directory by an earlier session. A {@link FakeHttpServer} holds
+ * the given number of empty files. A cold start logs in and reads the whole
+ * file list. A warm start logs in and restores the written file list, which
+ * makes the files usable; it is then reconciled with the server by a
+ * conditional request, which the unchanged server answers with 304.
+ * 
+ * Arguments: files (1000000), rounds (3).
+ */
+public class ColdStartBenchmark {
+
+	/**
+	 * Deletes a directory and its files.
+	 * 
+	 * @param dir
+	 *            The directory.
+	 */
+	private static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int files = (int) Benchmarks.argument(args, 0, 1000000L);
+		int rounds = (int) Benchmarks.argument(args, 1, 3L);
+		FakeServer server = Benchmarks.createServer();
+		byte[] empty = new byte[0];
+		for (int i = 0; i < files; i++) {
+			server.putFile(Benchmarks.USER, "dir" + (i % 1000) + "/file " + i,
+					empty);
+		}
+		FakeHttpServer standIn = new FakeHttpServer(server);
+		try {
+			ServerConnection con = standIn.getServerConnection(
+					Benchmarks.USER, Benchmarks.USER);
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				ColdStartBenchmark.run(con);
+			}
+		} finally {
+			standIn.stop();
+		}
+	}
+
+	/**
+	 * Prints the time since the start.
+	 * 
+	 * @param label
+	 *            The name of the measurement.
+	 * @param index
+	 *            The file list or <code>null</code>.
+	 * @param start
+	 *            The start time from {@link System#nanoTime()}.
+	 */
+	private static void print(String label, FileIndex index, long start) {
+		System.out.println(String.format(Locale.ENGLISH,
+				"%-20s %8d files %9.1f ms", label, index == null ? 0 : index
+						.size(), (System.nanoTime() - start) / 1e6));
+	}
+
+	/**
+	 * Measures a cold and a warm start with a fresh cache directory.
+	 * 
+	 * @param con
+	 *            The {@link ServerConnection}.
+	 * @throws Exception
+	 */
+	private static void run(ServerConnection con) throws Exception {
+		File cache = File.createTempFile("cloudraid-bench", "");
+		cache.delete();
+		cache.mkdir();
+		try {
+			long start = System.nanoTime();
+			ServerConnector sc = new ServerConnector(con,
+					new PlainConnectionPool());
+			sc.setCacheDirectory(cache);
+			sc.login();
+			FileIndex index = sc.getFileIndex();
+			ColdStartBenchmark.print("cold, list read", index, start);
+			sc.logout();
+
+			start = System.nanoTime();
+			sc = new ServerConnector(con, new PlainConnectionPool());
+			sc.setCacheDirectory(cache);
+			sc.login();
+			index = sc.restoreFileList();
+			ColdStartBenchmark.print("warm, list restored", index, start);
+			index = sc.getFileIndex();
+			ColdStartBenchmark.print("warm, reconciled", index, start);
+			sc.logout();
+		} finally {
+			ColdStartBenchmark.delete(cache);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import de.dhbw_mannheim.cloudraid.client.api.CompressionPolicy;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Compares the CPU time and throughput of uploads with the default
+ * {@link CompressionPolicy} and with a policy compressing every file at the
+ * default gzip level, as the client did before. Random data, which cannot be
+ * compressed, and a log file are uploaded to a {@link FakeHttpServer} that
+ * discards the contents. The CPU time is the one of the uploading thread.
+ * 
+ * Arguments: size of the random file in MiB (64), size of the log file in
+ * MiB (32), rounds (3).
+ */
+public class CompressionBenchmark {
+
+	/**
+	 * Uploads a file and prints the CPU time and the throughput.
+	 * 
+	 * @param label
+	 *            The name of the measurement.
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @param file
+	 *            The file.
+	 * @throws Exception
+	 */
+	private static void measure(String label, ServerConnector sc, File file)
+			throws Exception {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		long cpu = bean.getCurrentThreadCpuTime();
+		long start = System.nanoTime();
+		sc.putFile("bench.dat", file, false);
+		long nanos = System.nanoTime() - start;
+		cpu = bean.getCurrentThreadCpuTime() - cpu;
+		sc.deleteFile("bench.dat");
+		System.out.println(String.format(Locale.ENGLISH,
+				"%-20s %8.0f ms CPU %9.1f MB/s", label, cpu / 1e6,
+				file.length() / (nanos / 1e9) / 1e6));
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		File random = Benchmarks.createFile(
+				Benchmarks.argument(args, 0, 64L) * 1024L * 1024L, false);
+		File log = Benchmarks.createFile(
+				Benchmarks.argument(args, 1, 32L) * 1024L * 1024L, true);
+		int rounds = (int) Benchmarks.argument(args, 2, 3L);
+
+		CompressionPolicy always = new CompressionPolicy();
+		always.setSkippedExtensions(Collections.<String> emptySet());
+		always.setEntropyThreshold(Double.MAX_VALUE);
+		always.setLargeFileSize(Long.MAX_VALUE);
+		always.setLevel(Deflater.DEFAULT_COMPRESSION);
+		CompressionPolicy adaptive = new CompressionPolicy();
+
+		FakeServer server = Benchmarks.createServer();
+		server.setDiscardFiles(true);
+		FakeHttpServer standIn = new FakeHttpServer(server);
+		try {
+			ServerConnector sc = new ServerConnector(
+					standIn.getServerConnection(Benchmarks.USER,
+							Benchmarks.USER), new PlainConnectionPool());
+			sc.login();
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				sc.setCompressionPolicy(always);
+				CompressionBenchmark.measure("random, always gzip", sc,
+						random);
+				sc.setCompressionPolicy(adaptive);
+				CompressionBenchmark.measure("random, adaptive", sc, random);
+				sc.setCompressionPolicy(always);
+				CompressionBenchmark.measure("log, always gzip", sc, log);
+				sc.setCompressionPolicy(adaptive);
+				CompressionBenchmark.measure("log, adaptive", sc, log);
+			}
+			sc.logout();
+		} finally {
+			standIn.stop();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.dhbw_mannheim.cloudraid.client.api.AsyncServerConnector;
+import de.dhbw_mannheim.cloudraid.client.api.BoundedExecutor;
+import de.dhbw_mannheim.cloudraid.client.api.CircuitBreaker;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Compares a pool of platform threads with
+ * {@link BoundedExecutor#newVirtualThreadExecutor(int)} for many concurrent
+ * operations of an {@link AsyncServerConnector}. For every concurrency level,
+ * four times as many files are deleted from a {@link FakeHttpServer} whose
+ * latency makes every request wait, with at most that many requests at the
+ * same time. On runtimes without virtual threads, the second executor is a
+ * pool of platform threads as well, which the output states.
+ * 
+ * The client and the server run in this process, so every request in flight
+ * takes two sockets. If the file descriptors run out, the server cannot
+ * accept connections and the requests fail after the read timeout of the
+ * {@link de.dhbw_mannheim.cloudraid.client.api.ConnectionPool}. The
+ * concurrency levels are therefore limited to the file descriptors of the
+ * process, which the output states. Requests failing under this load are
+ * counted. The {@link CircuitBreaker} of the server never opens, so that they
+ * do not fail the requests still waiting as well.
+ * 
+ * Arguments: latency in milliseconds (50), rounds (3), concurrency levels
+ * (1000 10000).
+ */
+public class ExecutorBenchmark {
+
+	/**
+	 * The number of file descriptors left for the JVM, the class path and the
+	 * listening socket.
+	 */
+	private static final long RESERVED_FILES = 1024L;
+
+	/**
+	 * Returns the maximum number of requests in flight, for which the process
+	 * has enough file descriptors.
+	 * 
+	 * @return The number of requests or {@link Integer#MAX_VALUE}, if the
+	 *         limit is not known.
+	 */
+	private static int maxConcurrent() {
+		OperatingSystemMXBean bean = ManagementFactory
+				.getOperatingSystemMXBean();
+		if (!(bean instanceof com.sun.management.UnixOperatingSystemMXBean)) {
+			return Integer.MAX_VALUE;
+		}
+		long files = ((com.sun.management.UnixOperatingSystemMXBean) bean)
+				.getMaxFileDescriptorCount();
+		long requests = (files - ExecutorBenchmark.RESERVED_FILES) / 2;
+		return (int) Math.max(1L, Math.min(Integer.MAX_VALUE, requests));
+	}
+
+	/**
+	 * Deletes files through an executor and prints the result.
+	 * 
+	 * @param label
+	 *            The name of the measurement.
+	 * @param server
+	 *            The {@link FakeServer}.
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @param executor
+	 *            The {@link ExecutorService}.
+	 * @param files
+	 *            The number of files.
+	 * @throws InterruptedException
+	 */
+	private static void measure(String label, FakeServer server,
+			ServerConnector sc, ExecutorService executor, int files)
+			throws InterruptedException {
+		byte[] empty = new byte[0];
+		for (int i = 0; i < files; i++) {
+			server.putFile(Benchmarks.USER, "bench/" + i, empty);
+		}
+		AsyncServerConnector async = new AsyncServerConnector(sc, executor);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(files);
+		int failed = 0;
+		Throwable first = null;
+		long start = System.nanoTime();
+		for (int i = 0; i < files; i++) {
+			futures.add(async.deleteFile("bench/" + i, null));
+		}
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (first == null) {
+					first = e.getCause();
+				}
+				failed++;
+			}
+		}
+		Benchmarks.report(label, files, 0L, System.nanoTime() - start);
+		if (failed > 0) {
+			System.out.println("  failed: " + failed + ", first: " + first);
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		FakeServer server = Benchmarks.createServer();
+		server.setLatency(Benchmarks.argument(args, 0, 50L));
+		int rounds = (int) Benchmarks.argument(args, 1, 3L);
+		int[] levels = { 1000, 10000 };
+		if (args.length > 2) {
+			levels = new int[args.length - 2];
+			for (int i = 0; i < levels.length; i++) {
+				levels[i] = Integer.parseInt(args[i + 2]);
+			}
+		}
+		String virtual = BoundedExecutor.isVirtualThreadSupported() ? "virtual"
+				: "fallback";
+		System.out.println("Virtual threads supported: "
+				+ BoundedExecutor.isVirtualThreadSupported());
+		int max = ExecutorBenchmark.maxConcurrent();
+		for (int i = 0; i < levels.length; i++) {
+			if (levels[i] > max) {
+				System.out.println("Concurrency level " + levels[i]
+						+ " limited to " + max
+						+ " by the file descriptors of the process");
+				levels[i] = max;
+			}
+		}
+		FakeHttpServer standIn = new FakeHttpServer(server);
+		try {
+			ServerConnector sc = standIn.connect(Benchmarks.USER);
+			sc.setCircuitBreaker(new CircuitBreaker("bench",
+					Integer.MAX_VALUE, CircuitBreaker.DEFAULT_OPEN_TIME));
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				for (int level : levels) {
+					ExecutorBenchmark.measure("platform " + level, server,
+							sc, Executors.newFixedThreadPool(level),
+							4 * level);
+					ExecutorBenchmark.measure(virtual + " " + level, server,
+							sc,
+							BoundedExecutor.newVirtualThreadExecutor(level),
+							4 * level);
+				}
+			}
+			sc.logout();
+		} finally {
+			standIn.stop();
+		}
+	}
+}
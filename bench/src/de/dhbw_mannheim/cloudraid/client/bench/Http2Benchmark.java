@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dhbw_mannheim.cloudraid.client.api.BatchResult;
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttp2Server;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Compares the HTTP/1.1 transport of the {@link ConnectionPool} with the
+ * HTTP/2 transport of {@link ConnectionPool#newHttp2Pool()}. Both download
+ * and then delete the given number of files in batches running the given
+ * number of requests at the same time. The requests go to a
+ * {@link FakeHttp2Server} on the loopback interface, which speaks both
+ * protocols and counts the TCP connections used. HTTP/1.1 needs a
+ * connection per request running at the same time, HTTP/2 multiplexes all
+ * requests over one connection. The classes of the <code>http2</code>
+ * directory have to be on the class path.
+ * 
+ * Arguments: files per round (500), file size in bytes (4096), requests at
+ * the same time (32), latency of the stand-in server in milliseconds (20),
+ * rounds (3).
+ */
+public class Http2Benchmark {
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int files = (int) Benchmarks.argument(args, 0, 500L);
+		int size = (int) Benchmarks.argument(args, 1, 4096L);
+		int parallelism = (int) Benchmarks.argument(args, 2, 32L);
+		long latency = Benchmarks.argument(args, 3, 20L);
+		int rounds = (int) Benchmarks.argument(args, 4, 3L);
+
+		if (!ConnectionPool.isHttp2Supported()) {
+			throw new IllegalStateException("HTTP/2 is not available.");
+		}
+		FakeServer server = Benchmarks.createServer();
+		server.setLatency(latency);
+		FakeHttp2Server standIn = new FakeHttp2Server(server);
+		File directory = File.createTempFile("cloudraid-bench", "");
+		directory.delete();
+		directory.mkdir();
+		try {
+			ServerConnection con = standIn.getServerConnection(
+					Benchmarks.USER, Benchmarks.USER);
+			ConnectionPool http1 = ConnectionPool.getDefault();
+			ConnectionPool http2 = ConnectionPool.newHttp2Pool();
+			byte[] data = new byte[size];
+			List<String> paths = new ArrayList<String>();
+			for (int i = 0; i < files; i++) {
+				paths.add("bench/" + i);
+			}
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				for (int i = 0; i < 2; i++) {
+					for (String path : paths) {
+						server.putFile(Benchmarks.USER, path, data);
+					}
+					ServerConnector sc = new ServerConnector(con,
+							i == 0 ? http1 : http2);
+					sc.setCacheDirectory(null);
+					sc.setBatchParallelism(parallelism);
+					sc.login();
+					Http2Benchmark.run(i == 0 ? "HTTP/1.1" : "HTTP/2", sc,
+							paths, directory, size, standIn);
+					sc.logout();
+				}
+			}
+		} finally {
+			standIn.stop();
+			File[] downloads = directory.listFiles();
+			if (downloads != null) {
+				for (File download : downloads) {
+					download.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Downloads and deletes the files and prints the results.
+	 * 
+	 * @param label
+	 *            The name of the transport.
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @param paths
+	 *            The paths of the files.
+	 * @param directory
+	 *            The directory the files are downloaded to.
+	 * @param size
+	 *            The size of a file.
+	 * @param standIn
+	 *            The {@link FakeHttp2Server} counting the connections.
+	 * @throws Exception
+	 */
+	private static void run(String label, ServerConnector sc,
+			List<String> paths, File directory, int size,
+			FakeHttp2Server standIn) throws Exception {
+		int sockets = standIn.getConnectionCount();
+		long start = System.nanoTime();
+		BatchResult downloads = sc.getFiles(paths, directory);
+		Benchmarks.report(label + " get", paths.size(), (long) paths.size()
+				* size, System.nanoTime() - start);
+		start = System.nanoTime();
+		BatchResult deletions = sc.deleteFiles(paths);
+		Benchmarks.report(label + " delete", paths.size(), 0L,
+				System.nanoTime() - start);
+		System.out.println("  failed: "
+				+ (downloads.getFailedCount() + deletions.getFailedCount())
+				+ ", TCP connections: "
+				+ (standIn.getConnectionCount() - sockets));
+	}
+}
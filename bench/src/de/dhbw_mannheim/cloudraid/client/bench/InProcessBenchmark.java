@@ -0,0 +1,155 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.dhbw_mannheim.cloudraid.client.api.BatchResult;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.InProcessConnectionPool;
+
+/**
+ * Runs the same workload against a {@link FakeServer} reached through the
+ * loopback interface by a {@link FakeHttpServer} and in-process by an
+ * {@link InProcessConnectionPool}. Every round uploads the given number of
+ * files one by one, reads the file list, downloads the files in a batch and
+ * deletes them in a batch. The in-process runs show the time spent in the
+ * client and in the simulated network only, so they are repeatable on any
+ * machine.
+ * 
+ * Arguments: files per round (200), file size in bytes (16384), requests at
+ * the same time (8), latency of the stand-in server in milliseconds (5),
+ * bandwidth per request in KB/s (0 for no limit), failing requests per mille
+ * (0), rounds (3).
+ */
+public class InProcessBenchmark {
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		int files = (int) Benchmarks.argument(args, 0, 200L);
+		long size = Benchmarks.argument(args, 1, 16384L);
+		int parallelism = (int) Benchmarks.argument(args, 2, 8L);
+		long latency = Benchmarks.argument(args, 3, 5L);
+		long bandwidth = Benchmarks.argument(args, 4, 0L) * 1024L;
+		long faults = Benchmarks.argument(args, 5, 0L);
+		int rounds = (int) Benchmarks.argument(args, 6, 3L);
+
+		FakeServer server = Benchmarks.createServer();
+		server.setLatency(latency);
+		server.setBandwidth(bandwidth);
+		FakeHttpServer standIn = new FakeHttpServer(server);
+		InProcessConnectionPool inProcess = new InProcessConnectionPool(
+				server);
+		File file = Benchmarks.createFile(size, false);
+		File directory = File.createTempFile("cloudraid-bench", "");
+		directory.delete();
+		directory.mkdir();
+		try {
+			List<String> paths = new ArrayList<String>();
+			for (int i = 0; i < files; i++) {
+				paths.add("bench/" + i);
+			}
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				for (int i = 0; i < 2; i++) {
+					ServerConnector sc = i == 0 ? standIn
+							.connect(Benchmarks.USER) : inProcess
+							.connect(Benchmarks.USER);
+					sc.setBatchParallelism(parallelism);
+					// The check of the server at startup is not retried.
+					server.setFaultRate(faults / 1000.0, 503);
+					InProcessBenchmark.run(i == 0 ? "loopback"
+							: "in-process", sc, paths, file, directory);
+					server.setFaultRate(0.0, 503);
+					sc.logout();
+				}
+			}
+		} finally {
+			standIn.stop();
+			File[] downloads = directory.listFiles();
+			if (downloads != null) {
+				for (File download : downloads) {
+					download.delete();
+				}
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Uploads, lists, downloads and deletes the files and prints the
+	 * results.
+	 * 
+	 * @param label
+	 *            The name of the transport.
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @param paths
+	 *            The paths of the files.
+	 * @param file
+	 *            The file uploaded to every path.
+	 * @param directory
+	 *            The directory the files are downloaded to.
+	 * @throws Exception
+	 */
+	private static void run(String label, ServerConnector sc,
+			List<String> paths, File file, File directory) throws Exception {
+		long bytes = paths.size() * file.length();
+		int failed = 0;
+		long start = System.nanoTime();
+		for (String path : paths) {
+			try {
+				sc.putFile(path, file, false);
+			} catch (Exception e) {
+				failed++;
+			}
+		}
+		Benchmarks.report(label + " put", paths.size(), bytes,
+				System.nanoTime() - start);
+		start = System.nanoTime();
+		sc.invalidateFileListCache();
+		sc.getFileList();
+		Benchmarks.report(label + " list", 1L, 0L, System.nanoTime() - start);
+		start = System.nanoTime();
+		BatchResult downloads = sc.getFiles(paths, directory);
+		Benchmarks.report(label + " get", paths.size(), bytes,
+				System.nanoTime() - start);
+		start = System.nanoTime();
+		BatchResult deletions = sc.deleteFiles(paths);
+		Benchmarks.report(label + " delete", paths.size(), 0L,
+				System.nanoTime() - start);
+		System.out.println("  failed: "
+				+ (failed + downloads.getFailedCount() + deletions
+						.getFailedCount()));
+	}
+}
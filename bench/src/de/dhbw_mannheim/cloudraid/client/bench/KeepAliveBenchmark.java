@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.api.HTTPException;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Measures the requests per second of a {@link ServerConnector} using the
+ * {@link ConnectionPool}. Each round uploads, downloads and deletes the given
+ * number of files. The requests go over real sockets to a
+ * {@link FakeHttpServer} on the loopback interface, which also counts the TCP
+ * connections used. To measure the client without keep-alive, as it worked
+ * before the {@link ConnectionPool}, run the benchmark a second time with
+ * <code>-Dhttp.keepAlive=false</code>. As the stand-in speaks plain HTTP only,
+ * TLS handshakes are not part of the measurement; pass the address of a real
+ * server to include them.
+ * 
+ * Arguments: files per round (200), file size in bytes (4096), latency of the
+ * stand-in server in milliseconds (0), rounds (3), and optionally the
+ * address, port, user name and password of a real server.
+ */
+public class KeepAliveBenchmark {
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		// Use the keep-alive limits of the CLI and the GUI.
+		ConnectionPool.configure();
+		int files = (int) Benchmarks.argument(args, 0, 200L);
+		long size = Benchmarks.argument(args, 1, 4096L);
+		long latency = Benchmarks.argument(args, 2, 0L);
+		int rounds = (int) Benchmarks.argument(args, 3, 3L);
+
+		FakeHttpServer standIn = null;
+		ServerConnection con;
+		ConnectionPool pool;
+		if (args.length > 7) {
+			con = new ServerConnection(args[4], args[6], args[7],
+					Short.parseShort(args[5]));
+			pool = ConnectionPool.getDefault();
+		} else {
+			FakeServer server = Benchmarks.createServer();
+			server.setLatency(latency);
+			standIn = new FakeHttpServer(server);
+			con = standIn.getServerConnection(Benchmarks.USER,
+					Benchmarks.USER);
+			pool = new PlainConnectionPool();
+		}
+		String label = "keep-alive";
+		if ("false".equals(System.getProperty("http.keepAlive"))) {
+			label = "disconnect";
+		}
+		try {
+			File upload = Benchmarks.createFile(size, false);
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				int sockets = standIn == null ? 0 : standIn
+						.getConnectionCount();
+				long start = System.nanoTime();
+				int failed = KeepAliveBenchmark.run(new ServerConnector(con,
+						pool), upload, files);
+				Benchmarks.report(label, 3 * files, 2 * files
+						* upload.length(), System.nanoTime() - start);
+				System.out.print("  failed: " + failed);
+				if (standIn != null) {
+					System.out.print(", TCP connections: "
+							+ (standIn.getConnectionCount() - sockets));
+				}
+				System.out.println();
+			}
+		} finally {
+			if (standIn != null) {
+				standIn.stop();
+			}
+		}
+	}
+
+	/**
+	 * Logs in, uploads, downloads and deletes the files and logs out.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @param upload
+	 *            The file to upload.
+	 * @param files
+	 *            The number of files.
+	 * @return The number of failed operations.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private static int run(ServerConnector sc, File upload, int files)
+			throws IOException, HTTPException {
+		sc.login();
+		File download = File.createTempFile("cloudraid-bench", ".dat");
+		download.deleteOnExit();
+		int failed = 0;
+		for (int i = 0; i < files; i++) {
+			String path = "bench/" + i;
+			try {
+				sc.putFile(path, upload, false);
+				sc.getFile(path, download);
+				sc.deleteFile(path);
+			} catch (IOException e) {
+				failed++;
+			} catch (HTTPException e) {
+				failed++;
+			}
+		}
+		sc.logout();
+		return failed;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.dhbw_mannheim.cloudraid.client.api.BufferPool;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Measures the throughput of uploading one large file with
+ * {@link ServerConnector#putFile(String, File, boolean)} for several
+ * {@link BufferPool} sizes and compares it with the loop used before, which
+ * copied a {@link FileInputStream} through a 4 KiB array into a
+ * {@link GZIPOutputStream}. The uploads go to a {@link FakeHttpServer} that
+ * discards the contents, so the server does no decoding work. The old loop
+ * writes to a stream discarding the data. The file consists of log lines, so
+ * the compression does not dominate as it would with random data.
+ * 
+ * Arguments: file size in MiB (64), rounds (3).
+ */
+public class UploadBenchmark {
+
+	/**
+	 * The buffer sizes measured.
+	 */
+	private static final int[] BUFFER_SIZES = { 4 * 1024, 64 * 1024,
+			1024 * 1024 };
+
+	/**
+	 * Copies a file as the old putFile loop did.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @throws IOException
+	 */
+	private static void copyLegacy(File file) throws IOException {
+		OutputStream sink = new OutputStream() {
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+
+			@Override
+			public void write(int b) {
+			}
+		};
+		GZIPOutputStream os = new GZIPOutputStream(sink);
+		InputStream is = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[4096];
+			int len;
+			while ((len = is.read(buf)) != -1) {
+				os.write(buf, 0, len);
+			}
+			os.finish();
+		} finally {
+			is.close();
+			os.close();
+		}
+	}
+
+	/**
+	 * Runs the benchmark.
+	 * 
+	 * @param args
+	 *            The arguments described above.
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		long size = Benchmarks.argument(args, 0, 64L) * 1024L * 1024L;
+		int rounds = (int) Benchmarks.argument(args, 1, 3L);
+
+		File file = Benchmarks.createFile(size, true);
+		FakeServer server = Benchmarks.createServer();
+		server.setDiscardFiles(true);
+		FakeHttpServer standIn = new FakeHttpServer(server);
+		try {
+			ServerConnector sc = new ServerConnector(
+					standIn.getServerConnection(Benchmarks.USER,
+							Benchmarks.USER), new PlainConnectionPool());
+			sc.login();
+			for (int round = 1; round <= rounds; round++) {
+				System.out.println("Round " + round);
+				long start = System.nanoTime();
+				UploadBenchmark.copyLegacy(file);
+				Benchmarks.report("byte[4096] loop", 1, size,
+						System.nanoTime() - start);
+				for (int bufferSize : UploadBenchmark.BUFFER_SIZES) {
+					sc.setBufferPool(new BufferPool(bufferSize, 4));
+					start = System.nanoTime();
+					sc.putFile("bench.dat", file, false);
+					Benchmarks.report("putFile " + (bufferSize / 1024)
+							+ " KiB", 1, size, System.nanoTime() - start);
+					sc.deleteFile("bench.dat");
+				}
+			}
+			sc.logout();
+		} finally {
+			standIn.stop();
+		}
+	}
+}
@@ -27,13 +27,37 @@ import java.io.Console;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import de.dhbw_mannheim.cloudraid.client.api.AsyncServerConnector;
+import de.dhbw_mannheim.cloudraid.client.api.BatchResult;
+import de.dhbw_mannheim.cloudraid.client.api.BoundedExecutor;
 import de.dhbw_mannheim.cloudraid.client.api.CloudFile;
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.api.DeltaDataPresenter;
+import de.dhbw_mannheim.cloudraid.client.api.DirectorySync;
+import de.dhbw_mannheim.cloudraid.client.api.FileIndex;
+import de.dhbw_mannheim.cloudraid.client.api.FileListDelta;
 import de.dhbw_mannheim.cloudraid.client.api.HTTPException;
 import de.dhbw_mannheim.cloudraid.client.api.IncompatibleApiVersionException;
+import de.dhbw_mannheim.cloudraid.client.api.IncrementalDataPresenter;
+import de.dhbw_mannheim.cloudraid.client.api.Metrics;
 import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
 import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.api.TransferJob;
+import de.dhbw_mannheim.cloudraid.client.api.TransferListener;
+import de.dhbw_mannheim.cloudraid.client.api.TransferManager;
+import de.dhbw_mannheim.cloudraid.client.api.TransferProgress;
 
 /**
  * A class using the CloudRAID-Client core to provide a command-line interface
@@ -44,17 +68,191 @@ import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
  */
 public class CLIMain {
 
+	/**
+	 * A {@link DeltaDataPresenter} keeping a {@link FileIndex} of the files on
+	 * the CloudRAID server up to date. Only the changes of the file list are
+	 * applied to the index.
+	 */
+	private static class FileListMirror implements DeltaDataPresenter {
+		private FileIndex index = new FileIndex(null);
+
+		/**
+		 * Checks, if a file is contained in the last file list.
+		 * 
+		 * @param name
+		 *            The name of the file.
+		 * @return true, if the file exists.
+		 */
+		public synchronized boolean contains(String name) {
+			return this.index.indexOfName(name) >= 0;
+		}
+
+		/**
+		 * Returns the names of the files in the last file list matching a
+		 * pattern. In the pattern, <code>*</code> matches any number of
+		 * characters and <code>?</code> matches a single character.
+		 * 
+		 * @param pattern
+		 *            The pattern.
+		 * @return The matching names.
+		 */
+		public synchronized List<String> matching(String pattern) {
+			StringBuilder regex = new StringBuilder();
+			int start = 0;
+			for (int i = 0; i < pattern.length(); i++) {
+				char c = pattern.charAt(i);
+				if (c == '*' || c == '?') {
+					if (i > start) {
+						regex.append(Pattern.quote(pattern.substring(start, i)));
+					}
+					regex.append(c == '*' ? ".*" : ".");
+					start = i + 1;
+				}
+			}
+			if (start < pattern.length()) {
+				regex.append(Pattern.quote(pattern.substring(start)));
+			}
+			Matcher m = Pattern.compile(regex.toString(), Pattern.DOTALL)
+					.matcher("");
+			ArrayList<String> ret = new ArrayList<String>();
+			for (int i = 0; i < this.index.size(); i++) {
+				String name = this.index.getName(i);
+				if (m.reset(name).matches()) {
+					ret.add(name);
+				}
+			}
+			return ret;
+		}
+
+		@Override
+		public synchronized void giveFileList(Vector<CloudFile> fileList) {
+			this.index = new FileIndex(null);
+			for (CloudFile file : fileList) {
+				this.index.add(file.getName(), file.getHashedName(),
+						file.getLastModTime(), file.getState());
+			}
+		}
+
+		@Override
+		public synchronized void giveFileListDelta(FileListDelta delta) {
+			this.index.apply(delta);
+		}
+	}
+
+	/**
+	 * An {@link IncrementalDataPresenter} printing the file list to stdout
+	 * while it is read from the CloudRAID server.
+	 */
+	private static class FileListPrinter implements IncrementalDataPresenter {
+		private int count = 0;
+
+		@Override
+		public void beginFileList() {
+		}
+
+		@Override
+		public void endFileList(boolean complete) {
+			if (complete && this.count == 0) {
+				System.out
+						.println("There are no files on the CloudRAID server.");
+			}
+		}
+
+		@Override
+		public void giveFileList(Vector<CloudFile> fileList) {
+			this.giveFileListChunk(fileList);
+		}
+
+		@Override
+		public void giveFileListChunk(List<CloudFile> chunk) {
+			for (CloudFile file : chunk) {
+				System.out.println(file.getName() + " (" + file.getHashedName()
+						+ "), " + file.getState() + ", "
+						+ file.getLastModAsString());
+			}
+			this.count += chunk.size();
+		}
+	}
+
+	/**
+	 * A {@link TransferListener} printing the progress of the running
+	 * transfers to a single line of the console, which is overwritten at every
+	 * notification.
+	 */
+	private static class ProgressPrinter implements TransferListener {
+		private int width = 0;
+
+		private synchronized void print(String line) {
+			StringBuilder sb = new StringBuilder("\r").append(line);
+			for (int i = line.length(); i < this.width; i++) {
+				sb.append(' ');
+			}
+			this.width = line.length();
+			if (line.length() == 0) {
+				sb.append('\r');
+			}
+			System.out.print(sb);
+			System.out.flush();
+		}
+
+		@Override
+		public void transferFinished(TransferProgress progress, boolean success) {
+			this.print("");
+		}
+
+		@Override
+		public void transferProgressed(TransferProgress progress) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(progress.getPath()).append(": ");
+			sb.append(TransferProgress.formatBytes(progress
+					.getBytesTransferred()));
+			long total = progress.getTotalBytes();
+			if (total > 0) {
+				sb.append(" / ").append(TransferProgress.formatBytes(total));
+				sb.append(" (")
+						.append(progress.getBytesTransferred() * 100 / total)
+						.append("%)");
+			}
+			sb.append(", ")
+					.append(TransferProgress.formatBytes(progress
+							.getThroughput())).append("/s");
+			long remaining = progress.getRemainingMillis();
+			if (remaining >= 0) {
+				long seconds = (remaining + 999) / 1000;
+				sb.append(String.format(", ETA %d:%02d", seconds / 60,
+						seconds % 60));
+			}
+			this.print(sb.toString());
+		}
+
+		@Override
+		public void transferStarted(TransferProgress progress) {
+		}
+	}
+
 	/**
 	 * A cache containing the {@link CloudFile}s on the CloudRAID server (at the
 	 * moment of the last request).
 	 */
-	private static Vector<CloudFile> fileList = new Vector<CloudFile>();
+	private static FileListMirror fileList = new FileListMirror();
 
 	/**
 	 * The {@link ServerConnector} used by the client.
 	 */
 	private static ServerConnector sc = null;
 
+	/**
+	 * Executes the commands of the user, so that a command not answered by
+	 * the server in time does not block the client.
+	 */
+	private static AsyncServerConnector async = null;
+
+	/**
+	 * The time in minutes the client waits for the server to complete a
+	 * command.
+	 */
+	private static final long TIMEOUT = 10;
+
 	/**
 	 * The version of this command-line client.
 	 */
@@ -90,15 +288,16 @@ public class CLIMain {
 				while (true) {
 					if (CLIMain.sc != null) {
 						try {
-							Thread.sleep(1000L * 60 * 60);
-						} catch (InterruptedException e) {
-						}
-						try {
-							CLIMain.fileList = CLIMain.sc.getFileList();
+							// The changes are given to CLIMain.fileList.
+							CLIMain.sc.getFileIndex();
 						} catch (IOException ignore) {
 						} catch (HTTPException ignore) {
 						} catch (NullPointerException ignore) {
 						}
+						try {
+							Thread.sleep(1000L * 60 * 60);
+						} catch (InterruptedException e) {
+						}
 					} else {
 						return;
 					}
@@ -138,10 +337,25 @@ public class CLIMain {
 						return;
 					}
 					try {
+						CLIMain.fileList = new FileListMirror();
 						CLIMain.sc = new ServerConnector(new ServerConnection(
 								commands[2], commands[1], pw,
-								Short.parseShort(commands[3])));
+								Short.parseShort(commands[3])),
+								CLIMain.fileList);
+						CLIMain.sc
+								.setCacheDirectory(ServerConnector.DEFAULT_CACHE_DIRECTORY);
 						CLIMain.sc.login();
+						if (CLIMain.c != null) {
+							// No progress lines, if the output is redirected.
+							CLIMain.sc
+									.registerTransferListener(new ProgressPrinter());
+						}
+						CLIMain.async = new AsyncServerConnector(CLIMain.sc);
+						CLIMain.async.setTimeout(CLIMain.TIMEOUT,
+								TimeUnit.MINUTES);
+						// Use the list of the last session, until the lister
+						// has read the current list.
+						CLIMain.sc.restoreFileList();
 						listerThread = new Thread(lister);
 						listerThread.start();
 					} catch (HTTPException e) {
@@ -199,6 +413,7 @@ public class CLIMain {
 				System.out.println("Exit CloudRAID client.");
 				try {
 					if (CLIMain.sc != null) {
+						CLIMain.sc.getMetrics().stopDump();
 						CLIMain.sc.logout();
 					}
 				} catch (HTTPException ignore) {
@@ -214,6 +429,7 @@ public class CLIMain {
 				// Check for logout
 				if ("logout".equals(command)) {
 					try {
+						CLIMain.sc.getMetrics().stopDump();
 						CLIMain.sc.logout();
 						listerThread.interrupt();
 					} catch (Exception ignore) {
@@ -222,17 +438,9 @@ public class CLIMain {
 				} // Check for list command
 				else if ("list".equals(command) || "ls".equals(command)) {
 					try {
-						Vector<CloudFile> list = CLIMain.sc.getFileList();
-						if (list.size() == 0) {
-							System.out
-									.println("There are no files on the CloudRAID server.");
-						}
-						for (CloudFile file : list) {
-							System.out.println(file.getName() + " ("
-									+ file.getHashedName() + "), "
-									+ file.getState() + ", "
-									+ file.getLastModAsString());
-						}
+						await(CLIMain.async.streamFileList(
+								new FileListPrinter(),
+								ServerConnector.DEFAULT_CHUNK_SIZE, null));
 					} catch (HTTPException e) {
 						System.out.println(e.getHTTPCode() + ": "
 								+ e.getHTTPErrorMessage());
@@ -242,29 +450,10 @@ public class CLIMain {
 				} // Check for download of file
 				else if (command.startsWith("get ")) {
 					commands = split(command);
-					if (commands.length != 2) {
+					if (commands.length < 2) {
 						System.out.println("Invalid syntax.");
 					} else {
-						try {
-							boolean found = false;
-							for (CloudFile file : CLIMain.fileList) {
-								if (file.getName().equals(commands[1])) {
-									file.downloadTo(new File(CLIMain.workDir
-											+ commands[1]));
-									found = true;
-									break;
-								}
-							}
-							if (!found) {
-								System.err
-										.println("File not found in file list.");
-							}
-						} catch (HTTPException e) {
-							System.out.println(e.getHTTPCode() + ": "
-									+ e.getHTTPErrorMessage());
-						} catch (IOException e) {
-							System.out.println("Could not connect to server.");
-						}
+						download(commands, CLIMain.sc);
 					}
 				} // Check for upload or update of file
 				else if (command.startsWith("upload ")
@@ -274,17 +463,25 @@ public class CLIMain {
 				else if (command.startsWith("delete ")
 						|| command.startsWith("rm ")) {
 					commands = split(command);
-					if (commands.length != 2) {
+					if (commands.length < 2) {
 						System.out.println("Invalid syntax.");
 					} else {
-						try {
-							CLIMain.sc.deleteFile(commands[1]);
-						} catch (HTTPException e) {
-							System.out.println(e.getHTTPCode() + ": "
-									+ e.getHTTPErrorMessage());
-						} catch (IOException e) {
-							System.out.println("Could not connect to server.");
-						}
+						delete(commands);
+					}
+				} // Check for synchronization of directories
+				else if (command.startsWith("sync ")
+						|| command.startsWith("syncget ")) {
+					commands = split(command);
+					if (commands.length != 3) {
+						System.out.println("Invalid syntax.");
+					} else if ("sync".equals(commands[0])) {
+						sync(new DirectorySync(CLIMain.sc, new File(
+								commands[1]), commands[2],
+								DirectorySync.Direction.UPLOAD));
+					} else {
+						sync(new DirectorySync(CLIMain.sc, new File(
+								commands[2]), commands[1],
+								DirectorySync.Direction.DOWNLOAD));
 					}
 				} // Check for changing the password
 				else if ("changepw".equals(command)) {
@@ -294,7 +491,7 @@ public class CLIMain {
 						pw = readPassword();
 						System.out.println("Confirm new password:");
 						pw2 = readPassword();
-						CLIMain.sc.changePassword(pw, pw2);
+						await(CLIMain.async.changePassword(pw, pw2, null));
 					} catch (IOException e) {
 						System.out.println("Could not change password.");
 					} catch (HTTPException e) {
@@ -304,13 +501,18 @@ public class CLIMain {
 				} // Check for server information
 				else if ("server".equals(command)) {
 					try {
-						System.out.println(CLIMain.sc.getApiInfo());
+						System.out.println(await(CLIMain.async
+								.getApiInfo(null)));
 					} catch (IOException e) {
 						System.out.println("Could not connect to server.");
 					} catch (HTTPException e) {
 						System.out.println(e.getHTTPCode() + ": "
 								+ e.getHTTPErrorMessage());
 					}
+				} // Check for metrics
+				else if ("stats".equals(command)
+						|| command.startsWith("stats ")) {
+					stats(split(command));
 				} else {
 					System.out.println("Invalid command.");
 					CLIMain.printUsage();
@@ -322,18 +524,150 @@ public class CLIMain {
 		}
 	}
 
+	/**
+	 * Waits for an asynchronous command to complete.
+	 * 
+	 * @param command
+	 *            The {@link Future} of the command.
+	 * @return The result of the command.
+	 * @throws IOException
+	 *             If the command failed, timed out or was interrupted.
+	 * @throws HTTPException
+	 *             If the server rejected the command.
+	 */
+	private static <V> V await(Future<V> command) throws IOException,
+			HTTPException {
+		try {
+			return command.get();
+		} catch (InterruptedException e) {
+			command.cancel(true);
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof HTTPException) {
+				throw (HTTPException) e.getCause();
+			} else if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause().getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * Executes the delete command and deletes all given files in parallel.
+	 * Arguments containing the wildcards <code>*</code> or <code>?</code> are
+	 * matched against the file list.
+	 * 
+	 * @param commands
+	 *            The split delete command. Every element but the first is a
+	 *            file name or a pattern.
+	 */
+	private static void delete(String[] commands) {
+		LinkedHashSet<String> paths = new LinkedHashSet<String>();
+		for (int i = 1; i < commands.length; i++) {
+			if (commands[i].indexOf('*') < 0 && commands[i].indexOf('?') < 0) {
+				paths.add(commands[i]);
+				continue;
+			}
+			List<String> matching = CLIMain.fileList.matching(commands[i]);
+			if (matching.isEmpty()) {
+				System.err.println("No file matches: " + commands[i]);
+			}
+			paths.addAll(matching);
+		}
+		if (paths.isEmpty()) {
+			return;
+		}
+		BatchResult result;
+		try {
+			result = await(CLIMain.async.deleteFiles(paths, null));
+		} catch (HTTPException e) {
+			System.out.println(e.getHTTPCode() + ": " + e.getHTTPErrorMessage());
+			return;
+		} catch (IOException e) {
+			System.out.println("Could not connect to server.");
+			return;
+		}
+		for (Map.Entry<String, Exception> failed : result.getFailed()
+				.entrySet()) {
+			if (failed.getValue() instanceof HTTPException) {
+				HTTPException he = (HTTPException) failed.getValue();
+				System.out.println(failed.getKey() + ": " + he.getHTTPCode()
+						+ ": " + he.getHTTPErrorMessage());
+			} else {
+				System.out.println(failed.getKey()
+						+ ": Could not connect to server.");
+			}
+		}
+		if (result.size() > 1) {
+			System.out.println("Deleted " + result.getSucceededCount() + " of "
+					+ result.size() + " files.");
+		}
+	}
+
+	/**
+	 * Executes the get command and downloads all given files in parallel.
+	 * 
+	 * @param commands
+	 *            The split get command. Every element but the first is a file
+	 *            name.
+	 * @param sc
+	 *            The {@link ServerConnector} holding the connection
+	 *            information.
+	 */
+	private static void download(String[] commands, ServerConnector sc) {
+		TransferManager tm = new TransferManager();
+		Vector<Future<TransferJob>> jobs = new Vector<Future<TransferJob>>();
+		for (int i = 1; i < commands.length; i++) {
+			if (CLIMain.fileList.contains(commands[i])) {
+				jobs.add(tm.download(sc, commands[i], new File(CLIMain.workDir
+						+ commands[i])));
+			} else {
+				System.err.println("File not found in file list: "
+						+ commands[i]);
+			}
+		}
+		tm.shutdown();
+		for (Future<TransferJob> job : jobs) {
+			try {
+				job.get();
+			} catch (InterruptedException e) {
+				System.out.println("Download interrupted.");
+				return;
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof HTTPException) {
+					HTTPException he = (HTTPException) e.getCause();
+					System.out.println(he.getHTTPCode() + ": "
+							+ he.getHTTPErrorMessage());
+				} else {
+					System.out.println("Could not connect to server.");
+				}
+			}
+		}
+	}
+
 	/**
 	 * Creates an interactive console for CloudRAID.
 	 * 
 	 * @param args
-	 *            The first element of the args array is interpreted as the
-	 *            working directory of the application. If no path is specified
-	 *            or the specified path does not exist, the current directory is
-	 *            used.
+	 *            The first element of the args array, that is not an option,
+	 *            is interpreted as the working directory of the application.
+	 *            If no path is specified or the specified path does not exist,
+	 *            the current directory is used. The option
+	 *            <code>--virtual-threads</code> runs the transfers on virtual
+	 *            threads, if the Java runtime supports them.
 	 */
 	public static void main(String[] args) {
-		if (args.length >= 1) {
-			File tmp = new File(args[0]);
+		List<String> paths = new ArrayList<String>();
+		ConnectionPool.configure();
+		for (String arg : args) {
+			if ("--virtual-threads".equals(arg)) {
+				BoundedExecutor.setVirtualThreadsEnabled(true);
+			} else {
+				paths.add(arg);
+			}
+		}
+		if (paths.size() >= 1) {
+			File tmp = new File(paths.get(0));
 			if (tmp.exists() && tmp.isDirectory()) {
 				CLIMain.workingDir = tmp;
 			}
@@ -393,20 +727,40 @@ public class CLIMain {
 		System.out.println("* list|ls");
 		System.out
 				.println("  - lists all files of the current user on the server.");
-		System.out.println("* get <filename>");
-		System.out.println("  - downloads a file from the server.");
-		System.out.println("* delete|rm <filename>");
-		System.out.println("  - deletes a file on the server.");
+		System.out.println("* get <filename> [<filename> ...]");
+		System.out.println("  - downloads one or more files from the server.");
+		System.out.println("* delete|rm <filename> [<filename> ...]");
+		System.out
+				.println("  - deletes one or more files on the server. '*' and '?'");
+		System.out
+				.println("    match any characters or one character of a file name.");
 		System.out.println("* upload <filename> <path_to_file>");
 		System.out.println("  - uploads a new file to the server.");
 		System.out.println("* update <filename> <path_to_file>");
 		System.out
 				.println("  - uploads _and_ overwrites an existing file on the server.");
+		System.out.println("* sync <directory> <prefix>");
+		System.out
+				.println("  - uploads new and changed files of a directory tree.");
+		System.out
+				.println("    Their names on the server start with <prefix>.");
+		System.out.println("* syncget <prefix> <directory>");
+		System.out
+				.println("  - downloads new and changed files whose names start");
+		System.out.println("    with <prefix> to a directory tree.");
 		System.out.println("* changepw");
 		System.out
 				.println("  - changes the password for the user currently logged in.");
 		System.out.println("* server");
 		System.out.println("  - prints server information.");
+		System.out.println("* stats [reset]");
+		System.out
+				.println("  - prints the latencies, bytes, errors and connections");
+		System.out
+				.println("    of this session or discards the values recorded.");
+		System.out.println("* stats dump <file> <seconds>|off");
+		System.out
+				.println("  - appends the statistics to a file periodically.");
 	}
 
 	/**
@@ -439,6 +793,78 @@ public class CLIMain {
 
 	}
 
+	/**
+	 * Executes the stats command: prints, resets or dumps the {@link Metrics}
+	 * of the {@link ServerConnector}.
+	 * 
+	 * @param commands
+	 *            The command and its arguments.
+	 */
+	private static void stats(String[] commands) {
+		Metrics metrics = CLIMain.sc.getMetrics();
+		if (commands.length == 1) {
+			System.out.println(metrics.snapshot());
+		} else if (commands.length == 2 && "reset".equals(commands[1])) {
+			metrics.reset();
+		} else if (commands.length == 3 && "dump".equals(commands[1])
+				&& "off".equals(commands[2])) {
+			metrics.stopDump();
+		} else if (commands.length == 4 && "dump".equals(commands[1])) {
+			try {
+				metrics.startDump(new File(commands[2]),
+						Long.parseLong(commands[3]));
+			} catch (IllegalArgumentException e) {
+				System.out.println("Invalid number of seconds.");
+			}
+		} else {
+			System.out.println("Invalid syntax.");
+		}
+	}
+
+	/**
+	 * Executes the sync and syncget commands. Only the differences between the
+	 * local directory and the file list are transferred in parallel.
+	 * 
+	 * @param sync
+	 *            The {@link DirectorySync}.
+	 */
+	private static void sync(DirectorySync sync) {
+		if (sync.getDirection() == DirectorySync.Direction.UPLOAD
+				&& !sync.getDirectory().isDirectory()) {
+			System.out.println("Directory does not exist. ("
+					+ sync.getDirectory().getAbsolutePath() + ")");
+			return;
+		}
+		TransferManager tm = new TransferManager();
+		try {
+			sync.plan(await(CLIMain.async.getFileIndex(null)));
+			BatchResult result = sync.run(tm);
+			for (Map.Entry<String, Exception> failed : result.getFailed()
+					.entrySet()) {
+				if (failed.getValue() instanceof HTTPException) {
+					HTTPException he = (HTTPException) failed.getValue();
+					System.out.println(failed.getKey() + ": "
+							+ he.getHTTPCode() + ": "
+							+ he.getHTTPErrorMessage());
+				} else {
+					System.out.println(failed.getKey() + ": "
+							+ failed.getValue().getMessage());
+				}
+			}
+			System.out.println("Transferred " + result.getSucceededCount()
+					+ " of " + result.size() + " changed files, "
+					+ sync.getUnchangedCount() + " files unchanged.");
+		} catch (HTTPException e) {
+			System.out.println(e.getHTTPCode() + ": " + e.getHTTPErrorMessage());
+		} catch (InterruptedIOException e) {
+			System.out.println("Synchronization interrupted.");
+		} catch (IOException e) {
+			System.out.println("Could not connect to server.");
+		} finally {
+			tm.shutdown();
+		}
+	}
+
 	/**
 	 * Executes the upload command and handles {@link Exception}s.
 	 * 
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+/**
+ * Receives the result of an operation executed by an
+ * {@link AsyncServerConnector}. Exactly one of the methods is called, when the
+ * operation has finished.
+ * 
+ * @param <V>
+ *            The type of the result.
+ */
+public interface AsyncCallback<V> {
+
+	/**
+	 * Called, if the operation was successful.
+	 * 
+	 * @param result
+	 *            The result of the operation; <code>null</code> for
+	 *            operations without result.
+	 */
+	public void completed(V result);
+
+	/**
+	 * Called, if the operation failed, was cancelled or timed out.
+	 * 
+	 * @param e
+	 *            The {@link java.io.IOException} or {@link HTTPException} of
+	 *            the operation, a
+	 *            {@link java.util.concurrent.CancellationException} or a
+	 *            {@link java.util.concurrent.TimeoutException}.
+	 */
+	public void failed(Throwable e);
+
+}
@@ -0,0 +1,730 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes the operations of a {@link ServerConnector} asynchronously on an
+ * {@link ExecutorService}, so that the calling thread, e.g. the event dispatch
+ * thread of a graphical user interface, is not blocked. Every operation
+ * returns a {@link Future} and notifies an optional {@link AsyncCallback}
+ * when it has finished.
+ * 
+ * An operation can be cancelled through its {@link Future}. If a timeout is
+ * set, operations not finished in time fail with a {@link TimeoutException}.
+ * In both cases the thread executing the operation is interrupted, if it
+ * still runs the operation, which stops running transfers after the current
+ * buffer. An interrupt does not end a blocking read from a socket, so a
+ * request waiting for the server keeps its thread until the read timeout of
+ * the {@link ConnectionPool} elapses, see
+ * {@link ConnectionPool#setReadTimeout(int)}.
+ */
+public class AsyncServerConnector {
+
+	/**
+	 * The maximum number of operations of the default executor running at the
+	 * same time on virtual threads.
+	 */
+	public static final int MAX_VIRTUAL_THREADS = 10000;
+
+	/**
+	 * A {@link FutureTask} that can time out and notifies an
+	 * {@link AsyncCallback} when it is done.
+	 * 
+	 * @param <V>
+	 *            The type of the result.
+	 */
+	private class Operation<V> extends FutureTask<V> {
+		private AsyncCallback<? super V> callback;
+		private volatile TimeoutException timedOut = null;
+		private volatile Future<?> watchdog = null;
+
+		/**
+		 * Creates an {@link Operation}.
+		 * 
+		 * @param callable
+		 *            The operation.
+		 * @param callback
+		 *            The {@link AsyncCallback} or <code>null</code>.
+		 */
+		public Operation(Callable<V> callable,
+				AsyncCallback<? super V> callback) {
+			super(callable);
+			this.callback = callback;
+		}
+
+		@Override
+		protected void done() {
+			Future<?> w = this.watchdog;
+			if (w != null) {
+				w.cancel(false);
+			}
+			if (this.callback == null) {
+				return;
+			}
+			Runnable notification = new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Operation.this.callback.completed(Operation.this.get());
+					} catch (ExecutionException e) {
+						Operation.this.callback.failed(e.getCause());
+					} catch (CancellationException e) {
+						Operation.this.callback.failed(e);
+					} catch (InterruptedException e) {
+						Operation.this.callback.failed(e);
+					}
+				}
+			};
+			Executor ce = AsyncServerConnector.this.callbackExecutor;
+			if (ce == null) {
+				notification.run();
+			} else {
+				ce.execute(notification);
+			}
+		}
+
+		@Override
+		public V get() throws InterruptedException, ExecutionException {
+			try {
+				return super.get();
+			} catch (CancellationException e) {
+				throw this.timedOut(e);
+			}
+		}
+
+		@Override
+		public V get(long timeout, TimeUnit unit) throws InterruptedException,
+				ExecutionException, TimeoutException {
+			try {
+				return super.get(timeout, unit);
+			} catch (CancellationException e) {
+				throw this.timedOut(e);
+			}
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return this.timedOut == null && super.isCancelled();
+		}
+
+		/**
+		 * Lets the operation fail with a {@link TimeoutException}, if it has
+		 * not finished yet. It is cancelled like by
+		 * {@link Future#cancel(boolean)}, so the executing thread is only
+		 * interrupted while it still runs this operation.
+		 * 
+		 * @param millis
+		 *            The timeout that elapsed.
+		 */
+		private void timeout(long millis) {
+			this.timedOut = new TimeoutException("Timed out after " + millis
+					+ " ms.");
+			if (!this.cancel(true)) {
+				// The operation finished or was cancelled before.
+				this.timedOut = null;
+			}
+		}
+
+		/**
+		 * Returns the error reported for a cancelled operation.
+		 * 
+		 * @param e
+		 *            The {@link CancellationException}.
+		 * @return The {@link TimeoutException} wrapped in an
+		 *         {@link ExecutionException}, if the operation timed out.
+		 * @throws CancellationException
+		 *             If the operation was cancelled through its
+		 *             {@link Future}.
+		 */
+		private ExecutionException timedOut(CancellationException e) {
+			TimeoutException t = this.timedOut;
+			if (t == null) {
+				throw e;
+			}
+			return new ExecutionException(t);
+		}
+	}
+
+	private static ExecutorService defaultExecutor = null;
+	private static ScheduledExecutorService timer = null;
+
+	/**
+	 * Returns a {@link ThreadFactory} creating named daemon threads.
+	 * 
+	 * @param prefix
+	 *            The prefix of the names of the threads.
+	 * @return The {@link ThreadFactory}.
+	 */
+	static ThreadFactory daemonThreads(final String prefix) {
+		return new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + this.count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Returns the {@link ExecutorService} used by all
+	 * {@link AsyncServerConnector}s that are not given an executor explicitly.
+	 * It creates daemon threads on demand, or runs at most
+	 * {@link #MAX_VIRTUAL_THREADS} operations on virtual threads, if they are
+	 * enabled, see {@link BoundedExecutor#isVirtualThreadsEnabled()}.
+	 * 
+	 * @return The default {@link ExecutorService}.
+	 */
+	public static synchronized ExecutorService getDefaultExecutor() {
+		if (AsyncServerConnector.defaultExecutor == null) {
+			if (BoundedExecutor.isVirtualThreadsEnabled()) {
+				AsyncServerConnector.defaultExecutor = BoundedExecutor
+						.newVirtualThreadExecutor(AsyncServerConnector.MAX_VIRTUAL_THREADS);
+			} else {
+				AsyncServerConnector.defaultExecutor = Executors
+						.newCachedThreadPool(daemonThreads("CloudRAID-async-"));
+			}
+		}
+		return AsyncServerConnector.defaultExecutor;
+	}
+
+	/**
+	 * Returns the {@link ScheduledExecutorService} watching the timeouts.
+	 * 
+	 * @return The {@link ScheduledExecutorService}.
+	 */
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (AsyncServerConnector.timer == null) {
+			ScheduledThreadPoolExecutor t = new ScheduledThreadPoolExecutor(1,
+					daemonThreads("CloudRAID-timeout-"));
+			// Do not keep the watchdogs of finished operations.
+			t.setRemoveOnCancelPolicy(true);
+			AsyncServerConnector.timer = t;
+		}
+		return AsyncServerConnector.timer;
+	}
+
+	private ServerConnector sc;
+	private ExecutorService executor;
+	private volatile Executor callbackExecutor = null;
+	private volatile long timeout = 0L;
+
+	/**
+	 * Creates an {@link AsyncServerConnector} executing the operations on the
+	 * default {@link ExecutorService}.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} executing the operations.
+	 */
+	public AsyncServerConnector(ServerConnector sc) {
+		this(sc, AsyncServerConnector.getDefaultExecutor());
+	}
+
+	/**
+	 * Creates an {@link AsyncServerConnector}. Many operations at the same
+	 * time are best executed on virtual threads, see
+	 * {@link BoundedExecutor#newVirtualThreadExecutor(int)}.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} executing the operations.
+	 * @param executor
+	 *            The {@link ExecutorService} executing the operations.
+	 */
+	public AsyncServerConnector(ServerConnector sc, ExecutorService executor) {
+		this.sc = sc;
+		this.executor = executor;
+	}
+
+	/**
+	 * Changes the password of the user currently logged in.
+	 * 
+	 * @param newPassword
+	 *            The new password.
+	 * @param newPasswordConfirm
+	 *            The confirmation of the password.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#changePassword(String, String)
+	 */
+	public Future<Void> changePassword(final String newPassword,
+			final String newPasswordConfirm,
+			AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.changePassword(newPassword,
+						newPasswordConfirm);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Creates the user of the {@link ServerConnection}.
+	 * 
+	 * @param conf
+	 *            The confirmation of the password.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#createUser(String)
+	 */
+	public Future<Void> createUser(final String conf,
+			AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.createUser(conf);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Deletes a file on the server.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#deleteFile(String)
+	 */
+	public Future<Void> deleteFile(final String path,
+			AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.deleteFile(path);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Deletes several files on the server in parallel.
+	 * 
+	 * @param paths
+	 *            The paths of the files on the server.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#deleteFiles(Collection)
+	 */
+	public Future<BatchResult> deleteFiles(final Collection<String> paths,
+			AsyncCallback<? super BatchResult> callback) {
+		return this.submit(new Callable<BatchResult>() {
+			@Override
+			public BatchResult call() throws Exception {
+				return AsyncServerConnector.this.sc.deleteFiles(paths);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Retrieves the API information of the server.
+	 * 
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getApiInfo()
+	 */
+	public Future<String> getApiInfo(AsyncCallback<? super String> callback) {
+		return this.submit(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				return AsyncServerConnector.this.sc.getApiInfo();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Returns the {@link Executor} running the {@link AsyncCallback}s.
+	 * 
+	 * @return The {@link Executor} or <code>null</code>, if the callbacks
+	 *         are run by the thread that executed the operation.
+	 */
+	public Executor getCallbackExecutor() {
+		return this.callbackExecutor;
+	}
+
+	/**
+	 * Retrieves a file from the server.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file the data is written to.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getFile(String, File)
+	 */
+	public Future<Void> getFile(final String path, final File destination,
+			AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.getFile(path, destination);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Retrieves several files from the server in parallel.
+	 * 
+	 * @param paths
+	 *            The paths of the files on the server.
+	 * @param directory
+	 *            The directory the files are written to.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getFiles(Collection, File)
+	 */
+	public Future<BatchResult> getFiles(final Collection<String> paths,
+			final File directory, AsyncCallback<? super BatchResult> callback) {
+		return this.submit(new Callable<BatchResult>() {
+			@Override
+			public BatchResult call() throws Exception {
+				return AsyncServerConnector.this.sc.getFiles(paths, directory);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Retrieves the file list as {@link FileIndex}.
+	 * 
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getFileIndex()
+	 */
+	public Future<FileIndex> getFileIndex(
+			AsyncCallback<? super FileIndex> callback) {
+		return this.submit(new Callable<FileIndex>() {
+			@Override
+			public FileIndex call() throws Exception {
+				return AsyncServerConnector.this.sc.getFileIndex();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Retrieves the file list and gives it to the registered
+	 * {@link DataPresenter}s.
+	 * 
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getFileList()
+	 */
+	public Future<Vector<CloudFile>> getFileList(
+			AsyncCallback<? super Vector<CloudFile>> callback) {
+		return this.submit(new Callable<Vector<CloudFile>>() {
+			@Override
+			public Vector<CloudFile> call() throws Exception {
+				return AsyncServerConnector.this.sc.getFileList();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Retrieves a file from the server and resumes an earlier, failed
+	 * download.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file the data is written to.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getFileResumable(String, File)
+	 */
+	public Future<Void> getFileResumable(final String path,
+			final File destination, AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.getFileResumable(path,
+						destination);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Retrieves a file from the server in parallel segments.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file the data is written to.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#getFileSegmented(String, File)
+	 */
+	public Future<Void> getFileSegmented(final String path,
+			final File destination, AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.getFileSegmented(path,
+						destination);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Returns the {@link ServerConnector} executing the operations.
+	 * 
+	 * @return The {@link ServerConnector}.
+	 */
+	public ServerConnector getServerConnector() {
+		return this.sc;
+	}
+
+	/**
+	 * Returns the timeout of the operations.
+	 * 
+	 * @return The timeout in milliseconds or 0, if the operations do not time
+	 *         out.
+	 */
+	public long getTimeout() {
+		return this.timeout;
+	}
+
+	/**
+	 * Logs in to the server.
+	 * 
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#login()
+	 */
+	public Future<Void> login(AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.login();
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Logs out from the server.
+	 * 
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#logout()
+	 */
+	public Future<Void> logout(AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.logout();
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Uploads a file to the server.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#putFile(String, File, boolean)
+	 */
+	public Future<Void> putFile(final String path, final File inFile,
+			final boolean update, AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.putFile(path, inFile, update);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Uploads a file to the server in chunks and resumes an earlier, failed
+	 * upload.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#putFileChunked(String, File, boolean)
+	 */
+	public Future<Void> putFileChunked(final String path, final File inFile,
+			final boolean update, AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.putFileChunked(path, inFile,
+						update);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Restores the file list written by an earlier session and gives it to the
+	 * registered {@link DataPresenter}s.
+	 * 
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#restoreFileList()
+	 */
+	public Future<FileIndex> restoreFileList(
+			AsyncCallback<? super FileIndex> callback) {
+		return this.submit(new Callable<FileIndex>() {
+			@Override
+			public FileIndex call() throws Exception {
+				return AsyncServerConnector.this.sc.restoreFileList();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Sets the {@link Executor} running the {@link AsyncCallback}s, e.g. an
+	 * {@link Executor} running them on the event dispatch thread.
+	 * 
+	 * @param callbackExecutor
+	 *            The {@link Executor} or <code>null</code>, if the callbacks
+	 *            shall be run by the thread that executed the operation.
+	 */
+	public void setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Sets the timeout of the operations submitted afterwards.
+	 * 
+	 * @param timeout
+	 *            The timeout or 0, if the operations shall not time out.
+	 * @param unit
+	 *            The unit of the timeout.
+	 */
+	public void setTimeout(long timeout, TimeUnit unit) {
+		this.timeout = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Reads the file list and gives it to an {@link IncrementalDataPresenter}
+	 * in chunks.
+	 * 
+	 * @param receiver
+	 *            The {@link IncrementalDataPresenter} receiving the chunks.
+	 * @param chunkSize
+	 *            The maximum number of {@link CloudFile}s per chunk.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 * @see ServerConnector#streamFileList(IncrementalDataPresenter, int)
+	 */
+	public Future<Void> streamFileList(final IncrementalDataPresenter receiver,
+			final int chunkSize, AsyncCallback<? super Void> callback) {
+		return this.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				AsyncServerConnector.this.sc.streamFileList(receiver,
+						chunkSize);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Submits an operation for asynchronous execution. This way operations
+	 * consisting of several calls of the {@link ServerConnector} can be
+	 * executed with the same timeout and notification as the predefined
+	 * operations.
+	 * 
+	 * @param operation
+	 *            The operation.
+	 * @param callback
+	 *            The {@link AsyncCallback} or <code>null</code>.
+	 * @return The {@link Future} of the operation.
+	 */
+	public <V> Future<V> submit(Callable<V> operation,
+			AsyncCallback<? super V> callback) {
+		final Operation<V> op = new Operation<V>(operation, callback);
+		final long millis = this.timeout;
+		this.executor.execute(op);
+		if (millis > 0) {
+			op.watchdog = getTimer().schedule(new Runnable() {
+				@Override
+				public void run() {
+					op.timeout(millis);
+				}
+			}, millis, TimeUnit.MILLISECONDS);
+			if (op.isDone()) {
+				op.watchdog.cancel(false);
+			}
+		}
+		return op;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of a batch operation of a {@link ServerConnector}, e.g.
+ * {@link ServerConnector#deleteFiles(java.util.Collection)}. Every path of the
+ * batch either succeeded or failed with an {@link java.io.IOException} or
+ * {@link HTTPException}. The paths are kept in the order of the batch.
+ */
+public class BatchResult {
+
+	/**
+	 * The paths of the batch mapped to their errors. Successful paths are
+	 * mapped to <code>null</code>.
+	 */
+	private LinkedHashMap<String, Exception> results;
+	private int failed = 0;
+
+	/**
+	 * Creates a {@link BatchResult} for the given paths. All paths are
+	 * successful until they are marked as failed.
+	 * 
+	 * @param paths
+	 *            The paths of the batch.
+	 */
+	protected BatchResult(Iterable<String> paths) {
+		this.results = new LinkedHashMap<String, Exception>();
+		for (String path : paths) {
+			this.results.put(path, null);
+		}
+	}
+
+	/**
+	 * Returns the error of a path.
+	 * 
+	 * @param path
+	 *            The path.
+	 * @return The {@link java.io.IOException} or {@link HTTPException} or
+	 *         <code>null</code>, if the path succeeded or is not part of the
+	 *         batch.
+	 */
+	public synchronized Exception getError(String path) {
+		return this.results.get(path);
+	}
+
+	/**
+	 * Returns the failed paths and their errors.
+	 * 
+	 * @return A {@link Map} of the failed paths in the order of the batch.
+	 */
+	public synchronized Map<String, Exception> getFailed() {
+		LinkedHashMap<String, Exception> ret = new LinkedHashMap<String, Exception>();
+		for (Map.Entry<String, Exception> entry : this.results.entrySet()) {
+			if (entry.getValue() != null) {
+				ret.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return Collections.unmodifiableMap(ret);
+	}
+
+	/**
+	 * Returns the number of failed paths.
+	 * 
+	 * @return The number of paths.
+	 */
+	public synchronized int getFailedCount() {
+		return this.failed;
+	}
+
+	/**
+	 * Returns the successful paths.
+	 * 
+	 * @return The paths in the order of the batch.
+	 */
+	public synchronized List<String> getSucceeded() {
+		ArrayList<String> ret = new ArrayList<String>(this.results.size()
+				- this.failed);
+		for (Map.Entry<String, Exception> entry : this.results.entrySet()) {
+			if (entry.getValue() == null) {
+				ret.add(entry.getKey());
+			}
+		}
+		return Collections.unmodifiableList(ret);
+	}
+
+	/**
+	 * Returns the number of successful paths.
+	 * 
+	 * @return The number of paths.
+	 */
+	public synchronized int getSucceededCount() {
+		return this.results.size() - this.failed;
+	}
+
+	/**
+	 * Checks, if all paths of the batch succeeded.
+	 * 
+	 * @return true, if no path failed.
+	 */
+	public synchronized boolean isSuccessful() {
+		return this.failed == 0;
+	}
+
+	/**
+	 * Marks a path as failed.
+	 * 
+	 * @param path
+	 *            The path.
+	 * @param error
+	 *            The {@link java.io.IOException} or {@link HTTPException}.
+	 */
+	protected synchronized void setFailed(String path, Exception error) {
+		if (this.results.put(path, error) == null) {
+			this.failed++;
+		}
+	}
+
+	/**
+	 * Returns the number of paths of the batch.
+	 * 
+	 * @return The number of paths.
+	 */
+	public synchronized int size() {
+		return this.results.size();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return this.getSucceededCount() + " of " + this.results.size()
+				+ " succeeded";
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link ExecutorService} limiting the number of tasks running at the same
+ * time on another {@link ExecutorService}. Tasks exceeding the limit wait for
+ * a permit on their own thread, so the limit is only sensible for executors
+ * with cheap threads.
+ * 
+ * Such executors are the virtual threads of Java 21 and later. As nearly all
+ * operations of a {@link ServerConnector} wait for the network, thousands of
+ * them can run on virtual threads without a pool of thousands of platform
+ * threads. {@link #newVirtualThreadExecutor(int)} creates an executor for the
+ * {@link TransferManager} and the {@link AsyncServerConnector} using virtual
+ * threads, if the Java runtime supports them. The virtual threads are looked
+ * up at runtime, so that the client still runs on older Java versions.
+ * 
+ * The default executors of the {@link TransferManager} and the
+ * {@link AsyncServerConnector} use virtual threads, if the system property
+ * {@value #VIRTUAL_THREADS} is <code>true</code>, see
+ * {@link #setVirtualThreadsEnabled(boolean)}.
+ */
+public class BoundedExecutor extends AbstractExecutorService {
+
+	/**
+	 * The system property switching the default executors to virtual
+	 * threads.
+	 */
+	public static final String VIRTUAL_THREADS = "cloudraid.virtualThreads";
+
+	/**
+	 * Checks, if the default executors use virtual threads. That is the case,
+	 * if they are enabled by the system property {@value #VIRTUAL_THREADS} and
+	 * the Java runtime supports them.
+	 * 
+	 * @return true, if virtual threads are used.
+	 */
+	public static boolean isVirtualThreadsEnabled() {
+		return Boolean.getBoolean(BoundedExecutor.VIRTUAL_THREADS)
+				&& BoundedExecutor.isVirtualThreadSupported();
+	}
+
+	/**
+	 * Creates the default {@link ExecutorService} of a component running at
+	 * most the given number of tasks at the same time. It uses virtual
+	 * threads, if they are enabled, see {@link #isVirtualThreadsEnabled()},
+	 * or else a pool of the given number of platform threads.
+	 * 
+	 * @param maxConcurrent
+	 *            The maximum number of tasks running at the same time.
+	 * @return The {@link ExecutorService}.
+	 */
+	public static ExecutorService newDefaultExecutor(int maxConcurrent) {
+		if (Boolean.getBoolean(BoundedExecutor.VIRTUAL_THREADS)) {
+			return BoundedExecutor.newVirtualThreadExecutor(maxConcurrent);
+		}
+		return Executors.newFixedThreadPool(maxConcurrent);
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} running every task on a virtual
+	 * thread of its own, while at most the given number of tasks run at the
+	 * same time. If the Java runtime does not support virtual threads, a pool
+	 * of the given number of platform threads is returned instead.
+	 * 
+	 * @param maxConcurrent
+	 *            The maximum number of tasks running at the same time.
+	 * @return The {@link ExecutorService}.
+	 */
+	public static ExecutorService newVirtualThreadExecutor(int maxConcurrent) {
+		return BoundedExecutor.newVirtualThreadExecutor(
+				BoundedExecutor.virtualThreads(), maxConcurrent);
+	}
+
+	/**
+	 * Limits an {@link ExecutorService} starting a virtual thread for every
+	 * task, or creates a pool of platform threads, if it is missing.
+	 * 
+	 * @param virtual
+	 *            The {@link ExecutorService} of virtual threads or
+	 *            <code>null</code>.
+	 * @param maxConcurrent
+	 *            The maximum number of tasks running at the same time.
+	 * @return The {@link ExecutorService}.
+	 */
+	static ExecutorService newVirtualThreadExecutor(ExecutorService virtual,
+			int maxConcurrent) {
+		if (virtual == null) {
+			return Executors.newFixedThreadPool(maxConcurrent);
+		}
+		return new BoundedExecutor(virtual, maxConcurrent);
+	}
+
+	/**
+	 * Switches the default executors of the {@link TransferManager} and the
+	 * {@link AsyncServerConnector} to virtual threads or back to platform
+	 * threads by setting the system property {@value #VIRTUAL_THREADS}. It
+	 * affects the executors created afterwards. On Java runtimes without
+	 * virtual threads, platform threads are used anyway.
+	 * 
+	 * @param enabled
+	 *            true to use virtual threads.
+	 */
+	public static void setVirtualThreadsEnabled(boolean enabled) {
+		System.setProperty(BoundedExecutor.VIRTUAL_THREADS,
+				String.valueOf(enabled));
+	}
+
+	/**
+	 * Checks, if the Java runtime supports virtual threads.
+	 * 
+	 * @return true, if virtual threads are supported.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		ExecutorService virtual = BoundedExecutor.virtualThreads();
+		if (virtual == null) {
+			return false;
+		}
+		virtual.shutdown();
+		return true;
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} starting a new virtual thread for
+	 * every task.
+	 * 
+	 * @return The {@link ExecutorService} or <code>null</code>, if virtual
+	 *         threads are not supported.
+	 */
+	private static ExecutorService virtualThreads() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			// Virtual threads are a disabled preview feature.
+			return null;
+		}
+	}
+
+	private ExecutorService executor;
+	private int maxConcurrent;
+	private Semaphore permits;
+
+	/**
+	 * Creates a {@link BoundedExecutor}.
+	 * 
+	 * @param executor
+	 *            The {@link ExecutorService} running the tasks.
+	 * @param maxConcurrent
+	 *            The maximum number of tasks running at the same time.
+	 */
+	public BoundedExecutor(ExecutorService executor, int maxConcurrent) {
+		if (maxConcurrent <= 0) {
+			throw new IllegalArgumentException("Invalid concurrency limit: "
+					+ maxConcurrent);
+		}
+		this.executor = executor;
+		this.maxConcurrent = maxConcurrent;
+		this.permits = new Semaphore(maxConcurrent, true);
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				// Ignore interrupts, so that every task is run and its future
+				// is completed. A cancelled task returns at once.
+				BoundedExecutor.this.permits.acquireUninterruptibly();
+				try {
+					command.run();
+				} finally {
+					BoundedExecutor.this.permits.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the maximum number of tasks running at the same time.
+	 * 
+	 * @return The number of tasks.
+	 */
+	public int getMaxConcurrent() {
+		return this.maxConcurrent;
+	}
+
+	/**
+	 * Returns the number of tasks currently running.
+	 * 
+	 * @return The number of tasks.
+	 */
+	public int getRunningCount() {
+		return this.maxConcurrent - this.permits.availablePermits();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return this.executor.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return this.executor.isTerminated();
+	}
+
+	@Override
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		return this.executor.shutdownNow();
+	}
+}
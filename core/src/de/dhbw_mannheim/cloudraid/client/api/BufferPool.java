@@ -0,0 +1,268 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of equally sized transfer buffers used by a {@link ServerConnector}
+ * to copy file contents from and to HTTP connections. Reusing the buffers
+ * avoids allocating and zeroing a new buffer for every transfer, which matters
+ * with large buffers and many parallel transfers. A {@link BufferPool} is
+ * thread-safe.
+ * 
+ * The buffers are heap arrays wrapped in {@link ByteBuffer}s, because the data
+ * is always written to or read from the streams of a
+ * {@link java.net.HttpURLConnection}, which only accept arrays.
+ */
+public class BufferPool {
+
+	/**
+	 * The default size of a buffer in bytes.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The default maximum number of idle buffers kept in the pool.
+	 */
+	public static final int DEFAULT_MAX_POOLED = 16;
+
+	private static BufferPool defaultPool = null;
+
+	/**
+	 * Returns the {@link BufferPool} used by all {@link ServerConnector}s that
+	 * are not given a pool explicitly.
+	 * 
+	 * @return The default {@link BufferPool}.
+	 */
+	public static synchronized BufferPool getDefault() {
+		if (BufferPool.defaultPool == null) {
+			BufferPool.defaultPool = new BufferPool(
+					BufferPool.DEFAULT_BUFFER_SIZE,
+					BufferPool.DEFAULT_MAX_POOLED);
+		}
+		return BufferPool.defaultPool;
+	}
+
+	/**
+	 * Throws an {@link InterruptedIOException}, if the current thread was
+	 * interrupted, e.g. because an asynchronous operation was cancelled. The
+	 * interrupted status is kept, so that the operation is not retried.
+	 * 
+	 * @throws InterruptedIOException
+	 */
+	protected static void checkInterrupted() throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Transfer interrupted.");
+		}
+	}
+
+	private int bufferSize;
+	private int maxPooled;
+	private ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<ByteBuffer>();
+	private AtomicInteger idleCount = new AtomicInteger(0);
+
+	/**
+	 * Creates a {@link BufferPool}.
+	 * 
+	 * @param bufferSize
+	 *            The size of a buffer in bytes.
+	 * @param maxPooled
+	 *            The maximum number of idle buffers kept in the pool.
+	 */
+	public BufferPool(int bufferSize, int maxPooled) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("Invalid buffer size: "
+					+ bufferSize);
+		}
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Takes a buffer from the pool or creates a new one. The buffer is
+	 * cleared.
+	 * 
+	 * @return The buffer.
+	 */
+	protected ByteBuffer acquire() {
+		ByteBuffer buf = this.idle.poll();
+		if (buf == null) {
+			return ByteBuffer.allocate(this.bufferSize);
+		}
+		this.idleCount.decrementAndGet();
+		buf.clear();
+		return buf;
+	}
+
+	/**
+	 * Copies a {@link FileChannel} from its current position to its end into
+	 * an {@link OutputStream}.
+	 * 
+	 * @param in
+	 *            The {@link FileChannel}.
+	 * @param out
+	 *            The {@link OutputStream}.
+	 * @return The number of bytes copied.
+	 * @throws IOException
+	 */
+	protected long copy(FileChannel in, OutputStream out) throws IOException {
+		return this.copy(in, out, null);
+	}
+
+	/**
+	 * Copies a {@link FileChannel} from its current position to its end into
+	 * an {@link OutputStream} and updates a {@link MessageDigest} with the
+	 * copied bytes in the same pass.
+	 * 
+	 * @param in
+	 *            The {@link FileChannel}.
+	 * @param out
+	 *            The {@link OutputStream}.
+	 * @param digest
+	 *            The {@link MessageDigest} or <code>null</code>.
+	 * @return The number of bytes copied.
+	 * @throws IOException
+	 */
+	protected long copy(FileChannel in, OutputStream out, MessageDigest digest)
+			throws IOException {
+		ByteBuffer buf = this.acquire();
+		try {
+			long count = 0;
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				checkInterrupted();
+				out.write(buf.array(), buf.arrayOffset(), len);
+				if (digest != null) {
+					digest.update(buf.array(), buf.arrayOffset(), len);
+				}
+				count += len;
+				buf.clear();
+			}
+			return count;
+		} finally {
+			this.release(buf);
+		}
+	}
+
+	/**
+	 * Copies an {@link InputStream} to its end into a {@link FileChannel}
+	 * starting at the given position.
+	 * 
+	 * @param in
+	 *            The {@link InputStream}.
+	 * @param out
+	 *            The {@link FileChannel}.
+	 * @param position
+	 *            The position of the first byte in the {@link FileChannel}.
+	 * @return The position after the last byte written.
+	 * @throws IOException
+	 */
+	protected long copy(InputStream in, FileChannel out, long position)
+			throws IOException {
+		return this.copy(in, out, position, null);
+	}
+
+	/**
+	 * Copies an {@link InputStream} to its end into a {@link FileChannel}
+	 * starting at the given position and updates a {@link MessageDigest} with
+	 * the copied bytes in the same pass.
+	 * 
+	 * @param in
+	 *            The {@link InputStream}.
+	 * @param out
+	 *            The {@link FileChannel}.
+	 * @param position
+	 *            The position of the first byte in the {@link FileChannel}.
+	 * @param digest
+	 *            The {@link MessageDigest} or <code>null</code>.
+	 * @return The position after the last byte written.
+	 * @throws IOException
+	 */
+	protected long copy(InputStream in, FileChannel out, long position,
+			MessageDigest digest) throws IOException {
+		ByteBuffer buf = this.acquire();
+		try {
+			int len;
+			while ((len = in.read(buf.array(), buf.arrayOffset(),
+					buf.capacity())) != -1) {
+				checkInterrupted();
+				if (digest != null) {
+					digest.update(buf.array(), buf.arrayOffset(), len);
+				}
+				buf.limit(len);
+				while (buf.hasRemaining()) {
+					position += out.write(buf, position);
+				}
+				buf.clear();
+			}
+			return position;
+		} finally {
+			this.release(buf);
+		}
+	}
+
+	/**
+	 * Returns the size of the buffers.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public int getBufferSize() {
+		return this.bufferSize;
+	}
+
+	/**
+	 * Returns the maximum number of idle buffers kept in the pool.
+	 * 
+	 * @return The number of buffers.
+	 */
+	public int getMaxPooled() {
+		return this.maxPooled;
+	}
+
+	/**
+	 * Hands a buffer back to the pool. If the pool is full, the buffer is left
+	 * to the garbage collector.
+	 * 
+	 * @param buf
+	 *            The buffer.
+	 */
+	protected void release(ByteBuffer buf) {
+		if (buf.capacity() != this.bufferSize) {
+			return;
+		}
+		if (this.idleCount.incrementAndGet() <= this.maxPooled) {
+			this.idle.offer(buf);
+		} else {
+			this.idleCount.decrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops the requests to a server for a while, after several requests in a row
+ * failed, so that an overloaded server is not kept busy by clients polling
+ * the file list. The circuit is closed as long as requests succeed. After
+ * {@link #getFailureThreshold()} server failures in a row (see
+ * {@link RetryPolicy#isServerFailure(Exception)}), the circuit is opened and
+ * requests fail with a {@link CircuitOpenException} without being sent. When
+ * the open time has elapsed, a single trial request is let through
+ * (half-open): if it succeeds, the circuit is closed again; if it fails, the
+ * circuit is opened again.
+ * 
+ * All {@link ServerConnector}s of a server share the {@link CircuitBreaker}
+ * returned by {@link #forServer(String)}.
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The default number of server failures in a row opening the circuit.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+
+	/**
+	 * The default time in milliseconds the circuit stays open.
+	 */
+	public static final long DEFAULT_OPEN_TIME = 30000L;
+
+	/**
+	 * The states of a {@link CircuitBreaker}.
+	 */
+	public enum State {
+		/**
+		 * Requests are sent.
+		 */
+		CLOSED,
+		/**
+		 * Requests fail without being sent.
+		 */
+		OPEN,
+		/**
+		 * A single trial request is sent.
+		 */
+		HALF_OPEN
+	}
+
+	private static HashMap<String, CircuitBreaker> breakers = new HashMap<String, CircuitBreaker>();
+
+	/**
+	 * Returns the {@link CircuitBreaker} of a server, which is created with the
+	 * default threshold and open time, if there is none yet.
+	 * 
+	 * @param server
+	 *            The server and port, e.g. <code>localhost:8080</code>.
+	 * @return The {@link CircuitBreaker}.
+	 */
+	public static synchronized CircuitBreaker forServer(String server) {
+		CircuitBreaker breaker = CircuitBreaker.breakers.get(server);
+		if (breaker == null) {
+			breaker = new CircuitBreaker(server,
+					CircuitBreaker.DEFAULT_FAILURE_THRESHOLD,
+					CircuitBreaker.DEFAULT_OPEN_TIME);
+			CircuitBreaker.breakers.put(server, breaker);
+		}
+		return breaker;
+	}
+
+	private String server;
+	private int failureThreshold;
+	private long openTime;
+
+	private State state = State.CLOSED;
+	private int failures = 0;
+	private long openedAt = 0L;
+	private boolean trialRunning = false;
+
+	/**
+	 * Creates a {@link CircuitBreaker}.
+	 * 
+	 * @param server
+	 *            The name of the server used in error messages.
+	 * @param failureThreshold
+	 *            The number of server failures in a row opening the circuit.
+	 * @param openTime
+	 *            The time in milliseconds the circuit stays open.
+	 */
+	public CircuitBreaker(String server, int failureThreshold, long openTime) {
+		if (failureThreshold < 1 || openTime < 0) {
+			throw new IllegalArgumentException("Invalid circuit breaker: "
+					+ failureThreshold + ", " + openTime);
+		}
+		this.server = server;
+		this.failureThreshold = failureThreshold;
+		this.openTime = TimeUnit.MILLISECONDS.toNanos(openTime);
+	}
+
+	/**
+	 * Asks for permission to send a request. Every permitted request must be
+	 * followed by {@link #succeeded()} or {@link #failed()}.
+	 * 
+	 * @throws CircuitOpenException
+	 *             If the circuit is open or a trial request is running.
+	 */
+	protected synchronized void acquire() throws CircuitOpenException {
+		if (this.state == State.OPEN) {
+			long remaining = this.openedAt + this.openTime - System.nanoTime();
+			if (remaining > 0) {
+				throw new CircuitOpenException(this.server,
+						TimeUnit.NANOSECONDS.toMillis(remaining));
+			}
+			this.state = State.HALF_OPEN;
+		}
+		if (this.state == State.HALF_OPEN) {
+			if (this.trialRunning) {
+				throw new CircuitOpenException(this.server, 0L);
+			}
+			this.trialRunning = true;
+		}
+	}
+
+	/**
+	 * Ends a request that was aborted by the client, e.g. because the thread
+	 * was interrupted. The state is not changed, but another trial request is
+	 * let through.
+	 */
+	protected synchronized void cancelled() {
+		this.trialRunning = false;
+	}
+
+	/**
+	 * Counts a request that failed because of the server. Opens the circuit,
+	 * if the threshold is reached or the trial request failed.
+	 */
+	protected synchronized void failed() {
+		this.failures++;
+		if (this.state == State.HALF_OPEN
+				|| this.failures >= this.failureThreshold) {
+			this.state = State.OPEN;
+			this.openedAt = System.nanoTime();
+		}
+		this.trialRunning = false;
+	}
+
+	/**
+	 * Returns the number of server failures in a row opening the circuit.
+	 * 
+	 * @return The number of failures.
+	 */
+	public int getFailureThreshold() {
+		return this.failureThreshold;
+	}
+
+	/**
+	 * Returns the time the circuit stays open.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getOpenTime() {
+		return TimeUnit.NANOSECONDS.toMillis(this.openTime);
+	}
+
+	/**
+	 * Returns the current state. An open circuit whose open time has elapsed
+	 * is reported as half-open.
+	 * 
+	 * @return The {@link State}.
+	 */
+	public synchronized State getState() {
+		if (this.state == State.OPEN
+				&& System.nanoTime() - this.openedAt >= this.openTime) {
+			return State.HALF_OPEN;
+		}
+		return this.state;
+	}
+
+	/**
+	 * Closes the circuit and forgets the failures, e.g. after the user
+	 * checked the server.
+	 */
+	public synchronized void reset() {
+		this.state = State.CLOSED;
+		this.failures = 0;
+		this.trialRunning = false;
+	}
+
+	/**
+	 * Counts a request that reached the server, even if it answered with an
+	 * error of the request. Closes the circuit.
+	 */
+	protected synchronized void succeeded() {
+		this.reset();
+	}
+
+	@Override
+	public String toString() {
+		return this.server + ": " + this.getState();
+	}
+}
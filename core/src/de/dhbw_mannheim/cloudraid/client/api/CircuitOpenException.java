@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request, while the {@link CircuitBreaker} of the
+ * server is open.
+ */
+public class CircuitOpenException extends IOException {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -5254786320347004215L;
+
+	private long retryAfter;
+
+	/**
+	 * Creates a {@link CircuitOpenException}.
+	 * 
+	 * @param server
+	 *            The server whose {@link CircuitBreaker} is open.
+	 * @param retryAfter
+	 *            The time in milliseconds until a request is allowed again.
+	 */
+	protected CircuitOpenException(String server, long retryAfter) {
+		super("Too many failed requests to " + server + ", retry in "
+				+ (retryAfter + 999) / 1000 + " s.");
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Returns the time until a request to the server is allowed again.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getRetryAfter() {
+		return this.retryAfter;
+	}
+}
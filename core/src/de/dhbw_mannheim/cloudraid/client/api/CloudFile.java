@@ -24,7 +24,6 @@ package de.dhbw_mannheim.cloudraid.client.api;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
@@ -35,13 +34,7 @@ import java.util.Date;
  */
 public class CloudFile {
 
-	/**
-	 * The date format used by the CloudRAID server.
-	 */
-	private SimpleDateFormat cloudraidDateFormat = new SimpleDateFormat(
-			"yyyy-MM-dd hh:mm:ss.S");
-
-	private Date lastMod;
+	private long lastMod;
 	private String name, state, hashedName;
 	private ServerConnector sc;
 
@@ -64,7 +57,7 @@ public class CloudFile {
 			long lastMod, String hashedName) {
 		this.sc = sc;
 		this.name = name;
-		this.lastMod = new Date(lastMod);
+		this.lastMod = lastMod;
 		this.state = state;
 		this.hashedName = hashedName;
 	}
@@ -104,21 +97,32 @@ public class CloudFile {
 
 	/**
 	 * Returns the last modification date of the file as {@link Date} object.
+	 * A new {@link Date} object is created for every call.
 	 * 
 	 * @return The last modification date.
 	 */
 	public Date getLastMod() {
-		return this.lastMod;
+		return new Date(this.lastMod);
 	}
 
 	/**
-	 * Returns the last modification date of the file as String formatted using
-	 * the {@link ServerConnector#CLOUDRAID_DATE_FORMAT}.
+	 * Returns the last modification date of the file as String formatted by
+	 * the default {@link TimestampCodec}.
 	 * 
 	 * @return The last modification date as String.
 	 */
 	public String getLastModAsString() {
-		return this.cloudraidDateFormat.format(this.lastMod);
+		return TimestampCodec.getDefault().format(this.lastMod);
+	}
+
+	/**
+	 * Returns the last modification date of the file.
+	 * 
+	 * @return The last modification date in milliseconds from 1/1/1970
+	 *         00:00:00.
+	 */
+	public long getLastModTime() {
+		return this.lastMod;
 	}
 
 	/**
@@ -156,7 +160,7 @@ public class CloudFile {
 	@Override
 	public String toString() {
 		return this.name + " (" + this.hashedName + "), updated on "
-				+ this.cloudraidDateFormat.format(this.lastMod) + ", "
+				+ this.getLastModAsString() + ", "
 				+ this.state + ". ServerConnector: " + this.sc;
 	}
 }
@@ -0,0 +1,498 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.Vector;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decides how the body of an upload is compressed. Files that are already
+ * compressed, recognized by their extension or by the entropy of a few
+ * sampled blocks, are not compressed again. Very large files are compressed
+ * with a faster level. A CloudRAID server expects gzip bodies, so a skipped
+ * file is still sent as gzip stream, but with stored (level 0) blocks, which
+ * costs almost no CPU. Only if the server announces in its
+ * <code>Accept-Encoding</code> response header that it accepts other request
+ * encodings, these are used.
+ * 
+ * Responses are decoded by {@link #decode(InputStream, String, int)}
+ * according to their <code>Content-Encoding</code> header.
+ */
+public class CompressionPolicy {
+
+	/**
+	 * The names of the supported content encodings.
+	 */
+	public static final String GZIP = "gzip", DEFLATE = "deflate",
+			IDENTITY = "identity";
+
+	/**
+	 * The extensions of file types that are compressed already.
+	 */
+	public static final String[] DEFAULT_SKIPPED_EXTENSIONS = { "7z", "aac",
+			"avi", "bz2", "docx", "flac", "gif", "gz", "jar", "jpeg", "jpg",
+			"m4a", "mkv", "mov", "mp3", "mp4", "odt", "ogg", "png", "pptx",
+			"rar", "tgz", "webm", "webp", "xlsx", "xz", "zip" };
+
+	/**
+	 * The default entropy in bits per byte above which a file is considered
+	 * incompressible.
+	 */
+	public static final double DEFAULT_ENTROPY_THRESHOLD = 7.5;
+
+	/**
+	 * The default number of bytes sampled to estimate the entropy of a file.
+	 */
+	public static final int DEFAULT_SAMPLE_SIZE = 3 * 16 * 1024;
+
+	/**
+	 * The default size in bytes from which on a file is compressed with
+	 * {@link Deflater#BEST_SPEED}.
+	 */
+	public static final long DEFAULT_LARGE_FILE_SIZE = 1024L * 1024 * 1024;
+
+	private static CompressionPolicy defaultPolicy = null;
+
+	/**
+	 * Decodes the body of a response according to its
+	 * <code>Content-Encoding</code> header.
+	 * 
+	 * @param in
+	 *            The body of the response.
+	 * @param contentEncoding
+	 *            The value of the <code>Content-Encoding</code> header or
+	 *            <code>null</code>, if there is none.
+	 * @param bufferSize
+	 *            The size of the buffer of the decoder.
+	 * @return The decoded body.
+	 * @throws IOException
+	 *             If the encoding is not supported.
+	 */
+	public static InputStream decode(InputStream in, String contentEncoding,
+			int bufferSize) throws IOException {
+		if (contentEncoding == null) {
+			return in;
+		}
+		String encoding = contentEncoding.trim().toLowerCase(Locale.ENGLISH);
+		if (encoding.length() == 0
+				|| encoding.equals(CompressionPolicy.IDENTITY)) {
+			return in;
+		} else if (encoding.equals(CompressionPolicy.GZIP)
+				|| encoding.equals("x-gzip")) {
+			return new GZIPInputStream(in, bufferSize);
+		} else if (encoding.equals(CompressionPolicy.DEFLATE)) {
+			return new InflaterInputStream(in);
+		}
+		throw new IOException("Unsupported content encoding: "
+				+ contentEncoding);
+	}
+
+	/**
+	 * Returns the {@link CompressionPolicy} used by all {@link ServerConnector}
+	 * s that are not given a policy explicitly.
+	 * 
+	 * @return The default {@link CompressionPolicy}.
+	 */
+	public static synchronized CompressionPolicy getDefault() {
+		if (CompressionPolicy.defaultPolicy == null) {
+			CompressionPolicy.defaultPolicy = new CompressionPolicy();
+		}
+		return CompressionPolicy.defaultPolicy;
+	}
+
+	/**
+	 * Parses the value of an <code>Accept-Encoding</code> header.
+	 * 
+	 * @param header
+	 *            The value of the header or <code>null</code>.
+	 * @return The accepted encodings in lower case. Encodings with a quality
+	 *         of 0 are left out.
+	 */
+	protected static Set<String> parseAcceptEncoding(String header) {
+		Set<String> accepted = new HashSet<String>();
+		if (header == null) {
+			return accepted;
+		}
+		for (String part : header.split(",")) {
+			String[] params = part.split(";");
+			String name = params[0].trim().toLowerCase(Locale.ENGLISH);
+			boolean rejected = false;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						rejected = Double.parseDouble(param.substring(2)) <= 0;
+					} catch (NumberFormatException ignore) {
+					}
+				}
+			}
+			if (name.length() > 0 && !rejected) {
+				accepted.add(name);
+			}
+		}
+		return accepted;
+	}
+
+	private int level = Deflater.DEFAULT_COMPRESSION;
+	private int largeFileLevel = Deflater.BEST_SPEED;
+	private long largeFileSize = CompressionPolicy.DEFAULT_LARGE_FILE_SIZE;
+	private double entropyThreshold = CompressionPolicy.DEFAULT_ENTROPY_THRESHOLD;
+	private int sampleSize = CompressionPolicy.DEFAULT_SAMPLE_SIZE;
+	private Set<String> skippedExtensions = new HashSet<String>(
+			Arrays.asList(CompressionPolicy.DEFAULT_SKIPPED_EXTENSIONS));
+
+	/**
+	 * The encodings used for compressed uploads in the order of preference,
+	 * if the server accepts them.
+	 */
+	private Vector<String> preferredEncodings = new Vector<String>(
+			Arrays.asList(CompressionPolicy.GZIP));
+
+	/**
+	 * Estimates the entropy of a file from blocks at its start, middle and
+	 * end.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The entropy in bits per byte between 0 and 8.
+	 * @throws IOException
+	 */
+	protected double estimateEntropy(File file) throws IOException {
+		long length = file.length();
+		int block = Math.max(1, this.sampleSize / 3);
+		byte[] buf = new byte[block];
+		long[] counts = new long[256];
+		long total = 0;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long[] starts = { 0, (length - block) / 2, length - block };
+			long next = 0;
+			for (long start : starts) {
+				start = Math.max(start, next);
+				if (start >= length) {
+					break;
+				}
+				raf.seek(start);
+				int len = raf.read(buf, 0,
+						(int) Math.min(block, length - start));
+				for (int i = 0; i < len; i++) {
+					counts[buf[i] & 0xff]++;
+				}
+				total += Math.max(len, 0);
+				next = start + block;
+			}
+		} finally {
+			raf.close();
+		}
+		if (total == 0) {
+			return 0;
+		}
+		double entropy = 0;
+		for (long count : counts) {
+			if (count > 0) {
+				double p = (double) count / total;
+				entropy -= p * Math.log(p);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+	/**
+	 * Returns the entropy in bits per byte above which a file is considered
+	 * incompressible.
+	 * 
+	 * @return The entropy.
+	 */
+	public double getEntropyThreshold() {
+		return this.entropyThreshold;
+	}
+
+	/**
+	 * Returns the compression level of files of at least
+	 * {@link #getLargeFileSize()} bytes.
+	 * 
+	 * @return The level.
+	 */
+	public int getLargeFileLevel() {
+		return this.largeFileLevel;
+	}
+
+	/**
+	 * Returns the size from which on files are compressed with
+	 * {@link #getLargeFileLevel()}.
+	 * 
+	 * @return The size in bytes.
+	 */
+	public long getLargeFileSize() {
+		return this.largeFileSize;
+	}
+
+	/**
+	 * Returns the compression level of compressible files.
+	 * 
+	 * @return The level.
+	 */
+	public int getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * Returns the encodings used for compressed uploads in the order of
+	 * preference.
+	 * 
+	 * @return A copy of the encodings.
+	 */
+	public Vector<String> getPreferredEncodings() {
+		return new Vector<String>(this.preferredEncodings);
+	}
+
+	/**
+	 * Returns the number of bytes sampled to estimate the entropy of a file.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public int getSampleSize() {
+		return this.sampleSize;
+	}
+
+	/**
+	 * Returns the extensions of files that are not compressed.
+	 * 
+	 * @return A copy of the extensions in lower case.
+	 */
+	public Set<String> getSkippedExtensions() {
+		return new HashSet<String>(this.skippedExtensions);
+	}
+
+	/**
+	 * Checks, if compressing a file is worthwhile. Files with a skipped
+	 * extension and files with a sampled entropy above the threshold are not.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return true, if the file should be compressed.
+	 */
+	public boolean isCompressible(File file) {
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot >= 0
+				&& this.skippedExtensions.contains(name.substring(dot + 1)
+						.toLowerCase(Locale.ENGLISH))) {
+			return false;
+		}
+		if (this.sampleSize <= 0) {
+			return true;
+		}
+		try {
+			return this.estimateEntropy(file) <= this.entropyThreshold;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Opens the encoding stream of an upload.
+	 * 
+	 * @param out
+	 *            The stream of the request body.
+	 * @param encoding
+	 *            The encoding as returned by
+	 *            {@link #selectEncoding(boolean, Collection)}.
+	 * @param level
+	 *            The compression level as returned by
+	 *            {@link #selectLevel(boolean, long)}.
+	 * @param bufferSize
+	 *            The size of the buffer of the encoder.
+	 * @return The encoding stream.
+	 * @throws IOException
+	 */
+	protected OutputStream open(OutputStream out, String encoding, int level,
+			int bufferSize) throws IOException {
+		if (encoding.equals(CompressionPolicy.IDENTITY)) {
+			return out;
+		} else if (encoding.equals(CompressionPolicy.DEFLATE)) {
+			final Deflater deflater = new Deflater(level);
+			return new DeflaterOutputStream(out, deflater, bufferSize) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						deflater.end();
+					}
+				}
+			};
+		}
+		return new LeveledGZIPOutputStream(out, bufferSize, level);
+	}
+
+	/**
+	 * Selects the encoding of an upload. Compressible files are sent with the
+	 * first preferred encoding that the server accepts; gzip is assumed to be
+	 * accepted by every server. Incompressible files are sent unencoded, if
+	 * the server accepts <code>identity</code>, or else as gzip.
+	 * 
+	 * @param compressible
+	 *            The result of {@link #isCompressible(File)} for the file.
+	 * @param accepted
+	 *            The request encodings the server accepts.
+	 * @return The encoding.
+	 */
+	public String selectEncoding(boolean compressible,
+			Collection<String> accepted) {
+		if (!compressible) {
+			return accepted.contains(CompressionPolicy.IDENTITY) ? CompressionPolicy.IDENTITY
+					: CompressionPolicy.GZIP;
+		}
+		for (String encoding : this.preferredEncodings) {
+			if (encoding.equals(CompressionPolicy.GZIP)
+					|| accepted.contains(encoding)) {
+				return encoding;
+			}
+		}
+		return CompressionPolicy.GZIP;
+	}
+
+	/**
+	 * Selects the compression level of an upload. Incompressible files are
+	 * stored with level 0.
+	 * 
+	 * @param compressible
+	 *            The result of {@link #isCompressible(File)} for the file.
+	 * @param length
+	 *            The length of the file in bytes.
+	 * @return The level.
+	 */
+	public int selectLevel(boolean compressible, long length) {
+		if (!compressible) {
+			return Deflater.NO_COMPRESSION;
+		} else if (length >= this.largeFileSize) {
+			return this.largeFileLevel;
+		}
+		return this.level;
+	}
+
+	/**
+	 * Sets the entropy in bits per byte above which a file is considered
+	 * incompressible.
+	 * 
+	 * @param entropyThreshold
+	 *            The entropy. 8 or more disables the check.
+	 */
+	public void setEntropyThreshold(double entropyThreshold) {
+		this.entropyThreshold = entropyThreshold;
+	}
+
+	/**
+	 * Sets the compression level of files of at least
+	 * {@link #getLargeFileSize()} bytes.
+	 * 
+	 * @param largeFileLevel
+	 *            The level (0 to 9).
+	 */
+	public void setLargeFileLevel(int largeFileLevel) {
+		this.largeFileLevel = largeFileLevel;
+	}
+
+	/**
+	 * Sets the size from which on files are compressed with
+	 * {@link #getLargeFileLevel()}.
+	 * 
+	 * @param largeFileSize
+	 *            The size in bytes.
+	 */
+	public void setLargeFileSize(long largeFileSize) {
+		this.largeFileSize = largeFileSize;
+	}
+
+	/**
+	 * Sets the compression level of compressible files.
+	 * 
+	 * @param level
+	 *            The level (0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}).
+	 */
+	public void setLevel(int level) {
+		this.level = level;
+	}
+
+	/**
+	 * Sets the encodings used for compressed uploads in the order of
+	 * preference. An encoding other than gzip is only used, if the server
+	 * accepts it.
+	 * 
+	 * @param encodings
+	 *            The encodings, e.g. {@link #DEFLATE} and {@link #GZIP}.
+	 */
+	public void setPreferredEncodings(Collection<String> encodings) {
+		this.preferredEncodings = new Vector<String>(encodings);
+	}
+
+	/**
+	 * Sets the number of bytes sampled to estimate the entropy of a file.
+	 * 
+	 * @param sampleSize
+	 *            The number of bytes. 0 disables the check.
+	 */
+	public void setSampleSize(int sampleSize) {
+		this.sampleSize = sampleSize;
+	}
+
+	/**
+	 * Sets the extensions of files that are not compressed.
+	 * 
+	 * @param extensions
+	 *            The extensions without dot.
+	 */
+	public void setSkippedExtensions(Collection<String> extensions) {
+		Set<String> set = new HashSet<String>();
+		for (String extension : extensions) {
+			set.add(extension.toLowerCase(Locale.ENGLISH));
+		}
+		this.skippedExtensions = set;
+	}
+
+	/**
+	 * A {@link GZIPOutputStream} with a selectable compression level.
+	 */
+	private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+		private LeveledGZIPOutputStream(OutputStream out, int size, int level)
+				throws IOException {
+			super(out, size);
+			this.def.setLevel(level);
+		}
+	}
+}
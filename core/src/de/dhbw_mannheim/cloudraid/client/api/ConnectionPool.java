@@ -0,0 +1,500 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens and releases the {@link HttpURLConnection}s used by a
+ * {@link ServerConnector}. Instead of calling
+ * {@link HttpURLConnection#disconnect()} after every request, a connection is
+ * released by reading its response to the end and closing the stream. This
+ * hands the socket back to the keep-alive cache of the JVM, so that the next
+ * request to the same host does not need a new TCP and TLS handshake.
+ * 
+ * The keep-alive cache is shared by the whole JVM. Its limits are system
+ * properties, which a {@link ConnectionPool} never sets on its own, so the
+ * settings of the application embedding the client are kept. An application
+ * owning its JVM applies the defaults of the client by {@link #configure()} or
+ * sets the limits by {@link #setKeepAliveLimits(int, int)}. Both only take
+ * effect before the first HTTP connection of the JVM is opened. All
+ * HTTPS connections of one {@link ConnectionPool} share one
+ * {@link SSLSocketFactory}, so TLS sessions are cached and resumed.
+ * 
+ * Every connection is opened with the connect and read timeouts of its
+ * {@link ConnectionPool}, so that a request to a server that accepts the
+ * connection but never answers fails with a
+ * {@link java.net.SocketTimeoutException}, which the {@link RetryPolicy}
+ * retries, instead of blocking its thread forever. The response to an
+ * upload is awaited without a read timeout, as the server answers only after
+ * it has stored the file on its backends.
+ * 
+ * A {@link ConnectionPool} sending the requests by HTTP/2 instead is created
+ * by {@link #newHttp2Pool()}. It needs Java 11 and is built separately from
+ * the <code>http2</code> directory, so it is loaded by name.
+ */
+public class ConnectionPool {
+
+	/**
+	 * The default maximum of idle connections kept per host.
+	 */
+	public static final int DEFAULT_MAX_IDLE_PER_HOST = 8;
+
+	/**
+	 * The default time in seconds after which an idle connection is closed.
+	 */
+	public static final int DEFAULT_IDLE_TIMEOUT = 30;
+
+	/**
+	 * The default number of cached TLS sessions.
+	 */
+	public static final int DEFAULT_SSL_SESSION_CACHE_SIZE = 64;
+
+	/**
+	 * The default time in seconds a TLS session may be resumed.
+	 */
+	public static final int DEFAULT_SSL_SESSION_TIMEOUT = 60 * 60;
+
+	/**
+	 * The default time in seconds to establish a connection.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30;
+
+	/**
+	 * The default time in seconds a connection waits for data from the
+	 * server.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT = 60;
+
+	/**
+	 * The maximum number of bytes that is read from an unconsumed response to
+	 * keep the connection alive. If more data is left, the connection is
+	 * closed instead.
+	 */
+	private static final int MAX_DRAIN = 64 * 1024;
+
+	/**
+	 * The system property switching the keep-alive cache on or off.
+	 */
+	private static final String KEEP_ALIVE = "http.keepAlive";
+
+	/**
+	 * The maximum of idle connections kept per host, if the system property
+	 * {@value #MAX_CONNECTIONS} is not set.
+	 */
+	private static final int JVM_MAX_CONNECTIONS = 5;
+
+	/**
+	 * The time in seconds an idle connection is kept, if the system property
+	 * {@value #KEEP_ALIVE_TIME} is not set.
+	 */
+	private static final int JVM_KEEP_ALIVE_TIME = 5;
+
+	/**
+	 * The system property limiting the idle connections kept per host.
+	 */
+	private static final String MAX_CONNECTIONS = "http.maxConnections";
+
+	/**
+	 * The system property setting the seconds an idle connection is kept.
+	 */
+	private static final String KEEP_ALIVE_TIME = "http.keepAlive.time.server";
+
+	/**
+	 * The system property setting the seconds an idle connection of the
+	 * {@link java.net.http.HttpClient} used for HTTP/2 is kept.
+	 */
+	private static final String HTTP2_KEEP_ALIVE_TIME = "jdk.httpclient.keepalive.timeout";
+
+	/**
+	 * The class of the {@link ConnectionPool} speaking HTTP/2.
+	 */
+	private static final String HTTP2_POOL = "de.dhbw_mannheim.cloudraid.client.http2.Http2ConnectionPool";
+
+	private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class
+			.getName());
+
+	private static ConnectionPool defaultPool = null;
+
+	/**
+	 * Applies the default limits of the keep-alive cache,
+	 * {@link #DEFAULT_MAX_IDLE_PER_HOST} and {@link #DEFAULT_IDLE_TIMEOUT}, to
+	 * the whole JVM. A limit that is already set as system property, e.g. on
+	 * the command line or by the embedding application, is kept. Like
+	 * {@link #setKeepAliveLimits(int, int)}, this method has to be called
+	 * before the first HTTP connection of the JVM is opened. The idle timeout
+	 * also applies to the connections of {@link #newHttp2Pool()}.
+	 */
+	public static void configure() {
+		ConnectionPool.setPropertyIfAbsent(ConnectionPool.KEEP_ALIVE, "true");
+		ConnectionPool.setPropertyIfAbsent(ConnectionPool.MAX_CONNECTIONS,
+				String.valueOf(ConnectionPool.DEFAULT_MAX_IDLE_PER_HOST));
+		ConnectionPool.setPropertyIfAbsent(ConnectionPool.KEEP_ALIVE_TIME,
+				String.valueOf(ConnectionPool.DEFAULT_IDLE_TIMEOUT));
+		ConnectionPool.setPropertyIfAbsent(
+				ConnectionPool.HTTP2_KEEP_ALIVE_TIME,
+				String.valueOf(ConnectionPool.DEFAULT_IDLE_TIMEOUT));
+	}
+
+	/**
+	 * Returns the {@link ConnectionPool} used by all {@link ServerConnector}s
+	 * that are not given a pool explicitly.
+	 * 
+	 * @return The default {@link ConnectionPool}.
+	 */
+	public static synchronized ConnectionPool getDefault() {
+		if (ConnectionPool.defaultPool == null) {
+			ConnectionPool.defaultPool = new ConnectionPool();
+		}
+		return ConnectionPool.defaultPool;
+	}
+
+	/**
+	 * Returns the time in seconds after which an idle connection is closed.
+	 * The limit is shared by the whole JVM. If it is not set, the default of
+	 * the JVM is returned.
+	 * 
+	 * @return The idle timeout.
+	 */
+	public static int getIdleTimeout() {
+		return Integer.getInteger(ConnectionPool.KEEP_ALIVE_TIME,
+				ConnectionPool.JVM_KEEP_ALIVE_TIME);
+	}
+
+	/**
+	 * Returns the maximum number of idle connections kept per host. The limit
+	 * is shared by the whole JVM. If it is not set, the default of the JVM is
+	 * returned.
+	 * 
+	 * @return The maximum number of idle connections.
+	 */
+	public static int getMaxIdlePerHost() {
+		return Integer.getInteger(ConnectionPool.MAX_CONNECTIONS,
+				ConnectionPool.JVM_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Loads the class of the {@link ConnectionPool} speaking HTTP/2.
+	 * 
+	 * @return The class.
+	 * @throws ClassNotFoundException
+	 *             If the class is not on the class path.
+	 * @throws LinkageError
+	 *             If the Java runtime is older than Java 11.
+	 */
+	private static Class<? extends ConnectionPool> getHttp2PoolClass()
+			throws ClassNotFoundException {
+		return Class.forName(ConnectionPool.HTTP2_POOL).asSubclass(
+				ConnectionPool.class);
+	}
+
+	/**
+	 * Checks, if a {@link ConnectionPool} speaking HTTP/2 can be created by
+	 * {@link #newHttp2Pool()}. That needs the classes built from the
+	 * <code>http2</code> directory and Java 11 or later.
+	 * 
+	 * @return true, if HTTP/2 is available.
+	 */
+	public static boolean isHttp2Supported() {
+		try {
+			ConnectionPool.getHttp2PoolClass();
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates a {@link ConnectionPool} sending all requests to a server over
+	 * one HTTP/2 connection, if {@link #isHttp2Supported()}. HTTP/2 saves the
+	 * TCP and TLS handshakes of requests running at the same time, but its
+	 * requests pass through another HTTP client and were slower than those of
+	 * the {@link ConnectionPool} on a fast network without TLS. Use it for
+	 * many parallel requests to a distant HTTPS server.
+	 * 
+	 * @return The HTTP/2 pool or a new {@link ConnectionPool} for HTTP/1.1,
+	 *         if HTTP/2 is not available or could not be set up.
+	 */
+	public static ConnectionPool newHttp2Pool() {
+		try {
+			return ConnectionPool.getHttp2PoolClass().getDeclaredConstructor()
+					.newInstance();
+		} catch (ClassNotFoundException e) {
+			ConnectionPool.LOGGER.log(Level.INFO,
+					"HTTP/2 is not available, HTTP/1.1 is used.", e);
+		} catch (LinkageError e) {
+			ConnectionPool.LOGGER.log(Level.INFO,
+					"HTTP/2 needs Java 11, HTTP/1.1 is used.", e);
+		} catch (InvocationTargetException e) {
+			// The constructor failed, e.g. to create the HttpClient.
+			ConnectionPool.LOGGER.log(Level.WARNING,
+					"HTTP/2 could not be set up, HTTP/1.1 is used.",
+					e.getCause());
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		} catch (InstantiationException e) {
+			throw new IllegalStateException(e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+		return new ConnectionPool();
+	}
+
+	/**
+	 * Sets the limits of the keep-alive cache of the JVM, which holds the idle
+	 * connections of all {@link ConnectionPool}s. Unlike {@link #configure()},
+	 * it replaces limits that are already set. The JVM reads the limits when
+	 * the first HTTP connection is opened, so this method has to be called
+	 * before; later calls have no effect. The limits can also be given by the
+	 * <code>http.maxConnections</code> and
+	 * <code>http.keepAlive.time.server</code> system properties. The idle
+	 * timeout also applies to the connections of {@link #newHttp2Pool()},
+	 * if it is set before the first of them is created.
+	 * 
+	 * @param maxIdlePerHost
+	 *            The maximum number of idle connections kept per host.
+	 * @param idleTimeout
+	 *            The time in seconds after which an idle connection is closed.
+	 */
+	public static void setKeepAliveLimits(int maxIdlePerHost, int idleTimeout) {
+		System.setProperty(ConnectionPool.MAX_CONNECTIONS,
+				String.valueOf(maxIdlePerHost));
+		System.setProperty(ConnectionPool.KEEP_ALIVE_TIME,
+				String.valueOf(idleTimeout));
+		System.setProperty(ConnectionPool.HTTP2_KEEP_ALIVE_TIME,
+				String.valueOf(idleTimeout));
+	}
+
+	/**
+	 * Sets a system property, if it is not set yet.
+	 * 
+	 * @param key
+	 *            The key of the property.
+	 * @param value
+	 *            The value of the property.
+	 */
+	protected static void setPropertyIfAbsent(String key, String value) {
+		try {
+			if (System.getProperty(key) == null) {
+				System.setProperty(key, value);
+			}
+		} catch (SecurityException ignore) {
+		}
+	}
+
+	private SSLContext sslContext = null;
+	private SSLSocketFactory sslSocketFactory = null;
+	private volatile int connectTimeout = ConnectionPool.DEFAULT_CONNECT_TIMEOUT;
+	private volatile int readTimeout = ConnectionPool.DEFAULT_READ_TIMEOUT;
+
+	/**
+	 * Creates a {@link ConnectionPool} with the default TLS session cache.
+	 */
+	public ConnectionPool() {
+		this(ConnectionPool.DEFAULT_SSL_SESSION_CACHE_SIZE,
+				ConnectionPool.DEFAULT_SSL_SESSION_TIMEOUT);
+	}
+
+	/**
+	 * Creates a {@link ConnectionPool}.
+	 * 
+	 * @param sslSessionCacheSize
+	 *            The number of cached TLS sessions. 0 means no limit.
+	 * @param sslSessionTimeout
+	 *            The time in seconds a cached TLS session may be resumed. 0
+	 *            means no limit.
+	 */
+	public ConnectionPool(int sslSessionCacheSize, int sslSessionTimeout) {
+		try {
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(null, null, null);
+			SSLSessionContext sessions = context.getClientSessionContext();
+			sessions.setSessionCacheSize(sslSessionCacheSize);
+			sessions.setSessionTimeout(sslSessionTimeout);
+			this.sslContext = context;
+			this.sslSocketFactory = context.getSocketFactory();
+		} catch (GeneralSecurityException e) {
+			// Fall back to the default socket factory of HttpsURLConnection.
+			ConnectionPool.LOGGER.log(Level.WARNING,
+					"TLS sessions are not cached.", e);
+		}
+	}
+
+	/**
+	 * Returns the time a new connection waits for the connection to be
+	 * established.
+	 * 
+	 * @return The timeout in seconds or 0, if the connection waits forever.
+	 */
+	public int getConnectTimeout() {
+		return this.connectTimeout;
+	}
+
+	/**
+	 * Returns the time a connection waits for data from the server, e.g. for
+	 * the response to a request.
+	 * 
+	 * @return The timeout in seconds or 0, if the connection waits forever.
+	 */
+	public int getReadTimeout() {
+		return this.readTimeout;
+	}
+
+	/**
+	 * Returns the {@link SSLContext} caching the TLS sessions of this
+	 * {@link ConnectionPool}.
+	 * 
+	 * @return The {@link SSLContext} or <code>null</code>, if the default one
+	 *         is used.
+	 */
+	protected SSLContext getSSLContext() {
+		return this.sslContext;
+	}
+
+	/**
+	 * Opens a connection to the given {@link URL}. The connection must be
+	 * handed back by calling {@link #release(HttpURLConnection)}.
+	 * 
+	 * @param url
+	 *            The {@link URL} of the resource.
+	 * @return The connection.
+	 * @throws IOException
+	 */
+	protected HttpURLConnection open(URL url) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		if (this.sslSocketFactory != null
+				&& con instanceof HttpsURLConnection) {
+			((HttpsURLConnection) con)
+					.setSSLSocketFactory(this.sslSocketFactory);
+		}
+		this.setTimeouts(con);
+		return con;
+	}
+
+	/**
+	 * Releases a connection after its response was received. The rest of the
+	 * response body is read and the stream is closed, so that the socket can
+	 * be reused. If that fails or too much data is left, the connection is
+	 * closed.
+	 * 
+	 * Only call this method for connections that were connected successfully.
+	 * Never call it for a connection whose request body was not sent
+	 * completely, as reading the response would send the incomplete body. Use
+	 * {@link HttpURLConnection#disconnect()} in this case.
+	 * 
+	 * @param con
+	 *            The connection.
+	 * @return true, if the connection was kept alive; false, if it was
+	 *         closed.
+	 */
+	protected boolean release(HttpURLConnection con) {
+		InputStream is = null;
+		try {
+			is = con.getErrorStream();
+			if (is == null) {
+				is = con.getInputStream();
+			}
+			byte[] buf = new byte[4096];
+			int drained = 0;
+			int len;
+			while ((len = is.read(buf)) != -1) {
+				drained += len;
+				if (drained > ConnectionPool.MAX_DRAIN) {
+					con.disconnect();
+					return false;
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			con.disconnect();
+			return false;
+		} finally {
+			try {
+				if (is != null) {
+					is.close();
+				}
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Sets the time a new connection waits for the connection to be
+	 * established. It applies to the connections opened afterwards.
+	 * 
+	 * @param connectTimeout
+	 *            The timeout in seconds or 0 to wait forever.
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		if (connectTimeout < 0) {
+			throw new IllegalArgumentException("Invalid connect timeout: "
+					+ connectTimeout);
+		}
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Sets the time a connection waits for data from the server. A request
+	 * whose server does not send anything for that time fails with a
+	 * {@link java.net.SocketTimeoutException}. As a large upload or download
+	 * only waits between two buffers, the timeout does not limit the
+	 * duration of a transfer. The response to an upload is awaited without
+	 * a read timeout. It applies to the connections opened afterwards.
+	 * 
+	 * @param readTimeout
+	 *            The timeout in seconds or 0 to wait forever.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		if (readTimeout < 0) {
+			throw new IllegalArgumentException("Invalid read timeout: "
+					+ readTimeout);
+		}
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Sets the connect and read timeouts of this {@link ConnectionPool} on a
+	 * new connection.
+	 * 
+	 * @param con
+	 *            The connection.
+	 */
+	protected void setTimeouts(HttpURLConnection con) {
+		con.setConnectTimeout(this.connectTimeout * 1000);
+		con.setReadTimeout(this.readTimeout * 1000);
+	}
+}
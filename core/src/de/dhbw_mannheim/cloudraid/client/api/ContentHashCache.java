@@ -0,0 +1,465 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the SHA-256 digests of file contents. Local files are keyed by their
+ * absolute path, size and modification date, so that an unchanged file is not
+ * read again to get its digest. Remote files are keyed by their path on the
+ * server and map to the size and digest of the content last uploaded to or
+ * downloaded from the server by this client and the last modification date of
+ * the file on the server. That date is taken from the first file list read
+ * after the transfer, so that the dates of the server are only compared with
+ * each other and not with the clock of the client.
+ * 
+ * If a file is set, the cache is kept in this file across restarts. Every
+ * change is appended to the file as a line terminated by a dot and flushed at
+ * once, like the {@link UploadJournal}. Lines without the terminating dot were
+ * not written completely and are ignored. When the file is read, it is
+ * rewritten without outdated lines, if they make up most of the file. A
+ * {@link ContentHashCache} is thread-safe.
+ */
+class ContentHashCache {
+
+	/**
+	 * The name of the digest algorithm.
+	 */
+	protected static final String ALGORITHM = "SHA-256";
+
+	private static final String MAGIC = "CloudRAID content hashes 2";
+	private static final String ENCODING = "utf-8";
+	private static final String LOCAL = "L", REMOTE = "R", REMOVED = "D";
+
+	/**
+	 * A cached digest.
+	 */
+	private static class Entry {
+		private long size;
+		private long lastMod;
+		private String hash;
+
+		private Entry(long size, long lastMod, String hash) {
+			this.size = size;
+			this.lastMod = lastMod;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * Computes the digest of a file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param buffers
+	 *            The {@link BufferPool} providing the buffer.
+	 * @return The digest as hexadecimal String.
+	 * @throws IOException
+	 */
+	protected static String hash(File file, BufferPool buffers)
+			throws IOException {
+		MessageDigest digest = ContentHashCache.newDigest();
+		FileInputStream in = new FileInputStream(file);
+		ByteBuffer buf = buffers.acquire();
+		try {
+			FileChannel channel = in.getChannel();
+			int len;
+			while ((len = channel.read(buf)) != -1) {
+				BufferPool.checkInterrupted();
+				digest.update(buf.array(), buf.arrayOffset(), len);
+				buf.clear();
+			}
+		} finally {
+			buffers.release(buf);
+			try {
+				in.close();
+			} catch (IOException ignore) {
+			}
+		}
+		return ContentHashCache.toHex(digest.digest());
+	}
+
+	/**
+	 * Formats an entry as line of the file.
+	 * 
+	 * @param kind
+	 *            The kind of the entry.
+	 * @param path
+	 *            The path.
+	 * @param entry
+	 *            The {@link Entry} or <code>null</code>.
+	 * @return The line.
+	 */
+	private static String line(String kind, String path, Entry entry) {
+		if (entry == null) {
+			return kind + "\t0\t0\t-\t" + path + ".\n";
+		}
+		return kind + "\t" + entry.size + "\t" + entry.lastMod + "\t"
+				+ entry.hash + "\t" + path + ".\n";
+	}
+
+	/**
+	 * Creates a {@link MessageDigest} of the {@link #ALGORITHM}.
+	 * 
+	 * @return The {@link MessageDigest}.
+	 */
+	protected static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(ContentHashCache.ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform supports SHA-256.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Converts a digest to a hexadecimal String.
+	 * 
+	 * @param digest
+	 *            The digest.
+	 * @return The String in lower case.
+	 */
+	protected static String toHex(byte[] digest) {
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	private File file = null;
+	private boolean loaded = false;
+	private Writer out = null;
+	private HashMap<String, Entry> local = new HashMap<String, Entry>();
+	private HashMap<String, Entry> remote = new HashMap<String, Entry>();
+
+	/**
+	 * Appends a line to the file. Errors are ignored, as the file is only a
+	 * cache.
+	 * 
+	 * @param kind
+	 *            The kind of the entry.
+	 * @param path
+	 *            The path.
+	 * @param entry
+	 *            The {@link Entry} or <code>null</code>, if the entry was
+	 *            removed.
+	 */
+	private void append(String kind, String path, Entry entry) {
+		if (this.file == null || path.indexOf('\n') >= 0) {
+			return;
+		}
+		try {
+			if (this.out == null) {
+				boolean exists = this.file.isFile();
+				File dir = this.file.getParentFile();
+				if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+					return;
+				}
+				this.out = new OutputStreamWriter(new FileOutputStream(
+						this.file, exists), ContentHashCache.ENCODING);
+				// Writes the header or terminates a partly written last line.
+				this.out.write(exists ? "\n" : ContentHashCache.MAGIC + "\n");
+			}
+			this.out.write(ContentHashCache.line(kind, path, entry));
+			this.out.flush();
+		} catch (IOException e) {
+			this.close();
+		}
+	}
+
+	/**
+	 * Closes the file.
+	 */
+	private void close() {
+		if (this.out != null) {
+			try {
+				this.out.close();
+			} catch (IOException ignore) {
+			}
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Returns the cached digest of a local file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The digest or <code>null</code>, if no digest is cached or the
+	 *         file changed since.
+	 */
+	protected synchronized String getLocal(File file) {
+		this.load();
+		Entry entry = this.local.get(file.getAbsolutePath());
+		if (entry == null || entry.size != file.length()
+				|| entry.lastMod != file.lastModified()) {
+			return null;
+		}
+		return entry.hash;
+	}
+
+	/**
+	 * Returns the digest of the content last transferred to or from a path on
+	 * the server.
+	 * 
+	 * @param path
+	 *            The path on the server.
+	 * @param size
+	 *            The size of the content.
+	 * @param lastMod
+	 *            The last modification date of the file on the server in
+	 *            milliseconds or 0, if it is not known. If it differs from the
+	 *            date of the file after the transfer, or if that date is not
+	 *            known yet, no digest is returned.
+	 * @return The digest or <code>null</code>, if no digest is cached or the
+	 *         size differs.
+	 */
+	protected synchronized String getRemote(String path, long size,
+			long lastMod) {
+		this.load();
+		Entry entry = this.remote.get(path);
+		if (entry == null || entry.size != size
+				|| (lastMod != 0 && entry.lastMod != lastMod)) {
+			return null;
+		}
+		return entry.hash;
+	}
+
+	/**
+	 * Returns the paths on the server, whose last modification date after the
+	 * transfer is not known yet, see {@link #setRemoteLastMod(String, long)}.
+	 * 
+	 * @return The paths.
+	 */
+	protected synchronized Set<String> getUnlisted() {
+		this.load();
+		Set<String> paths = new HashSet<String>();
+		for (Map.Entry<String, Entry> e : this.remote.entrySet()) {
+			if (e.getValue().lastMod == 0) {
+				paths.add(e.getKey());
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Reads the file, if it was not read yet.
+	 */
+	private void load() {
+		if (this.loaded) {
+			return;
+		}
+		this.loaded = true;
+		if (this.file == null || !this.file.isFile()) {
+			return;
+		}
+		BufferedReader br = null;
+		int lines = 0;
+		try {
+			br = new BufferedReader(new InputStreamReader(new FileInputStream(
+					this.file), ContentHashCache.ENCODING));
+			if (!ContentHashCache.MAGIC.equals(br.readLine())) {
+				br.close();
+				this.file.delete();
+				return;
+			}
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.endsWith(".")) {
+					continue;
+				}
+				String[] f = line.substring(0, line.length() - 1).split("\t",
+						5);
+				if (f.length != 5) {
+					continue;
+				}
+				lines++;
+				try {
+					Entry entry = new Entry(Long.parseLong(f[1]),
+							Long.parseLong(f[2]), f[3]);
+					if (ContentHashCache.LOCAL.equals(f[0])) {
+						this.local.put(f[4], entry);
+					} else if (ContentHashCache.REMOTE.equals(f[0])) {
+						this.remote.put(f[4], entry);
+					} else if (ContentHashCache.REMOVED.equals(f[0])) {
+						this.remote.remove(f[4]);
+					}
+				} catch (NumberFormatException ignore) {
+				}
+			}
+		} catch (IOException e) {
+			return;
+		} finally {
+			try {
+				br.close();
+			} catch (Exception ignore) {
+			}
+		}
+		if (lines > 2 * (this.local.size() + this.remote.size()) + 64) {
+			this.rewrite();
+		}
+	}
+
+	/**
+	 * Caches the digest of a local file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param hash
+	 *            The digest.
+	 */
+	protected synchronized void putLocal(File file, String hash) {
+		this.load();
+		String path = file.getAbsolutePath();
+		Entry entry = new Entry(file.length(), file.lastModified(), hash);
+		this.local.put(path, entry);
+		this.append(ContentHashCache.LOCAL, path, entry);
+	}
+
+	/**
+	 * Caches the digest of the content transferred to or from a path on the
+	 * server. The last modification date of the file on the server is not
+	 * known, until it is set from a file list.
+	 * 
+	 * @param path
+	 *            The path on the server.
+	 * @param size
+	 *            The size of the content.
+	 * @param hash
+	 *            The digest.
+	 */
+	protected synchronized void putRemote(String path, long size, String hash) {
+		this.load();
+		Entry entry = new Entry(size, 0L, hash);
+		this.remote.put(path, entry);
+		this.append(ContentHashCache.REMOTE, path, entry);
+	}
+
+	/**
+	 * Removes the digest of a path on the server, e.g. because the file was
+	 * deleted.
+	 * 
+	 * @param path
+	 *            The path on the server.
+	 */
+	protected synchronized void removeRemote(String path) {
+		this.load();
+		if (this.remote.remove(path) != null) {
+			this.append(ContentHashCache.REMOVED, path, null);
+		}
+	}
+
+	/**
+	 * Writes all current entries to a temporary file, which replaces the file
+	 * afterwards.
+	 */
+	private void rewrite() {
+		this.close();
+		File tmp = new File(this.file.getPath() + ".tmp");
+		Writer w = null;
+		try {
+			w = new OutputStreamWriter(new FileOutputStream(tmp),
+					ContentHashCache.ENCODING);
+			w.write(ContentHashCache.MAGIC + "\n");
+			for (Map.Entry<String, Entry> e : this.local.entrySet()) {
+				w.write(ContentHashCache.line(ContentHashCache.LOCAL,
+						e.getKey(), e.getValue()));
+			}
+			for (Map.Entry<String, Entry> e : this.remote.entrySet()) {
+				w.write(ContentHashCache.line(ContentHashCache.REMOTE,
+						e.getKey(), e.getValue()));
+			}
+			w.close();
+			w = null;
+			if (!tmp.renameTo(this.file)) {
+				this.file.delete();
+				if (!tmp.renameTo(this.file)) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException e) {
+			tmp.delete();
+		} finally {
+			try {
+				w.close();
+			} catch (Exception ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Sets the file the cache is kept in. The cached digests are discarded and
+	 * read from the new file on demand.
+	 * 
+	 * @param file
+	 *            The file or <code>null</code>, if the digests are only kept
+	 *            in memory.
+	 */
+	protected synchronized void setFile(File file) {
+		this.close();
+		this.file = file;
+		this.loaded = false;
+		this.local.clear();
+		this.remote.clear();
+	}
+
+	/**
+	 * Sets the last modification date of a file on the server after its
+	 * transfer, as read from the first file list after the transfer. A date
+	 * that is known already is kept.
+	 * 
+	 * @param path
+	 *            The path on the server.
+	 * @param lastMod
+	 *            The last modification date in milliseconds as sent by the
+	 *            server.
+	 */
+	protected synchronized void setRemoteLastMod(String path, long lastMod) {
+		this.load();
+		Entry entry = this.remote.get(path);
+		if (entry == null || entry.lastMod != 0) {
+			return;
+		}
+		entry = new Entry(entry.size, lastMod, entry.hash);
+		this.remote.put(path, entry);
+		this.append(ContentHashCache.REMOTE, path, entry);
+	}
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+/**
+ * A {@link DataPresenter} that receives only the changes of the file list.
+ * When a {@link ServerConnector} reads the file list, it compares it with the
+ * list it read before and calls {@link #giveFileListDelta(FileListDelta)} with
+ * the added, removed and modified files. Nothing is given, if the list did not
+ * change. The first list read for a {@link DeltaDataPresenter} is given as a
+ * delta containing only added files, or in chunks, if the
+ * {@link DeltaDataPresenter} is an {@link IncrementalDataPresenter} as well.
+ * {@link DataPresenter#giveFileList(java.util.Vector)} is not called for
+ * registered {@link DeltaDataPresenter}s.
+ */
+public interface DeltaDataPresenter extends DataPresenter {
+
+	/**
+	 * Gives the changes of the file list since the last call.
+	 * 
+	 * @param delta
+	 *            The {@link FileListDelta}.
+	 */
+	public void giveFileListDelta(FileListDelta delta);
+
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Synchronizes a local directory tree with the files on a CloudRAID server
+ * whose names start with a prefix, like rsync. The name of a remote file is
+ * the prefix followed by the path of the local file relative to the
+ * directory, separated by slashes.
+ * 
+ * Files are compared by name and modification date, as the file list of the
+ * server contains no sizes. A file is transferred, if it is missing on the
+ * target side or if it changed since it was last transferred. The SHA-256
+ * digests of the content last transferred are kept by the
+ * {@link ServerConnector}, see {@link ServerConnector#matchesRemote(String,
+ * File)}. Files existing only on the target side are kept.
+ * 
+ * An upload is not needed, if the local file has the content last
+ * transferred to or from the remote file, and the remote file still has the
+ * modification date the server listed after that transfer. The local file is
+ * only read, if its size or modification date changed since its digest was
+ * computed. The dates of the server are only compared with each other, as
+ * the clock of the server may be ahead or in another time zone. A remote
+ * file that was not transferred by this client is therefore replaced.
+ * 
+ * Downloaded files get the modification date of the remote file, so a
+ * download is needed, if the dates differ, unless the digest shows that the
+ * content is the same as the content last transferred. A local file changed
+ * after the download is therefore replaced by the remote file, even if it is
+ * newer. Remote names leaving the local directory, e.g. with "..", are not
+ * downloaded and fail in the result of {@link #run(TransferManager)}.
+ */
+public class DirectorySync {
+
+	/**
+	 * The maximum difference in milliseconds of modification dates regarded
+	 * as equal. File systems store the dates with a resolution of up to two
+	 * seconds.
+	 */
+	private static final long TIME_RESOLUTION = 2000L;
+
+	/**
+	 * Checks, if two modification dates are equal within the resolution of
+	 * the file system.
+	 * 
+	 * @param a
+	 *            The first date in milliseconds.
+	 * @param b
+	 *            The second date in milliseconds.
+	 * @return true, if the dates are equal.
+	 */
+	private static boolean isSameTime(long a, long b) {
+		return Math.abs(a - b) < DirectorySync.TIME_RESOLUTION;
+	}
+
+	/**
+	 * The directions of a {@link DirectorySync}.
+	 */
+	public static enum Direction {
+		/**
+		 * Uploads the local files to the server.
+		 */
+		UPLOAD,
+		/**
+		 * Downloads the remote files to the local directory.
+		 */
+		DOWNLOAD
+	}
+
+	private ServerConnector sc;
+	private File directory;
+	private String prefix;
+	private Direction direction;
+
+	private List<TransferJob> jobs = null;
+	private int unchanged = 0;
+
+	/**
+	 * The errors of the remote names rejected by {@link #plan(FileIndex)}.
+	 */
+	private HashMap<String, IOException> rejected = new HashMap<String, IOException>();
+
+	/**
+	 * The modification dates of the remote files to be downloaded.
+	 */
+	private HashMap<String, Long> remoteLastMod = new HashMap<String, Long>();
+
+	/**
+	 * Creates a {@link DirectorySync}.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param directory
+	 *            The local directory.
+	 * @param prefix
+	 *            The prefix of the remote file names. A slash is appended, if
+	 *            it is not empty and does not end with a slash.
+	 * @param direction
+	 *            The {@link Direction}.
+	 */
+	public DirectorySync(ServerConnector sc, File directory, String prefix,
+			Direction direction) {
+		if (prefix.length() > 0 && !prefix.endsWith("/")) {
+			prefix += "/";
+		}
+		this.sc = sc;
+		this.directory = directory;
+		this.prefix = prefix;
+		this.direction = direction;
+	}
+
+	/**
+	 * Returns the {@link Direction}.
+	 * 
+	 * @return The {@link Direction}.
+	 */
+	public Direction getDirection() {
+		return this.direction;
+	}
+
+	/**
+	 * Returns the local directory.
+	 * 
+	 * @return The directory.
+	 */
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Returns the {@link TransferJob}s of the last call of
+	 * {@link #plan(FileIndex)}.
+	 * 
+	 * @return The {@link TransferJob}s or an empty list, if nothing was
+	 *         planned yet.
+	 */
+	public List<TransferJob> getJobs() {
+		if (this.jobs == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(this.jobs);
+	}
+
+	/**
+	 * Returns the prefix of the remote file names.
+	 * 
+	 * @return The prefix.
+	 */
+	public String getPrefix() {
+		return this.prefix;
+	}
+
+	/**
+	 * Returns the number of files that were not transferred by the last call
+	 * of {@link #plan(FileIndex)}, as they did not change.
+	 * 
+	 * @return The number of files.
+	 */
+	public int getUnchangedCount() {
+		return this.unchanged;
+	}
+
+	/**
+	 * Checks, if a local file has the same content as a remote file.
+	 * 
+	 * @param name
+	 *            The name of the remote file.
+	 * @param file
+	 *            The local file.
+	 * @param lastMod
+	 *            The last modification date of the remote file.
+	 * @return true, if the contents are known to be equal.
+	 */
+	private boolean matches(String name, File file, long lastMod) {
+		try {
+			return this.sc.matchesRemote(name, file, lastMod);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Determines the files to be transferred.
+	 * 
+	 * @param remote
+	 *            The current file list of the server, e.g. from
+	 *            {@link ServerConnector#getFileIndex()}.
+	 * @return The {@link TransferJob}s transferring the differences.
+	 */
+	public List<TransferJob> plan(FileIndex remote) {
+		this.jobs = new ArrayList<TransferJob>();
+		this.unchanged = 0;
+		this.rejected.clear();
+		this.remoteLastMod.clear();
+		if (this.direction == Direction.UPLOAD) {
+			this.planUpload(remote, this.directory, this.prefix);
+		} else {
+			this.planDownload(remote);
+		}
+		return this.getJobs();
+	}
+
+	/**
+	 * Determines the remote files to be downloaded.
+	 * 
+	 * @param remote
+	 *            The file list of the server.
+	 */
+	private void planDownload(FileIndex remote) {
+		for (int i = 0; i < remote.size(); i++) {
+			String name = remote.getName(i);
+			if (!name.startsWith(this.prefix)
+					|| name.length() == this.prefix.length()) {
+				continue;
+			}
+			File local;
+			try {
+				local = ServerConnector.resolve(this.directory, name
+						.substring(this.prefix.length()).replace('/',
+								File.separatorChar));
+			} catch (IOException e) {
+				this.rejected.put(name, e);
+				continue;
+			}
+			long lastMod = remote.getLastModTime(i);
+			if (local.isFile()
+					&& (DirectorySync.isSameTime(local.lastModified(),
+							lastMod) || this.matches(name, local, lastMod))) {
+				this.unchanged++;
+				continue;
+			}
+			this.jobs.add(TransferJob.download(this.sc, name, local));
+			this.remoteLastMod.put(name, lastMod);
+		}
+	}
+
+	/**
+	 * Determines the local files of a directory and its sub-directories to be
+	 * uploaded.
+	 * 
+	 * @param remote
+	 *            The file list of the server.
+	 * @param dir
+	 *            The directory.
+	 * @param path
+	 *            The remote path of the directory ending with a slash.
+	 */
+	private void planUpload(FileIndex remote, File dir, String path) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		// Upload the files in the same order on every platform.
+		Arrays.sort(files);
+		for (File file : files) {
+			String name = path + file.getName();
+			if (file.isDirectory()) {
+				this.planUpload(remote, file, name + "/");
+				continue;
+			} else if (!file.isFile()) {
+				continue;
+			}
+			int i = remote.indexOfName(name);
+			if (i < 0) {
+				this.jobs.add(TransferJob.upload(this.sc, name, file, false));
+			} else if (!this.matches(name, file, remote.getLastModTime(i))) {
+				this.jobs.add(TransferJob.upload(this.sc, name, file, true));
+			} else {
+				this.unchanged++;
+			}
+		}
+	}
+
+	/**
+	 * Executes the {@link TransferJob}s of the last call of
+	 * {@link #plan(FileIndex)} on a {@link TransferManager} and waits for
+	 * them. A failed transfer does not stop the others.
+	 * 
+	 * @param tm
+	 *            The {@link TransferManager}.
+	 * @return The {@link BatchResult} of the remote paths of the
+	 *         {@link TransferJob}s and of the rejected remote names.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted. The remaining transfers are
+	 *             cancelled.
+	 */
+	public BatchResult run(TransferManager tm) throws InterruptedIOException {
+		List<TransferJob> planned = this.getJobs();
+		ArrayList<String> paths = new ArrayList<String>(planned.size());
+		for (TransferJob job : planned) {
+			paths.add(job.getPath());
+		}
+		paths.addAll(this.rejected.keySet());
+		BatchResult result = new BatchResult(paths);
+		for (Map.Entry<String, IOException> e : this.rejected.entrySet()) {
+			result.setFailed(e.getKey(), e.getValue());
+		}
+		List<Future<TransferJob>> futures = tm.submitAll(planned);
+		for (int i = 0; i < futures.size(); i++) {
+			TransferJob job = planned.get(i);
+			try {
+				futures.get(i).get();
+				Long lastMod = this.remoteLastMod.get(job.getPath());
+				if (lastMod != null) {
+					job.getFile().setLastModified(lastMod);
+				}
+			} catch (InterruptedException e) {
+				for (Future<TransferJob> future : futures) {
+					future.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("sync interrupted");
+			} catch (ExecutionException e) {
+				result.setFailed(job.getPath(), e.getCause() instanceof Exception
+						? (Exception) e.getCause() : new Exception(e.getCause()));
+			}
+		}
+		return result;
+	}
+}
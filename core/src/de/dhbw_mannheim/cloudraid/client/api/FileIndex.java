@@ -0,0 +1,1019 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact in-memory index of the files on a CloudRAID server. Instead of one
+ * {@link CloudFile} object per file, the index stores the characters of all
+ * names and hashed names in one shared character array and the remaining
+ * attributes in parallel primitive arrays. States are stored as indexes into
+ * a small table of distinct states.
+ * 
+ * Files can be looked up by name and by hashed name in constant time through
+ * two open addressing hash tables. {@link CloudFile} objects are only created
+ * on demand by {@link #get(int)} and the lookup methods.
+ * 
+ * A {@link FileIndex} is usually filled once, e.g. by
+ * {@link ServerConnector#getFileIndex()}, and kept up to date afterwards by
+ * applying {@link FileListDelta}s. Removing a file moves the last file to its
+ * position, so the order of the files changes. A {@link FileIndex} is not
+ * thread-safe.
+ */
+public class FileIndex implements Iterable<CloudFile> {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Makes sure that a buffer being read contains at least the given number
+	 * of bytes. More bytes are read from the channel, if necessary.
+	 * 
+	 * @param in
+	 *            The channel.
+	 * @param buf
+	 *            The buffer.
+	 * @param bytes
+	 *            The number of bytes.
+	 * @throws IOException
+	 */
+	private static void fill(ReadableByteChannel in, ByteBuffer buf, int bytes)
+			throws IOException {
+		if (buf.remaining() >= bytes) {
+			return;
+		}
+		buf.compact();
+		while (buf.position() < bytes) {
+			if (in.read(buf) < 0) {
+				throw new EOFException();
+			}
+		}
+		buf.flip();
+	}
+
+	/**
+	 * Makes sure that a buffer being written has space for at least the given
+	 * number of bytes. The buffer is written to the channel, if necessary.
+	 * 
+	 * @param out
+	 *            The channel.
+	 * @param buf
+	 *            The buffer.
+	 * @param bytes
+	 *            The number of bytes.
+	 * @throws IOException
+	 */
+	private static void flush(WritableByteChannel out, ByteBuffer buf,
+			int bytes) throws IOException {
+		if (buf.remaining() >= bytes) {
+			return;
+		}
+		buf.flip();
+		while (buf.hasRemaining()) {
+			out.write(buf);
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Computes the same hash code as {@link String#hashCode()} for a range of
+	 * characters.
+	 * 
+	 * @param c
+	 *            The characters.
+	 * @param start
+	 *            The index of the first character.
+	 * @param end
+	 *            The index after the last character.
+	 * @return The hash code.
+	 */
+	private static int hash(char[] c, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + c[i];
+		}
+		return h;
+	}
+
+	/**
+	 * Reads a {@link FileIndex} written by {@link #write(WritableByteChannel)}
+	 * from a channel. The channel is read to its end.
+	 * 
+	 * @param in
+	 *            The channel.
+	 * @param sc
+	 *            The {@link ServerConnector} the {@link CloudFile}s created by
+	 *            the index are connected with.
+	 * @return The {@link FileIndex}.
+	 * @throws IOException
+	 *             If the channel cannot be read or does not contain a
+	 *             {@link FileIndex}.
+	 */
+	protected static FileIndex read(ReadableByteChannel in, ServerConnector sc)
+			throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(BufferPool.DEFAULT_BUFFER_SIZE);
+		buf.limit(0);
+		fill(in, buf, 11);
+		int size = buf.getInt();
+		int chars = buf.getInt();
+		boolean latin1 = buf.get() != 0;
+		int stateCount = buf.getShort();
+		if (size < 0 || chars < 0 || stateCount < 0) {
+			throw new IOException("Invalid file index.");
+		}
+		FileIndex index = new FileIndex(sc);
+		int capacity = FileIndex.INITIAL_CAPACITY;
+		while (capacity < size) {
+			capacity *= 2;
+		}
+		index.states = new String[Math.max(stateCount, 4)];
+		for (int i = 0; i < stateCount; i++) {
+			fill(in, buf, 2);
+			char[] c = new char[buf.getShort()];
+			for (int j = 0; j < c.length; j++) {
+				fill(in, buf, 2);
+				c[j] = buf.getChar();
+			}
+			index.states[i] = new String(c);
+		}
+		index.stateCount = stateCount;
+		index.nameOffset = new int[capacity];
+		index.nameLength = new int[capacity];
+		index.nameHash = new int[capacity];
+		index.hashOffset = new int[capacity];
+		index.hashLength = new int[capacity];
+		index.hashHash = new int[capacity];
+		index.lastMod = new long[capacity];
+		index.state = new short[capacity];
+		long total = 0;
+		for (int i = 0; i < size; i++) {
+			fill(in, buf, 16);
+			index.nameLength[i] = buf.getInt();
+			index.hashLength[i] = buf.getInt();
+			index.lastMod[i] = buf.getLong();
+			total += index.nameLength[i] + (long) index.hashLength[i];
+			if (index.nameLength[i] < 0 || index.hashLength[i] < 0) {
+				throw new IOException("Invalid file index.");
+			}
+		}
+		for (int i = 0; i < size; i++) {
+			fill(in, buf, 2);
+			index.state[i] = buf.getShort();
+			if (index.state[i] < 0 || index.state[i] >= stateCount) {
+				throw new IOException("Invalid file index.");
+			}
+		}
+		if (total != chars) {
+			throw new IOException("Invalid file index.");
+		}
+		index.arena = new char[Math.max(chars, 1)];
+		int offset = 0;
+		for (int i = 0; i < size; i++) {
+			index.nameOffset[i] = offset;
+			offset = index.read(in, buf, offset, index.nameLength[i], latin1);
+			index.nameHash[i] = hash(index.arena, index.nameOffset[i], offset);
+			index.hashOffset[i] = offset;
+			offset = index.read(in, buf, offset, index.hashLength[i], latin1);
+			index.hashHash[i] = hash(index.arena, index.hashOffset[i], offset);
+		}
+		index.arenaLength = offset;
+		index.size = size;
+		index.rehash(capacity * 2);
+		return index;
+	}
+
+	/**
+	 * Spreads the bits of a hash code, so that the lower bits can be used as
+	 * index of the hash tables.
+	 * 
+	 * @param h
+	 *            The hash code.
+	 * @return The spread hash code.
+	 */
+	private static int spread(int h) {
+		h ^= (h >>> 16);
+		h *= 0x85ebca6b;
+		h ^= (h >>> 13);
+		return h;
+	}
+
+	private ServerConnector sc;
+
+	private int size = 0;
+
+	/**
+	 * The characters of all names and hashed names.
+	 */
+	private char[] arena = new char[FileIndex.INITIAL_CAPACITY * 32];
+	private int arenaLength = 0;
+
+	/**
+	 * The number of characters in the arena belonging to removed files.
+	 */
+	private int garbage = 0;
+
+	private int[] nameOffset = new int[FileIndex.INITIAL_CAPACITY];
+	private int[] nameLength = new int[FileIndex.INITIAL_CAPACITY];
+	private int[] nameHash = new int[FileIndex.INITIAL_CAPACITY];
+	private int[] hashOffset = new int[FileIndex.INITIAL_CAPACITY];
+	private int[] hashLength = new int[FileIndex.INITIAL_CAPACITY];
+	private int[] hashHash = new int[FileIndex.INITIAL_CAPACITY];
+	private long[] lastMod = new long[FileIndex.INITIAL_CAPACITY];
+	private short[] state = new short[FileIndex.INITIAL_CAPACITY];
+
+	/**
+	 * The distinct states of the files.
+	 */
+	private String[] states = new String[4];
+	private int stateCount = 0;
+
+	/**
+	 * Hash tables mapping names and hashed names to the position of the file
+	 * plus one. 0 marks an empty slot.
+	 */
+	private int[] byName = new int[FileIndex.INITIAL_CAPACITY * 2];
+	private int[] byHash = new int[FileIndex.INITIAL_CAPACITY * 2];
+
+	/**
+	 * Creates an empty {@link FileIndex}.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} the {@link CloudFile}s created by
+	 *            this index are connected with.
+	 */
+	public FileIndex(ServerConnector sc) {
+		this.sc = sc;
+	}
+
+	/**
+	 * Creates a copy of a {@link FileIndex}.
+	 * 
+	 * @param other
+	 *            The {@link FileIndex} to be copied.
+	 */
+	private FileIndex(FileIndex other) {
+		this.sc = other.sc;
+		this.size = other.size;
+		this.arena = other.arena.clone();
+		this.arenaLength = other.arenaLength;
+		this.garbage = other.garbage;
+		this.nameOffset = other.nameOffset.clone();
+		this.nameLength = other.nameLength.clone();
+		this.nameHash = other.nameHash.clone();
+		this.hashOffset = other.hashOffset.clone();
+		this.hashLength = other.hashLength.clone();
+		this.hashHash = other.hashHash.clone();
+		this.lastMod = other.lastMod.clone();
+		this.state = other.state.clone();
+		this.states = other.states.clone();
+		this.stateCount = other.stateCount;
+		this.byName = other.byName.clone();
+		this.byHash = other.byHash.clone();
+	}
+
+	/**
+	 * Adds a file to the index. The names are assumed to be unique, as they
+	 * are in a file list sent by the CloudRAID server.
+	 * 
+	 * @param c
+	 *            The characters containing the name and the hashed name.
+	 * @param nameStart
+	 *            The index of the first character of the name.
+	 * @param nameEnd
+	 *            The index after the last character of the name.
+	 * @param hashStart
+	 *            The index of the first character of the hashed name.
+	 * @param hashEnd
+	 *            The index after the last character of the hashed name.
+	 * @param lastMod
+	 *            The last modification date in milliseconds from 1/1/1970
+	 *            00:00:00.
+	 * @param state
+	 *            The state of the file.
+	 */
+	protected void add(char[] c, int nameStart, int nameEnd, int hashStart,
+			int hashEnd, long lastMod, String state) {
+		if (this.size == this.lastMod.length) {
+			this.grow();
+		}
+		int i = this.size++;
+		this.nameOffset[i] = this.append(c, nameStart, nameEnd);
+		this.nameLength[i] = nameEnd - nameStart;
+		this.nameHash[i] = hash(c, nameStart, nameEnd);
+		this.hashOffset[i] = this.append(c, hashStart, hashEnd);
+		this.hashLength[i] = hashEnd - hashStart;
+		this.hashHash[i] = hash(c, hashStart, hashEnd);
+		this.lastMod[i] = lastMod;
+		this.state[i] = this.stateIndex(state);
+		if (this.size * 2 > this.byName.length) {
+			this.rehash(this.byName.length * 2);
+		} else {
+			this.insert(this.byName, this.nameHash[i], i);
+			this.insert(this.byHash, this.hashHash[i], i);
+		}
+	}
+
+	/**
+	 * Adds a file to the index. The names are assumed to be unique, as they
+	 * are in a file list sent by the CloudRAID server.
+	 * 
+	 * @param name
+	 *            The name of the file.
+	 * @param hashedName
+	 *            The hash of the file name.
+	 * @param lastMod
+	 *            The last modification date in milliseconds from 1/1/1970
+	 *            00:00:00.
+	 * @param state
+	 *            The state of the file.
+	 */
+	public void add(String name, String hashedName, long lastMod, String state) {
+		char[] c = (name + hashedName).toCharArray();
+		this.add(c, 0, name.length(), name.length(), c.length, lastMod, state);
+	}
+
+	/**
+	 * Applies the changes of a file list to this index.
+	 * 
+	 * @param delta
+	 *            The {@link FileListDelta}.
+	 */
+	public void apply(FileListDelta delta) {
+		for (CloudFile file : delta.getRemoved()) {
+			int i = this.indexOfHashedName(file.getHashedName());
+			if (i >= 0) {
+				this.remove(i);
+			}
+		}
+		for (CloudFile file : delta.getModified()) {
+			this.put(file.getName(), file.getHashedName(),
+					file.getLastModTime(), file.getState());
+		}
+		for (CloudFile file : delta.getAdded()) {
+			this.put(file.getName(), file.getHashedName(),
+					file.getLastModTime(), file.getState());
+		}
+	}
+
+	/**
+	 * Appends characters to the arena.
+	 * 
+	 * @param c
+	 *            The characters.
+	 * @param start
+	 *            The index of the first character.
+	 * @param end
+	 *            The index after the last character.
+	 * @return The offset of the characters in the arena.
+	 */
+	private int append(char[] c, int start, int end) {
+		int len = end - start;
+		if (this.arenaLength + len > this.arena.length
+				&& this.garbage > this.arenaLength / 2) {
+			this.compact();
+		}
+		if (this.arenaLength + len > this.arena.length) {
+			char[] grown = new char[Math.max(this.arena.length * 2,
+					this.arenaLength + len)];
+			System.arraycopy(this.arena, 0, grown, 0, this.arenaLength);
+			this.arena = grown;
+		}
+		int offset = this.arenaLength;
+		System.arraycopy(c, start, this.arena, offset, len);
+		this.arenaLength += len;
+		return offset;
+	}
+
+	/**
+	 * Removes the characters of removed files from the arena.
+	 */
+	private void compact() {
+		char[] compacted = new char[this.arena.length];
+		int length = 0;
+		for (int i = 0; i < this.size; i++) {
+			System.arraycopy(this.arena, this.nameOffset[i], compacted,
+					length, this.nameLength[i]);
+			this.nameOffset[i] = length;
+			length += this.nameLength[i];
+			System.arraycopy(this.arena, this.hashOffset[i], compacted,
+					length, this.hashLength[i]);
+			this.hashOffset[i] = length;
+			length += this.hashLength[i];
+		}
+		this.arena = compacted;
+		this.arenaLength = length;
+		this.garbage = 0;
+	}
+
+	/**
+	 * Returns a copy of this {@link FileIndex}, which can be modified
+	 * independently.
+	 * 
+	 * @return The copy.
+	 */
+	public FileIndex copy() {
+		return new FileIndex(this);
+	}
+
+	/**
+	 * Checks, if a String equals a range of the arena.
+	 * 
+	 * @param s
+	 *            The String.
+	 * @param offset
+	 *            The offset in the arena.
+	 * @param length
+	 *            The length of the range.
+	 * @return true, if they are equal.
+	 */
+	private boolean equals(String s, int offset, int length) {
+		if (s.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (this.arena[offset + i] != s.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks, if a range of characters equals a range of the arena.
+	 * 
+	 * @param c
+	 *            The characters.
+	 * @param start
+	 *            The index of the first character.
+	 * @param offset
+	 *            The offset in the arena.
+	 * @param length
+	 *            The length of the ranges.
+	 * @return true, if they are equal.
+	 */
+	private boolean equals(char[] c, int start, int offset, int length) {
+		for (int i = 0; i < length; i++) {
+			if (this.arena[offset + i] != c[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the file at a position of the index.
+	 * 
+	 * @param i
+	 *            The position.
+	 * @return A new {@link CloudFile} object for the file.
+	 */
+	public CloudFile get(int i) {
+		if (i < 0 || i >= this.size) {
+			throw new IndexOutOfBoundsException(String.valueOf(i));
+		}
+		return new CloudFile(this.sc, this.getName(i), this.getState(i),
+				this.lastMod[i], this.getHashedName(i));
+	}
+
+	/**
+	 * Returns the file with the given hashed name.
+	 * 
+	 * @param hashedName
+	 *            The hashed name.
+	 * @return A new {@link CloudFile} object for the file or <code>null</code>
+	 *         , if there is no such file.
+	 */
+	public CloudFile getByHashedName(String hashedName) {
+		int i = this.indexOfHashedName(hashedName);
+		return i < 0 ? null : this.get(i);
+	}
+
+	/**
+	 * Returns the file with the given name.
+	 * 
+	 * @param name
+	 *            The name.
+	 * @return A new {@link CloudFile} object for the file or <code>null</code>
+	 *         , if there is no such file.
+	 */
+	public CloudFile getByName(String name) {
+		int i = this.indexOfName(name);
+		return i < 0 ? null : this.get(i);
+	}
+
+	/**
+	 * Returns the hashed name of the file at a position of the index.
+	 * 
+	 * @param i
+	 *            The position.
+	 * @return The hashed name.
+	 */
+	public String getHashedName(int i) {
+		return new String(this.arena, this.hashOffset[i], this.hashLength[i]);
+	}
+
+	/**
+	 * Returns the last modification date of the file at a position of the
+	 * index.
+	 * 
+	 * @param i
+	 *            The position.
+	 * @return The last modification date in milliseconds from 1/1/1970
+	 *         00:00:00.
+	 */
+	public long getLastModTime(int i) {
+		return this.lastMod[i];
+	}
+
+	/**
+	 * Returns the name of the file at a position of the index.
+	 * 
+	 * @param i
+	 *            The position.
+	 * @return The name.
+	 */
+	public String getName(int i) {
+		return new String(this.arena, this.nameOffset[i], this.nameLength[i]);
+	}
+
+	/**
+	 * Returns the state of the file at a position of the index.
+	 * 
+	 * @param i
+	 *            The position.
+	 * @return The state.
+	 */
+	public String getState(int i) {
+		return this.states[this.state[i]];
+	}
+
+	/**
+	 * Grows the parallel arrays.
+	 */
+	private void grow() {
+		int capacity = this.lastMod.length * 2;
+		this.nameOffset = grow(this.nameOffset, capacity);
+		this.nameLength = grow(this.nameLength, capacity);
+		this.nameHash = grow(this.nameHash, capacity);
+		this.hashOffset = grow(this.hashOffset, capacity);
+		this.hashLength = grow(this.hashLength, capacity);
+		this.hashHash = grow(this.hashHash, capacity);
+		long[] l = new long[capacity];
+		System.arraycopy(this.lastMod, 0, l, 0, this.size);
+		this.lastMod = l;
+		short[] s = new short[capacity];
+		System.arraycopy(this.state, 0, s, 0, this.size);
+		this.state = s;
+	}
+
+	/**
+	 * Copies an array into a larger one.
+	 * 
+	 * @param a
+	 *            The array.
+	 * @param capacity
+	 *            The new length.
+	 * @return The new array.
+	 */
+	private int[] grow(int[] a, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(a, 0, grown, 0, this.size);
+		return grown;
+	}
+
+	/**
+	 * Returns the position of the file with the given hashed name.
+	 * 
+	 * @param hashedName
+	 *            The hashed name.
+	 * @return The position or -1, if there is no such file.
+	 */
+	public int indexOfHashedName(String hashedName) {
+		int mask = this.byHash.length - 1;
+		for (int slot = spread(hashedName.hashCode()) & mask;; slot = (slot + 1)
+				& mask) {
+			int i = this.byHash[slot] - 1;
+			if (i < 0) {
+				return -1;
+			}
+			if (this.equals(hashedName, this.hashOffset[i], this.hashLength[i])) {
+				return i;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of the file with the same hashed name as a file of
+	 * another {@link FileIndex}. No String is created for the lookup.
+	 * 
+	 * @param other
+	 *            The other {@link FileIndex}.
+	 * @param j
+	 *            The position of the file in the other {@link FileIndex}.
+	 * @return The position or -1, if there is no such file.
+	 */
+	protected int indexOfHashedName(FileIndex other, int j) {
+		int offset = other.hashOffset[j];
+		int length = other.hashLength[j];
+		int mask = this.byHash.length - 1;
+		for (int slot = spread(other.hashHash[j]) & mask;; slot = (slot + 1)
+				& mask) {
+			int i = this.byHash[slot] - 1;
+			if (i < 0) {
+				return -1;
+			}
+			if (this.hashHash[i] == other.hashHash[j]
+					&& this.hashLength[i] == length
+					&& this.equals(other.arena, offset, this.hashOffset[i],
+							length)) {
+				return i;
+			}
+		}
+	}
+
+	/**
+	 * Returns the position of the file with the given name.
+	 * 
+	 * @param name
+	 *            The name.
+	 * @return The position or -1, if there is no such file.
+	 */
+	public int indexOfName(String name) {
+		int mask = this.byName.length - 1;
+		for (int slot = spread(name.hashCode()) & mask;; slot = (slot + 1)
+				& mask) {
+			int i = this.byName[slot] - 1;
+			if (i < 0) {
+				return -1;
+			}
+			if (this.equals(name, this.nameOffset[i], this.nameLength[i])) {
+				return i;
+			}
+		}
+	}
+
+	/**
+	 * Inserts a position into a hash table.
+	 * 
+	 * @param table
+	 *            The hash table.
+	 * @param hash
+	 *            The hash code of the key.
+	 * @param i
+	 *            The position.
+	 */
+	private void insert(int[] table, int hash, int i) {
+		int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = i + 1;
+	}
+
+	@Override
+	public Iterator<CloudFile> iterator() {
+		return new Iterator<CloudFile>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return this.next < FileIndex.this.size;
+			}
+
+			@Override
+			public CloudFile next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return FileIndex.this.get(this.next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Adds a file to the index or updates the last modification date and the
+	 * state of the file, if a file with the same name and hashed name exists.
+	 * A file with the same name but another hashed name is replaced.
+	 * 
+	 * @param name
+	 *            The name of the file.
+	 * @param hashedName
+	 *            The hash of the file name.
+	 * @param lastMod
+	 *            The last modification date in milliseconds from 1/1/1970
+	 *            00:00:00.
+	 * @param state
+	 *            The state of the file.
+	 */
+	public void put(String name, String hashedName, long lastMod, String state) {
+		int i = this.indexOfName(name);
+		if (i >= 0
+				&& this.equals(hashedName, this.hashOffset[i],
+						this.hashLength[i])) {
+			this.lastMod[i] = lastMod;
+			this.state[i] = this.stateIndex(state);
+			return;
+		}
+		if (i >= 0) {
+			this.remove(i);
+		}
+		i = this.indexOfHashedName(hashedName);
+		if (i >= 0) {
+			this.remove(i);
+		}
+		this.add(name, hashedName, lastMod, state);
+	}
+
+	/**
+	 * Reads characters from a channel into the arena.
+	 * 
+	 * @param in
+	 *            The channel.
+	 * @param buf
+	 *            The buffer being read.
+	 * @param offset
+	 *            The offset of the first character in the arena.
+	 * @param length
+	 *            The number of characters.
+	 * @param latin1
+	 *            true, if every character is stored in one byte.
+	 * @return The offset after the last character.
+	 * @throws IOException
+	 */
+	private int read(ReadableByteChannel in, ByteBuffer buf, int offset,
+			int length, boolean latin1) throws IOException {
+		int end = offset + length;
+		while (offset < end) {
+			if (latin1) {
+				fill(in, buf, 1);
+				int n = Math.min(buf.remaining(), end - offset);
+				for (int i = 0; i < n; i++) {
+					this.arena[offset++] = (char) (buf.get() & 0xff);
+				}
+			} else {
+				fill(in, buf, 2);
+				int n = Math.min(buf.remaining() / 2, end - offset);
+				for (int i = 0; i < n; i++) {
+					this.arena[offset++] = buf.getChar();
+				}
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Rebuilds the hash tables with a new capacity.
+	 * 
+	 * @param capacity
+	 *            The new capacity. Must be a power of two.
+	 */
+	private void rehash(int capacity) {
+		this.byName = new int[capacity];
+		this.byHash = new int[capacity];
+		for (int i = 0; i < this.size; i++) {
+			this.insert(this.byName, this.nameHash[i], i);
+			this.insert(this.byHash, this.hashHash[i], i);
+		}
+	}
+
+	/**
+	 * Replaces a position in a hash table.
+	 * 
+	 * @param table
+	 *            The hash table.
+	 * @param hash
+	 *            The hash code of the key.
+	 * @param from
+	 *            The old position.
+	 * @param to
+	 *            The new position.
+	 */
+	private void relink(int[] table, int hash, int from, int to) {
+		int mask = table.length - 1;
+		int slot = spread(hash) & mask;
+		while (table[slot] != from + 1) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = to + 1;
+	}
+
+	/**
+	 * Removes the file at a position of the index. The last file of the index
+	 * is moved to this position.
+	 * 
+	 * @param i
+	 *            The position.
+	 */
+	public void remove(int i) {
+		if (i < 0 || i >= this.size) {
+			throw new IndexOutOfBoundsException(String.valueOf(i));
+		}
+		this.unlink(this.byName, this.nameHash, i);
+		this.unlink(this.byHash, this.hashHash, i);
+		this.garbage += this.nameLength[i] + this.hashLength[i];
+		int last = --this.size;
+		if (i == last) {
+			return;
+		}
+		this.relink(this.byName, this.nameHash[last], last, i);
+		this.relink(this.byHash, this.hashHash[last], last, i);
+		this.nameOffset[i] = this.nameOffset[last];
+		this.nameLength[i] = this.nameLength[last];
+		this.nameHash[i] = this.nameHash[last];
+		this.hashOffset[i] = this.hashOffset[last];
+		this.hashLength[i] = this.hashLength[last];
+		this.hashHash[i] = this.hashHash[last];
+		this.lastMod[i] = this.lastMod[last];
+		this.state[i] = this.state[last];
+	}
+
+	/**
+	 * Removes the file with the given name.
+	 * 
+	 * @param name
+	 *            The name.
+	 * @return true, if the file was removed; false, if there is no such file.
+	 */
+	public boolean remove(String name) {
+		int i = this.indexOfName(name);
+		if (i < 0) {
+			return false;
+		}
+		this.remove(i);
+		return true;
+	}
+
+	/**
+	 * Returns the number of files in the index.
+	 * 
+	 * @return The number of files.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of a state in the table of distinct states and adds
+	 * it, if necessary.
+	 * 
+	 * @param s
+	 *            The state.
+	 * @return The index.
+	 */
+	private short stateIndex(String s) {
+		for (short i = 0; i < this.stateCount; i++) {
+			if (this.states[i].equals(s)) {
+				return i;
+			}
+		}
+		if (this.stateCount == this.states.length) {
+			String[] grown = new String[this.states.length * 2];
+			System.arraycopy(this.states, 0, grown, 0, this.stateCount);
+			this.states = grown;
+		}
+		this.states[this.stateCount] = s;
+		return (short) this.stateCount++;
+	}
+
+	/**
+	 * Removes a position from a hash table. The following entries of the
+	 * probe sequence are shifted back, so that no tombstones are needed.
+	 * 
+	 * @param table
+	 *            The hash table.
+	 * @param hashes
+	 *            The hash codes of the keys of all positions.
+	 * @param i
+	 *            The position.
+	 */
+	private void unlink(int[] table, int[] hashes, int i) {
+		int mask = table.length - 1;
+		int hole = spread(hashes[i]) & mask;
+		while (table[hole] != i + 1) {
+			hole = (hole + 1) & mask;
+		}
+		for (int next = (hole + 1) & mask; table[next] != 0; next = (next + 1)
+				& mask) {
+			int home = spread(hashes[table[next] - 1]) & mask;
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+		}
+		table[hole] = 0;
+	}
+
+	/**
+	 * Writes this {@link FileIndex} in a compact binary form to a channel. The
+	 * characters of removed files are not written. If all characters of the
+	 * names fit into one byte, every character is stored in one byte.
+	 * 
+	 * @param out
+	 *            The channel.
+	 * @throws IOException
+	 */
+	protected void write(WritableByteChannel out) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(BufferPool.DEFAULT_BUFFER_SIZE);
+		int chars = this.arenaLength - this.garbage;
+		boolean latin1 = true;
+		for (int i = 0; i < this.arenaLength && latin1; i++) {
+			latin1 = this.arena[i] <= 0xff;
+		}
+		buf.putInt(this.size);
+		buf.putInt(chars);
+		buf.put((byte) (latin1 ? 1 : 0));
+		buf.putShort((short) this.stateCount);
+		for (int i = 0; i < this.stateCount; i++) {
+			flush(out, buf, 2);
+			buf.putShort((short) this.states[i].length());
+			for (int j = 0; j < this.states[i].length(); j++) {
+				flush(out, buf, 2);
+				buf.putChar(this.states[i].charAt(j));
+			}
+		}
+		for (int i = 0; i < this.size; i++) {
+			flush(out, buf, 16);
+			buf.putInt(this.nameLength[i]);
+			buf.putInt(this.hashLength[i]);
+			buf.putLong(this.lastMod[i]);
+		}
+		for (int i = 0; i < this.size; i++) {
+			flush(out, buf, 2);
+			buf.putShort(this.state[i]);
+		}
+		for (int i = 0; i < this.size; i++) {
+			this.write(out, buf, this.nameOffset[i], this.nameLength[i],
+					latin1);
+			this.write(out, buf, this.hashOffset[i], this.hashLength[i],
+					latin1);
+		}
+		flush(out, buf, buf.capacity());
+	}
+
+	/**
+	 * Writes characters of the arena to a channel.
+	 * 
+	 * @param out
+	 *            The channel.
+	 * @param buf
+	 *            The buffer being written.
+	 * @param offset
+	 *            The offset of the first character in the arena.
+	 * @param length
+	 *            The number of characters.
+	 * @param latin1
+	 *            true, if every character is stored in one byte.
+	 * @throws IOException
+	 */
+	private void write(WritableByteChannel out, ByteBuffer buf, int offset,
+			int length, boolean latin1) throws IOException {
+		int end = offset + length;
+		while (offset < end) {
+			if (latin1) {
+				flush(out, buf, 1);
+				int n = Math.min(buf.remaining(), end - offset);
+				for (int i = 0; i < n; i++) {
+					buf.put((byte) this.arena[offset++]);
+				}
+			} else {
+				flush(out, buf, 2);
+				int n = Math.min(buf.remaining() / 2, end - offset);
+				for (int i = 0; i < n; i++) {
+					buf.putChar(this.arena[offset++]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Vector;
+
+/**
+ * Caches the last file list read from the CloudRAID server together with the
+ * validators (<code>ETag</code> and <code>Last-Modified</code>) of the
+ * response. The validators are sent with the next request for the file list,
+ * so that the server can answer with 304 (not modified) instead of sending the
+ * whole list again. If the server sends no validators, nothing is cached and
+ * every request reads the whole list.
+ * 
+ * The list is kept either as {@link Vector} of {@link CloudFile}s or as
+ * {@link FileIndex}, depending on how it was read, and converted on demand.
+ * Callers always receive copies. A {@link FileListCache} is thread-safe.
+ * 
+ * If a file is set, every list read completely is also written to this file
+ * together with its validators, whether or not the server sent validators.
+ * The list can be restored from the file when the client is started again,
+ * so that it can be shown before the server was asked.
+ */
+class FileListCache {
+
+	private static final int MAGIC = 0x43524c43;
+
+	/**
+	 * Creates a {@link FileIndex} containing a list of {@link CloudFile}s.
+	 * 
+	 * @param files
+	 *            The {@link CloudFile}s.
+	 * @param sc
+	 *            The {@link ServerConnector} of the {@link CloudFile}s of the
+	 *            index.
+	 * @return The {@link FileIndex}.
+	 */
+	private static FileIndex toIndex(Vector<CloudFile> files,
+			ServerConnector sc) {
+		FileIndex idx = new FileIndex(sc);
+		for (CloudFile file : files) {
+			idx.add(file.getName(), file.getHashedName(),
+					file.getLastModTime(), file.getState());
+		}
+		return idx;
+	}
+
+	private File file = null;
+	private String eTag = null;
+	private String lastModified = null;
+	private Vector<CloudFile> files = null;
+	private FileIndex index = null;
+
+	/**
+	 * Adds the conditional request headers to a request for the file list, if
+	 * a list is cached.
+	 * 
+	 * @param con
+	 *            The unconnected request.
+	 */
+	protected synchronized void addConditions(HttpURLConnection con) {
+		if (this.files == null && this.index == null) {
+			return;
+		}
+		if (this.eTag != null) {
+			con.setRequestProperty("If-None-Match", this.eTag);
+		}
+		if (this.lastModified != null) {
+			con.setRequestProperty("If-Modified-Since", this.lastModified);
+		}
+	}
+
+	/**
+	 * Discards the cached list.
+	 */
+	protected synchronized void clear() {
+		this.eTag = null;
+		this.lastModified = null;
+		this.files = null;
+		this.index = null;
+	}
+
+	/**
+	 * Returns a copy of the cached list.
+	 * 
+	 * @return The {@link CloudFile}s or <code>null</code>, if no list is
+	 *         cached.
+	 */
+	protected synchronized Vector<CloudFile> getFiles() {
+		if (this.files == null && this.index != null) {
+			Vector<CloudFile> v = new Vector<CloudFile>(this.index.size());
+			for (CloudFile file : this.index) {
+				v.add(file);
+			}
+			this.files = v;
+		}
+		return this.files == null ? null : new Vector<CloudFile>(this.files);
+	}
+
+	/**
+	 * Returns a copy of the cached list as {@link FileIndex}.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} of the {@link CloudFile}s of the
+	 *            index.
+	 * @return The {@link FileIndex} or <code>null</code>, if no list is
+	 *         cached.
+	 */
+	protected synchronized FileIndex getIndex(ServerConnector sc) {
+		if (this.index == null && this.files != null) {
+			this.index = toIndex(this.files, sc);
+		}
+		return this.index == null ? null : this.index.copy();
+	}
+
+	/**
+	 * Reads the list written to the file. If no list is cached yet and the
+	 * file contains validators, the list is cached, so that the next request
+	 * for the list is conditional.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} of the {@link CloudFile}s of the
+	 *            index.
+	 * @return The {@link FileIndex} or <code>null</code>, if no file is set
+	 *         or the file cannot be read.
+	 */
+	protected synchronized FileIndex restore(ServerConnector sc) {
+		if (this.file == null || !this.file.isFile()) {
+			return null;
+		}
+		FileInputStream in = null;
+		try {
+			in = new FileInputStream(this.file);
+			DataInputStream dis = new DataInputStream(in);
+			if (dis.readInt() != FileListCache.MAGIC) {
+				return null;
+			}
+			String tag = dis.readUTF();
+			String date = dis.readUTF();
+			FileIndex idx = FileIndex.read(in.getChannel(), sc);
+			if (this.files == null && this.index == null
+					&& (tag.length() > 0 || date.length() > 0)) {
+				this.eTag = tag.length() > 0 ? tag : null;
+				this.lastModified = date.length() > 0 ? date : null;
+				this.index = idx.copy();
+			}
+			return idx;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (Exception ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Writes a list and its validators to the file. The list is written to a
+	 * temporary file first, which replaces the file afterwards. Errors are
+	 * ignored, as the file is only a cache.
+	 * 
+	 * @param idx
+	 *            The list.
+	 * @param tag
+	 *            The ETag or <code>null</code>.
+	 * @param date
+	 *            The Last-Modified date or <code>null</code>.
+	 */
+	private void save(FileIndex idx, String tag, String date) {
+		File tmp = new File(this.file.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			File dir = this.file.getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				return;
+			}
+			out = new FileOutputStream(tmp);
+			DataOutputStream dos = new DataOutputStream(out);
+			dos.writeInt(FileListCache.MAGIC);
+			dos.writeUTF(tag == null ? "" : tag);
+			dos.writeUTF(date == null ? "" : date);
+			idx.write(out.getChannel());
+			out.close();
+			out = null;
+			if (!tmp.renameTo(this.file)) {
+				this.file.delete();
+				if (!tmp.renameTo(this.file)) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException e) {
+			tmp.delete();
+		} finally {
+			try {
+				out.close();
+			} catch (Exception ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Sets the file the list is written to.
+	 * 
+	 * @param file
+	 *            The file or <code>null</code>, if the list is not written
+	 *            to a file.
+	 */
+	protected synchronized void setFile(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Stores a list that was read completely, if the response carries
+	 * validators. Otherwise the cache is cleared. If a file is set, the list
+	 * is written to the file in any case.
+	 * 
+	 * @param con
+	 *            The response the list was read from.
+	 * @param files
+	 *            The list as {@link CloudFile}s or <code>null</code>.
+	 * @param index
+	 *            The list as {@link FileIndex} or <code>null</code>.
+	 */
+	protected synchronized void update(HttpURLConnection con,
+			Vector<CloudFile> files, FileIndex index) {
+		this.clear();
+		String tag = con.getHeaderField("ETag");
+		String date = con.getHeaderField("Last-Modified");
+		if (this.file != null && (files != null || index != null)) {
+			this.save(index != null ? index : toIndex(files, null), tag, date);
+		}
+		if (tag == null && date == null) {
+			return;
+		}
+		this.eTag = tag;
+		this.lastModified = date;
+		this.files = files == null ? null : new Vector<CloudFile>(files);
+		this.index = index == null ? null : index.copy();
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The changes between two file lists of a CloudRAID server. Files are matched
+ * by their hashed names. A file is modified, if its last modification date or
+ * its state changed. {@link CloudFile} objects are only created for the
+ * changed files, so a {@link FileListDelta} is small, even if the lists are
+ * large.
+ */
+public class FileListDelta {
+
+	/**
+	 * Compares two file lists.
+	 * 
+	 * @param old
+	 *            The older list or <code>null</code>. If <code>null</code>,
+	 *            every file of the newer list is added.
+	 * @param now
+	 *            The newer list.
+	 * @return The {@link FileListDelta}.
+	 */
+	public static FileListDelta between(FileIndex old, FileIndex now) {
+		ArrayList<CloudFile> added = new ArrayList<CloudFile>();
+		ArrayList<CloudFile> removed = new ArrayList<CloudFile>();
+		ArrayList<CloudFile> modified = new ArrayList<CloudFile>();
+		for (int i = 0; i < now.size(); i++) {
+			int j = old == null ? -1 : old.indexOfHashedName(now, i);
+			if (j < 0) {
+				added.add(now.get(i));
+			} else if (old.getLastModTime(j) != now.getLastModTime(i)
+					|| !old.getState(j).equals(now.getState(i))) {
+				modified.add(now.get(i));
+			}
+		}
+		if (old != null) {
+			for (int j = 0; j < old.size(); j++) {
+				if (now.indexOfHashedName(old, j) < 0) {
+					removed.add(old.get(j));
+				}
+			}
+		}
+		return new FileListDelta(added, removed, modified);
+	}
+
+	private List<CloudFile> added;
+	private List<CloudFile> removed;
+	private List<CloudFile> modified;
+
+	/**
+	 * Creates a {@link FileListDelta}.
+	 * 
+	 * @param added
+	 *            The added files.
+	 * @param removed
+	 *            The removed files.
+	 * @param modified
+	 *            The modified files.
+	 */
+	public FileListDelta(List<CloudFile> added, List<CloudFile> removed,
+			List<CloudFile> modified) {
+		this.added = Collections.unmodifiableList(new ArrayList<CloudFile>(
+				added));
+		this.removed = Collections.unmodifiableList(new ArrayList<CloudFile>(
+				removed));
+		this.modified = Collections.unmodifiableList(new ArrayList<CloudFile>(
+				modified));
+	}
+
+	/**
+	 * Returns the files that were added.
+	 * 
+	 * @return An unmodifiable {@link List} of {@link CloudFile}s.
+	 */
+	public List<CloudFile> getAdded() {
+		return this.added;
+	}
+
+	/**
+	 * Returns the files that were modified. The {@link CloudFile}s contain the
+	 * new attributes.
+	 * 
+	 * @return An unmodifiable {@link List} of {@link CloudFile}s.
+	 */
+	public List<CloudFile> getModified() {
+		return this.modified;
+	}
+
+	/**
+	 * Returns the files that were removed.
+	 * 
+	 * @return An unmodifiable {@link List} of {@link CloudFile}s.
+	 */
+	public List<CloudFile> getRemoved() {
+		return this.removed;
+	}
+
+	/**
+	 * Checks, if the lists are equal.
+	 * 
+	 * @return true, if no file was added, removed or modified.
+	 */
+	public boolean isEmpty() {
+		return this.added.isEmpty() && this.removed.isEmpty()
+				&& this.modified.isEmpty();
+	}
+
+	/**
+	 * Returns the number of changed files.
+	 * 
+	 * @return The number of added, removed and modified files.
+	 */
+	public int size() {
+		return this.added.size() + this.removed.size() + this.modified.size();
+	}
+
+	@Override
+	public String toString() {
+		return "+" + this.added.size() + " -" + this.removed.size() + " ~"
+				+ this.modified.size();
+	}
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Parses the file list sent by the CloudRAID server in a single pass over its
+ * characters. Every line has the form
+ * <code>"name","hash","yyyy-MM-dd HH:mm:ss.S","STATE"</code>. Quotes and
+ * ampersands within the fields are escaped as <code>&amp;quot;</code> and
+ * <code>&amp;amp;</code>, which is undone while the fields are read. Commas
+ * within quoted fields are part of the field.
+ * 
+ * The parser reuses its buffers, so apart from the Strings of the fields no
+ * objects are allocated per line. The Strings of the names are only created
+ * when they are requested. Instances are not thread-safe.
+ */
+class FileListParser {
+
+	private static final int FIELDS = 4;
+	private static final int NAME = 0, HASH = 1, DATE = 2, STATE = 3;
+
+	/**
+	 * Checks, if the characters at a position equal a String.
+	 * 
+	 * @param c
+	 *            The characters.
+	 * @param offset
+	 *            The position.
+	 * @param end
+	 *            The index after the last valid character.
+	 * @param s
+	 *            The String.
+	 * @return true, if the String is found at the position.
+	 */
+	private static boolean regionMatches(char[] c, int offset, int end,
+			String s) {
+		int len = s.length();
+		if (offset + len > end) {
+			return false;
+		}
+		for (int j = 0; j < len; j++) {
+			if (c[offset + j] != s.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Reader in;
+	private char[] buf = new char[8192];
+	private int pos = 0, limit = 0;
+
+	/**
+	 * The current line without line terminator.
+	 */
+	private char[] line = new char[256];
+	private int lineLength = 0;
+
+	/**
+	 * The unescaped characters of the fields of the current line.
+	 */
+	private char[] fields = new char[256];
+	private int[] fieldStart = new int[FileListParser.FIELDS];
+	private int[] fieldEnd = new int[FileListParser.FIELDS];
+
+	private TimestampCodec codec = TimestampCodec.getDefault();
+
+	private String name, hashedName, state;
+	private long lastMod;
+
+	/**
+	 * Creates a {@link FileListParser} reading from a {@link Reader}.
+	 * 
+	 * @param in
+	 *            The {@link Reader}.
+	 */
+	protected FileListParser(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Adds the current line to a {@link FileIndex} without creating Strings
+	 * for the names.
+	 * 
+	 * @param index
+	 *            The {@link FileIndex}.
+	 */
+	protected void addTo(FileIndex index) {
+		index.add(this.fields, this.fieldStart[FileListParser.NAME],
+				this.fieldEnd[FileListParser.NAME],
+				this.fieldStart[FileListParser.HASH],
+				this.fieldEnd[FileListParser.HASH], this.lastMod, this.state);
+	}
+
+	/**
+	 * Returns the hashed file name of the current line.
+	 * 
+	 * @return The hashed file name.
+	 */
+	protected String getHashedName() {
+		if (this.hashedName == null) {
+			this.hashedName = this.field(FileListParser.HASH);
+		}
+		return this.hashedName;
+	}
+
+	/**
+	 * Returns the last modification date of the current line in milliseconds
+	 * from 1/1/1970 00:00:00.
+	 * 
+	 * @return The last modification date.
+	 */
+	protected long getLastMod() {
+		return this.lastMod;
+	}
+
+	/**
+	 * Returns the file name of the current line.
+	 * 
+	 * @return The file name.
+	 */
+	protected String getName() {
+		if (this.name == null) {
+			this.name = this.field(FileListParser.NAME);
+		}
+		return this.name;
+	}
+
+	/**
+	 * Returns the state of the current line.
+	 * 
+	 * @return The state.
+	 */
+	protected String getState() {
+		return this.state;
+	}
+
+	/**
+	 * Advances to the next valid line. Invalid lines are skipped.
+	 * 
+	 * @return true, if a line was read; false, if the end of the stream was
+	 *         reached.
+	 * @throws IOException
+	 */
+	protected boolean next() throws IOException {
+		while (this.readLine()) {
+			if (this.parseLine()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the String of a field of the current line.
+	 * 
+	 * @param field
+	 *            The index of the field.
+	 * @return The String.
+	 */
+	private String field(int field) {
+		return new String(this.fields, this.fieldStart[field],
+				this.fieldEnd[field] - this.fieldStart[field]);
+	}
+
+	/**
+	 * Parses the current line into the fields.
+	 * 
+	 * @return true, if the line is valid.
+	 */
+	private boolean parseLine() {
+		char[] l = this.line;
+		int n = this.lineLength;
+		if (this.fields.length < n) {
+			this.fields = new char[this.line.length];
+		}
+		char[] f = this.fields;
+		int out = 0;
+		int i = 0;
+		for (int field = 0; field < FileListParser.FIELDS; field++) {
+			if (field > 0) {
+				if (i >= n || l[i] != ',') {
+					return false;
+				}
+				i++;
+			}
+			if (i >= n || l[i] != '"') {
+				return false;
+			}
+			i++;
+			this.fieldStart[field] = out;
+			boolean closed = false;
+			while (i < n) {
+				char c = l[i];
+				if (c == '"' && (i + 1 == n || l[i + 1] == ',')) {
+					i++;
+					closed = true;
+					break;
+				} else if (c == '&') {
+					if (regionMatches(l, i, n, "&quot;")) {
+						f[out++] = '"';
+						i += 6;
+						continue;
+					} else if (regionMatches(l, i, n, "&amp;")) {
+						f[out++] = '&';
+						i += 5;
+						continue;
+					}
+				}
+				f[out++] = c;
+				i++;
+			}
+			if (!closed) {
+				return false;
+			}
+			this.fieldEnd[field] = out;
+		}
+		if (i != n) {
+			return false;
+		}
+		long date = this.codec.parse(f, this.fieldStart[FileListParser.DATE],
+				this.fieldEnd[FileListParser.DATE]);
+		if (date == Long.MIN_VALUE) {
+			return false;
+		}
+		this.lastMod = date;
+		this.name = null;
+		this.hashedName = null;
+		int start = this.fieldStart[FileListParser.STATE];
+		int len = this.fieldEnd[FileListParser.STATE] - start;
+		// The states repeat, so the last one is reused if it is equal.
+		if (this.state == null || !regionMatches(f, start, start + len,
+				this.state) || this.state.length() != len) {
+			this.state = this.field(FileListParser.STATE);
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next line into the line buffer.
+	 * 
+	 * @return true, if a line was read; false, if the end of the stream was
+	 *         reached.
+	 * @throws IOException
+	 */
+	private boolean readLine() throws IOException {
+		this.lineLength = 0;
+		boolean read = false;
+		while (true) {
+			if (this.pos >= this.limit) {
+				this.limit = this.in.read(this.buf, 0, this.buf.length);
+				this.pos = 0;
+				if (this.limit <= 0) {
+					this.limit = 0;
+					return read;
+				}
+			}
+			read = true;
+			char c = this.buf[this.pos++];
+			if (c == '\n') {
+				if (this.lineLength > 0
+						&& this.line[this.lineLength - 1] == '\r') {
+					this.lineLength--;
+				}
+				return true;
+			}
+			if (this.lineLength == this.line.length) {
+				char[] grown = new char[this.line.length * 2];
+				System.arraycopy(this.line, 0, grown, 0, this.lineLength);
+				this.line = grown;
+			}
+			this.line[this.lineLength++] = c;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.List;
+
+/**
+ * A {@link DataPresenter} that receives the file list in chunks while it is
+ * read from the CloudRAID server. A {@link ServerConnector} calls
+ * {@link #beginFileList()} once, {@link #giveFileListChunk(List)} for every
+ * chunk of parsed {@link CloudFile}s and {@link #endFileList(boolean)} once at
+ * the end. {@link DataPresenter#giveFileList(java.util.Vector)} is not called
+ * for registered {@link IncrementalDataPresenter}s.
+ */
+public interface IncrementalDataPresenter extends DataPresenter {
+
+	/**
+	 * Called before the first chunk of a new file list is given.
+	 */
+	public void beginFileList();
+
+	/**
+	 * Called after the last chunk of a file list was given.
+	 *
+	 * @param complete
+	 *            true, if the whole list was read; false, if reading the list
+	 *            failed and only a part of it was given.
+	 */
+	public void endFileList(boolean complete);
+
+	/**
+	 * Gives a chunk of the file list. The {@link List} is not modified after
+	 * the call and may be kept.
+	 *
+	 * @param chunk
+	 *            The next {@link CloudFile}s of the file list.
+	 */
+	public void giveFileListChunk(List<CloudFile> chunk);
+
+}
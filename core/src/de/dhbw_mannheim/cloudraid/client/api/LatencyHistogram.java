@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in the style of an HDR histogram. The latencies
+ * are recorded in microseconds into log-linear buckets: every power of two is
+ * split into {@link #SUB_BUCKETS} buckets of equal width, so a bucket is at
+ * most 1/64 of its value wide and the percentiles have an error below 1.6
+ * percent over the whole range from one microsecond to several days.
+ * 
+ * Recording a latency costs a few atomic operations and no allocation, so a
+ * {@link LatencyHistogram} can be shared by several threads. A consistent
+ * copy for reading is created by {@link #copy()}.
+ */
+public class LatencyHistogram {
+
+	/**
+	 * The number of buckets per power of two.
+	 */
+	public static final int SUB_BUCKETS = 64;
+
+	/**
+	 * The largest latency in microseconds that is recorded exactly; larger
+	 * latencies are recorded as this value. About twelve days.
+	 */
+	public static final long MAX_VALUE = (1L << 40) - 1;
+
+	/**
+	 * The number of bits of the linear range [0, 2 * {@link #SUB_BUCKETS}).
+	 */
+	private static final int LINEAR_BITS = Integer
+			.numberOfTrailingZeros(2 * LatencyHistogram.SUB_BUCKETS);
+
+	/**
+	 * Returns the index of the bucket of a value.
+	 * 
+	 * @param value
+	 *            The value, at least 0.
+	 * @return The index.
+	 */
+	private static int index(long value) {
+		if (value < 2 * LatencyHistogram.SUB_BUCKETS) {
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value)
+				- (LatencyHistogram.LINEAR_BITS - 1);
+		int sub = (int) (value >>> shift) - LatencyHistogram.SUB_BUCKETS;
+		return 2 * LatencyHistogram.SUB_BUCKETS + (shift - 1)
+				* LatencyHistogram.SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the highest value counted in a bucket.
+	 * 
+	 * @param index
+	 *            The index of the bucket.
+	 * @return The value.
+	 */
+	private static long highestValue(int index) {
+		if (index < 2 * LatencyHistogram.SUB_BUCKETS) {
+			return index;
+		}
+		int offset = index - 2 * LatencyHistogram.SUB_BUCKETS;
+		int shift = offset / LatencyHistogram.SUB_BUCKETS + 1;
+		long sub = offset % LatencyHistogram.SUB_BUCKETS
+				+ LatencyHistogram.SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	private AtomicLongArray counts = new AtomicLongArray(
+			LatencyHistogram.index(LatencyHistogram.MAX_VALUE) + 1);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong sum = new AtomicLong();
+	private AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private AtomicLong max = new AtomicLong();
+
+	/**
+	 * Creates a copy of this {@link LatencyHistogram}. The copy is consistent,
+	 * if no latency is recorded at the same time; otherwise the latencies
+	 * recorded meanwhile may be missing partly.
+	 * 
+	 * @return The copy.
+	 */
+	public LatencyHistogram copy() {
+		LatencyHistogram copy = new LatencyHistogram();
+		long total = 0;
+		for (int i = 0; i < this.counts.length(); i++) {
+			long n = this.counts.get(i);
+			if (n != 0) {
+				copy.counts.set(i, n);
+				total += n;
+			}
+		}
+		copy.count.set(total);
+		copy.sum.set(this.sum.get());
+		copy.min.set(this.min.get());
+		copy.max.set(this.max.get());
+		return copy;
+	}
+
+	/**
+	 * Returns the number of recorded latencies.
+	 * 
+	 * @return The number.
+	 */
+	public long getCount() {
+		return this.count.get();
+	}
+
+	/**
+	 * Returns the largest recorded latency.
+	 * 
+	 * @return The latency in microseconds or 0, if nothing was recorded.
+	 */
+	public long getMax() {
+		return this.max.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded latencies.
+	 * 
+	 * @return The mean in microseconds or 0, if nothing was recorded.
+	 */
+	public double getMean() {
+		long n = this.count.get();
+		return n == 0 ? 0.0 : (double) this.sum.get() / n;
+	}
+
+	/**
+	 * Returns the smallest recorded latency.
+	 * 
+	 * @return The latency in microseconds or 0, if nothing was recorded.
+	 */
+	public long getMin() {
+		long value = this.min.get();
+		return value == Long.MAX_VALUE ? 0L : value;
+	}
+
+	/**
+	 * Returns the latency below or at which the given percentage of the
+	 * recorded latencies lies. The value is the highest value of its bucket,
+	 * but never larger than {@link #getMax()}.
+	 * 
+	 * @param percentile
+	 *            The percentage, from 0 to 100.
+	 * @return The latency in microseconds or 0, if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		long n = this.count.get();
+		if (n == 0) {
+			return 0L;
+		}
+		double p = Math.min(100.0, Math.max(0.0, percentile));
+		long rank = Math.max(1L, (long) Math.ceil(p / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < this.counts.length(); i++) {
+			seen += this.counts.get(i);
+			if (seen >= rank) {
+				return Math.min(LatencyHistogram.highestValue(i),
+						this.getMax());
+			}
+		}
+		return this.getMax();
+	}
+
+	/**
+	 * Records a latency.
+	 * 
+	 * @param nanos
+	 *            The latency in nanoseconds.
+	 */
+	public void record(long nanos) {
+		long value = Math.min(LatencyHistogram.MAX_VALUE,
+				Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos)));
+		this.counts.incrementAndGet(LatencyHistogram.index(value));
+		this.sum.addAndGet(value);
+		long current;
+		while (value < (current = this.min.get())
+				&& !this.min.compareAndSet(current, value)) {
+		}
+		while (value > (current = this.max.get())
+				&& !this.max.compareAndSet(current, value)) {
+		}
+		// Counted last, so that a copy never has more values than buckets.
+		this.count.incrementAndGet();
+	}
+}
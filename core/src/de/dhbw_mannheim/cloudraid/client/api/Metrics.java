@@ -0,0 +1,289 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the metrics of a {@link ServerConnector}: a
+ * {@link LatencyHistogram} per {@link Operation}, the bytes of the files
+ * transferred, the errors per HTTP status and the use of the connections.
+ * Recording is cheap and thread-safe; the values are read from a
+ * {@link MetricsSnapshot}, see {@link #snapshot()}. A snapshot can also be
+ * appended to a file periodically, see {@link #startDump(File, long)}.
+ */
+public class Metrics {
+
+	/**
+	 * The operations of a {@link ServerConnector} whose latencies are
+	 * recorded.
+	 */
+	public enum Operation {
+		/**
+		 * {@link ServerConnector#login()}.
+		 */
+		LOGIN,
+		/**
+		 * Reading the file list, e.g. {@link ServerConnector#getFileList()}.
+		 */
+		LIST,
+		/**
+		 * Downloading a file, e.g.
+		 * {@link ServerConnector#getFile(String, File)}.
+		 */
+		GET,
+		/**
+		 * Uploading a file, e.g.
+		 * {@link ServerConnector#putFile(String, File, boolean)}.
+		 */
+		PUT,
+		/**
+		 * {@link ServerConnector#deleteFile(String)}.
+		 */
+		DELETE
+	}
+
+	/**
+	 * The status used for errors that are no {@link HTTPException}s, i.e.
+	 * {@link IOException}s.
+	 */
+	public static final int IO_ERROR = -1;
+
+	private static final Logger LOGGER = Logger.getLogger(Metrics.class
+			.getName());
+
+	private volatile EnumMap<Operation, LatencyHistogram> latencies;
+	private AtomicLong bytesIn = new AtomicLong();
+	private AtomicLong bytesOut = new AtomicLong();
+	private HashMap<Integer, Long> errors = new HashMap<Integer, Long>();
+	private AtomicLong connectionsOpened = new AtomicLong();
+	private AtomicLong connectionsKeptAlive = new AtomicLong();
+	private AtomicLong connectionsClosed = new AtomicLong();
+	private volatile long start;
+
+	private ScheduledExecutorService dumper = null;
+
+	/**
+	 * Creates a {@link Metrics} without any recorded values.
+	 */
+	public Metrics() {
+		this.reset();
+	}
+
+	/**
+	 * Adds the bytes of a transferred file.
+	 * 
+	 * @param upload
+	 *            true, if the bytes were sent; false, if they were received.
+	 * @param bytes
+	 *            The number of bytes.
+	 */
+	protected void addBytes(boolean upload, long bytes) {
+		(upload ? this.bytesOut : this.bytesIn).addAndGet(bytes);
+	}
+
+	/**
+	 * Counts a connection that was closed instead of being handed back to the
+	 * keep-alive cache.
+	 */
+	protected void connectionClosed() {
+		this.connectionsClosed.incrementAndGet();
+	}
+
+	/**
+	 * Counts a connection that was handed back to the keep-alive cache, so
+	 * that its socket can be reused.
+	 */
+	protected void connectionKeptAlive() {
+		this.connectionsKeptAlive.incrementAndGet();
+	}
+
+	/**
+	 * Counts an opened connection.
+	 */
+	protected void connectionOpened() {
+		this.connectionsOpened.incrementAndGet();
+	}
+
+	/**
+	 * Appends a snapshot to a file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @throws IOException
+	 */
+	public void dump(File file) throws IOException {
+		Writer w = new OutputStreamWriter(new FileOutputStream(file, true),
+				"UTF-8");
+		try {
+			w.write(this.snapshot().toString());
+			w.write(System.getProperty("line.separator"));
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * Checks, if snapshots are appended to a file periodically.
+	 * 
+	 * @return true, if a dump was started by {@link #startDump(File, long)}.
+	 */
+	public synchronized boolean isDumping() {
+		return this.dumper != null;
+	}
+
+	/**
+	 * Records the latency of an operation.
+	 * 
+	 * @param operation
+	 *            The {@link Operation}.
+	 * @param start
+	 *            The start of the operation as returned by
+	 *            {@link System#nanoTime()}.
+	 */
+	protected void record(Operation operation, long start) {
+		this.latencies.get(operation).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Counts an {@link HTTPException}.
+	 * 
+	 * @param e
+	 *            The {@link HTTPException}.
+	 */
+	protected void recordError(HTTPException e) {
+		this.recordError(e.getHTTPCode());
+	}
+
+	/**
+	 * Counts an error by its HTTP status.
+	 * 
+	 * @param status
+	 *            The HTTP status or {@link #IO_ERROR}.
+	 */
+	private synchronized void recordError(int status) {
+		Long n = this.errors.get(status);
+		this.errors.put(status, n == null ? 1L : n + 1);
+	}
+
+	/**
+	 * Counts an {@link IOException} as {@link #IO_ERROR}.
+	 * 
+	 * @param e
+	 *            The {@link IOException}.
+	 */
+	protected void recordError(IOException e) {
+		this.recordError(Metrics.IO_ERROR);
+	}
+
+	/**
+	 * Discards all recorded values.
+	 */
+	public synchronized void reset() {
+		EnumMap<Operation, LatencyHistogram> l = new EnumMap<Operation, LatencyHistogram>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			l.put(operation, new LatencyHistogram());
+		}
+		this.latencies = l;
+		this.bytesIn.set(0L);
+		this.bytesOut.set(0L);
+		this.errors.clear();
+		this.connectionsOpened.set(0L);
+		this.connectionsKeptAlive.set(0L);
+		this.connectionsClosed.set(0L);
+		this.start = System.currentTimeMillis();
+	}
+
+	/**
+	 * Creates a {@link MetricsSnapshot} of the values recorded so far.
+	 * 
+	 * @return The {@link MetricsSnapshot}.
+	 */
+	public synchronized MetricsSnapshot snapshot() {
+		EnumMap<Operation, LatencyHistogram> l = new EnumMap<Operation, LatencyHistogram>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			l.put(operation, this.latencies.get(operation).copy());
+		}
+		return new MetricsSnapshot(this.start, System.currentTimeMillis(), l,
+				this.bytesIn.get(), this.bytesOut.get(),
+				new HashMap<Integer, Long>(this.errors),
+				this.connectionsOpened.get(), this.connectionsKeptAlive.get(),
+				this.connectionsClosed.get());
+	}
+
+	/**
+	 * Appends a snapshot to a file periodically, until {@link #stopDump()} is
+	 * called. A running dump is stopped first. Errors while writing are
+	 * logged and do not stop the dump.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param period
+	 *            The time between two snapshots in seconds.
+	 */
+	public synchronized void startDump(final File file, long period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Invalid period: " + period);
+		}
+		this.stopDump();
+		ScheduledThreadPoolExecutor d = new ScheduledThreadPoolExecutor(1,
+				AsyncServerConnector.daemonThreads("CloudRAID-metrics-"));
+		d.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Metrics.this.dump(file);
+				} catch (IOException e) {
+					Metrics.LOGGER.log(Level.WARNING,
+							"The metrics could not be written to " + file
+									+ ".", e);
+				}
+			}
+		}, period, period, TimeUnit.SECONDS);
+		this.dumper = d;
+	}
+
+	/**
+	 * Stops appending snapshots to a file.
+	 */
+	public synchronized void stopDump() {
+		if (this.dumper != null) {
+			this.dumper.shutdownNow();
+			this.dumper = null;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.dhbw_mannheim.cloudraid.client.api.Metrics.Operation;
+
+/**
+ * The values recorded by a {@link Metrics} at a point of time. A
+ * {@link MetricsSnapshot} does not change any more. {@link #toString()}
+ * returns a report for humans.
+ */
+public class MetricsSnapshot {
+
+	private long start;
+	private long time;
+	private EnumMap<Operation, LatencyHistogram> latencies;
+	private long bytesIn;
+	private long bytesOut;
+	private Map<Integer, Long> errors;
+	private long connectionsOpened;
+	private long connectionsKeptAlive;
+	private long connectionsClosed;
+
+	/**
+	 * Creates a {@link MetricsSnapshot}.
+	 * 
+	 * @param start
+	 *            The time the recording started in milliseconds since the
+	 *            epoch.
+	 * @param time
+	 *            The time of the snapshot in milliseconds since the epoch.
+	 * @param latencies
+	 *            Copies of the {@link LatencyHistogram}s of all operations.
+	 * @param bytesIn
+	 *            The bytes of the files received.
+	 * @param bytesOut
+	 *            The bytes of the files sent.
+	 * @param errors
+	 *            The number of errors per HTTP status.
+	 * @param connectionsOpened
+	 *            The number of connections opened.
+	 * @param connectionsKeptAlive
+	 *            The number of connections handed back to the keep-alive
+	 *            cache.
+	 * @param connectionsClosed
+	 *            The number of connections closed after their request.
+	 */
+	protected MetricsSnapshot(long start, long time,
+			EnumMap<Operation, LatencyHistogram> latencies, long bytesIn,
+			long bytesOut, Map<Integer, Long> errors, long connectionsOpened,
+			long connectionsKeptAlive, long connectionsClosed) {
+		this.start = start;
+		this.time = time;
+		this.latencies = latencies;
+		this.bytesIn = bytesIn;
+		this.bytesOut = bytesOut;
+		this.errors = Collections.unmodifiableMap(new TreeMap<Integer, Long>(
+				errors));
+		this.connectionsOpened = connectionsOpened;
+		this.connectionsKeptAlive = connectionsKeptAlive;
+		this.connectionsClosed = connectionsClosed;
+	}
+
+	/**
+	 * Returns the number of bytes of the files received.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getBytesIn() {
+		return this.bytesIn;
+	}
+
+	/**
+	 * Returns the number of bytes of the files sent.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getBytesOut() {
+		return this.bytesOut;
+	}
+
+	/**
+	 * Returns the number of connections closed after their request instead of
+	 * being kept alive, e.g. because of an error.
+	 * 
+	 * @return The number of connections.
+	 */
+	public long getConnectionsClosed() {
+		return this.connectionsClosed;
+	}
+
+	/**
+	 * Returns the number of connections handed back to the keep-alive cache
+	 * after their request.
+	 * 
+	 * @return The number of connections.
+	 */
+	public long getConnectionsKeptAlive() {
+		return this.connectionsKeptAlive;
+	}
+
+	/**
+	 * Returns the number of connections opened. A connection is a request;
+	 * its socket may be reused from the keep-alive cache.
+	 * 
+	 * @return The number of connections.
+	 */
+	public long getConnectionsOpened() {
+		return this.connectionsOpened;
+	}
+
+	/**
+	 * Returns the share of the finished connections that were handed back to
+	 * the keep-alive cache. {@link java.net.HttpURLConnection} does not tell,
+	 * whether a request reused a socket, but every socket kept alive can be
+	 * reused by the next request to the server within the idle timeout.
+	 * 
+	 * @return The share from 0 to 1 or 0, if no connection finished.
+	 */
+	public double getConnectionReuseRate() {
+		long finished = this.connectionsKeptAlive + this.connectionsClosed;
+		return finished == 0 ? 0.0 : (double) this.connectionsKeptAlive
+				/ finished;
+	}
+
+	/**
+	 * Returns the number of errors per HTTP status.
+	 * {@link java.io.IOException}s are counted as {@link Metrics#IO_ERROR}.
+	 * 
+	 * @return A {@link Map} sorted by the status.
+	 */
+	public Map<Integer, Long> getErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Returns the {@link LatencyHistogram} of an operation.
+	 * 
+	 * @param operation
+	 *            The {@link Operation}.
+	 * @return The {@link LatencyHistogram}.
+	 */
+	public LatencyHistogram getLatencies(Operation operation) {
+		return this.latencies.get(operation);
+	}
+
+	/**
+	 * Returns the time the recording started.
+	 * 
+	 * @return The time in milliseconds since the epoch.
+	 */
+	public long getStart() {
+		return this.start;
+	}
+
+	/**
+	 * Returns the time of this snapshot.
+	 * 
+	 * @return The time in milliseconds since the epoch.
+	 */
+	public long getTime() {
+		return this.time;
+	}
+
+	@Override
+	public String toString() {
+		String nl = System.getProperty("line.separator");
+		StringBuilder sb = new StringBuilder();
+		sb.append("Metrics of ").append(new Date(this.time))
+				.append(" since ").append(new Date(this.start)).append(nl);
+		sb.append(String.format(Locale.ENGLISH,
+				"%-8s %8s %10s %10s %10s %10s %10s%n", "op", "count",
+				"mean ms", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		for (Operation operation : Operation.values()) {
+			LatencyHistogram h = this.latencies.get(operation);
+			sb.append(String.format(Locale.ENGLISH,
+					"%-8s %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n", operation
+							.name().toLowerCase(Locale.ENGLISH), h.getCount(),
+					h.getMean() / 1000.0, h.getPercentile(50) / 1000.0, h
+							.getPercentile(90) / 1000.0,
+					h.getPercentile(99) / 1000.0, h.getMax() / 1000.0));
+		}
+		sb.append("bytes: ")
+				.append(TransferProgress.formatBytes(this.bytesIn))
+				.append(" in, ")
+				.append(TransferProgress.formatBytes(this.bytesOut))
+				.append(" out").append(nl);
+		sb.append("errors:");
+		if (this.errors.isEmpty()) {
+			sb.append(" none");
+		}
+		for (Map.Entry<Integer, Long> entry : this.errors.entrySet()) {
+			sb.append(' ')
+					.append(entry.getKey() == Metrics.IO_ERROR ? "I/O"
+							: entry.getKey().toString()).append(" x")
+					.append(entry.getValue());
+		}
+		sb.append(nl);
+		sb.append(String.format(Locale.ENGLISH,
+				"connections: %d opened, %d kept alive, %d closed"
+						+ " (%.0f%% reusable)", this.connectionsOpened,
+				this.connectionsKeptAlive, this.connectionsClosed,
+				this.getConnectionReuseRate() * 100));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+/**
+ * Decides, if and when a failed idempotent request of a
+ * {@link ServerConnector} is sent again. A request is retried, if the
+ * connection failed or timed out or if the server answered with 502, 503 or
+ * 504. Before the n-th retry, the request waits a random time between 0 and
+ * <code>min(maxDelay, initialDelay * 2^(n-1))</code> ("full jitter"), so
+ * that clients failing at the same time do not retry at the same time.
+ * 
+ * CloudRAID also answers with 503, if a session does not exist. The
+ * {@link ServerConnector} renews the session in that case before the
+ * {@link RetryPolicy} is asked.
+ * 
+ * Uploads are never retried by the {@link ServerConnector}, as the server
+ * cannot tell a repeated upload from a new one; chunked uploads retry their
+ * chunks themselves.
+ */
+public class RetryPolicy {
+
+	/**
+	 * The default number of retries of a failed request.
+	 */
+	public static final int DEFAULT_MAX_RETRIES = 3;
+
+	/**
+	 * The default delay before the first retry in milliseconds.
+	 */
+	public static final long DEFAULT_INITIAL_DELAY = 250L;
+
+	/**
+	 * The default maximum delay before a retry in milliseconds.
+	 */
+	public static final long DEFAULT_MAX_DELAY = 8000L;
+
+	private static RetryPolicy defaultPolicy = null;
+
+	/**
+	 * Returns the {@link RetryPolicy} used by all {@link ServerConnector}s
+	 * that are not given a policy explicitly.
+	 * 
+	 * @return The default {@link RetryPolicy}.
+	 */
+	public static synchronized RetryPolicy getDefault() {
+		if (RetryPolicy.defaultPolicy == null) {
+			RetryPolicy.defaultPolicy = new RetryPolicy(
+					RetryPolicy.DEFAULT_MAX_RETRIES,
+					RetryPolicy.DEFAULT_INITIAL_DELAY,
+					RetryPolicy.DEFAULT_MAX_DELAY);
+		}
+		return RetryPolicy.defaultPolicy;
+	}
+
+	/**
+	 * Checks, if an error shows that the server is unavailable or overloaded,
+	 * as opposed to an error of the request, e.g. a missing file, or a local
+	 * error, e.g. a file that cannot be written. Such errors are retried and
+	 * counted by the {@link CircuitBreaker}. These are the answers 502, 503
+	 * and 504, timeouts and errors of the connection, e.g. a refused or reset
+	 * connection, i.e. {@link SocketTimeoutException}s and
+	 * {@link SocketException}s.
+	 * 
+	 * @param e
+	 *            The {@link IOException} or {@link HTTPException}.
+	 * @return true, if the server failed.
+	 */
+	public static boolean isServerFailure(Exception e) {
+		if (e instanceof HTTPException) {
+			int code = ((HTTPException) e).getHTTPCode();
+			return code == 502 || code == 503 || code == 504;
+		}
+		// ConnectException, NoRouteToHostException and resets are
+		// SocketExceptions.
+		return e instanceof SocketTimeoutException
+				|| e instanceof SocketException;
+	}
+
+	private int maxRetries;
+	private long initialDelay;
+	private long maxDelay;
+	private Random random = new Random();
+
+	/**
+	 * Creates a {@link RetryPolicy}.
+	 * 
+	 * @param maxRetries
+	 *            The number of retries of a failed request. 0 disables
+	 *            retries.
+	 * @param initialDelay
+	 *            The maximum delay before the first retry in milliseconds.
+	 * @param maxDelay
+	 *            The maximum delay before any retry in milliseconds.
+	 */
+	public RetryPolicy(int maxRetries, long initialDelay, long maxDelay) {
+		if (maxRetries < 0 || initialDelay < 0 || maxDelay < initialDelay) {
+			throw new IllegalArgumentException("Invalid retry policy: "
+					+ maxRetries + ", " + initialDelay + ", " + maxDelay);
+		}
+		this.maxRetries = maxRetries;
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+	}
+
+	/**
+	 * Returns the delay before a retry.
+	 * 
+	 * @param retry
+	 *            The number of the retry, starting with 1.
+	 * @return The delay in milliseconds.
+	 */
+	public long getDelay(int retry) {
+		long bound = this.initialDelay;
+		for (int i = 1; i < retry && bound < this.maxDelay; i++) {
+			bound *= 2;
+		}
+		bound = Math.min(bound, this.maxDelay);
+		synchronized (this.random) {
+			return bound <= 0 ? 0L : (long) (this.random.nextDouble() * bound);
+		}
+	}
+
+	/**
+	 * Returns the maximum delay before the first retry.
+	 * 
+	 * @return The delay in milliseconds.
+	 */
+	public long getInitialDelay() {
+		return this.initialDelay;
+	}
+
+	/**
+	 * Returns the maximum delay before any retry.
+	 * 
+	 * @return The delay in milliseconds.
+	 */
+	public long getMaxDelay() {
+		return this.maxDelay;
+	}
+
+	/**
+	 * Returns the number of retries of a failed request.
+	 * 
+	 * @return The number of retries.
+	 */
+	public int getMaxRetries() {
+		return this.maxRetries;
+	}
+
+	/**
+	 * Checks, if a failed request is retried.
+	 * 
+	 * @param e
+	 *            The error of the request.
+	 * @param retry
+	 *            The number of the next retry, starting with 1.
+	 * @return true, if the request is sent again.
+	 */
+	public boolean isRetried(Exception e, int retry) {
+		return retry <= this.maxRetries && RetryPolicy.isServerFailure(e);
+	}
+
+	/**
+	 * Waits before a retry.
+	 * 
+	 * @param retry
+	 *            The number of the retry, starting with 1.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted while waiting.
+	 */
+	protected void sleep(int retry) throws InterruptedIOException {
+		long delay = this.getDelay(retry);
+		if (delay <= 0) {
+			return;
+		}
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted before a retry.");
+		}
+	}
+}
@@ -22,24 +22,38 @@
 
 package de.dhbw_mannheim.cloudraid.client.api;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
+import java.net.SocketException;
 import java.net.URLEncoder;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 import javax.net.ssl.SSLException;
 
@@ -55,12 +69,6 @@ public class ServerConnector {
 	 */
 	public static final String API_VERSION = "0.3";
 
-	/**
-	 * The date format used by the CloudRAID server.
-	 */
-	private SimpleDateFormat cloudraidDateFormat = new SimpleDateFormat(
-			"yyyy-MM-dd hh:mm:ss.S");
-
 	private static final String GET = "GET", POST = "POST", DELETE = "DELETE",
 			PUT = "PUT";
 	private static final String HTTP401 = "not logged in",
@@ -77,6 +85,281 @@ public class ServerConnector {
 
 	private static final String ENCODING = "utf-8";
 
+	private static final String UPLOAD_LENGTH = "X-Upload-Length",
+			CHUNK_SIZE = "X-Chunk-Size", CHUNK_COUNT = "X-Chunk-Count",
+			CHUNK_OFFSET = "X-Chunk-Offset", CHUNK_CRC32 = "X-Chunk-CRC32";
+
+	private static final String CONTENT_SHA256 = "X-Content-SHA256";
+
+	/**
+	 * The default size of the chunks of a chunked upload in bytes.
+	 */
+	public static final int DEFAULT_UPLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The default number of retries of a failed chunk of a chunked upload.
+	 */
+	public static final int DEFAULT_CHUNK_RETRIES = 3;
+
+	/**
+	 * The default directory containing the file lists written by
+	 * {@link ServerConnector}s, which is used by the CLI and the GUI. A
+	 * {@link ServerConnector} keeps its caches in memory only, unless a
+	 * directory is set by {@link #setCacheDirectory(File)}.
+	 */
+	public static final File DEFAULT_CACHE_DIRECTORY = new File(
+			System.getProperty("user.home"), ".cloudraid" + File.separator
+					+ "cache");
+
+	/**
+	 * The default directory containing the journals of chunked uploads.
+	 */
+	public static final File DEFAULT_JOURNAL_DIRECTORY = new File(
+			System.getProperty("user.home"), ".cloudraid" + File.separator
+					+ "journal");
+
+	/**
+	 * The default number of {@link CloudFile}s given to an
+	 * {@link IncrementalDataPresenter} at once.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	/**
+	 * The default number of parallel segments of a segmented download.
+	 */
+	public static final int DEFAULT_SEGMENTS = 4;
+
+	/**
+	 * The minimum size of a segment of a segmented download in bytes.
+	 */
+	public static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+	/**
+	 * The default number of parallel requests of a batch operation.
+	 */
+	public static final int DEFAULT_BATCH_PARALLELISM = 8;
+
+	/**
+	 * The maximum number of requests of segmented downloads and batch
+	 * operations running in parallel, shared by all {@link ServerConnector}s.
+	 */
+	public static final int MAX_PARALLEL_REQUESTS = 64;
+
+	/**
+	 * An operation executed for every path of a batch.
+	 */
+	private static interface BatchOperation {
+		/**
+		 * Executes the operation for a path.
+		 * 
+		 * @param path
+		 *            The path of the file on the server.
+		 * @throws IOException
+		 * @throws HTTPException
+		 */
+		void execute(String path) throws IOException, HTTPException;
+	}
+
+	/**
+	 * A request to the server that may be sent several times, see
+	 * {@link ServerConnector#perform(Metrics.Operation, boolean, Request)}.
+	 * 
+	 * @param <V>
+	 *            The type of the result.
+	 */
+	private static interface Request<V> {
+		/**
+		 * Sends the request once.
+		 * 
+		 * @return The result.
+		 * @throws IOException
+		 * @throws HTTPException
+		 */
+		V execute() throws IOException, HTTPException;
+	}
+
+	/**
+	 * A range of a file being downloaded. The position is advanced while the
+	 * bytes are written, so that a failed download can be resumed.
+	 */
+	private static class Segment {
+		private long position;
+
+		/**
+		 * The position of the last byte of the segment or -1, if the segment
+		 * reaches to the end of the file.
+		 */
+		private long end;
+
+		/**
+		 * The SHA-256 digest of the whole file sent by the server with the
+		 * segment or <code>null</code>.
+		 */
+		private String hash = null;
+
+		/**
+		 * The {@link TransferProgress} of the download or <code>null</code>.
+		 */
+		private TransferProgress progress = null;
+
+		private Segment(long position, long end, TransferProgress progress) {
+			this.position = position;
+			this.end = end;
+			this.progress = progress;
+		}
+
+		/**
+		 * Checks, if all bytes of the segment were written.
+		 * 
+		 * @param total
+		 *            The size of the file or -1, if it is unknown.
+		 * @return true, if the segment is complete.
+		 */
+		private boolean isComplete(long total) {
+			if (total >= 0 && this.position >= total) {
+				// The file ends before the end of the segment.
+				return true;
+			}
+			if (this.end >= 0) {
+				return this.position > this.end;
+			}
+			return total < 0;
+		}
+	}
+
+	private static ExecutorService parallelExecutor = null;
+
+	/**
+	 * Returns the {@link ExecutorService} running the parallel requests of
+	 * segmented downloads and batch operations of all {@link ServerConnector}s.
+	 * At most {@link #MAX_PARALLEL_REQUESTS} requests run at the same time,
+	 * on virtual threads, if they are enabled, see
+	 * {@link BoundedExecutor#isVirtualThreadsEnabled()}, or else on a fixed
+	 * pool of as many daemon threads, where further requests are queued.
+	 * 
+	 * @return The {@link ExecutorService}.
+	 */
+	private static synchronized ExecutorService getParallelExecutor() {
+		if (ServerConnector.parallelExecutor == null) {
+			if (BoundedExecutor.isVirtualThreadsEnabled()) {
+				ServerConnector.parallelExecutor = BoundedExecutor
+						.newVirtualThreadExecutor(ServerConnector.MAX_PARALLEL_REQUESTS);
+			} else {
+				ServerConnector.parallelExecutor = Executors
+						.newFixedThreadPool(ServerConnector.MAX_PARALLEL_REQUESTS,
+								AsyncServerConnector
+										.daemonThreads("CloudRAID-parallel-"));
+			}
+		}
+		return ServerConnector.parallelExecutor;
+	}
+
+	/**
+	 * Gives a chunk of the file list to {@link IncrementalDataPresenter}s.
+	 * 
+	 * @param receivers
+	 *            The {@link IncrementalDataPresenter}s.
+	 * @param chunk
+	 *            The chunk.
+	 */
+	private static void giveFileListChunk(
+			Vector<IncrementalDataPresenter> receivers,
+			ArrayList<CloudFile> chunk) {
+		List<CloudFile> unmodifiable = Collections.unmodifiableList(chunk);
+		for (IncrementalDataPresenter receiver : receivers) {
+			receiver.giveFileListChunk(unmodifiable);
+		}
+	}
+
+	/**
+	 * Returns the file a download is written to until it is complete.
+	 * 
+	 * @param destination
+	 *            The destination of the download.
+	 * @return The partial file.
+	 */
+	private static File partFile(File destination) {
+		return new File(destination.getPath() + ".part");
+	}
+
+	/**
+	 * Waits before a failed request is retried.
+	 * 
+	 * @param attempt
+	 *            The number of the failed attempt, starting with 0.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted while waiting.
+	 */
+	private static void pause(int attempt) throws InterruptedIOException {
+		try {
+			Thread.sleep(1000L * (attempt + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while retrying");
+		}
+	}
+
+	/**
+	 * Renames a completely downloaded file to its destination.
+	 * 
+	 * @param part
+	 *            The downloaded file.
+	 * @param destination
+	 *            The destination.
+	 * @throws IOException
+	 */
+	private static void rename(File part, File destination) throws IOException {
+		if (destination.exists()) {
+			destination.delete();
+		}
+		if (!part.renameTo(destination)) {
+			throw new IOException("get: could not rename " + part + " to "
+					+ destination);
+		}
+	}
+
+	/**
+	 * Returns the local file of a path on the server relative to a directory.
+	 * The paths are chosen by the server, so a path leaving the directory,
+	 * e.g. with "..", is rejected.
+	 * 
+	 * @param directory
+	 *            The directory.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @return The file.
+	 * @throws IOException
+	 *             If the path leaves the directory.
+	 */
+	static File resolve(File directory, String path) throws IOException {
+		String root = directory.getCanonicalPath();
+		if (!root.endsWith(File.separator)) {
+			root += File.separator;
+		}
+		File file = new File(directory, path);
+		if (!file.getCanonicalPath().startsWith(root)) {
+			throw new IOException("invalid file name: " + path);
+		}
+		return file;
+	}
+
+	/**
+	 * Checks, if an error shows that the session is not known to the server
+	 * any more, e.g. because the session expired or the server restarted.
+	 * 
+	 * @param e
+	 *            The {@link IOException} or {@link HTTPException}.
+	 * @return true, if the server answered with 401 (not logged in) or 503
+	 *         (session does not exist).
+	 */
+	private static boolean isSessionExpired(Exception e) {
+		if (!(e instanceof HTTPException)) {
+			return false;
+		}
+		int code = ((HTTPException) e).getHTTPCode();
+		return code == 401 || code == 503;
+	}
+
 	/**
 	 * Encodes a file name so that it can be sent to the CloudRAID server.
 	 * 
@@ -103,11 +386,129 @@ public class ServerConnector {
 	 */
 	private ServerConnection sc;
 
+	/**
+	 * The {@link ConnectionPool} providing the HTTP connections.
+	 */
+	private ConnectionPool pool;
+
 	/**
 	 * The current session ID. Either retrieved from the server or restored from
 	 * the file system.
 	 */
-	private String session = null;
+	private volatile String session = null;
+
+	/**
+	 * Serializes the renewals of expired sessions.
+	 */
+	private final Object sessionLock = new Object();
+
+	/**
+	 * Keeps the session ID in the cache directory, if the session is
+	 * persistent.
+	 */
+	private SessionStore sessionStore = new SessionStore();
+	private boolean sessionPersistent = false;
+
+	/**
+	 * The directory containing the file lists written by this
+	 * {@link ServerConnector}.
+	 */
+	private File cacheDirectory = null;
+
+	/**
+	 * The directory containing the journals of chunked uploads.
+	 */
+	private File journalDirectory = ServerConnector.DEFAULT_JOURNAL_DIRECTORY;
+
+	/**
+	 * The number of retries of a failed chunk of a chunked upload or a failed
+	 * segment of a download.
+	 */
+	private int chunkRetries = ServerConnector.DEFAULT_CHUNK_RETRIES;
+
+	/**
+	 * The number of parallel requests of a batch operation.
+	 */
+	private int batchParallelism = ServerConnector.DEFAULT_BATCH_PARALLELISM;
+
+	/**
+	 * The {@link BufferPool} providing the buffers of uploads and downloads.
+	 */
+	private BufferPool buffers = BufferPool.getDefault();
+
+	/**
+	 * The {@link CompressionPolicy} deciding how uploads are compressed.
+	 */
+	private CompressionPolicy compression = CompressionPolicy.getDefault();
+
+	/**
+	 * The {@link Metrics} recording the latencies, transferred bytes, errors
+	 * and connections.
+	 */
+	private Metrics metrics = new Metrics();
+
+	/**
+	 * The {@link RetryPolicy} deciding, if a failed idempotent request is sent
+	 * again.
+	 */
+	private RetryPolicy retryPolicy = RetryPolicy.getDefault();
+
+	/**
+	 * The {@link CircuitBreaker} stopping the requests to an unavailable
+	 * server.
+	 */
+	private CircuitBreaker circuitBreaker;
+
+	/**
+	 * The request encodings the server announced to accept.
+	 */
+	private volatile Set<String> acceptedEncodings = new HashSet<String>();
+
+	/**
+	 * Indicates, if the accepted encodings were read by this connector rather
+	 * than taken from a kept {@link ServerInfo}.
+	 */
+	private volatile boolean encodingsChecked = false;
+
+	/**
+	 * The lock for checking the accepted encodings.
+	 */
+	private final Object serverInfoLock = new Object();
+
+	/**
+	 * The last file list read from the server and its validators.
+	 */
+	private FileListCache listCache = new FileListCache();
+
+	/**
+	 * The SHA-256 digests of local files and of the files transferred to or
+	 * from the server.
+	 */
+	private ContentHashCache hashCache = new ContentHashCache();
+
+	/**
+	 * The last file list given to the {@link DeltaDataPresenter}s and the
+	 * {@link DeltaDataPresenter}s that received it.
+	 */
+	private FileIndex lastListing = null;
+	private Set<DeltaDataPresenter> deltaReceivers = Collections
+			.synchronizedSet(new HashSet<DeltaDataPresenter>());
+
+	/**
+	 * The {@link TransferListener}s receiving the progress of uploads and
+	 * downloads.
+	 */
+	private List<TransferListener> transferListeners = new CopyOnWriteArrayList<TransferListener>();
+
+	/**
+	 * Indicates, if a file list was read completely from the server.
+	 */
+	private volatile boolean listRead = false;
+
+	/**
+	 * The {@link ServerInfo} of the server.
+	 */
+	private volatile ServerInfo serverInfo;
 
 	/**
 	 * Creates a {@link ServerConnector} basing on the credentials in a
@@ -120,13 +521,50 @@ public class ServerConnector {
 	 */
 	public ServerConnector(ServerConnection sc)
 			throws IncompatibleApiVersionException, IOException {
+		this(sc, ConnectionPool.getDefault());
+	}
+
+	/**
+	 * Creates a {@link ServerConnector} basing on the credentials in a
+	 * {@link ServerConnection}. All requests use connections from the given
+	 * {@link ConnectionPool}.
+	 * 
+	 * The protocol and the API version of the server are checked by a single
+	 * request, whose result is kept as {@link ServerInfo} for the further
+	 * {@link ServerConnector}s of the server. If HTTP is given, HTTPS is tried
+	 * first and used, if it works. If HTTPS is given, but does not work, the
+	 * protocol is <em>not</em> changed to HTTP for security reasons. The
+	 * request encodings of a kept {@link ServerInfo} are checked again before
+	 * the first upload, as they may change without a new API version.
+	 * 
+	 * @param sc
+	 *            A {@link ServerConnection}.
+	 * @param pool
+	 *            A {@link ConnectionPool}.
+	 * @throws IncompatibleApiVersionException
+	 * @throws IOException
+	 */
+	public ServerConnector(ServerConnection sc, ConnectionPool pool)
+			throws IncompatibleApiVersionException, IOException {
 		this.sc = sc;
-		if (validateProtocol() != 200) {
-			throw new IOException("Unexpected response from server.");
-		}
-		if (!validateApi()) {
-			throw new IncompatibleApiVersionException();
+		this.pool = pool;
+		String server = sc.getServer() + ":" + sc.getPort();
+		this.circuitBreaker = CircuitBreaker.forServer(server);
+		ServerInfo info = ServerInfo.get(server);
+		if (info == null || sc.isSecureConnection() && !info.isSecure()) {
+			info = this.probeServer();
+			String wantedVersion = "CloudRAID/" + ServerConnector.API_VERSION;
+			if (!wantedVersion.equals(info.getPoweredBy())) {
+				throw new IncompatibleApiVersionException();
+			}
+			ServerInfo.put(server, info);
+			this.encodingsChecked = true;
+		} else {
+			sc.setSecureConnection(info.isSecure());
 		}
+		this.serverInfo = info;
+		this.acceptedEncodings = CompressionPolicy.parseAcceptEncoding(info
+				.getAcceptEncoding());
 	}
 
 	/**
@@ -146,6 +584,17 @@ public class ServerConnector {
 		this.dataPresenters.add(dp);
 	}
 
+	/**
+	 * Returns the server, port and user of this {@link ServerConnector}, which
+	 * identify the files in the cache directory.
+	 * 
+	 * @return The account.
+	 */
+	private String account() {
+		return this.sc.getServer() + ":" + this.sc.getPort() + "/"
+				+ this.sc.getUser();
+	}
+
 	/**
 	 * Changes the password of the user currently logged in.
 	 * 
@@ -159,8 +608,7 @@ public class ServerConnector {
 	 */
 	public void changePassword(String newPassword, String newPasswordConfirm)
 			throws IOException, HTTPException {
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL(
-				"/user/chgpw/").openConnection();
+		HttpURLConnection con = this.openConnection("/user/chgpw/");
 		con.setRequestMethod(ServerConnector.POST);
 		con.setRequestProperty(ServerConnector.COOKIE, this.session);
 		con.setRequestProperty(ServerConnector.USER, this.sc.getUser());
@@ -191,7 +639,91 @@ public class ServerConnector {
 						+ ServerConnector.HTTP_UNKNOWN);
 			}
 		} finally {
-			con.disconnect();
+			this.release(con);
+		}
+	}
+
+	/**
+	 * Sends a request without body belonging to a chunked upload.
+	 * 
+	 * @param method
+	 *            The HTTP method.
+	 * @param resource
+	 *            The path of the resource on the server.
+	 * @param kind
+	 *            The prefix of the error messages.
+	 * @param headers
+	 *            The names and values of additional request headers.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void chunkedUploadRequest(String method, String resource,
+			String kind, String... headers) throws IOException, HTTPException {
+		HttpURLConnection con = this.openConnection(resource);
+		// The server answers a commit only after it has stored the file on
+		// its backends, which takes as long as the upload needs.
+		con.setReadTimeout(0);
+		con.setRequestMethod(method);
+		con.setRequestProperty(ServerConnector.COOKIE, this.session);
+		for (int i = 0; i + 1 < headers.length; i += 2) {
+			con.setRequestProperty(headers[i], headers[i + 1]);
+		}
+		con.connect();
+		try {
+			switch (con.getResponseCode()) {
+			case 200:
+			case 201:
+				break;
+			case 401:
+				throw new HTTPException(401, kind + ServerConnector.HTTP401);
+			case 404:
+				throw new HTTPException(404, kind + ServerConnector.HTTP404);
+			case 405:
+				throw new HTTPException(405, kind + ServerConnector.HTTP405);
+			case 409:
+				throw new HTTPException(409, kind + ServerConnector.HTTP409);
+			case 503:
+				throw new HTTPException(503, kind + ServerConnector.HTTP503);
+			default:
+				throw new HTTPException(con.getResponseCode(), kind
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
+		} finally {
+			this.release(con);
+		}
+	}
+
+	/**
+	 * Copies a stream into a {@link FileChannel} at the position of a
+	 * {@link Segment} and advances the position with every buffer written.
+	 * 
+	 * @param is
+	 *            The stream.
+	 * @param out
+	 *            The {@link FileChannel}.
+	 * @param segment
+	 *            The {@link Segment}.
+	 * @throws IOException
+	 */
+	private void copy(InputStream is, FileChannel out, Segment segment)
+			throws IOException {
+		ByteBuffer buf = this.buffers.acquire();
+		try {
+			int len;
+			while ((len = is.read(buf.array(), buf.arrayOffset(),
+					buf.capacity())) != -1) {
+				BufferPool.checkInterrupted();
+				buf.limit(len);
+				while (buf.hasRemaining()) {
+					segment.position += out.write(buf, segment.position);
+				}
+				if (segment.progress != null) {
+					segment.progress.add(len);
+				}
+				buf.clear();
+			}
+		} finally {
+			this.buffers.release(buf);
 		}
 	}
 
@@ -205,8 +737,7 @@ public class ServerConnector {
 	 * @throws HTTPException
 	 */
 	public void createUser(String conf) throws IOException, HTTPException {
-		HttpURLConnection con = (HttpURLConnection) this.sc
-				.getURL("/user/add/").openConnection();
+		HttpURLConnection con = this.openConnection("/user/add/");
 		con.setRequestMethod(ServerConnector.POST);
 		con.setRequestProperty(ServerConnector.USER, this.sc.getUser());
 		con.setRequestProperty(ServerConnector.PASSW, this.sc.getPassword());
@@ -230,10 +761,22 @@ public class ServerConnector {
 						ServerConnector.HTTP_UNKNOWN);
 			}
 		} finally {
-			con.disconnect();
+			this.release(con);
 		}
 	}
 
+	/**
+	 * Closes a connection instead of handing it back to the
+	 * {@link ConnectionPool}.
+	 * 
+	 * @param con
+	 *            The connection.
+	 */
+	private void disconnect(HttpURLConnection con) {
+		con.disconnect();
+		this.metrics.connectionClosed();
+	}
+
 	/**
 	 * Deletes a file on the server.
 	 * 
@@ -242,16 +785,36 @@ public class ServerConnector {
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
-	public void deleteFile(String path) throws IOException, HTTPException {
+	public void deleteFile(final String path) throws IOException,
+			HTTPException {
+		this.perform(Metrics.Operation.DELETE, true, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.deleteFileOnce(path);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends the request of {@link #deleteFile(String)} once.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void deleteFileOnce(String path) throws IOException, HTTPException {
+		String name = path;
 		path = urlEncodeFileNames(path);
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL(
-				"/file/" + path + "/").openConnection();
+		HttpURLConnection con = this.openConnection("/file/" + path + "/");
 		con.setRequestMethod(ServerConnector.DELETE);
 		con.setRequestProperty(ServerConnector.COOKIE, this.session);
 		con.connect();
 		try {
 			switch (con.getResponseCode()) {
 			case 200:
+				this.hashCache.removeRemote(name);
 				break;
 			case 401:
 				throw new HTTPException(401, "delete: "
@@ -272,50 +835,150 @@ public class ServerConnector {
 						+ ServerConnector.HTTP_UNKNOWN);
 			}
 		} finally {
-			con.disconnect();
+			this.release(con);
 		}
 	}
 
 	/**
-	 * Returns information about the CloudRAID server.
+	 * Deletes several files on the server. The requests are sent in parallel
+	 * over pooled connections, at most {@link #getBatchParallelism()} at the
+	 * same time. A failed deletion does not stop the others.
 	 * 
-	 * @return The information.
-	 * @throws IOException
-	 * @throws HTTPException
+	 * @param paths
+	 *            The paths of the files on the server.
+	 * @return The {@link BatchResult} containing the errors of the failed
+	 *         deletions.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted. Deletions not started yet are
+	 *             skipped.
 	 */
-	public String getApiInfo() throws IOException, HTTPException {
-		HttpURLConnection con = null;
-		con = (HttpURLConnection) this.sc.getURL("/api/info/").openConnection();
-		con.setRequestMethod(ServerConnector.GET);
-		con.setRequestProperty("Accept-Encoding", "gzip");
-		con.setDoInput(true);
-		InputStream is = null;
-		StringBuilder sb = new StringBuilder();
-		try {
-			con.connect();
-			if (con.getResponseCode() != 200) {
-				throw new HTTPException(con.getResponseCode(),
-						ServerConnector.HTTP_UNKNOWN);
+	public BatchResult deleteFiles(Collection<String> paths)
+			throws InterruptedIOException {
+		return this.runBatch(paths, new BatchOperation() {
+			@Override
+			public void execute(String path) throws IOException,
+					HTTPException {
+				ServerConnector.this.deleteFile(path);
 			}
-			is = new GZIPInputStream(con.getInputStream());
-			int c;
-			while ((c = is.read()) != -1) {
-				sb.append((char) c);
+		});
+	}
+
+	/**
+	 * Encodes a file into the request body of an upload. CloudRAID servers
+	 * require a <code>Content-Length</code>, so a compressed upload is
+	 * written to a temporary file first and sent from there. The file is read
+	 * only once and the body sent is exactly what was read, even if the file
+	 * is modified in the meantime.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param body
+	 *            The file receiving the encoded body.
+	 * @param encoding
+	 *            The <code>Content-Encoding</code> of the upload.
+	 * @param level
+	 *            The compression level.
+	 * @param digest
+	 *            The {@link MessageDigest} updated with the bytes of the file
+	 *            or <code>null</code>.
+	 * @return The number of bytes read from the file.
+	 * @throws IOException
+	 */
+	private long encode(File file, File body, String encoding, int level,
+			MessageDigest digest) throws IOException {
+		FileInputStream is = new FileInputStream(file);
+		try {
+			OutputStream os = this.compression.open(
+					new FileOutputStream(body), encoding, level,
+					this.buffers.getBufferSize());
+			try {
+				return this.buffers.copy(is.getChannel(), os, digest);
+			} finally {
+				os.close();
 			}
 		} finally {
 			try {
-				if (is != null) {
-					is.close();
-				}
+				is.close();
 			} catch (IOException ignore) {
 			}
-			con.disconnect();
 		}
-		return sb.toString();
 	}
 
 	/**
-	 * Gets a file from the server.
+	 * Returns the request encodings the server accepts. If they were taken
+	 * from a kept {@link ServerInfo}, they are read again by a request to
+	 * <code>/api/info/</code> the first time, so that a server accepting other
+	 * encodings since is noticed by the next {@link ServerConnector}. If the
+	 * request fails, the kept encodings are used; if the API version has
+	 * changed, the {@link ServerInfo} is forgotten.
+	 * 
+	 * @return The encodings.
+	 */
+	private Set<String> getAcceptedEncodings() {
+		if (this.encodingsChecked) {
+			return this.acceptedEncodings;
+		}
+		synchronized (this.serverInfoLock) {
+			if (this.encodingsChecked) {
+				return this.acceptedEncodings;
+			}
+			this.encodingsChecked = true;
+			String server = this.sc.getServer() + ":" + this.sc.getPort();
+			try {
+				ServerInfo info = this.requestServerInfo(System.nanoTime());
+				String version = this.serverInfo.getPoweredBy();
+				if (version.equals(info.getPoweredBy())) {
+					ServerInfo.put(server, info);
+					this.serverInfo = info;
+					this.acceptedEncodings = CompressionPolicy
+							.parseAcceptEncoding(info.getAcceptEncoding());
+				} else {
+					ServerInfo.forget(server);
+				}
+			} catch (IOException e) {
+				// The kept encodings are used.
+			}
+			return this.acceptedEncodings;
+		}
+	}
+
+	/**
+	 * Returns information about the CloudRAID server. It is read when the
+	 * server is checked, see {@link #getServerInfo()}.
+	 * 
+	 * @return The information.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public String getApiInfo() throws IOException, HTTPException {
+		return this.serverInfo.getInfo();
+	}
+
+	/**
+	 * Gets a file from the server. The SHA-256 digest of the file is computed
+	 * while it is written. If the server sends the digest of the file, the
+	 * download is verified and a corrupted file is deleted.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void getFile(final String path, final File destination)
+			throws IOException, HTTPException {
+		this.perform(Metrics.Operation.GET, true, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.getFileOnce(path, destination);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends the request of {@link #getFile(String, File)} once.
 	 * 
 	 * @param path
 	 *            The path of the file on the server.
@@ -324,33 +987,38 @@ public class ServerConnector {
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
-	public void getFile(String path, File destination) throws IOException,
+	private void getFileOnce(String path, File destination) throws IOException,
 			HTTPException {
+		String name = path;
 		path = urlEncodeFileNames(path);
 		InputStream is = null;
-		OutputStream os = null;
+		FileOutputStream os = null;
 		destination.getParentFile().mkdirs();
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL(
-				"/file/" + path + "/").openConnection();
+		HttpURLConnection con = this.openConnection("/file/" + path + "/");
 		con.setRequestMethod(ServerConnector.GET);
 		con.setRequestProperty("Accept-Encoding", "gzip");
 		con.setRequestProperty(ServerConnector.COOKIE, this.session);
 		con.setDoInput(true);
 		con.connect();
+		TransferProgress progress = null;
+		boolean success = false;
 		try {
 			switch (con.getResponseCode()) {
 			case 200:
 				if (destination.exists()) {
 					destination.delete();
 				}
-				is = new GZIPInputStream(con.getInputStream());
+				// The length of a compressed body is not the size of the file.
+				progress = this.startTransfer(name, false, con
+						.getContentEncoding() == null ? con
+						.getContentLengthLong() : -1L, 0L);
+				is = progress.wrap(CompressionPolicy.decode(
+						con.getInputStream(), con.getContentEncoding(),
+						this.buffers.getBufferSize()));
 				os = new FileOutputStream(destination);
-				byte[] buf = new byte[4096];
-				int len;
+				MessageDigest digest = ContentHashCache.newDigest();
 				try {
-					while ((len = is.read(buf)) != -1) {
-						os.write(buf, 0, len);
-					}
+					this.buffers.copy(is, os.getChannel(), 0, digest);
 				} finally {
 					try {
 						is.close();
@@ -361,6 +1029,11 @@ public class ServerConnector {
 					} catch (IOException ignore) {
 					}
 				}
+				String hash = this.verify(destination,
+						ContentHashCache.toHex(digest.digest()),
+						con.getHeaderField(ServerConnector.CONTENT_SHA256));
+				this.verified(name, destination, hash);
+				success = true;
 				break;
 			case 401:
 				throw new HTTPException(401, "get: " + ServerConnector.HTTP401);
@@ -375,320 +1048,2248 @@ public class ServerConnector {
 						+ ServerConnector.HTTP_UNKNOWN);
 			}
 		} finally {
-			con.disconnect();
+			if (progress != null) {
+				this.finishTransfer(progress, success);
+			}
+			this.release(con);
 		}
 	}
 
+	/**
+	 * Gets several files from the server. The requests are sent in parallel
+	 * over pooled connections, at most {@link #getBatchParallelism()} at the
+	 * same time. Every file is written to the path of the file on the server
+	 * relative to the given directory. A failed download does not stop the
+	 * others. Paths leaving the directory fail, see
+	 * {@link #resolve(File, String)}.
+	 * 
+	 * @param paths
+	 *            The paths of the files on the server.
+	 * @param directory
+	 *            The directory the files are written to.
+	 * @return The {@link BatchResult} containing the errors of the failed
+	 *         downloads.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted. Downloads not started yet are
+	 *             skipped.
+	 */
+	public BatchResult getFiles(Collection<String> paths, final File directory)
+			throws InterruptedIOException {
+		return this.runBatch(paths, new BatchOperation() {
+			@Override
+			public void execute(String path) throws IOException,
+					HTTPException {
+				ServerConnector.this.getFile(path,
+						ServerConnector.resolve(directory, path));
+			}
+		});
+	}
+
 	/**
 	 * Retrieves a file list from the server. The file list is automated given
 	 * to every {@link DataPresenter} registered with this
-	 * {@link ServerConnector}.
+	 * {@link ServerConnector}. Registered {@link IncrementalDataPresenter}s
+	 * receive the file list in chunks while it is read. Registered
+	 * {@link DeltaDataPresenter}s only receive the changes since the last
+	 * file list.
+	 * 
+	 * If the server sent validators with the last file list, the request is
+	 * conditional. If the list did not change, the cached list is returned
+	 * and given to the {@link DataPresenter}s without reading it again.
 	 * 
 	 * @return An {@link ArrayList} of {@link CloudFile}s.
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
 	public Vector<CloudFile> getFileList() throws IOException, HTTPException {
-		Vector<CloudFile> ret = new Vector<CloudFile>();
-		BufferedReader br = null;
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL("/list/")
-				.openConnection();
-		con.setRequestProperty("Accept-Encoding", "gzip");
-		con.setRequestMethod(ServerConnector.GET);
-		con.setRequestProperty(ServerConnector.COOKIE, this.session);
-		con.connect();
-		try {
-
-			switch (con.getResponseCode()) {
-			case 200:
-				br = new BufferedReader(new InputStreamReader(
-						new GZIPInputStream(con.getInputStream())));
-				String line;
-				while ((line = br.readLine()) != null) {
-					if ("".equals(line) || line.length() < 3) {
-						continue;
-					}
-					// "name","hash","1970-01-01 01:00:00.0","STATE"
-					String[] parts = line.substring(1, line.length() - 1)
-							.split("\",\"");
-					if (parts.length != 4) {
-						continue;
+		return this.perform(Metrics.Operation.LIST, true,
+				new Request<Vector<CloudFile>>() {
+					@Override
+					public Vector<CloudFile> execute() throws IOException,
+							HTTPException {
+						return ServerConnector.this.getFileListOnce();
 					}
-					for (int i = 0; i < parts.length; i++) {
-						parts[i] = parts[i].replaceAll("&quot;", "\"")
-								.replaceAll("&amp;", "&");
-					}
-					Date date;
-					try {
-						date = this.cloudraidDateFormat.parse(parts[2]);
-					} catch (ParseException e) {
-						continue;
-					}
-					ret.add(new CloudFile(this, parts[0], parts[3], date
-							.getTime(), parts[1]));
+				});
+	}
+
+	/**
+	 * Sends the requests of {@link #getFileList()} once.
+	 * 
+	 * @return An {@link ArrayList} of {@link CloudFile}s.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private Vector<CloudFile> getFileListOnce() throws IOException,
+			HTTPException {
+		Vector<CloudFile> ret = new Vector<CloudFile>();
+		Vector<IncrementalDataPresenter> receivers = new Vector<IncrementalDataPresenter>();
+		boolean deltas = false;
+		for (DataPresenter dp : this.dataPresenters) {
+			if (dp instanceof DeltaDataPresenter) {
+				deltas = true;
+				if (this.deltaReceivers.contains(dp)) {
+					continue;
 				}
-				break;
-			case 401:
-				throw new HTTPException(401, "list: " + ServerConnector.HTTP401);
-			case 405:
-				throw new HTTPException(405, "list: " + ServerConnector.HTTP405);
-			case 500:
-				throw new HTTPException(500,
-						"list: error getting the file information");
-			case 503:
-				throw new HTTPException(503, "list: " + ServerConnector.HTTP503);
-			default:
-				throw new HTTPException(con.getResponseCode(), "list: "
-						+ ServerConnector.HTTP_UNKNOWN);
 			}
-		} finally {
-			try {
-				br.close();
-			} catch (Exception ignore) {
+			if (dp instanceof IncrementalDataPresenter) {
+				receivers.add((IncrementalDataPresenter) dp);
 			}
-			con.disconnect();
+		}
+		FileIndex index = deltas ? new FileIndex(this) : null;
+		if (!this.readFileList(receivers, ret, index,
+				ServerConnector.DEFAULT_CHUNK_SIZE, true)) {
+			ret = this.listCache.getFiles();
+			if (ret == null) {
+				// The cache was cleared in the meantime.
+				ret = new Vector<CloudFile>();
+				index = deltas ? new FileIndex(this) : null;
+				this.readFileList(receivers, ret, index,
+						ServerConnector.DEFAULT_CHUNK_SIZE, false);
+			} else {
+				if (deltas) {
+					index = this.listCache.getIndex(this);
+					if (index == null) {
+						index = new FileIndex(this);
+						for (CloudFile file : ret) {
+							index.add(file.getName(), file.getHashedName(),
+									file.getLastModTime(), file.getState());
+						}
+					}
+				}
+				for (IncrementalDataPresenter receiver : receivers) {
+					receiver.beginFileList();
+				}
+				int size = ServerConnector.DEFAULT_CHUNK_SIZE;
+				for (int i = 0; i < ret.size(); i += size) {
+					giveFileListChunk(receivers, new ArrayList<CloudFile>(
+							ret.subList(i, Math.min(ret.size(), i + size))));
+				}
+				for (IncrementalDataPresenter receiver : receivers) {
+					receiver.endFileList(true);
+				}
+			}
+		}
+		if (index != null) {
+			this.giveFileListDelta(index, receivers);
 		}
 		for (DataPresenter dp : this.dataPresenters) {
-			dp.giveFileList(ret);
+			if (!(dp instanceof IncrementalDataPresenter)
+					&& !(dp instanceof DeltaDataPresenter)) {
+				dp.giveFileList(ret);
+			}
 		}
+		this.setRemoteLastMods(ret);
 		return ret;
 	}
 
 	/**
-	 * Logs in to the server with the data from the constructor's
-	 * {@link ServerConnection}. If the login is <b>not</b> successful an
-	 * {@link HTTPException} will be thrown. If there is a problem as an
-	 * unreachable server, an {@link IOException} will be thrown.
+	 * Retrieves the file list from the server and stores it in a compact
+	 * {@link FileIndex}. No {@link CloudFile} objects are created while the
+	 * list is read. Only the registered {@link DeltaDataPresenter}s are given
+	 * the changes of the list. Like {@link #getFileList()}, the request is
+	 * conditional, if possible.
 	 * 
+	 * @return The {@link FileIndex}.
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
-	public void login() throws IOException, HTTPException {
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL(
-				"/user/auth/").openConnection();
-		con.setRequestMethod(ServerConnector.POST);
-		con.setRequestProperty(ServerConnector.USER, this.sc.getUser());
-		con.setRequestProperty(ServerConnector.PASSW, this.sc.getPassword());
-		con.connect();
-		try {
-			switch (con.getResponseCode()) {
-			case 202:
-				for (String s : con.getHeaderField(ServerConnector.SET_COOKIE)
-						.split(";")) {
-					if (s.startsWith("JSESSIONID=")) {
-						this.session = s;
+	public FileIndex getFileIndex() throws IOException, HTTPException {
+		return this.perform(Metrics.Operation.LIST, true,
+				new Request<FileIndex>() {
+					@Override
+					public FileIndex execute() throws IOException,
+							HTTPException {
+						return ServerConnector.this.getFileIndexOnce();
 					}
-				}
+				});
+	}
+
+	/**
+	 * Sends the requests of {@link #getFileIndex()} once.
+	 * 
+	 * @return The {@link FileIndex}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private FileIndex getFileIndexOnce() throws IOException, HTTPException {
+		FileIndex index = this.readFileIndex();
+		for (DataPresenter dp : this.dataPresenters) {
+			if (dp instanceof DeltaDataPresenter) {
+				this.giveFileListDelta(index.copy(),
+						new Vector<IncrementalDataPresenter>());
 				break;
-			case 403:
-				throw new HTTPException(403, "login: pw/user wrong");
-			case 406:
-				throw new HTTPException(406, "login: "
-						+ ServerConnector.HTTP406);
-			case 503:
-				throw new HTTPException(503,
-						"login: session could not be created");
-			default:
-				throw new HTTPException(con.getResponseCode(), "login: "
-						+ ServerConnector.HTTP_UNKNOWN);
 			}
-		} finally {
-			con.disconnect();
 		}
+		return index;
 	}
 
 	/**
-	 * Ends a session on the server. An {@link HTTPException} will be thrown, if
-	 * there is another HTTP status than 200.
+	 * Retrieves a file from the server and resumes an earlier, failed
+	 * download of the same file. The data is written to
+	 * <code>&lt;destination&gt;.part</code> first, which is renamed to the
+	 * destination when the download is complete. If the partial file exists,
+	 * only the missing bytes are requested with an HTTP Range request. If the
+	 * server ignores the range, the whole file is downloaded again. If the
+	 * server sends the SHA-256 digest of the file, the complete file is
+	 * verified before it is renamed.
 	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
-	public void logout() throws IOException, HTTPException {
-		boolean resetSession = true;
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL(
-				"/user/auth/logout/").openConnection();
-		con.setRequestMethod(ServerConnector.GET);
-		con.setRequestProperty(ServerConnector.COOKIE, this.session);
-		con.connect();
-		try {
-			switch (con.getResponseCode()) {
-			case 200:
-				break;
-			case 401:
-				throw new HTTPException(401, "logout: "
-						+ ServerConnector.HTTP401);
-			case 405:
-				resetSession = false;
-				throw new HTTPException(405, "logout: "
-						+ ServerConnector.HTTP405);
-			case 503:
-				throw new HTTPException(503, "logout: "
-						+ ServerConnector.HTTP503);
-			default:
-				resetSession = false;
-				throw new HTTPException(con.getResponseCode(), "logout: "
-						+ ServerConnector.HTTP_UNKNOWN);
-			}
-		} finally {
-			if (resetSession) {
-				this.session = null;
+	public void getFileResumable(final String path, final File destination)
+			throws IOException, HTTPException {
+		this.perform(Metrics.Operation.GET, true, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.getFileResumableOnce(path, destination);
+				return null;
 			}
-			con.disconnect();
-		}
+		});
 	}
 
 	/**
-	 * Sends a file to the server.
+	 * Sends the request of {@link #getFileResumable(String, File)} once.
 	 * 
 	 * @param path
 	 *            The path of the file on the server.
-	 * @param inFile
-	 *            The file to read the data from.
-	 * @param update
-	 *            Set to <code>true</code>, if the file shall be
-	 *            updated/overwritten.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
 	 * @throws IOException
 	 * @throws HTTPException
 	 */
-	public void putFile(String path, File inFile, boolean update)
+	private void getFileResumableOnce(String path, File destination)
 			throws IOException, HTTPException {
+		String name = path;
 		path = urlEncodeFileNames(path);
-		HttpURLConnection con = (HttpURLConnection) this.sc.getURL(
-				"/file/" + path + "/").openConnection();
-		String kind;
-		if (update) {
-			con.setRequestMethod(ServerConnector.PUT);
-			kind = "put: ";
-		} else {
-			con.setRequestMethod(ServerConnector.POST);
-			kind = "post: ";
-		}
-		con.setRequestProperty("Accept-Encoding", "gzip");
-		con.setRequestProperty(ServerConnector.COOKIE, this.session);
-		con.setRequestProperty(ServerConnector.CONTENT_LENGTH,
-				String.valueOf(inFile.length()));
-		con.setDoOutput(true);
-		con.connect();
-		InputStream is = new FileInputStream(inFile);
-		OutputStream os = new GZIPOutputStream(con.getOutputStream());
+		destination.getAbsoluteFile().getParentFile().mkdirs();
+		File part = partFile(destination);
+		TransferProgress progress = this.startTransfer(name, false, -1L,
+				part.length());
+		boolean success = false;
 		try {
-			byte[] buf = new byte[4096];
-			int len;
-			while ((len = is.read(buf)) > 0) {
-				os.write(buf, 0, len);
-			}
-			os.close();
-			switch (con.getResponseCode()) {
-			case 200:
-			case 201:
-				break;
-			case 401:
-				throw new HTTPException(401, kind + ServerConnector.HTTP401);
-			case 404:
-				throw new HTTPException(404, kind + ServerConnector.HTTP404);
-			case 405:
-				throw new HTTPException(405, kind + ServerConnector.HTTP405);
-			case 409:
-				throw new HTTPException(409, kind + ServerConnector.HTTP409);
-			case 411:
-				throw new HTTPException(411, kind + ServerConnector.HTTP411);
-			case 503:
-				throw new HTTPException(503, kind + ServerConnector.HTTP503);
-			default:
-				throw new HTTPException(con.getResponseCode(), "put: "
-						+ ServerConnector.HTTP_UNKNOWN);
-			}
-		} finally {
-			try {
-				is.close();
-			} catch (IOException ignore) {
-			}
+			RandomAccessFile raf = new RandomAccessFile(part, "rw");
+			Segment segment;
 			try {
-				os.close();
-			} catch (IOException ignore) {
+				FileChannel out = raf.getChannel();
+				long[] total = { -1L };
+				segment = new Segment(out.size(), -1L, progress);
+				try {
+					this.getSegment(path, out, segment, total);
+				} catch (HTTPException e) {
+					if (e.getHTTPCode() != 416 || segment.position == 0) {
+						throw e;
+					}
+					// The partial file does not match the file on the server.
+					out.truncate(0);
+					segment = new Segment(0, -1L, progress);
+					this.getSegment(path, out, segment, total);
+				}
+				out.truncate(segment.position);
+			} finally {
+				raf.close();
 			}
-			con.disconnect();
+			String hash = this.verify(part, null, segment.hash);
+			rename(part, destination);
+			this.verified(name, destination, hash);
+			success = true;
+		} finally {
+			this.finishTransfer(progress, success);
 		}
 	}
 
 	/**
-	 * Registers a {@link DataPresenter} with this {@link ServerConnector}.
+	 * Retrieves a file from the server with {@link #DEFAULT_SEGMENTS} parallel
+	 * segments. See {@link #getFileSegmented(String, File, int)}.
 	 * 
-	 * @param dp
-	 *            A {@link DataPresenter}.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
+	 * @throws IOException
+	 * @throws HTTPException
 	 */
-	public void registerDataPresenter(DataPresenter dp) {
+	public void getFileSegmented(String path, File destination)
+			throws IOException, HTTPException {
+		this.getFileSegmented(path, destination,
+				ServerConnector.DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * Retrieves a file from the server as several segments, which are
+	 * requested in parallel with HTTP Range requests. The first request
+	 * determines the size of the file, which is then allocated in
+	 * <code>&lt;destination&gt;.part</code>. The remaining bytes are split
+	 * into at most <code>segments</code> segments of at least
+	 * {@link #MIN_SEGMENT_SIZE} bytes, which are written to their positions of
+	 * the file. The segments run on an executor shared by all
+	 * {@link ServerConnector}s, see {@link #MAX_PARALLEL_REQUESTS}. If a
+	 * segment fails, the others are stopped and the download is retried as a
+	 * whole according to the {@link RetryPolicy}. If the server ignores the
+	 * range of the first request, the whole file is read from that response
+	 * like by {@link #getFile(String, File)}. If the server sends the SHA-256
+	 * digest of the file, the complete file is verified before it is renamed.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
+	 * @param segments
+	 *            The maximum number of parallel segments. With 1 or less, the
+	 *            file is downloaded like by
+	 *            {@link #getFileResumable(String, File)}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void getFileSegmented(final String path, final File destination,
+			final int segments) throws IOException, HTTPException {
+		if (segments <= 1) {
+			this.getFileResumable(path, destination);
+			return;
+		}
+		this.perform(Metrics.Operation.GET, true, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.getFileSegmentedOnce(path, destination,
+						segments);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends the requests of {@link #getFileSegmented(String, File, int)} once.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
+	 * @param segments
+	 *            The maximum number of parallel segments, at least 2.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void getFileSegmentedOnce(String path, File destination,
+			int segments) throws IOException, HTTPException {
+		final String encoded = urlEncodeFileNames(path);
+		destination.getAbsoluteFile().getParentFile().mkdirs();
+		File part = partFile(destination);
+		final TransferProgress progress = this.startTransfer(path, false,
+				-1L, 0L);
+		boolean success = false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(part, "rw");
+			Segment first = new Segment(0,
+					ServerConnector.MIN_SEGMENT_SIZE - 1, progress);
+			try {
+				final FileChannel out = raf.getChannel();
+				final long[] total = { -1L };
+				if (this.getSegment(encoded, out, first, total) == 200) {
+					// The server ignored the range and sent the whole file.
+					out.truncate(first.position);
+				} else if (total[0] < 0) {
+					// The size is unknown, so the rest is read in one piece.
+					Segment rest = new Segment(first.position, -1L,
+							progress);
+					this.getSegment(encoded, out, rest, total);
+					out.truncate(rest.position);
+				} else if (first.position < total[0]) {
+					raf.setLength(total[0]);
+					long start = first.position;
+					long remaining = total[0] - start;
+					int n = (int) Math.max(1L, Math.min(segments, remaining
+							/ ServerConnector.MIN_SEGMENT_SIZE));
+					long size = (remaining + n - 1) / n;
+					ExecutorService executor = ServerConnector
+							.getParallelExecutor();
+					Vector<Future<Object>> futures = new Vector<Future<Object>>();
+					try {
+						for (long pos = start; pos < total[0]; pos += size) {
+							final Segment segment = new Segment(pos, Math.min(
+									pos + size, total[0]) - 1, progress);
+							futures.add(executor.submit(new Callable<Object>() {
+								@Override
+								public Object call() throws Exception {
+									ServerConnector.this.getSegment(encoded,
+											out, segment, total);
+									return null;
+								}
+							}));
+						}
+						for (Future<Object> future : futures) {
+							try {
+								future.get();
+							} catch (InterruptedException e) {
+								Thread.currentThread().interrupt();
+								throw new InterruptedIOException(
+										"get: download interrupted");
+							} catch (ExecutionException e) {
+								if (e.getCause() instanceof IOException) {
+									throw (IOException) e.getCause();
+								} else if (e.getCause() instanceof HTTPException) {
+									throw (HTTPException) e.getCause();
+								}
+								throw new IOException(e.getCause());
+							}
+						}
+					} finally {
+						// Stop the remaining segments, if one failed.
+						for (Future<Object> future : futures) {
+							future.cancel(true);
+						}
+					}
+				}
+			} finally {
+				raf.close();
+			}
+			String hash = this.verify(part, null, first.hash);
+			rename(part, destination);
+			this.verified(path, destination, hash);
+			success = true;
+		} finally {
+			this.finishTransfer(progress, success);
+		}
+	}
+
+	/**
+	 * Returns the number of parallel requests of a batch operation.
+	 * 
+	 * @return The number of requests.
+	 */
+	public int getBatchParallelism() {
+		return this.batchParallelism;
+	}
+
+	/**
+	 * Returns the {@link Metrics} recording the latencies of the operations,
+	 * the transferred bytes, the errors and the use of the connections.
+	 * 
+	 * @return The {@link Metrics}.
+	 */
+	public Metrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Returns the {@link BufferPool} providing the buffers of uploads and
+	 * downloads.
+	 * 
+	 * @return The {@link BufferPool}.
+	 */
+	public BufferPool getBufferPool() {
+		return this.buffers;
+	}
+
+	/**
+	 * Returns the {@link CircuitBreaker} stopping the requests to an
+	 * unavailable server.
+	 * 
+	 * @return The {@link CircuitBreaker}.
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * Returns the {@link CompressionPolicy} deciding how uploads are
+	 * compressed.
+	 * 
+	 * @return The {@link CompressionPolicy}.
+	 */
+	public CompressionPolicy getCompressionPolicy() {
+		return this.compression;
+	}
+
+	/**
+	 * Returns the SHA-256 digest of a local file. The digest is cached, so that
+	 * the file is only read again, if its size or modification date changed.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The digest as hexadecimal String.
+	 * @throws IOException
+	 */
+	public String getContentHash(File file) throws IOException {
+		String hash = this.hashCache.getLocal(file);
+		if (hash == null) {
+			hash = ContentHashCache.hash(file, this.buffers);
+			this.hashCache.putLocal(file, hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * Returns the directory containing the file lists written by this
+	 * {@link ServerConnector}.
+	 * 
+	 * @return The directory or <code>null</code>, if the file lists are not
+	 *         written, which is the default.
+	 */
+	public File getCacheDirectory() {
+		return this.cacheDirectory;
+	}
+
+	/**
+	 * Returns the number of retries of a failed chunk of a chunked upload.
+	 * 
+	 * @return The number of retries.
+	 */
+	public int getChunkRetries() {
+		return this.chunkRetries;
+	}
+
+	/**
+	 * Returns the directory containing the journals of chunked uploads.
+	 * 
+	 * @return The directory.
+	 */
+	public File getJournalDirectory() {
+		return this.journalDirectory;
+	}
+
+	/**
+	 * Returns the {@link RetryPolicy} deciding, if a failed idempotent request
+	 * is sent again.
+	 * 
+	 * @return The {@link RetryPolicy}.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return this.retryPolicy;
+	}
+
+	/**
+	 * Returns the {@link ServerInfo} of the server, which was found when the
+	 * first {@link ServerConnector} of the server was created or checked
+	 * again before the first upload.
+	 * 
+	 * @return The {@link ServerInfo}.
+	 */
+	public ServerInfo getServerInfo() {
+		return this.serverInfo;
+	}
+
+	/**
+	 * Checks, if the session is kept in the cache directory.
+	 * 
+	 * @return true, if the session is kept.
+	 */
+	public boolean isSessionPersistent() {
+		return this.sessionPersistent;
+	}
+
+	/**
+	 * Checks, if an update of a file on the server can be skipped. That is
+	 * the case, if the local file has the same content as the file last
+	 * transferred to or from the path by this client, and if the file list of
+	 * the server confirms, that the file still has the modification date it
+	 * had after the transfer, see {@link ContentHashCache}. The file list is
+	 * only requested, if the contents match, and it is revalidated with a
+	 * conditional request, if possible. It is not given to the
+	 * {@link DataPresenter}s. If the file list cannot be read, the update is
+	 * not skipped.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param file
+	 *            The local file.
+	 * @return true, if the file on the server is known to be unchanged.
+	 * @throws IOException
+	 *             If the local file cannot be read.
+	 */
+	private boolean isUnchanged(String path, File file) throws IOException {
+		if (!this.matchesRemote(path, file)) {
+			return false;
+		}
+		FileIndex index;
+		try {
+			// The presenters are not given the list, as it is only looked at.
+			index = this.perform(Metrics.Operation.LIST, true,
+					new Request<FileIndex>() {
+						@Override
+						public FileIndex execute() throws IOException,
+								HTTPException {
+							return ServerConnector.this.readFileIndex();
+						}
+					});
+		} catch (IOException e) {
+			return false;
+		} catch (HTTPException e) {
+			return false;
+		}
+		int i = index.indexOfName(path);
+		return i >= 0
+				&& this.matchesRemote(path, file, index.getLastModTime(i));
+	}
+
+	/**
+	 * Requests the range of a {@link Segment} of a file and writes the
+	 * received bytes to their position in a {@link FileChannel}. If the server
+	 * ignores the range and answers with the whole file, the file is written
+	 * from its start and the {@link Segment} is adjusted to the whole file.
+	 * 
+	 * @param path
+	 *            The encoded path of the file on the server.
+	 * @param out
+	 *            The {@link FileChannel}.
+	 * @param segment
+	 *            The {@link Segment}.
+	 * @param total
+	 *            Receives the size of the file as first element, if the server
+	 *            sends it.
+	 * @return The HTTP status code, either 200 or 206.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private int getRange(String path, FileChannel out, Segment segment,
+			long[] total) throws IOException, HTTPException {
+		HttpURLConnection con = this.openConnection("/file/" + path + "/");
+		con.setRequestMethod(ServerConnector.GET);
+		con.setRequestProperty("Accept-Encoding", "identity");
+		con.setRequestProperty(ServerConnector.COOKIE, this.session);
+		con.setRequestProperty("Range", "bytes=" + segment.position + "-"
+				+ (segment.end < 0 ? "" : String.valueOf(segment.end)));
+		con.setDoInput(true);
+		con.connect();
+		InputStream is = null;
+		try {
+			int code = con.getResponseCode();
+			if (con.getHeaderField(ServerConnector.CONTENT_SHA256) != null) {
+				segment.hash = con.getHeaderField(ServerConnector.CONTENT_SHA256);
+			}
+			switch (code) {
+			case 200:
+				is = CompressionPolicy.decode(con.getInputStream(),
+						con.getContentEncoding(), this.buffers.getBufferSize());
+				segment.position = 0;
+				this.copy(is, out, segment);
+				segment.end = segment.position - 1;
+				total[0] = segment.position;
+				if (segment.progress != null) {
+					segment.progress.setTotalBytes(total[0]);
+				}
+				break;
+			case 206:
+				String range = con.getHeaderField("Content-Range");
+				if (range == null
+						|| !range.startsWith("bytes " + segment.position + "-")) {
+					throw new IOException("get: unexpected content range "
+							+ range);
+				}
+				String size = range.substring(range.indexOf('/') + 1).trim();
+				if (!size.equals("*")) {
+					total[0] = Long.parseLong(size);
+					if (segment.progress != null) {
+						segment.progress.setTotalBytes(total[0]);
+					}
+				}
+				is = con.getInputStream();
+				this.copy(is, out, segment);
+				break;
+			case 401:
+				throw new HTTPException(401, "get: " + ServerConnector.HTTP401);
+			case 404:
+				throw new HTTPException(404, "get: " + ServerConnector.HTTP404);
+			case 405:
+				throw new HTTPException(405, "get: " + ServerConnector.HTTP405);
+			case 416:
+				String unsatisfied = con.getHeaderField("Content-Range");
+				if (("bytes */" + segment.position).equals(unsatisfied)) {
+					// There are no bytes after the position.
+					total[0] = segment.position;
+					segment.end = segment.position - 1;
+					return 206;
+				}
+				throw new HTTPException(416, "get: range not satisfiable");
+			case 503:
+				throw new HTTPException(503, "get: " + ServerConnector.HTTP503);
+			default:
+				throw new HTTPException(code, "get: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
+			return code;
+		} finally {
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException ignore) {
+				}
+			}
+			this.release(con);
+		}
+	}
+
+	/**
+	 * Downloads a {@link Segment} of a file once. Retries are left to the
+	 * {@link RetryPolicy} of the whole download.
+	 * 
+	 * @param path
+	 *            The encoded path of the file on the server.
+	 * @param out
+	 *            The {@link FileChannel}.
+	 * @param segment
+	 *            The {@link Segment}.
+	 * @param total
+	 *            Receives the size of the file as first element, if the server
+	 *            sends it.
+	 * @return The HTTP status code of the request, either 200 or 206.
+	 * @throws IOException
+	 *             If the request failed or a {@link SocketException}, if the
+	 *             connection ended before the whole segment was sent.
+	 * @throws HTTPException
+	 */
+	private int getSegment(String path, FileChannel out, Segment segment,
+			long[] total) throws IOException, HTTPException {
+		int code = this.getRange(path, out, segment, total);
+		if (code != 200 && !segment.isComplete(total[0])) {
+			throw new SocketException("get: incomplete segment");
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the {@link ServerConnection} used by this
+	 * {@link ServerConnector}.
+	 * 
+	 * @return The {@link ServerConnection}.
+	 */
+	protected ServerConnection getServerConnection() {
+		return this.sc;
+	}
+
+	/**
+	 * Gives the changes of the file list to the registered
+	 * {@link DeltaDataPresenter}s. {@link DeltaDataPresenter}s, which did not
+	 * receive a file list before, are given all files as added, unless they
+	 * received the list in chunks.
+	 * 
+	 * @param now
+	 *            The new file list. It must not be modified afterwards.
+	 * @param chunked
+	 *            The {@link IncrementalDataPresenter}s that received the new
+	 *            file list in chunks.
+	 */
+	private synchronized void giveFileListDelta(FileIndex now,
+			List<IncrementalDataPresenter> chunked) {
+		FileListDelta delta = null;
+		FileListDelta all = null;
+		for (DataPresenter dp : this.dataPresenters) {
+			if (!(dp instanceof DeltaDataPresenter)) {
+				continue;
+			}
+			DeltaDataPresenter receiver = (DeltaDataPresenter) dp;
+			if (this.deltaReceivers.contains(receiver)) {
+				if (delta == null) {
+					delta = FileListDelta.between(this.lastListing, now);
+				}
+				if (!delta.isEmpty()) {
+					receiver.giveFileListDelta(delta);
+				}
+			} else if (!chunked.contains(receiver)) {
+				if (all == null) {
+					all = FileListDelta.between(null, now);
+				}
+				receiver.giveFileListDelta(all);
+			}
+			this.deltaReceivers.add(receiver);
+		}
+		this.lastListing = now;
+	}
+
+	/**
+	 * Discards the cached file list, so that the next call of
+	 * {@link #getFileList()} or {@link #getFileIndex()} reads the whole list.
+	 */
+	public void invalidateFileListCache() {
+		this.listCache.clear();
+	}
+
+	/**
+	 * Logs in to the server with the data from the constructor's
+	 * {@link ServerConnection}. If the login is <b>not</b> successful an
+	 * {@link HTTPException} will be thrown. If there is a problem as an
+	 * unreachable server, an {@link IOException} will be thrown.
+	 * 
+	 * If the session is persistent (see {@link #setSessionPersistent(boolean)})
+	 * and the session of an earlier run can be restored with the password, no
+	 * request is sent. Should the server have discarded that session, it is
+	 * renewed by the first request using it.
+	 * 
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void login() throws IOException, HTTPException {
+		if (this.session == null) {
+			this.session = this.sessionStore.load(this.sc.getPassword(),
+					this.account());
+			if (this.session != null) {
+				return;
+			}
+		}
+		this.perform(Metrics.Operation.LOGIN, false, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.loginOnce();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends the request of {@link #login()} once.
+	 * 
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void loginOnce() throws IOException, HTTPException {
+		HttpURLConnection con = this.openConnection("/user/auth/");
+		con.setRequestMethod(ServerConnector.POST);
+		con.setRequestProperty(ServerConnector.USER, this.sc.getUser());
+		con.setRequestProperty(ServerConnector.PASSW, this.sc.getPassword());
+		con.connect();
+		try {
+			switch (con.getResponseCode()) {
+			case 202:
+				for (String s : con.getHeaderField(ServerConnector.SET_COOKIE)
+						.split(";")) {
+					if (s.startsWith("JSESSIONID=")) {
+						this.session = s;
+						this.sessionStore.save(s, this.sc.getPassword(),
+								this.account());
+					}
+				}
+				break;
+			case 403:
+				throw new HTTPException(403, "login: pw/user wrong");
+			case 406:
+				throw new HTTPException(406, "login: "
+						+ ServerConnector.HTTP406);
+			case 503:
+				throw new HTTPException(503,
+						"login: session could not be created");
+			default:
+				throw new HTTPException(con.getResponseCode(), "login: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
+		} finally {
+			this.release(con);
+		}
+	}
+
+	/**
+	 * Ends a session on the server. An {@link HTTPException} will be thrown, if
+	 * there is another HTTP status than 200.
+	 * 
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void logout() throws IOException, HTTPException {
+		boolean resetSession = true;
+		HttpURLConnection con = this.openConnection("/user/auth/logout/");
+		con.setRequestMethod(ServerConnector.GET);
+		con.setRequestProperty(ServerConnector.COOKIE, this.session);
+		con.connect();
+		try {
+			switch (con.getResponseCode()) {
+			case 200:
+				break;
+			case 401:
+				throw new HTTPException(401, "logout: "
+						+ ServerConnector.HTTP401);
+			case 405:
+				resetSession = false;
+				throw new HTTPException(405, "logout: "
+						+ ServerConnector.HTTP405);
+			case 503:
+				throw new HTTPException(503, "logout: "
+						+ ServerConnector.HTTP503);
+			default:
+				resetSession = false;
+				throw new HTTPException(con.getResponseCode(), "logout: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
+		} finally {
+			if (resetSession) {
+				this.session = null;
+				this.sessionStore.delete();
+				this.listCache.clear();
+			}
+			this.release(con);
+		}
+	}
+
+	/**
+	 * Sends a file to the server. The SHA-256 digest of the file is computed
+	 * while it is read. A compressed file is sent unencoded instead, if it
+	 * does not get smaller and the server accepts <code>identity</code>. An
+	 * update is skipped, if the file has the same content as the file last
+	 * transferred to or from the server and the file on the server was not
+	 * modified since, see {@link #isUnchanged(String, File)}.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void putFile(final String path, final File inFile,
+			final boolean update) throws IOException, HTTPException {
+		if (update && this.isUnchanged(path, inFile)) {
+			return;
+		}
+		this.perform(Metrics.Operation.PUT, false, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.putFileOnce(path, inFile, update);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends the request of {@link #putFile(String, File, boolean)} once.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void putFileOnce(String path, File inFile, boolean update)
+			throws IOException, HTTPException {
+		String name = path;
+		String hash = this.hashCache.getLocal(inFile);
+		path = urlEncodeFileNames(path);
+		boolean compressible = this.compression.isCompressible(inFile);
+		String encoding = this.compression.selectEncoding(compressible,
+				this.getAcceptedEncodings());
+		int level = this.compression.selectLevel(compressible,
+				inFile.length());
+		MessageDigest digest = hash == null ? ContentHashCache.newDigest()
+				: null;
+		// The body is streamed, so its length has to be known in advance.
+		File body = inFile;
+		long size = -1L;
+		if (!encoding.equals(CompressionPolicy.IDENTITY)) {
+			body = File.createTempFile("cloudraid-", ".upload");
+			try {
+				size = this.encode(inFile, body, encoding, level, digest);
+			} catch (IOException e) {
+				body.delete();
+				throw e;
+			}
+			if (body.length() >= size
+					&& this.getAcceptedEncodings().contains(
+							CompressionPolicy.IDENTITY)) {
+				// The compression does not pay off.
+				body.delete();
+				body = inFile;
+				encoding = CompressionPolicy.IDENTITY;
+				size = -1L;
+				if (digest != null) {
+					digest.reset();
+				}
+			}
+		}
+		try {
+			this.putBody(name, path, inFile, body, encoding, size, hash,
+					digest, update);
+		} finally {
+			if (body != inFile) {
+				body.delete();
+			}
+		}
+	}
+
+	/**
+	 * Sends the request body of an upload.
+	 * 
+	 * @param name
+	 *            The path of the file on the server.
+	 * @param path
+	 *            The encoded path of the file on the server.
+	 * @param inFile
+	 *            The file uploaded.
+	 * @param body
+	 *            The file containing the request body, either the uploaded
+	 *            file itself or its encoded copy.
+	 * @param encoding
+	 *            The <code>Content-Encoding</code> of the body.
+	 * @param size
+	 *            The number of bytes read from the uploaded file to encode
+	 *            the body or -1, if the body is the file itself.
+	 * @param hash
+	 *            The SHA-256 digest of the file, if it is known, or
+	 *            <code>null</code>.
+	 * @param digest
+	 *            The {@link MessageDigest} of the file or <code>null</code>,
+	 *            if the digest is known.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void putBody(String name, String path, File inFile, File body,
+			String encoding, long size, String hash, MessageDigest digest,
+			boolean update) throws IOException, HTTPException {
+		long length = body.length();
+		HttpURLConnection con = this.openConnection("/file/" + path + "/");
+		// The server answers only after it has stored the file on its
+		// backends, which takes as long as the upload needs.
+		con.setReadTimeout(0);
+		String kind;
+		if (update) {
+			con.setRequestMethod(ServerConnector.PUT);
+			kind = "put: ";
+		} else {
+			con.setRequestMethod(ServerConnector.POST);
+			kind = "post: ";
+		}
+		con.setRequestProperty("Accept-Encoding", "gzip");
+		con.setRequestProperty(ServerConnector.COOKIE, this.session);
+		con.setRequestProperty("Content-Encoding", encoding);
+		if (hash != null) {
+			con.setRequestProperty(ServerConnector.CONTENT_SHA256, hash);
+		}
+		con.setFixedLengthStreamingMode(length);
+		con.setDoOutput(true);
+		FileInputStream is = null;
+		OutputStream os = null;
+		TransferProgress progress = null;
+		// The response may only be read, if the body was sent completely.
+		boolean sent = false;
+		boolean success = false;
+		try {
+			is = new FileInputStream(body);
+			con.connect();
+			// The bytes of the file are counted, not the compressed bytes.
+			if (body == inFile) {
+				progress = this.startTransfer(name, true, inFile.length(), 0L);
+				os = progress.wrap(con.getOutputStream());
+				size = this.buffers.copy(is.getChannel(), os, digest);
+			} else {
+				progress = this.startTransfer(name, true, size, 0L);
+				os = progress.wrap(con.getOutputStream(), length, size);
+				this.buffers.copy(is.getChannel(), os);
+			}
+			os.close();
+			sent = true;
+			switch (con.getResponseCode()) {
+			case 200:
+			case 201:
+				if (digest != null && size == inFile.length()) {
+					hash = ContentHashCache.toHex(digest.digest());
+					this.hashCache.putLocal(inFile, hash);
+				}
+				if (hash != null) {
+					this.hashCache.putRemote(name, size, hash);
+				}
+				success = true;
+				break;
+			case 401:
+				throw new HTTPException(401, kind + ServerConnector.HTTP401);
+			case 404:
+				throw new HTTPException(404, kind + ServerConnector.HTTP404);
+			case 405:
+				throw new HTTPException(405, kind + ServerConnector.HTTP405);
+			case 409:
+				throw new HTTPException(409, kind + ServerConnector.HTTP409);
+			case 411:
+				throw new HTTPException(411, kind + ServerConnector.HTTP411);
+			case 503:
+				throw new HTTPException(503, kind + ServerConnector.HTTP503);
+			default:
+				throw new HTTPException(con.getResponseCode(), "put: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
+		} finally {
+			if (progress != null) {
+				this.finishTransfer(progress, success);
+			}
+			if (is != null) {
+				try {
+					is.close();
+				} catch (IOException ignore) {
+				}
+			}
+			if (os != null) {
+				try {
+					os.close();
+				} catch (IOException ignore) {
+				}
+			}
+			if (sent) {
+				this.release(con);
+			} else {
+				this.disconnect(con);
+			}
+		}
+	}
+
+	/**
+	 * Sends a chunk of a chunked upload and retries it after network errors
+	 * and checksum mismatches.
+	 * 
+	 * @param path
+	 *            The encoded path of the file on the server.
+	 * @param chunk
+	 *            The index of the chunk.
+	 * @param offset
+	 *            The position of the chunk in the file.
+	 * @param buf
+	 *            The data of the chunk.
+	 * @param len
+	 *            The length of the chunk.
+	 * @param crc
+	 *            The CRC32 checksum of the chunk.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void putChunk(String path, int chunk, long offset, byte[] buf,
+			int len, long crc) throws IOException, HTTPException {
+		for (int attempt = 0;; attempt++) {
+			try {
+				this.sendChunk(path, chunk, offset, buf, len, crc);
+				return;
+			} catch (IOException e) {
+				if (attempt >= this.chunkRetries
+						|| Thread.currentThread().isInterrupted()) {
+					throw e;
+				}
+			} catch (HTTPException e) {
+				if (e.getHTTPCode() != 400 || attempt >= this.chunkRetries) {
+					throw e;
+				}
+			}
+			pause(attempt);
+		}
+	}
+
+	/**
+	 * Sends a file to the server in chunks of
+	 * {@link #DEFAULT_UPLOAD_CHUNK_SIZE} bytes. See
+	 * {@link #putFileChunked(String, File, boolean, int)}.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void putFileChunked(String path, File inFile, boolean update)
+			throws IOException, HTTPException {
+		this.putFileChunked(path, inFile, update,
+				ServerConnector.DEFAULT_UPLOAD_CHUNK_SIZE);
+	}
+
+	/**
+	 * Sends a file to the server in chunks of a fixed size. Every chunk is
+	 * sent with its CRC32 checksum in a request of its own and is retried up
+	 * to {@link #getChunkRetries()} times. The chunks acknowledged by the
+	 * server are recorded in a journal in {@link #getJournalDirectory()}. If
+	 * the upload fails, calling this method again for the same, unchanged
+	 * file only sends the chunks that were not acknowledged yet. If the server
+	 * does not know a resumed upload any more, the upload is started again.
+	 * 
+	 * The chunked upload protocol consists of a POST (PUT for updates) to
+	 * <code>/file/&lt;path&gt;/chunks/</code>, a PUT of every chunk to
+	 * <code>/file/&lt;path&gt;/chunks/&lt;index&gt;/</code> and a final POST
+	 * to <code>/file/&lt;path&gt;/chunks/commit/</code>. The server answers a
+	 * chunk with a wrong checksum with status 400.
+	 * 
+	 * Like {@link #putFile(String, File, boolean)}, an update of a file with
+	 * unchanged content is skipped.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @param chunkSize
+	 *            The size of the chunks in bytes.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void putFileChunked(final String path, final File inFile,
+			final boolean update, final int chunkSize) throws IOException,
+			HTTPException {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Invalid chunk size: "
+					+ chunkSize);
+		}
+		if (update && this.isUnchanged(path, inFile)) {
+			return;
+		}
+		this.perform(Metrics.Operation.PUT, false, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.putFileChunkedOnce(path, inFile, update,
+						chunkSize);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Sends the requests of
+	 * {@link #putFileChunked(String, File, boolean, int)} once.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @param chunkSize
+	 *            The size of the chunks in bytes.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void putFileChunkedOnce(String path, File inFile, boolean update,
+			int chunkSize) throws IOException, HTTPException {
+		String encoded = urlEncodeFileNames(path);
+		String resource = "/file/" + encoded + "/chunks/";
+		String method = update ? ServerConnector.PUT : ServerConnector.POST;
+		long length = inFile.length();
+		int chunks = (int) Math.max(1L, (length + chunkSize - 1) / chunkSize);
+		UploadJournal journal = UploadJournal.open(this.journalDirectory,
+				this.sc.getServer() + ":" + this.sc.getPort() + "/"
+						+ this.sc.getUser() + "/" + path, inFile, chunkSize,
+				update);
+		RandomAccessFile raf = new RandomAccessFile(inFile, "r");
+		TransferProgress progress = null;
+		boolean done = false;
+		try {
+			if (journal.isResumed()) {
+				journal.resume();
+			} else {
+				this.chunkedUploadRequest(method, resource, "chunks: ",
+						ServerConnector.UPLOAD_LENGTH, String.valueOf(length),
+						ServerConnector.CHUNK_SIZE, String.valueOf(chunkSize));
+				journal.reset();
+			}
+			long acknowledged = 0L;
+			for (int i = 0; i < chunks; i++) {
+				if (journal.isAcknowledged(i)) {
+					acknowledged += Math.min(chunkSize, length - (long) i
+							* chunkSize);
+				}
+			}
+			progress = this.startTransfer(path, true, length, acknowledged);
+			byte[] buf = new byte[(int) Math.min(chunkSize, length)];
+			CRC32 crc = new CRC32();
+			// The digest is only complete, if every chunk is sent.
+			MessageDigest digest = journal.isResumed() ? null
+					: ContentHashCache.newDigest();
+			for (int i = 0; i < chunks; i++) {
+				if (journal.isAcknowledged(i)) {
+					continue;
+				}
+				BufferPool.checkInterrupted();
+				long offset = (long) i * chunkSize;
+				int len = (int) Math.min(chunkSize, length - offset);
+				raf.seek(offset);
+				raf.readFully(buf, 0, len);
+				crc.reset();
+				crc.update(buf, 0, len);
+				if (digest != null) {
+					digest.update(buf, 0, len);
+				}
+				try {
+					this.putChunk(encoded, i, offset, buf, len, crc.getValue());
+				} catch (HTTPException e) {
+					if (e.getHTTPCode() != 404 || !journal.isResumed()) {
+						throw e;
+					}
+					// The server discarded the upload, so it is started again.
+					this.chunkedUploadRequest(method, resource, "chunks: ",
+							ServerConnector.UPLOAD_LENGTH,
+							String.valueOf(length), ServerConnector.CHUNK_SIZE,
+							String.valueOf(chunkSize));
+					journal.reset();
+					digest = ContentHashCache.newDigest();
+					progress.add(-progress.getBytesTransferred());
+					i = -1;
+					continue;
+				}
+				journal.acknowledge(i);
+				progress.add(len);
+			}
+			this.chunkedUploadRequest(ServerConnector.POST, resource
+					+ "commit/", "commit: ", ServerConnector.UPLOAD_LENGTH,
+					String.valueOf(length), ServerConnector.CHUNK_COUNT,
+					String.valueOf(chunks));
+			done = true;
+			if (digest != null) {
+				this.hashCache.putLocal(inFile,
+						ContentHashCache.toHex(digest.digest()));
+			}
+			String hash = this.hashCache.getLocal(inFile);
+			if (hash != null) {
+				this.hashCache.putRemote(path, length, hash);
+			}
+		} finally {
+			try {
+				raf.close();
+			} catch (IOException ignore) {
+			}
+			if (done) {
+				journal.delete();
+			} else {
+				journal.close();
+			}
+			if (progress != null) {
+				this.finishTransfer(progress, done);
+			}
+		}
+	}
+
+	/**
+	 * Checks, if a local file has the same content as the file last uploaded
+	 * to or downloaded from a path on the server by this client. The local
+	 * file is only read, if its size matches and its digest is not cached.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param file
+	 *            The local file.
+	 * @return true, if the contents are equal; false, if they differ or the
+	 *         content on the server is not known.
+	 * @throws IOException
+	 */
+	public boolean matchesRemote(String path, File file) throws IOException {
+		return this.matchesRemote(path, file, 0L);
+	}
+
+	/**
+	 * Checks, if a local file has the same content as the file last uploaded
+	 * to or downloaded from a path on the server by this client, and if the
+	 * file on the server still has the modification date it had after the
+	 * transfer.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param file
+	 *            The local file.
+	 * @param lastMod
+	 *            The last modification date of the file on the server in
+	 *            milliseconds or 0, if it is not known.
+	 * @return true, if the contents are equal.
+	 * @throws IOException
+	 */
+	protected boolean matchesRemote(String path, File file, long lastMod)
+			throws IOException {
+		String remote = this.hashCache.getRemote(path, file.length(), lastMod);
+		return remote != null && remote.equals(this.getContentHash(file));
+	}
+
+	/**
+	 * Opens a connection to a resource on the CloudRAID server. The connection
+	 * must be handed back to the {@link ConnectionPool} after the response was
+	 * received.
+	 * 
+	 * @param path
+	 *            The path of the resource on the server.
+	 * @return The connection.
+	 * @throws IOException
+	 */
+	private HttpURLConnection openConnection(String path) throws IOException {
+		HttpURLConnection con = this.pool.open(this.sc.getURL(path));
+		this.metrics.connectionOpened();
+		return con;
+	}
+
+	/**
+	 * Sends a request, if the {@link CircuitBreaker} permits it, and records
+	 * its latency and errors in the {@link Metrics}. If the server answers
+	 * that the session has expired, the client logs in again once and the
+	 * request is sent again. A request failing because of the server is sent
+	 * again according to the {@link RetryPolicy}, if it is idempotent. Every
+	 * attempt is recorded as an operation.
+	 * 
+	 * @param <V>
+	 *            The type of the result.
+	 * @param operation
+	 *            The {@link Metrics.Operation} of the request.
+	 * @param idempotent
+	 *            true, if the request may be sent again.
+	 * @param request
+	 *            The {@link Request}.
+	 * @return The result of the request.
+	 * @throws IOException
+	 *             If the request failed or a {@link CircuitOpenException}, if
+	 *             the request was not sent.
+	 * @throws HTTPException
+	 */
+	private <V> V perform(Metrics.Operation operation, boolean idempotent,
+			Request<V> request) throws IOException, HTTPException {
+		CircuitBreaker breaker = this.circuitBreaker;
+		RetryPolicy retries = this.retryPolicy;
+		boolean renewed = false;
+		for (int retry = 1;; retry++) {
+			breaker.acquire();
+			Exception error;
+			String used = this.session;
+			long startTime = System.nanoTime();
+			try {
+				V result = request.execute();
+				breaker.succeeded();
+				return result;
+			} catch (HTTPException e) {
+				this.metrics.recordError(e);
+				error = e;
+			} catch (IOException e) {
+				this.metrics.recordError(e);
+				error = e;
+			} catch (RuntimeException e) {
+				breaker.cancelled();
+				throw e;
+			} finally {
+				this.metrics.record(operation, startTime);
+			}
+			if (!renewed && used != null
+					&& operation != Metrics.Operation.LOGIN
+					&& ServerConnector.isSessionExpired(error)) {
+				// The server answered, so it is available.
+				breaker.succeeded();
+				this.renewSession(used);
+				renewed = true;
+				retry--;
+				continue;
+			}
+			if (RetryPolicy.isServerFailure(error)) {
+				breaker.failed();
+			} else if (error instanceof HTTPException) {
+				// The server answered, so it is available.
+				breaker.succeeded();
+			} else {
+				breaker.cancelled();
+			}
+			if (!idempotent || !retries.isRetried(error, retry)) {
+				if (error instanceof HTTPException) {
+					throw (HTTPException) error;
+				}
+				throw (IOException) error;
+			}
+			retries.sleep(retry);
+		}
+	}
+
+	/**
+	 * Checks the protocol and the API version of the server by a request to
+	 * <code>/api/info/</code>. If HTTP is given, HTTPS is tried first; HTTP is
+	 * used only, if HTTPS fails.
+	 * 
+	 * @return The {@link ServerInfo}.
+	 * @throws IOException
+	 */
+	private ServerInfo probeServer() throws IOException {
+		long start = System.nanoTime();
+		if (this.sc.isSecureConnection()) {
+			return this.requestServerInfo(start);
+		}
+		// Check, if HTTPS can be used.
+		this.sc.setSecureConnection(true);
+		try {
+			return this.requestServerInfo(start);
+		} catch (SSLException e) {
+			this.sc.setSecureConnection(false);
+			return this.requestServerInfo(start);
+		}
+	}
+
+	/**
+	 * Reads the file list from the server into a {@link FileIndex} without
+	 * giving it to the {@link DataPresenter}s. The request is conditional on
+	 * the cached list, if possible.
+	 * 
+	 * @return The {@link FileIndex}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private FileIndex readFileIndex() throws IOException, HTTPException {
+		FileIndex index = new FileIndex(this);
+		if (!this.readFileList(new Vector<IncrementalDataPresenter>(), null,
+				index, ServerConnector.DEFAULT_CHUNK_SIZE, true)) {
+			index = this.listCache.getIndex(this);
+			if (index == null) {
+				// The cache was cleared in the meantime.
+				index = new FileIndex(this);
+				this.readFileList(new Vector<IncrementalDataPresenter>(), null,
+						index, ServerConnector.DEFAULT_CHUNK_SIZE, false);
+			}
+		}
+		this.setRemoteLastMods(index);
+		return index;
+	}
+
+	/**
+	 * Reads the file list from the server and gives it to the
+	 * {@link IncrementalDataPresenter}s in chunks while the lines are parsed.
+	 * 
+	 * @param receivers
+	 *            The {@link IncrementalDataPresenter}s receiving the chunks.
+	 * @param all
+	 *            If not <code>null</code>, every {@link CloudFile} is also
+	 *            added to this {@link Vector}.
+	 * @param index
+	 *            If not <code>null</code>, every file is also added to this
+	 *            {@link FileIndex}.
+	 * @param chunkSize
+	 *            The maximum number of {@link CloudFile}s per chunk.
+	 * @param conditional
+	 *            If true, the request is conditional on the validators of the
+	 *            cached list and a completely read list is cached.
+	 * @return true, if the list was read; false, if the server answered that
+	 *         the cached list is still valid.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private boolean readFileList(Vector<IncrementalDataPresenter> receivers,
+			Vector<CloudFile> all, FileIndex index, int chunkSize,
+			boolean conditional) throws IOException, HTTPException {
+		Reader br = null;
+		HttpURLConnection con = this.openConnection("/list/");
+		con.setRequestProperty("Accept-Encoding", "gzip");
+		con.setRequestMethod(ServerConnector.GET);
+		con.setRequestProperty(ServerConnector.COOKIE, this.session);
+		if (conditional) {
+			this.listCache.addConditions(con);
+		}
+		con.connect();
+		boolean begun = false;
+		boolean complete = false;
+		try {
+
+			switch (con.getResponseCode()) {
+			case 200:
+				br = new InputStreamReader(CompressionPolicy.decode(
+						con.getInputStream(), con.getContentEncoding(),
+						this.buffers.getBufferSize()));
+				FileListParser parser = new FileListParser(br);
+				for (IncrementalDataPresenter receiver : receivers) {
+					receiver.beginFileList();
+				}
+				begun = true;
+				ArrayList<CloudFile> chunk = new ArrayList<CloudFile>(
+						chunkSize);
+				boolean files = all != null || receivers.size() > 0;
+				int lines = 0;
+				while (parser.next()) {
+					if ((++lines & 0x3ff) == 0) {
+						BufferPool.checkInterrupted();
+					}
+					if (index != null) {
+						parser.addTo(index);
+					}
+					if (!files) {
+						continue;
+					}
+					CloudFile file = new CloudFile(this, parser.getName(),
+							parser.getState(), parser.getLastMod(),
+							parser.getHashedName());
+					if (all != null) {
+						all.add(file);
+					}
+					chunk.add(file);
+					if (chunk.size() >= chunkSize) {
+						giveFileListChunk(receivers, chunk);
+						chunk = new ArrayList<CloudFile>(chunkSize);
+					}
+				}
+				if (chunk.size() > 0) {
+					giveFileListChunk(receivers, chunk);
+				}
+				complete = true;
+				this.listRead = true;
+				if (conditional) {
+					this.listCache.update(con, all, index);
+				}
+				break;
+			case 304:
+				if (conditional) {
+					return false;
+				}
+				throw new HTTPException(304, "list: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			case 401:
+				throw new HTTPException(401, "list: " + ServerConnector.HTTP401);
+			case 405:
+				throw new HTTPException(405, "list: " + ServerConnector.HTTP405);
+			case 500:
+				throw new HTTPException(500,
+						"list: error getting the file information");
+			case 503:
+				throw new HTTPException(503, "list: " + ServerConnector.HTTP503);
+			default:
+				throw new HTTPException(con.getResponseCode(), "list: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
+		} finally {
+			try {
+				br.close();
+			} catch (Exception ignore) {
+			}
+			this.release(con);
+			if (begun) {
+				for (IncrementalDataPresenter receiver : receivers) {
+					receiver.endFileList(complete);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Registers a {@link DataPresenter} with this {@link ServerConnector}.
+	 * 
+	 * @param dp
+	 *            A {@link DataPresenter}.
+	 */
+	public void registerDataPresenter(DataPresenter dp) {
 		this.dataPresenters.add(dp);
 	}
 
 	/**
-	 * Sends a dummy request to the CloudRAID server and returns the regarding
-	 * HTTP status code.
+	 * Registers a {@link TransferListener}, which receives the progress of
+	 * all following uploads and downloads.
+	 * 
+	 * @param listener
+	 *            The {@link TransferListener}.
+	 */
+	public void registerTransferListener(TransferListener listener) {
+		this.transferListeners.add(listener);
+	}
+
+	/**
+	 * Removes a {@link TransferListener}. Transfers already running still
+	 * report their progress to it.
+	 * 
+	 * @param listener
+	 *            The {@link TransferListener}.
+	 */
+	public void removeTransferListener(TransferListener listener) {
+		this.transferListeners.remove(listener);
+	}
+
+	/**
+	 * Restores the file list written to the cache directory by an earlier
+	 * session of the same user on the same server and gives it to the
+	 * registered {@link DataPresenter}s as if it was read from the server.
+	 * This way the files can be shown at once, while the current file list is
+	 * read in the background by {@link #getFileList()}, which only gives the
+	 * changes to {@link DeltaDataPresenter}s. If the written file list is
+	 * still valid, the server is asked by a conditional request. Nothing is
+	 * done, if a file list was already read from the server.
+	 * 
+	 * @return The restored {@link FileIndex} or <code>null</code>, if there
+	 *         is no written file list.
+	 */
+	public FileIndex restoreFileList() {
+		if (this.listRead) {
+			return null;
+		}
+		FileIndex index = this.listCache.restore(this);
+		if (index == null) {
+			return null;
+		}
+		Vector<IncrementalDataPresenter> receivers = new Vector<IncrementalDataPresenter>();
+		Vector<CloudFile> all = null;
+		boolean deltas = false;
+		for (DataPresenter dp : this.dataPresenters) {
+			if (dp instanceof DeltaDataPresenter) {
+				deltas = true;
+				if (this.deltaReceivers.contains(dp)) {
+					continue;
+				}
+			}
+			if (dp instanceof IncrementalDataPresenter) {
+				receivers.add((IncrementalDataPresenter) dp);
+			} else if (!(dp instanceof DeltaDataPresenter) && all == null) {
+				all = new Vector<CloudFile>(index.size());
+				for (CloudFile file : index) {
+					all.add(file);
+				}
+			}
+		}
+		if (receivers.size() > 0) {
+			for (IncrementalDataPresenter receiver : receivers) {
+				receiver.beginFileList();
+			}
+			int size = ServerConnector.DEFAULT_CHUNK_SIZE;
+			for (int i = 0; i < index.size(); i += size) {
+				ArrayList<CloudFile> chunk = new ArrayList<CloudFile>(size);
+				for (int j = i; j < Math.min(index.size(), i + size); j++) {
+					chunk.add(index.get(j));
+				}
+				giveFileListChunk(receivers, chunk);
+			}
+			for (IncrementalDataPresenter receiver : receivers) {
+				receiver.endFileList(true);
+			}
+		}
+		if (deltas) {
+			this.giveFileListDelta(index.copy(), receivers);
+		}
+		for (DataPresenter dp : this.dataPresenters) {
+			if (!(dp instanceof IncrementalDataPresenter)
+					&& !(dp instanceof DeltaDataPresenter)) {
+				dp.giveFileList(all);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Hands a connection back to the {@link ConnectionPool}, see
+	 * {@link ConnectionPool#release(HttpURLConnection)}.
+	 * 
+	 * @param con
+	 *            The connection.
+	 */
+	private void release(HttpURLConnection con) {
+		if (this.pool.release(con)) {
+			this.metrics.connectionKeptAlive();
+		} else {
+			this.metrics.connectionClosed();
+		}
+	}
+
+	/**
+	 * Creates the {@link TransferProgress} of an upload or download and
+	 * notifies the {@link TransferListener}s that it has started.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param upload
+	 *            true for an upload; false for a download.
+	 * @param total
+	 *            The size of the file or -1, if it is not known.
+	 * @param initial
+	 *            The number of bytes transferred earlier.
+	 * @return The {@link TransferProgress}.
+	 */
+	private TransferProgress startTransfer(String path, boolean upload,
+			long total, long initial) {
+		return new TransferProgress(path, upload, total, initial,
+				this.transferListeners, TransferProgress.DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Marks a transfer as finished and adds its bytes to the {@link Metrics}.
+	 * 
+	 * @param progress
+	 *            The {@link TransferProgress} of the transfer.
+	 * @param success
+	 *            true, if the transfer was successful.
+	 */
+	private void finishTransfer(TransferProgress progress, boolean success) {
+		progress.finish(success);
+		this.metrics.addBytes(progress.isUpload(),
+				progress.getBytesTransferred() - progress.getInitialBytes());
+	}
+
+	/**
+	 * Logs in again, because the server does not know a session any more. If
+	 * several requests find the same session expired, only the first one
+	 * logs in; the others use the new session.
+	 * 
+	 * @param expired
+	 *            The expired session.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void renewSession(String expired) throws IOException,
+			HTTPException {
+		synchronized (this.sessionLock) {
+			if (!expired.equals(this.session)) {
+				return;
+			}
+			long startTime = System.nanoTime();
+			try {
+				this.loginOnce();
+			} catch (HTTPException e) {
+				this.metrics.recordError(e);
+				throw e;
+			} catch (IOException e) {
+				this.metrics.recordError(e);
+				throw e;
+			} finally {
+				this.metrics.record(Metrics.Operation.LOGIN, startTime);
+			}
+		}
+	}
+
+	/**
+	 * Sends the request to <code>/api/info/</code>.
 	 * 
-	 * @return The HTTP status code.
+	 * @param start
+	 *            The start of the check from {@link System#nanoTime()}.
+	 * @return The {@link ServerInfo}.
 	 * @throws IOException
 	 * @throws SSLException
 	 */
-	private int sendDummyRequest() throws IOException, SSLException {
-		HttpURLConnection con = (HttpURLConnection) this.sc
-				.getURL("/api/info/").openConnection();
+	private ServerInfo requestServerInfo(long start) throws IOException,
+			SSLException {
+		HttpURLConnection con = this.openConnection("/api/info/");
+		con.setRequestMethod(ServerConnector.GET);
+		con.setRequestProperty("Accept-Encoding", "gzip");
+		con.setDoInput(true);
+		con.connect();
+		InputStream is = null;
+		StringBuilder sb = new StringBuilder();
 		try {
-			con.connect();
-			return con.getResponseCode();
+			if (con.getResponseCode() != 200) {
+				throw new IOException("Unexpected response from server.");
+			}
+			is = CompressionPolicy.decode(con.getInputStream(),
+					con.getContentEncoding(), this.buffers.getBufferSize());
+			int c;
+			while ((c = is.read()) != -1) {
+				sb.append((char) c);
+			}
+			return new ServerInfo(this.sc.isSecureConnection(),
+					con.getHeaderField(ServerConnector.POWERED_BY),
+					con.getHeaderField("Accept-Encoding"), sb.toString(),
+					System.nanoTime() - start);
 		} finally {
-			con.disconnect();
+			try {
+				if (is != null) {
+					is.close();
+				}
+			} catch (IOException ignore) {
+			}
+			this.release(con);
 		}
 	}
 
-	@Override
-	public String toString() {
-		return "[ServerConnection: " + this.sc + "]. Session: " + this.session;
+	/**
+	 * Reads the file list from the server and gives it to an
+	 * {@link IncrementalDataPresenter} in chunks while the lines are parsed.
+	 * The {@link CloudFile}s are not collected, so the memory needed does not
+	 * depend on the size of the list. The {@link DataPresenter}s registered
+	 * with this {@link ServerConnector} are not called.
+	 * 
+	 * @param receiver
+	 *            The {@link IncrementalDataPresenter} receiving the chunks.
+	 * @param chunkSize
+	 *            The maximum number of {@link CloudFile}s per chunk.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	public void streamFileList(final IncrementalDataPresenter receiver,
+			final int chunkSize) throws IOException, HTTPException {
+		this.perform(Metrics.Operation.LIST, true, new Request<Void>() {
+			@Override
+			public Void execute() throws IOException, HTTPException {
+				ServerConnector.this.streamFileListOnce(receiver, chunkSize);
+				return null;
+			}
+		});
 	}
 
 	/**
-	 * Validates the API version of the CloudRAID server.
+	 * Sends the request of
+	 * {@link #streamFileList(IncrementalDataPresenter, int)} once.
 	 * 
-	 * @return true, if the server's API version matches the API version
-	 *         supported by this {@link ServerConnector}; false, if not.
+	 * @param receiver
+	 *            The {@link IncrementalDataPresenter} receiving the chunks.
+	 * @param chunkSize
+	 *            The maximum number of {@link CloudFile}s per chunk.
 	 * @throws IOException
+	 * @throws HTTPException
 	 */
-	private boolean validateApi() throws IOException {
-		HttpURLConnection con = null;
-		con = (HttpURLConnection) this.sc.getURL("/api/info/").openConnection();
-		con.setRequestMethod(ServerConnector.GET);
-		con.setDoInput(true);
+	private void streamFileListOnce(IncrementalDataPresenter receiver,
+			int chunkSize) throws IOException, HTTPException {
+		Vector<IncrementalDataPresenter> receivers = new Vector<IncrementalDataPresenter>();
+		receivers.add(receiver);
+		this.readFileList(receivers, null, null, chunkSize, false);
+	}
+
+	/**
+	 * Sends a chunk of a chunked upload.
+	 * 
+	 * @param path
+	 *            The encoded path of the file on the server.
+	 * @param chunk
+	 *            The index of the chunk.
+	 * @param offset
+	 *            The position of the chunk in the file.
+	 * @param buf
+	 *            The data of the chunk.
+	 * @param len
+	 *            The length of the chunk.
+	 * @param crc
+	 *            The CRC32 checksum of the chunk.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void sendChunk(String path, int chunk, long offset, byte[] buf,
+			int len, long crc) throws IOException, HTTPException {
+		HttpURLConnection con = this.openConnection("/file/" + path
+				+ "/chunks/" + chunk + "/");
+		con.setRequestMethod(ServerConnector.PUT);
+		con.setRequestProperty(ServerConnector.COOKIE, this.session);
+		con.setRequestProperty(ServerConnector.CHUNK_OFFSET,
+				String.valueOf(offset));
+		con.setRequestProperty(ServerConnector.CHUNK_CRC32,
+				Long.toHexString(crc));
+		con.setFixedLengthStreamingMode(len);
+		con.setDoOutput(true);
+		con.connect();
+		OutputStream os = null;
+		// The response may only be read, if the body was sent completely.
+		boolean sent = false;
 		try {
-			con.connect();
-			String apiVersion = con.getHeaderField(ServerConnector.POWERED_BY);
-			String wantedVersion = "CloudRAID/" + ServerConnector.API_VERSION;
-			return wantedVersion.equals(apiVersion);
+			os = con.getOutputStream();
+			os.write(buf, 0, len);
+			os.close();
+			sent = true;
+			switch (con.getResponseCode()) {
+			case 200:
+			case 201:
+				break;
+			case 400:
+				throw new HTTPException(400, "chunk: checksum mismatch");
+			case 401:
+				throw new HTTPException(401, "chunk: " + ServerConnector.HTTP401);
+			case 404:
+				throw new HTTPException(404, "chunk: " + ServerConnector.HTTP404);
+			case 405:
+				throw new HTTPException(405, "chunk: " + ServerConnector.HTTP405);
+			case 503:
+				throw new HTTPException(503, "chunk: " + ServerConnector.HTTP503);
+			default:
+				throw new HTTPException(con.getResponseCode(), "chunk: "
+						+ ServerConnector.HTTP_UNKNOWN);
+			}
 		} finally {
-			con.disconnect();
+			try {
+				os.close();
+			} catch (Exception ignore) {
+			}
+			if (sent) {
+				this.release(con);
+			} else {
+				this.disconnect(con);
+			}
 		}
 	}
 
 	/**
-	 * Checks, if the protocol used can be used with the CloudRAID server. If
-	 * HTTP is given, but HTTPS would work, the protocol is changed to HTTPS. If
-	 * HTTPS is given, but would not work, the protocol is <em>not</em> changed
-	 * to HTTP for security reasons.
+	 * Executes an operation for every path of a batch. The paths are taken
+	 * from a shared queue by at most {@link #batchParallelism} workers, so
+	 * that a large batch does not create a task per path. The workers run on
+	 * the executor shared by all {@link ServerConnector}s, see
+	 * {@link #MAX_PARALLEL_REQUESTS}.
 	 * 
-	 * @return Returns the status code of the last successful request to the
-	 *         server.
-	 * @throws IOException
+	 * @param paths
+	 *            The paths.
+	 * @param operation
+	 *            The {@link BatchOperation}.
+	 * @return The {@link BatchResult}.
+	 * @throws InterruptedIOException
+	 *             If the thread was interrupted.
 	 */
-	private int validateProtocol() throws IOException {
-		int resp = this.sendDummyRequest();
-		if (!this.sc.isSecureConnection()) {
-			// Check, if HTTPS can be used.
-			this.sc.setSecureConnection(true);
+	private BatchResult runBatch(Collection<String> paths,
+			final BatchOperation operation) throws InterruptedIOException {
+		final BatchResult result = new BatchResult(paths);
+		final Iterator<String> queue = new ArrayList<String>(paths).iterator();
+		Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				while (!Thread.currentThread().isInterrupted()) {
+					String path;
+					synchronized (queue) {
+						if (!queue.hasNext()) {
+							return;
+						}
+						path = queue.next();
+					}
+					try {
+						operation.execute(path);
+					} catch (IOException e) {
+						result.setFailed(path, e);
+					} catch (HTTPException e) {
+						result.setFailed(path, e);
+					}
+				}
+			}
+		};
+		int n = Math.min(this.batchParallelism, paths.size());
+		if (n <= 1) {
+			worker.run();
+		} else {
+			ExecutorService executor = ServerConnector.getParallelExecutor();
+			Vector<Future<?>> futures = new Vector<Future<?>>();
 			try {
-				resp = this.sendDummyRequest();
-			} catch (SSLException e) {
-				this.sc.setSecureConnection(false);
+				for (int i = 0; i < n; i++) {
+					futures.add(executor.submit(worker));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (ExecutionException e) {
+						// The worker records IOExceptions and HTTPExceptions,
+						// so only unchecked exceptions are left.
+						if (e.getCause() instanceof RuntimeException) {
+							throw (RuntimeException) e.getCause();
+						} else if (e.getCause() instanceof Error) {
+							throw (Error) e.getCause();
+						}
+						throw new IllegalStateException(e.getCause());
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				// Stop the workers, if the batch was interrupted.
+				for (Future<?> future : futures) {
+					future.cancel(true);
+				}
+			}
+		}
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("batch interrupted");
+		}
+		return result;
+	}
+
+	/**
+	 * Sets the number of parallel requests of a batch operation.
+	 * 
+	 * @param batchParallelism
+	 *            The number of requests. With 1 or less, the requests are sent
+	 *            one after another by the calling thread.
+	 */
+	public void setBatchParallelism(int batchParallelism) {
+		this.batchParallelism = batchParallelism;
+	}
+
+	/**
+	 * Sets the {@link BufferPool} providing the buffers of uploads and
+	 * downloads.
+	 * 
+	 * @param buffers
+	 *            The {@link BufferPool}.
+	 */
+	public void setBufferPool(BufferPool buffers) {
+		this.buffers = buffers;
+	}
+
+	/**
+	 * Sets the {@link CircuitBreaker} stopping the requests to an unavailable
+	 * server. By default, all {@link ServerConnector}s of a server share the
+	 * {@link CircuitBreaker} returned by
+	 * {@link CircuitBreaker#forServer(String)}.
+	 * 
+	 * @param circuitBreaker
+	 *            The {@link CircuitBreaker}.
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+	/**
+	 * Sets the {@link Metrics} recording the latencies of the operations, the
+	 * transferred bytes, the errors and the use of the connections. Several
+	 * {@link ServerConnector}s may share one {@link Metrics}.
+	 * 
+	 * @param metrics
+	 *            The {@link Metrics}.
+	 */
+	public void setMetrics(Metrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Sets the {@link CompressionPolicy} deciding how uploads are compressed.
+	 * 
+	 * @param compression
+	 *            The {@link CompressionPolicy}.
+	 */
+	public void setCompressionPolicy(CompressionPolicy compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Sets the directory containing the file lists written by this
+	 * {@link ServerConnector}. Every file list read completely is written to a
+	 * file in this directory, whose name is derived from the server and the
+	 * user. It can be restored by {@link #restoreFileList()}. The SHA-256
+	 * digests of transferred files and a persistent session (see
+	 * {@link #setSessionPersistent(boolean)}) are kept in this directory as
+	 * well.
+	 * 
+	 * @param cacheDirectory
+	 *            The directory, e.g. {@link #DEFAULT_CACHE_DIRECTORY}, or
+	 *            <code>null</code>, if the file lists shall not be written.
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+		this.listCache.setFile(cacheDirectory == null ? null : new File(
+				cacheDirectory, UploadJournal.fileName(this.account(),
+						".list")));
+		this.hashCache.setFile(cacheDirectory == null ? null : new File(
+				cacheDirectory, UploadJournal.fileName(this.account(),
+						".hashes")));
+		this.sessionStore.setFile(cacheDirectory == null
+				|| !this.sessionPersistent ? null : new File(cacheDirectory,
+				UploadJournal.fileName(this.account(), ".session")));
+	}
+
+	/**
+	 * Sets, if the session is kept in the cache directory, so that a client
+	 * started again can use it without logging in. The session ID is
+	 * encrypted with a key derived from the password. A logout deletes it.
+	 * 
+	 * @param sessionPersistent
+	 *            true, if the session shall be kept.
+	 */
+	public void setSessionPersistent(boolean sessionPersistent) {
+		this.sessionPersistent = sessionPersistent;
+		if (!sessionPersistent) {
+			this.sessionStore.delete();
+		}
+		this.setCacheDirectory(this.cacheDirectory);
+	}
+
+	/**
+	 * Sets the number of retries of a failed chunk of a chunked upload.
+	 * 
+	 * @param chunkRetries
+	 *            The number of retries.
+	 */
+	public void setChunkRetries(int chunkRetries) {
+		this.chunkRetries = chunkRetries;
+	}
+
+	/**
+	 * Sets the directory containing the journals of chunked uploads.
+	 * 
+	 * @param journalDirectory
+	 *            The directory.
+	 */
+	public void setJournalDirectory(File journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	/**
+	 * Sets the {@link RetryPolicy} deciding, if a failed idempotent request is
+	 * sent again. Downloads, deletions and file lists are idempotent; logins
+	 * and uploads are never sent again.
+	 * 
+	 * @param retryPolicy
+	 *            The {@link RetryPolicy}.
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+	/**
+	 * Sets the last modification dates of the files transferred before a file
+	 * list was read, see
+	 * {@link ContentHashCache#setRemoteLastMod(String, long)}.
+	 * 
+	 * @param files
+	 *            The file list.
+	 */
+	private void setRemoteLastMods(Collection<CloudFile> files) {
+		Set<String> unlisted = this.hashCache.getUnlisted();
+		if (unlisted.isEmpty()) {
+			return;
+		}
+		for (CloudFile file : files) {
+			if (unlisted.contains(file.getName())) {
+				this.hashCache.setRemoteLastMod(file.getName(),
+						file.getLastModTime());
+			}
+		}
+	}
+
+	/**
+	 * Sets the last modification dates of the files transferred before a file
+	 * list was read, see
+	 * {@link ContentHashCache#setRemoteLastMod(String, long)}.
+	 * 
+	 * @param index
+	 *            The file list.
+	 */
+	private void setRemoteLastMods(FileIndex index) {
+		for (String path : this.hashCache.getUnlisted()) {
+			int i = index.indexOfName(path);
+			if (i >= 0) {
+				this.hashCache.setRemoteLastMod(path, index.getLastModTime(i));
 			}
 		}
-		return resp;
+	}
+
+	@Override
+	public String toString() {
+		return "[ServerConnection: " + this.sc + "]. Session: " + this.session;
+	}
+
+	/**
+	 * Verifies a downloaded file against the digest sent by the server. A
+	 * corrupted file is deleted.
+	 * 
+	 * @param file
+	 *            The downloaded file.
+	 * @param hash
+	 *            The digest computed while the file was written or
+	 *            <code>null</code>, if the file has to be read to compute it.
+	 * @param expected
+	 *            The digest sent by the server or <code>null</code>.
+	 * @return The digest of the file or <code>null</code>, if it is not
+	 *         known.
+	 * @throws IOException
+	 *             If the digests differ.
+	 */
+	private String verify(File file, String hash, String expected)
+			throws IOException {
+		if (hash == null && expected != null) {
+			hash = ContentHashCache.hash(file, this.buffers);
+		}
+		if (expected != null && !expected.equalsIgnoreCase(hash)) {
+			file.delete();
+			throw new IOException("get: content digest mismatch");
+		}
+		return hash;
+	}
+
+	/**
+	 * Caches the digest of a file downloaded from or uploaded to the server.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param file
+	 *            The local file.
+	 * @param hash
+	 *            The digest or <code>null</code>, if it is not known.
+	 */
+	private void verified(String path, File file, String hash) {
+		if (hash == null) {
+			return;
+		}
+		this.hashCache.putLocal(file, hash);
+		this.hashCache.putRemote(path, file.length(), hash);
 	}
 }
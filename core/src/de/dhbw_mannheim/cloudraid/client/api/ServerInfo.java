@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes a CloudRAID server as found by the request to
+ * <code>/api/info/</code> sent when the first {@link ServerConnector} of the
+ * server is created: the protocol that works, the API version, the accepted
+ * request encodings and the information returned by
+ * {@link ServerConnector#getApiInfo()}. The {@link ServerInfo} is kept per
+ * server and port, so that further {@link ServerConnector}s of the server are
+ * created without a request. A {@link ServerInfo} is kept for
+ * {@link #getMaxAge()} milliseconds; the next {@link ServerConnector} asks the
+ * server again. If the server is changed, e.g. to HTTPS or another API
+ * version, {@link #forget(String)} makes the next {@link ServerConnector} ask
+ * it again at once.
+ */
+public class ServerInfo {
+
+	/**
+	 * The default time in milliseconds a {@link ServerInfo} is kept.
+	 */
+	public static final long DEFAULT_MAX_AGE = 600000L;
+
+	private static HashMap<String, ServerInfo> infos = new HashMap<String, ServerInfo>();
+	private static long maxAge = ServerInfo.DEFAULT_MAX_AGE;
+
+	/**
+	 * Forgets the {@link ServerInfo} of a server.
+	 * 
+	 * @param server
+	 *            The server and port, e.g. <code>localhost:8080</code>.
+	 */
+	public static synchronized void forget(String server) {
+		ServerInfo.infos.remove(server);
+	}
+
+	/**
+	 * Returns the {@link ServerInfo} kept for a server.
+	 * 
+	 * @param server
+	 *            The server and port, e.g. <code>localhost:8080</code>.
+	 * @return The {@link ServerInfo} or <code>null</code>, if the server was
+	 *         not asked yet or too long ago.
+	 */
+	public static synchronized ServerInfo get(String server) {
+		ServerInfo info = ServerInfo.infos.get(server);
+		if (info != null
+				&& System.nanoTime() - info.created >= TimeUnit.MILLISECONDS
+						.toNanos(ServerInfo.maxAge)) {
+			ServerInfo.infos.remove(server);
+			return null;
+		}
+		return info;
+	}
+
+	/**
+	 * Returns the time a {@link ServerInfo} is kept.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public static synchronized long getMaxAge() {
+		return ServerInfo.maxAge;
+	}
+
+	/**
+	 * Keeps the {@link ServerInfo} of a server.
+	 * 
+	 * @param server
+	 *            The server and port, e.g. <code>localhost:8080</code>.
+	 * @param info
+	 *            The {@link ServerInfo}.
+	 */
+	protected static synchronized void put(String server, ServerInfo info) {
+		ServerInfo.infos.put(server, info);
+	}
+
+	/**
+	 * Sets the time a {@link ServerInfo} is kept. It applies to the
+	 * {@link ServerInfo}s kept already as well.
+	 * 
+	 * @param maxAge
+	 *            The time in milliseconds. 0 makes every
+	 *            {@link ServerConnector} ask the server.
+	 */
+	public static synchronized void setMaxAge(long maxAge) {
+		if (maxAge < 0) {
+			throw new IllegalArgumentException("Invalid maximum age: "
+					+ maxAge);
+		}
+		ServerInfo.maxAge = maxAge;
+	}
+
+	private boolean secure;
+	private String poweredBy;
+	private String acceptEncoding;
+	private String info;
+	private long probeTime;
+	private Date date = new Date();
+	private long created = System.nanoTime();
+
+	/**
+	 * Creates a {@link ServerInfo}.
+	 * 
+	 * @param secure
+	 *            true, if the server was reached with HTTPS.
+	 * @param poweredBy
+	 *            The <code>X-Powered-By</code> header.
+	 * @param acceptEncoding
+	 *            The <code>Accept-Encoding</code> header.
+	 * @param info
+	 *            The body of the response.
+	 * @param probeTime
+	 *            The time in nanoseconds needed to ask the server.
+	 */
+	protected ServerInfo(boolean secure, String poweredBy,
+			String acceptEncoding, String info, long probeTime) {
+		this.secure = secure;
+		this.poweredBy = poweredBy;
+		this.acceptEncoding = acceptEncoding;
+		this.info = info;
+		this.probeTime = probeTime;
+	}
+
+	/**
+	 * Returns the request encodings accepted by the server.
+	 * 
+	 * @return The <code>Accept-Encoding</code> header or <code>null</code>.
+	 */
+	public String getAcceptEncoding() {
+		return this.acceptEncoding;
+	}
+
+	/**
+	 * Returns the time the server was asked.
+	 * 
+	 * @return The date.
+	 */
+	public Date getDate() {
+		return this.date;
+	}
+
+	/**
+	 * Returns the information about the server.
+	 * 
+	 * @return The body of the response to <code>/api/info/</code>.
+	 */
+	public String getInfo() {
+		return this.info;
+	}
+
+	/**
+	 * Returns the product and API version of the server.
+	 * 
+	 * @return The <code>X-Powered-By</code> header, e.g.
+	 *         <code>CloudRAID/0.3</code>.
+	 */
+	public String getPoweredBy() {
+		return this.poweredBy;
+	}
+
+	/**
+	 * Returns the time needed to ask the server, including a failed attempt
+	 * to use HTTPS.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public double getProbeTime() {
+		return this.probeTime / 1e6;
+	}
+
+	/**
+	 * Checks, if the server is reached with HTTPS.
+	 * 
+	 * @return true, if HTTPS is used.
+	 */
+	public boolean isSecure() {
+		return this.secure;
+	}
+
+	@Override
+	public String toString() {
+		return "[ServerInfo: " + this.poweredBy + ", "
+				+ (this.secure ? "https" : "http") + ", asked on " + this.date
+				+ "]";
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Keeps the session ID of a {@link ServerConnector} in a file, so that a
+ * restarted client can use the session without logging in again. The ID is
+ * encrypted with AES-GCM. The key is derived from the password of the user
+ * with PBKDF2, so the file is useless without the password, which the client
+ * needs to log in anyway. The server, port and user are authenticated with
+ * the ID, so a file cannot be used for another account.
+ * 
+ * Errors are ignored, as the file is only a cache: a session that cannot be
+ * restored is created again by a login.
+ */
+class SessionStore {
+
+	private static final int MAGIC = 0x43525353;
+	private static final String ENCODING = "UTF-8";
+	private static final String CIPHER = "AES/GCM/NoPadding";
+	private static final String KEY_DERIVATION = "PBKDF2WithHmacSHA256";
+	private static final int ITERATIONS = 20000;
+	private static final int KEY_BITS = 256;
+	private static final int SALT_LENGTH = 16;
+	private static final int IV_LENGTH = 12;
+	private static final int TAG_BITS = 128;
+
+	private static SecureRandom random = new SecureRandom();
+
+	/**
+	 * Creates a cipher for the session ID.
+	 * 
+	 * @param mode
+	 *            {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}.
+	 * @param password
+	 *            The password of the user.
+	 * @param account
+	 *            The server, port and user, which are authenticated.
+	 * @param salt
+	 *            The salt of the key derivation.
+	 * @param iv
+	 *            The initialization vector.
+	 * @return The {@link Cipher}.
+	 * @throws GeneralSecurityException
+	 * @throws UnsupportedEncodingException
+	 */
+	private static Cipher cipher(int mode, String password, String account,
+			byte[] salt, byte[] iv) throws GeneralSecurityException,
+			UnsupportedEncodingException {
+		PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt,
+				SessionStore.ITERATIONS, SessionStore.KEY_BITS);
+		byte[] key;
+		try {
+			key = SecretKeyFactory.getInstance(SessionStore.KEY_DERIVATION)
+					.generateSecret(spec).getEncoded();
+		} finally {
+			spec.clearPassword();
+		}
+		Cipher cipher = Cipher.getInstance(SessionStore.CIPHER);
+		cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(
+				SessionStore.TAG_BITS, iv));
+		cipher.updateAAD(account.getBytes(SessionStore.ENCODING));
+		return cipher;
+	}
+
+	private File file = null;
+
+	/**
+	 * Deletes the file, e.g. after a logout.
+	 */
+	protected synchronized void delete() {
+		if (this.file != null) {
+			this.file.delete();
+		}
+	}
+
+	/**
+	 * Reads the session ID from the file.
+	 * 
+	 * @param password
+	 *            The password of the user.
+	 * @param account
+	 *            The server, port and user.
+	 * @return The session ID or <code>null</code>, if there is no file or it
+	 *         cannot be decrypted with the password.
+	 */
+	protected synchronized String load(String password, String account) {
+		if (this.file == null || !this.file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(this.file));
+			if (in.readInt() != SessionStore.MAGIC) {
+				return null;
+			}
+			byte[] salt = new byte[SessionStore.SALT_LENGTH];
+			byte[] iv = new byte[SessionStore.IV_LENGTH];
+			in.readFully(salt);
+			in.readFully(iv);
+			byte[] data = new byte[in.readUnsignedShort()];
+			in.readFully(data);
+			return new String(cipher(Cipher.DECRYPT_MODE, password, account,
+					salt, iv).doFinal(data), SessionStore.ENCODING);
+		} catch (IOException e) {
+			return null;
+		} catch (GeneralSecurityException e) {
+			// Another password or a damaged file.
+			return null;
+		} finally {
+			try {
+				in.close();
+			} catch (Exception ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Writes the session ID to the file. It is written to a temporary file
+	 * first, which replaces the file afterwards.
+	 * 
+	 * @param session
+	 *            The session ID.
+	 * @param password
+	 *            The password of the user.
+	 * @param account
+	 *            The server, port and user.
+	 */
+	protected synchronized void save(String session, String password,
+			String account) {
+		if (this.file == null) {
+			return;
+		}
+		File tmp = new File(this.file.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			File dir = this.file.getParentFile();
+			if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+				return;
+			}
+			byte[] salt = new byte[SessionStore.SALT_LENGTH];
+			byte[] iv = new byte[SessionStore.IV_LENGTH];
+			SessionStore.random.nextBytes(salt);
+			SessionStore.random.nextBytes(iv);
+			byte[] data = cipher(Cipher.ENCRYPT_MODE, password, account, salt,
+					iv).doFinal(session.getBytes(SessionStore.ENCODING));
+			out = new FileOutputStream(tmp);
+			DataOutputStream dos = new DataOutputStream(out);
+			dos.writeInt(SessionStore.MAGIC);
+			dos.write(salt);
+			dos.write(iv);
+			dos.writeShort(data.length);
+			dos.write(data);
+			dos.flush();
+			out.close();
+			out = null;
+			if (!tmp.renameTo(this.file)) {
+				this.file.delete();
+				if (!tmp.renameTo(this.file)) {
+					tmp.delete();
+				}
+			}
+		} catch (IOException e) {
+			tmp.delete();
+		} catch (GeneralSecurityException e) {
+			// The platform lacks AES-GCM or PBKDF2, so nothing is kept.
+			tmp.delete();
+		} finally {
+			try {
+				out.close();
+			} catch (Exception ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Sets the file the session ID is written to.
+	 * 
+	 * @param file
+	 *            The file or <code>null</code>, if the session ID is not
+	 *            kept.
+	 */
+	protected synchronized void setFile(File file) {
+		this.file = file;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.text.ParseException;
+import java.util.TimeZone;
+
+/**
+ * Parses and formats the timestamps used by the CloudRAID server, which have
+ * the form <code>yyyy-MM-dd HH:mm:ss.S</code>. As with
+ * {@link java.text.SimpleDateFormat}, the number after the dot is the number
+ * of milliseconds. A {@link TimestampCodec} is immutable and can be shared by
+ * any number of threads.
+ */
+public class TimestampCodec {
+
+	/**
+	 * The separators following the fields of a timestamp.
+	 */
+	private static final String SEPARATORS = "-- ::.";
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	private static final TimestampCodec DEFAULT = new TimestampCodec(
+			TimeZone.getDefault());
+
+	/**
+	 * Returns the number of days from 1/1/1970 to a date of the proleptic
+	 * Gregorian calendar. Months and days out of range are rolled over.
+	 * 
+	 * @param year
+	 *            The year.
+	 * @param month
+	 *            The month (1 to 12).
+	 * @param day
+	 *            The day of the month.
+	 * @return The number of days.
+	 */
+	private static long daysFromCivil(long year, long month, long day) {
+		long m = month - 1;
+		long years = m >= 0 ? m / 12 : (m - 11) / 12;
+		year += years;
+		month = m - years * 12 + 1;
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		long yoe = y - era * 400;
+		long doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	/**
+	 * Appends a number with at least the given number of digits.
+	 * 
+	 * @param sb
+	 *            The {@link StringBuilder}.
+	 * @param value
+	 *            The number.
+	 * @param digits
+	 *            The minimum number of digits.
+	 */
+	private static void appendPadded(StringBuilder sb, long value, int digits) {
+		long limit = 1;
+		for (int i = 1; i < digits; i++) {
+			limit *= 10;
+			if (value < limit) {
+				sb.append('0');
+			}
+		}
+		sb.append(value);
+	}
+
+	/**
+	 * Returns the {@link TimestampCodec} for the default time zone.
+	 * 
+	 * @return The {@link TimestampCodec}.
+	 */
+	public static TimestampCodec getDefault() {
+		return TimestampCodec.DEFAULT;
+	}
+
+	private final TimeZone timeZone;
+
+	/**
+	 * Creates a {@link TimestampCodec} for the given time zone.
+	 * 
+	 * @param timeZone
+	 *            The time zone of the timestamps.
+	 */
+	public TimestampCodec(TimeZone timeZone) {
+		this.timeZone = (TimeZone) timeZone.clone();
+	}
+
+	/**
+	 * Formats a date.
+	 * 
+	 * @param millis
+	 *            The date in milliseconds from 1/1/1970 00:00:00.
+	 * @return The timestamp.
+	 */
+	public String format(long millis) {
+		long local = millis + this.timeZone.getOffset(millis);
+		long days = local / TimestampCodec.MILLIS_PER_DAY;
+		long time = local % TimestampCodec.MILLIS_PER_DAY;
+		if (time < 0) {
+			days--;
+			time += TimestampCodec.MILLIS_PER_DAY;
+		}
+		// Convert the days to year, month and day.
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		long doe = z - era * 146097;
+		long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		long mp = (5 * doy + 2) / 153;
+		long day = doy - (153 * mp + 2) / 5 + 1;
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		StringBuilder sb = new StringBuilder(23);
+		appendPadded(sb, year, 4);
+		sb.append('-');
+		appendPadded(sb, month, 2);
+		sb.append('-');
+		appendPadded(sb, day, 2);
+		sb.append(' ');
+		appendPadded(sb, time / 3600000L, 2);
+		sb.append(':');
+		appendPadded(sb, time / 60000L % 60, 2);
+		sb.append(':');
+		appendPadded(sb, time / 1000L % 60, 2);
+		sb.append('.');
+		sb.append(time % 1000L);
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the time zone of this {@link TimestampCodec}.
+	 * 
+	 * @return A copy of the time zone.
+	 */
+	public TimeZone getTimeZone() {
+		return (TimeZone) this.timeZone.clone();
+	}
+
+	/**
+	 * Parses a timestamp within a character array without allocating any
+	 * objects.
+	 * 
+	 * @param c
+	 *            The characters.
+	 * @param start
+	 *            The index of the first character of the timestamp.
+	 * @param end
+	 *            The index after the last character of the timestamp.
+	 * @return The date in milliseconds from 1/1/1970 00:00:00 or
+	 *         {@link Long#MIN_VALUE}, if the timestamp is invalid.
+	 */
+	protected long parse(char[] c, int start, int end) {
+		long year = 0, month = 0, day = 0;
+		long hour = 0, minute = 0, second = 0, milli = 0;
+		int i = start;
+		for (int field = 0; field < 7; field++) {
+			if (field > 0) {
+				if (i >= end
+						|| c[i] != TimestampCodec.SEPARATORS.charAt(field - 1)) {
+					return Long.MIN_VALUE;
+				}
+				i++;
+			}
+			int digits = 0;
+			long value = 0;
+			while (i < end && c[i] >= '0' && c[i] <= '9' && digits < 10) {
+				value = value * 10 + (c[i++] - '0');
+				digits++;
+			}
+			if (digits == 0) {
+				return Long.MIN_VALUE;
+			}
+			switch (field) {
+			case 0:
+				year = value;
+				break;
+			case 1:
+				month = value;
+				break;
+			case 2:
+				day = value;
+				break;
+			case 3:
+				hour = value;
+				break;
+			case 4:
+				minute = value;
+				break;
+			case 5:
+				second = value;
+				break;
+			default:
+				milli = value;
+			}
+		}
+		if (i != end) {
+			return Long.MIN_VALUE;
+		}
+		long local = daysFromCivil(year, month, day)
+				* TimestampCodec.MILLIS_PER_DAY + hour * 3600000L + minute
+				* 60000L + second * 1000L + milli;
+		int offset = this.timeZone.getOffset(local
+				- this.timeZone.getRawOffset());
+		return local - this.timeZone.getOffset(local - offset);
+	}
+
+	/**
+	 * Parses a timestamp.
+	 * 
+	 * @param timestamp
+	 *            The timestamp.
+	 * @return The date in milliseconds from 1/1/1970 00:00:00.
+	 * @throws ParseException
+	 *             If the timestamp is invalid.
+	 */
+	public long parse(String timestamp) throws ParseException {
+		long millis = this.parse(timestamp.toCharArray(), 0,
+				timestamp.length());
+		if (millis == Long.MIN_VALUE) {
+			throw new ParseException("Unparseable timestamp: " + timestamp, 0);
+		}
+		return millis;
+	}
+
+	@Override
+	public String toString() {
+		return "TimestampCodec (" + this.timeZone.getID() + ")";
+	}
+}
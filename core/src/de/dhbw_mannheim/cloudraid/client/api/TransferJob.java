@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A single upload, download or deletion that can be executed by a
+ * {@link TransferManager}.
+ */
+public class TransferJob {
+
+	/**
+	 * The kinds of {@link TransferJob}s.
+	 */
+	public static enum Kind {
+		UPLOAD, UPDATE, DOWNLOAD, DELETE
+	}
+
+	/**
+	 * Creates a {@link TransferJob} deleting a file on the server.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @return The {@link TransferJob}.
+	 */
+	public static TransferJob delete(ServerConnector sc, String path) {
+		return new TransferJob(Kind.DELETE, sc, path, null);
+	}
+
+	/**
+	 * Creates a {@link TransferJob} downloading a file from the server.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
+	 * @return The {@link TransferJob}.
+	 */
+	public static TransferJob download(ServerConnector sc, String path,
+			File destination) {
+		return new TransferJob(Kind.DOWNLOAD, sc, path, destination);
+	}
+
+	/**
+	 * Creates a {@link TransferJob} uploading a file to the server.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @return The {@link TransferJob}.
+	 */
+	public static TransferJob upload(ServerConnector sc, String path,
+			File inFile, boolean update) {
+		return new TransferJob(update ? Kind.UPDATE : Kind.UPLOAD, sc, path,
+				inFile);
+	}
+
+	private Kind kind;
+	private ServerConnector sc;
+	private String path;
+	private File file;
+
+	private TransferJob(Kind kind, ServerConnector sc, String path, File file) {
+		this.kind = kind;
+		this.sc = sc;
+		this.path = path;
+		this.file = file;
+	}
+
+	/**
+	 * Executes the operation on the server.
+	 * 
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	protected void execute() throws IOException, HTTPException {
+		switch (this.kind) {
+		case UPLOAD:
+			this.sc.putFile(this.path, this.file, false);
+			break;
+		case UPDATE:
+			this.sc.putFile(this.path, this.file, true);
+			break;
+		case DOWNLOAD:
+			this.sc.getFile(this.path, this.file);
+			break;
+		case DELETE:
+			this.sc.deleteFile(this.path);
+			break;
+		}
+	}
+
+	/**
+	 * Returns the local file of an upload or download.
+	 * 
+	 * @return The local file or <code>null</code> for deletions.
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Returns the kind of this {@link TransferJob}.
+	 * 
+	 * @return The kind.
+	 */
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * Returns the path of the file on the server.
+	 * 
+	 * @return The path.
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Returns the {@link ServerConnector} used by this {@link TransferJob}.
+	 * 
+	 * @return The {@link ServerConnector}.
+	 */
+	public ServerConnector getSc() {
+		return this.sc;
+	}
+
+	/**
+	 * Returns the number of bytes transferred by this {@link TransferJob}, as
+	 * far as it is known.
+	 * 
+	 * @return The size of the local file or 0.
+	 */
+	protected long getSize() {
+		if (this.file == null || !this.file.exists()) {
+			return 0L;
+		}
+		return this.file.length();
+	}
+
+	@Override
+	public String toString() {
+		return this.kind + " " + this.path
+				+ (this.file == null ? "" : " (" + this.file + ")");
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+/**
+ * Receives the progress of the uploads and downloads of a
+ * {@link ServerConnector}. For every transfer,
+ * {@link #transferStarted(TransferProgress)} is called once,
+ * {@link #transferProgressed(TransferProgress)} at most once per
+ * {@link TransferProgress#getInterval()} while data is copied and
+ * {@link #transferFinished(TransferProgress, boolean)} once at the end.
+ * 
+ * The methods are called by the thread copying the data, so they must return
+ * quickly. A graphical user interface has to hand the values to its event
+ * dispatch thread.
+ */
+public interface TransferListener {
+
+	/**
+	 * Called after a transfer has finished.
+	 * 
+	 * @param progress
+	 *            The {@link TransferProgress} of the transfer.
+	 * @param success
+	 *            true, if the transfer was successful.
+	 */
+	public void transferFinished(TransferProgress progress, boolean success);
+
+	/**
+	 * Called while a transfer is running.
+	 * 
+	 * @param progress
+	 *            The {@link TransferProgress} of the transfer.
+	 */
+	public void transferProgressed(TransferProgress progress);
+
+	/**
+	 * Called before the first byte of a transfer is copied.
+	 * 
+	 * @param progress
+	 *            The {@link TransferProgress} of the transfer.
+	 */
+	public void transferStarted(TransferProgress progress);
+
+}
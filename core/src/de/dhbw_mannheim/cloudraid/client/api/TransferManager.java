@@ -0,0 +1,613 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes batches of uploads, downloads and deletions in parallel on a
+ * bounded pool of worker threads. The number of concurrent operations per
+ * CloudRAID server is limited separately, so that a single
+ * {@link TransferManager} can be shared by connections to several servers.
+ * The jobs exceeding the limit of their server wait in a queue of the server
+ * instead of occupying a worker, so a busy server does not hold up the jobs
+ * of other servers.
+ * 
+ * The progress of all jobs is aggregated in bytes while they run, see
+ * {@link #getBytesTransferred()} and {@link #getBytesTotal()}.
+ * 
+ * For thousands of concurrent small transfers, the jobs can be run on virtual
+ * threads by passing an executor created by
+ * {@link BoundedExecutor#newVirtualThreadExecutor(int)}, or by enabling them
+ * for the default executor with
+ * {@link BoundedExecutor#setVirtualThreadsEnabled(boolean)}.
+ */
+public class TransferManager {
+
+	/**
+	 * The default number of worker threads.
+	 */
+	public static final int DEFAULT_WORKERS = 4;
+
+	/**
+	 * The default number of concurrent operations per server.
+	 */
+	public static final int DEFAULT_PER_HOST_LIMIT = 4;
+
+	/**
+	 * The jobs of one server. At most {@link TransferManager#perHostLimit}
+	 * of them are handed to the executor at a time, the others wait here.
+	 */
+	private static class HostQueue {
+		int running = 0;
+		LinkedList<QueuedJob> waiting = new LinkedList<QueuedJob>();
+	}
+
+	/**
+	 * A {@link TransferJob} waiting for or running on the executor. It is
+	 * counted, before its {@link Future} completes. A job cancelled before it
+	 * was executed is counted as failed, when its turn has come. When it has
+	 * finished, the next job of its server is started.
+	 */
+	private class QueuedJob extends FutureTask<TransferJob> {
+		private HostQueue host;
+
+		/**
+		 * Indicates, if the job was executed and counted.
+		 */
+		private boolean counted = false;
+
+		QueuedJob(Callable<TransferJob> callable, HostQueue host) {
+			super(callable);
+			this.host = host;
+		}
+
+		@Override
+		public void run() {
+			try {
+				super.run();
+			} finally {
+				if (!this.counted) {
+					// Cancelled, so the job was not executed.
+					TransferManager.this.failed.incrementAndGet();
+				}
+				TransferManager.this.finished(this.host);
+			}
+		}
+
+		@Override
+		protected void set(TransferJob job) {
+			this.counted = true;
+			TransferManager.this.completed.incrementAndGet();
+			super.set(job);
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			this.counted = true;
+			TransferManager.this.failed.incrementAndGet();
+			super.setException(t);
+		}
+	}
+
+	/**
+	 * Adds the bytes of the uploads and downloads run by the jobs of this
+	 * {@link TransferManager} to its progress. It is registered at every
+	 * {@link ServerConnector} used by a job and recognizes the transfers of
+	 * the jobs by the thread starting them.
+	 */
+	private class ProgressTracker implements TransferListener {
+		/**
+		 * The bytes of the running transfers already added.
+		 */
+		private Map<TransferProgress, long[]> counted = new IdentityHashMap<TransferProgress, long[]>();
+
+		/**
+		 * Adds the bytes transferred since the last call.
+		 * 
+		 * @param progress
+		 *            The {@link TransferProgress}.
+		 * @param finished
+		 *            true, if the transfer has finished.
+		 */
+		private synchronized void count(TransferProgress progress,
+				boolean finished) {
+			long[] seen = finished ? this.counted.remove(progress)
+					: this.counted.get(progress);
+			if (seen != null) {
+				long bytes = progress.getBytesTransferred();
+				TransferManager.this.bytesTransferred.addAndGet(bytes
+						- seen[0]);
+				seen[0] = bytes;
+			}
+		}
+
+		/**
+		 * Adds the size of a download to the total bytes, as soon as it is
+		 * known. The size of a compressed download is known, when it has
+		 * finished.
+		 * 
+		 * @param progress
+		 *            The {@link TransferProgress}.
+		 * @param finished
+		 *            true, if the transfer has finished.
+		 */
+		private void size(TransferProgress progress, boolean finished) {
+			Running running = TransferManager.this.current.get();
+			if (running == null || running.sized
+					|| !running.job.getPath().equals(progress.getPath())) {
+				return;
+			}
+			long total = progress.getTotalBytes();
+			if (total < 0 && finished) {
+				total = progress.getBytesTransferred();
+			}
+			if (total >= 0) {
+				running.sized = true;
+				TransferManager.this.bytesTotal.addAndGet(total);
+			}
+		}
+
+		@Override
+		public void transferFinished(TransferProgress progress,
+				boolean success) {
+			this.size(progress, success);
+			this.count(progress, true);
+		}
+
+		@Override
+		public void transferProgressed(TransferProgress progress) {
+			this.size(progress, false);
+			this.count(progress, false);
+		}
+
+		@Override
+		public void transferStarted(TransferProgress progress) {
+			Running running = TransferManager.this.current.get();
+			if (running == null
+					|| !running.job.getPath().equals(progress.getPath())) {
+				return;
+			}
+			this.size(progress, false);
+			synchronized (this) {
+				this.counted.put(progress,
+						new long[] { progress.getInitialBytes() });
+			}
+		}
+	}
+
+	/**
+	 * A {@link TransferJob} running on the current thread.
+	 */
+	private static class Running {
+		TransferJob job;
+
+		/**
+		 * true, if the size of the job was added to the total bytes.
+		 */
+		boolean sized;
+
+		Running(TransferJob job, boolean sized) {
+			this.job = job;
+			this.sized = sized;
+		}
+	}
+
+	private ExecutorService executor;
+	private int perHostLimit;
+
+	/**
+	 * The queued jobs per server. The key is the server's address and port.
+	 */
+	private HashMap<String, HostQueue> hosts = new HashMap<String, HostQueue>();
+
+	/**
+	 * The number of jobs waiting in the {@link HostQueue}s.
+	 */
+	private int waiting = 0;
+	private boolean shutdown = false;
+
+	/**
+	 * The job run by the current thread.
+	 */
+	private ThreadLocal<Running> current = new ThreadLocal<Running>();
+	private ProgressTracker tracker = new ProgressTracker();
+	private Map<ServerConnector, Boolean> tracked = new IdentityHashMap<ServerConnector, Boolean>();
+
+	private AtomicInteger submitted = new AtomicInteger(0);
+	private AtomicInteger completed = new AtomicInteger(0);
+	private AtomicInteger failed = new AtomicInteger(0);
+	private AtomicLong bytesTransferred = new AtomicLong(0L);
+	private AtomicLong bytesTotal = new AtomicLong(0L);
+
+	/**
+	 * Creates a {@link TransferManager} with {@link #DEFAULT_WORKERS} worker
+	 * threads and {@link #DEFAULT_PER_HOST_LIMIT} concurrent operations per
+	 * server.
+	 */
+	public TransferManager() {
+		this(TransferManager.DEFAULT_WORKERS,
+				TransferManager.DEFAULT_PER_HOST_LIMIT);
+	}
+
+	/**
+	 * Creates a {@link TransferManager}. It runs its jobs on
+	 * {@link BoundedExecutor#newDefaultExecutor(int)}.
+	 * 
+	 * @param workers
+	 *            The number of worker threads.
+	 * @param perHostLimit
+	 *            The maximum number of concurrent operations per server.
+	 */
+	public TransferManager(int workers, int perHostLimit) {
+		this(BoundedExecutor.newDefaultExecutor(workers), perHostLimit);
+	}
+
+	/**
+	 * Creates a {@link TransferManager} running its jobs on the given
+	 * {@link ExecutorService}.
+	 * 
+	 * @param executor
+	 *            The {@link ExecutorService} executing the jobs.
+	 * @param perHostLimit
+	 *            The maximum number of concurrent operations per server.
+	 */
+	public TransferManager(ExecutorService executor, int perHostLimit) {
+		this.executor = executor;
+		this.perHostLimit = perHostLimit;
+	}
+
+	/**
+	 * Waits until all submitted jobs have finished after a call of
+	 * {@link #shutdown()}.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return true, if all jobs have finished; false, if the timeout elapsed.
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return this.executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * Deletes a file on the server.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @return A {@link Future} for the job.
+	 */
+	public Future<TransferJob> delete(ServerConnector sc, String path) {
+		return this.submit(TransferJob.delete(sc, path));
+	}
+
+	/**
+	 * Downloads a file from the server.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param destination
+	 *            The file where the CloudRAID file will be written to.
+	 * @return A {@link Future} for the job.
+	 */
+	public Future<TransferJob> download(ServerConnector sc, String path,
+			File destination) {
+		return this.submit(TransferJob.download(sc, path, destination));
+	}
+
+	/**
+	 * Starts the next job of a server, after one of its jobs has finished.
+	 * 
+	 * @param host
+	 *            The {@link HostQueue} of the server.
+	 */
+	private void finished(HostQueue host) {
+		this.start(this.next(host));
+	}
+
+	/**
+	 * Returns the number of bytes of all uploads and downloads, as far as it
+	 * is known. The size of a download is known, when it has started, or
+	 * when it has finished, if it is compressed.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getBytesTotal() {
+		return this.bytesTotal.get();
+	}
+
+	/**
+	 * Returns the number of bytes transferred by the uploads and downloads so
+	 * far. The bytes of running transfers are updated at the interval of
+	 * their {@link TransferProgress}. Bytes of failed transfers are counted
+	 * as well, skipped uploads are not.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getBytesTransferred() {
+		return this.bytesTransferred.get();
+	}
+
+	/**
+	 * Returns the number of successfully finished jobs.
+	 * 
+	 * @return The number of jobs.
+	 */
+	public int getCompletedCount() {
+		return this.completed.get();
+	}
+
+	/**
+	 * Returns the number of failed jobs. A job cancelled before it was
+	 * executed is counted as failed, when its turn has come.
+	 * 
+	 * @return The number of jobs.
+	 */
+	public int getFailedCount() {
+		return this.failed.get();
+	}
+
+	/**
+	 * Returns the number of jobs that have not finished yet.
+	 * 
+	 * @return The number of jobs.
+	 */
+	public int getPendingCount() {
+		return this.submitted.get() - this.completed.get() - this.failed.get();
+	}
+
+	/**
+	 * Returns the number of submitted jobs.
+	 * 
+	 * @return The number of jobs.
+	 */
+	public int getSubmittedCount() {
+		return this.submitted.get();
+	}
+
+	/**
+	 * Returns the {@link HostQueue} of the server of a
+	 * {@link ServerConnector}.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @return The {@link HostQueue}.
+	 */
+	private HostQueue getHostQueue(ServerConnector sc) {
+		ServerConnection con = sc.getServerConnection();
+		String key = con.getServer() + ":" + con.getPort();
+		HostQueue host = this.hosts.get(key);
+		if (host == null) {
+			host = new HostQueue();
+			this.hosts.put(key, host);
+		}
+		return host;
+	}
+
+	/**
+	 * Checks, if all jobs have been handed to the executor after a call of
+	 * {@link #shutdown()}.
+	 * 
+	 * @return true, if no job is waiting any more.
+	 */
+	private synchronized boolean isShutdownComplete() {
+		return this.shutdown && this.waiting == 0;
+	}
+
+	/**
+	 * Takes the next waiting job of a server, after one of its jobs has
+	 * finished.
+	 * 
+	 * @param host
+	 *            The {@link HostQueue} of the server.
+	 * @return The next {@link QueuedJob} or <code>null</code>, if none is
+	 *         waiting.
+	 */
+	private synchronized QueuedJob next(HostQueue host) {
+		QueuedJob next = host.waiting.poll();
+		if (next == null) {
+			host.running--;
+		} else {
+			this.waiting--;
+		}
+		if (this.shutdown && this.getPendingCount() == 0) {
+			this.untrack();
+		}
+		return next;
+	}
+
+	/**
+	 * Shuts the {@link TransferManager} down. Jobs submitted before are still
+	 * executed, new jobs are rejected.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			this.shutdown = true;
+			if (this.getPendingCount() == 0) {
+				this.untrack();
+			}
+		}
+		if (this.isShutdownComplete()) {
+			this.executor.shutdown();
+		}
+	}
+
+	/**
+	 * Hands a job to the executor. If the executor rejects it, the job is
+	 * cancelled and counted as failed, and the next job of its server is
+	 * handed over. When the last waiting job has been handed over after a
+	 * call of {@link #shutdown()}, the executor is shut down.
+	 * 
+	 * @param job
+	 *            The {@link QueuedJob} or <code>null</code>.
+	 */
+	private void start(QueuedJob job) {
+		while (job != null) {
+			try {
+				this.executor.execute(job);
+				break;
+			} catch (RejectedExecutionException e) {
+				job.cancel(false);
+				this.failed.incrementAndGet();
+				job = this.next(job.host);
+			}
+		}
+		if (this.isShutdownComplete()) {
+			this.executor.shutdown();
+		}
+	}
+
+	/**
+	 * Submits a {@link TransferJob} for execution.
+	 * 
+	 * @param job
+	 *            The {@link TransferJob}.
+	 * @return A {@link Future} returning the finished {@link TransferJob} or
+	 *         throwing the {@link java.io.IOException} or
+	 *         {@link HTTPException} of the job wrapped in an
+	 *         {@link java.util.concurrent.ExecutionException}.
+	 */
+	public Future<TransferJob> submit(final TransferJob job) {
+		long size = job.getKind() == TransferJob.Kind.UPLOAD
+				|| job.getKind() == TransferJob.Kind.UPDATE ? job.getSize()
+				: 0L;
+		QueuedJob queued;
+		synchronized (this) {
+			if (this.shutdown) {
+				throw new RejectedExecutionException(
+						"The TransferManager has been shut down.");
+			}
+			if (this.tracked.put(job.getSc(), Boolean.TRUE) == null) {
+				job.getSc().registerTransferListener(this.tracker);
+			}
+			HostQueue host = this.getHostQueue(job.getSc());
+			queued = new QueuedJob(new Callable<TransferJob>() {
+				@Override
+				public TransferJob call() throws Exception {
+					TransferManager.this.run(job);
+					return job;
+				}
+			}, host);
+			this.submitted.incrementAndGet();
+			this.bytesTotal.addAndGet(size);
+			if (host.running >= this.perHostLimit) {
+				host.waiting.add(queued);
+				this.waiting++;
+				return queued;
+			}
+			host.running++;
+		}
+		this.start(queued);
+		return queued;
+	}
+
+	/**
+	 * Executes a {@link TransferJob} on the current thread. It is counted by
+	 * its {@link QueuedJob}.
+	 * 
+	 * @param job
+	 *            The {@link TransferJob}.
+	 * @throws Exception
+	 *             The {@link java.io.IOException} or {@link HTTPException} of
+	 *             the job.
+	 */
+	private void run(TransferJob job) throws Exception {
+		// The size of an upload was added, when it was submitted.
+		this.current.set(new Running(job,
+				job.getKind() != TransferJob.Kind.DOWNLOAD));
+		try {
+			job.execute();
+		} finally {
+			this.current.remove();
+		}
+	}
+
+	/**
+	 * Submits a batch of {@link TransferJob}s for execution.
+	 * 
+	 * @param jobs
+	 *            The {@link TransferJob}s.
+	 * @return The {@link Future}s of the jobs in the order of the given
+	 *         {@link Collection}.
+	 */
+	public List<Future<TransferJob>> submitAll(Collection<TransferJob> jobs) {
+		List<Future<TransferJob>> futures = new ArrayList<Future<TransferJob>>(
+				jobs.size());
+		for (TransferJob job : jobs) {
+			futures.add(this.submit(job));
+		}
+		return futures;
+	}
+
+	/**
+	 * Uploads a file to the server.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector} to be used.
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param inFile
+	 *            The file to read the data from.
+	 * @param update
+	 *            Set to <code>true</code>, if the file shall be
+	 *            updated/overwritten.
+	 * @return A {@link Future} for the job.
+	 */
+	public Future<TransferJob> upload(ServerConnector sc, String path,
+			File inFile, boolean update) {
+		return this.submit(TransferJob.upload(sc, path, inFile, update));
+	}
+
+	/**
+	 * Removes the {@link ProgressTracker} from the {@link ServerConnector}s,
+	 * when all jobs have finished after a call of {@link #shutdown()}.
+	 */
+	private synchronized void untrack() {
+		for (ServerConnector sc : this.tracked.keySet()) {
+			sc.removeTransferListener(this.tracker);
+		}
+		this.tracked.clear();
+	}
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of an upload or download of a {@link ServerConnector}, which
+ * is reported to {@link TransferListener}s. The bytes are counted before
+ * compression, i.e. they are bytes of the local file. The bytes can be added
+ * by several threads, e.g. the segments of a segmented download.
+ * 
+ * Adding bytes costs an atomic addition and, if listeners are registered, a
+ * look at the clock, so it can be done for every buffer. The listeners are
+ * notified at most once per interval. At every notification, the
+ * instantaneous throughput is computed from the bytes since the last one.
+ */
+public class TransferProgress {
+
+	/**
+	 * The default minimum time between two notifications in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL = 250L;
+
+	/**
+	 * An {@link InputStream} adding the bytes read to a
+	 * {@link TransferProgress}.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private TransferProgress progress;
+
+		private CountingInputStream(InputStream in, TransferProgress progress) {
+			super(in);
+			this.progress = progress;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				this.progress.add(1L);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				this.progress.add(n);
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * An {@link OutputStream} adding the bytes written to a
+	 * {@link TransferProgress}. If an encoded copy of the file is written, the
+	 * bytes of the file are added in proportion to the bytes written.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+		private TransferProgress progress;
+
+		/**
+		 * The length of the encoded copy or -1, if the file is written.
+		 */
+		private long encoded;
+		private long decoded;
+		private long written = 0L;
+
+		private CountingOutputStream(OutputStream out,
+				TransferProgress progress, long encoded, long decoded) {
+			super(out);
+			this.progress = progress;
+			this.encoded = encoded;
+			this.decoded = decoded;
+		}
+
+		/**
+		 * Adds the bytes of the file corresponding to the bytes written.
+		 * 
+		 * @param n
+		 *            The number of bytes written.
+		 */
+		private void count(long n) {
+			if (this.encoded < 0) {
+				this.progress.add(n);
+				return;
+			}
+			long before = this.scale(this.written);
+			this.written += n;
+			this.progress.add(this.scale(this.written) - before);
+		}
+
+		/**
+		 * Returns the bytes of the file corresponding to the bytes written.
+		 * 
+		 * @param n
+		 *            The number of bytes written.
+		 * @return The number of bytes of the file.
+		 */
+		private long scale(long n) {
+			if (n >= this.encoded) {
+				return this.decoded;
+			}
+			return (long) ((double) n / this.encoded * this.decoded);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+			this.count(len);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			this.out.write(b);
+			this.count(1L);
+		}
+	}
+
+	private String path;
+	private boolean upload;
+	private volatile long total;
+	private long initial;
+	private AtomicLong bytes;
+	private TransferListener[] listeners;
+	private long interval;
+
+	private long start;
+	private long end = -1L;
+	private volatile long nextReport;
+	private long lastReport;
+	private long lastBytes;
+	private double throughput = 0.0;
+
+	/**
+	 * Creates a {@link TransferProgress} and notifies the listeners that the
+	 * transfer has started.
+	 * 
+	 * @param path
+	 *            The path of the file on the server.
+	 * @param upload
+	 *            true for an upload; false for a download.
+	 * @param total
+	 *            The size of the file or -1, if it is not known yet.
+	 * @param initial
+	 *            The number of bytes transferred earlier, e.g. by a failed
+	 *            download that is resumed.
+	 * @param listeners
+	 *            The {@link TransferListener}s.
+	 * @param interval
+	 *            The minimum time between two notifications in milliseconds.
+	 */
+	protected TransferProgress(String path, boolean upload, long total,
+			long initial, List<TransferListener> listeners, long interval) {
+		this.path = path;
+		this.upload = upload;
+		this.total = total;
+		this.initial = initial;
+		this.bytes = new AtomicLong(initial);
+		this.listeners = listeners.toArray(new TransferListener[listeners
+				.size()]);
+		this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+		this.start = System.nanoTime();
+		this.lastReport = this.start;
+		this.lastBytes = initial;
+		this.nextReport = this.start + this.interval;
+		for (TransferListener listener : this.listeners) {
+			listener.transferStarted(this);
+		}
+	}
+
+	/**
+	 * Adds transferred bytes and notifies the listeners, if the interval has
+	 * elapsed since the last notification.
+	 * 
+	 * @param n
+	 *            The number of bytes.
+	 */
+	protected void add(long n) {
+		this.bytes.addAndGet(n);
+		if (this.listeners.length == 0) {
+			return;
+		}
+		long now = System.nanoTime();
+		if (now - this.nextReport < 0) {
+			return;
+		}
+		synchronized (this) {
+			if (now - this.nextReport < 0) {
+				return;
+			}
+			long current = this.bytes.get();
+			this.throughput = (current - this.lastBytes) * 1e9
+					/ Math.max(1L, now - this.lastReport);
+			this.lastBytes = current;
+			this.lastReport = now;
+			this.nextReport = now + this.interval;
+			for (TransferListener listener : this.listeners) {
+				listener.transferProgressed(this);
+			}
+		}
+	}
+
+	/**
+	 * Marks the transfer as finished and notifies the listeners.
+	 * 
+	 * @param success
+	 *            true, if the transfer was successful.
+	 */
+	protected synchronized void finish(boolean success) {
+		if (this.end >= 0) {
+			return;
+		}
+		this.end = System.nanoTime();
+		for (TransferListener listener : this.listeners) {
+			listener.transferFinished(this, success);
+		}
+	}
+
+	/**
+	 * Formats a number of bytes with a binary unit, e.g. "1.5 MiB".
+	 * 
+	 * @param bytes
+	 *            The number of bytes.
+	 * @return The formatted number.
+	 */
+	public static String formatBytes(double bytes) {
+		String[] units = { "B", "KiB", "MiB", "GiB", "TiB" };
+		int unit = 0;
+		while (bytes >= 1024.0 && unit < units.length - 1) {
+			bytes /= 1024.0;
+			unit++;
+		}
+		if (unit == 0) {
+			return (long) bytes + " " + units[unit];
+		}
+		return String.format(Locale.ENGLISH, "%.1f %s", bytes, units[unit]);
+	}
+
+	/**
+	 * Returns the average throughput since the start of the transfer. Bytes
+	 * transferred earlier are not counted.
+	 * 
+	 * @return The throughput in bytes per second.
+	 */
+	public double getAverageThroughput() {
+		long elapsed = this.getElapsedNanos();
+		return (this.bytes.get() - this.initial) * 1e9 / Math.max(1L, elapsed);
+	}
+
+	/**
+	 * Returns the number of bytes transferred, including bytes transferred
+	 * earlier.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getBytesTransferred() {
+		return this.bytes.get();
+	}
+
+	/**
+	 * Returns the time since the start of the transfer or the duration of a
+	 * finished transfer.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.getElapsedNanos());
+	}
+
+	/**
+	 * Returns the time since the start of the transfer in nanoseconds.
+	 * 
+	 * @return The time.
+	 */
+	private synchronized long getElapsedNanos() {
+		return (this.end >= 0 ? this.end : System.nanoTime()) - this.start;
+	}
+
+	/**
+	 * Returns the number of bytes transferred earlier, e.g. by a failed
+	 * download that is resumed.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getInitialBytes() {
+		return this.initial;
+	}
+
+	/**
+	 * Returns the minimum time between two notifications.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getInterval() {
+		return TimeUnit.NANOSECONDS.toMillis(this.interval);
+	}
+
+	/**
+	 * Returns the path of the file on the server.
+	 * 
+	 * @return The path.
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Returns the estimated time until the transfer is complete. The estimate
+	 * uses the average throughput.
+	 * 
+	 * @return The time in milliseconds or -1, if the size of the file or the
+	 *         throughput is not known.
+	 */
+	public long getRemainingMillis() {
+		double rate = this.getAverageThroughput();
+		long remaining = this.total - this.bytes.get();
+		if (this.total < 0 || rate <= 0.0) {
+			return -1L;
+		}
+		return (long) (Math.max(0L, remaining) * 1000.0 / rate);
+	}
+
+	/**
+	 * Returns the throughput between the last two notifications.
+	 * 
+	 * @return The throughput in bytes per second.
+	 */
+	public synchronized double getThroughput() {
+		return this.throughput;
+	}
+
+	/**
+	 * Returns the size of the file.
+	 * 
+	 * @return The size in bytes or -1, if it is not known.
+	 */
+	public long getTotalBytes() {
+		return this.total;
+	}
+
+	/**
+	 * Checks, if the transfer has finished.
+	 * 
+	 * @return true, if the transfer has finished.
+	 */
+	public synchronized boolean isFinished() {
+		return this.end >= 0;
+	}
+
+	/**
+	 * Checks, if the transfer is an upload.
+	 * 
+	 * @return true for an upload; false for a download.
+	 */
+	public boolean isUpload() {
+		return this.upload;
+	}
+
+	/**
+	 * Sets the size of the file, when it becomes known.
+	 * 
+	 * @param total
+	 *            The size in bytes.
+	 */
+	protected void setTotalBytes(long total) {
+		this.total = total;
+	}
+
+	@Override
+	public String toString() {
+		return (this.upload ? "upload " : "download ") + this.path + ": "
+				+ this.bytes.get() + "/" + this.total + " bytes";
+	}
+
+	/**
+	 * Wraps an {@link InputStream}, so that the bytes read are added.
+	 * 
+	 * @param in
+	 *            The {@link InputStream}.
+	 * @return The wrapping {@link InputStream}.
+	 */
+	protected InputStream wrap(InputStream in) {
+		return new CountingInputStream(in, this);
+	}
+
+	/**
+	 * Wraps an {@link OutputStream}, so that the bytes written are added.
+	 * 
+	 * @param out
+	 *            The {@link OutputStream}.
+	 * @return The wrapping {@link OutputStream}.
+	 */
+	protected OutputStream wrap(OutputStream out) {
+		return new CountingOutputStream(out, this, -1L, -1L);
+	}
+
+	/**
+	 * Wraps an {@link OutputStream} receiving an encoded copy of the file, so
+	 * that the bytes of the file are added in proportion to the bytes
+	 * written.
+	 * 
+	 * @param out
+	 *            The {@link OutputStream}.
+	 * @param encoded
+	 *            The length of the encoded copy.
+	 * @param decoded
+	 *            The length of the file.
+	 * @return The wrapping {@link OutputStream}.
+	 */
+	protected OutputStream wrap(OutputStream out, long encoded, long decoded) {
+		return new CountingOutputStream(out, this, encoded, decoded);
+	}
+}
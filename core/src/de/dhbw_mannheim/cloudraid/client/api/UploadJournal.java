@@ -0,0 +1,259 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+
+/**
+ * A local journal of the chunks of a chunked upload that were acknowledged by
+ * the CloudRAID server. The journal is a small text file: a header describing
+ * the upload followed by the index of every acknowledged chunk on a line of
+ * its own, terminated by a dot. Acknowledged chunks are appended and flushed
+ * at once, so the journal survives a crash of the client. Lines without the
+ * terminating dot were not written completely and are ignored. If the file
+ * to be uploaded or the chunk size changed since the journal was written, the
+ * journal is discarded.
+ */
+class UploadJournal {
+
+	private static final String MAGIC = "CloudRAID upload journal 1";
+	private static final String ENCODING = "utf-8";
+
+	/**
+	 * Returns the name of a file of a local cache. The name is derived from a
+	 * key, so that it is a valid file name on every platform.
+	 * 
+	 * @param key
+	 *            A String identifying the content of the file, e.g. the
+	 *            server, the user and the path of an upload.
+	 * @param suffix
+	 *            The suffix of the file name.
+	 * @return The file name.
+	 */
+	protected static String fileName(String key, String suffix) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					key.getBytes(UploadJournal.ENCODING));
+			StringBuilder sb = new StringBuilder(digest.length * 2 + 8);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.append(suffix).toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Opens the journal of an upload. An existing journal is only used, if it
+	 * describes the same upload of the same version of the file.
+	 * 
+	 * @param directory
+	 *            The directory containing the journals.
+	 * @param key
+	 *            A String identifying the server, the user and the path of
+	 *            the upload.
+	 * @param inFile
+	 *            The file to be uploaded.
+	 * @param chunkSize
+	 *            The size of the chunks.
+	 * @param update
+	 *            true, if an existing file is updated.
+	 * @return The {@link UploadJournal}.
+	 * @throws IOException
+	 */
+	protected static UploadJournal open(File directory, String key,
+			File inFile, int chunkSize, boolean update) throws IOException {
+		String header = key + "\n" + inFile.length() + " "
+				+ inFile.lastModified() + " " + chunkSize + " " + update;
+		UploadJournal journal = new UploadJournal(new File(directory,
+				fileName(key, ".journal")), header);
+		journal.load();
+		return journal;
+	}
+
+	private File file;
+	private String header;
+	private BitSet acknowledged = new BitSet();
+	private boolean resumed = false;
+	private Writer out = null;
+
+	/**
+	 * Creates an {@link UploadJournal}.
+	 * 
+	 * @param file
+	 *            The journal file.
+	 * @param header
+	 *            The header describing the upload.
+	 */
+	private UploadJournal(File file, String header) {
+		this.file = file;
+		this.header = header;
+	}
+
+	/**
+	 * Records that a chunk was acknowledged by the server.
+	 * 
+	 * @param chunk
+	 *            The index of the chunk.
+	 * @throws IOException
+	 */
+	protected void acknowledge(int chunk) throws IOException {
+		if (this.out == null) {
+			this.reset();
+		}
+		this.out.write(chunk + ".\n");
+		this.out.flush();
+		this.acknowledged.set(chunk);
+	}
+
+	/**
+	 * Closes the journal file. The journal is kept for a later resume.
+	 */
+	protected void close() {
+		if (this.out != null) {
+			try {
+				this.out.close();
+			} catch (IOException ignore) {
+			}
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Closes and deletes the journal after the upload was completed.
+	 */
+	protected void delete() {
+		this.close();
+		this.file.delete();
+	}
+
+	/**
+	 * Checks, if a chunk was acknowledged by the server.
+	 * 
+	 * @param chunk
+	 *            The index of the chunk.
+	 * @return true, if the chunk was acknowledged.
+	 */
+	protected boolean isAcknowledged(int chunk) {
+		return this.acknowledged.get(chunk);
+	}
+
+	/**
+	 * Checks, if this journal continues an upload started earlier.
+	 * 
+	 * @return true, if the upload is resumed.
+	 */
+	protected boolean isResumed() {
+		return this.resumed;
+	}
+
+	/**
+	 * Reads an existing journal file, if it describes the same upload.
+	 */
+	private void load() {
+		if (!this.file.isFile()) {
+			return;
+		}
+		BufferedReader br = null;
+		try {
+			br = new BufferedReader(new InputStreamReader(new FileInputStream(
+					this.file), UploadJournal.ENCODING));
+			if (!UploadJournal.MAGIC.equals(br.readLine())) {
+				return;
+			}
+			StringBuilder sb = new StringBuilder();
+			sb.append(br.readLine()).append('\n').append(br.readLine());
+			if (!this.header.equals(sb.toString())) {
+				return;
+			}
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (line.endsWith(".")) {
+					try {
+						this.acknowledged.set(Integer.parseInt(line.substring(0,
+								line.length() - 1)));
+					} catch (NumberFormatException ignore) {
+					}
+				}
+			}
+			this.resumed = true;
+		} catch (IOException e) {
+			this.acknowledged.clear();
+		} finally {
+			try {
+				br.close();
+			} catch (Exception ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Discards all acknowledged chunks and starts a new journal file.
+	 * 
+	 * @throws IOException
+	 */
+	protected void reset() throws IOException {
+		this.close();
+		this.acknowledged.clear();
+		this.resumed = false;
+		File dir = this.file.getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Could not create the journal directory "
+					+ dir);
+		}
+		this.out = new OutputStreamWriter(new FileOutputStream(this.file),
+				UploadJournal.ENCODING);
+		this.out.write(UploadJournal.MAGIC + "\n" + this.header + "\n");
+		this.out.flush();
+	}
+
+	/**
+	 * Continues the journal file of a resumed upload.
+	 * 
+	 * @throws IOException
+	 */
+	protected void resume() throws IOException {
+		if (this.out == null) {
+			this.out = new OutputStreamWriter(new FileOutputStream(this.file,
+					true), UploadJournal.ENCODING);
+			// Terminates a partly written last line.
+			this.out.write("\n");
+			this.out.flush();
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link AsyncServerConnector}.
+ */
+public class AsyncServerConnectorTest {
+
+	private static final String CALLBACK_THREAD = "callback";
+
+	/**
+	 * An {@link AsyncCallback} recording the result and the thread it was
+	 * called by.
+	 */
+	private static class Recorder<V> implements AsyncCallback<V> {
+		BlockingQueue<Object> results = new ArrayBlockingQueue<Object>(2);
+		volatile String thread = null;
+
+		@Override
+		public void completed(V result) {
+			this.thread = Thread.currentThread().getName();
+			this.results.add(result == null ? "null" : result);
+		}
+
+		@Override
+		public void failed(Throwable e) {
+			this.thread = Thread.currentThread().getName();
+			this.results.add(e);
+		}
+
+		/**
+		 * Waits for the result.
+		 * 
+		 * @return The result or the exception.
+		 * @throws InterruptedException
+		 */
+		Object await() throws InterruptedException {
+			Object result = this.results.poll(10, TimeUnit.SECONDS);
+			if (result == null) {
+				fail("The callback was not called.");
+			}
+			return result;
+		}
+	}
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ExecutorService callbacks;
+	private AsyncServerConnector async;
+
+	/**
+	 * Starts the server, logs in and creates the {@link AsyncServerConnector}
+	 * with its own callback thread.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.server.putFile(FakeFixture.USER, "a", new byte[1]);
+		this.callbacks = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				return new Thread(r, AsyncServerConnectorTest.CALLBACK_THREAD);
+			}
+		});
+		this.async = new AsyncServerConnector(this.fixture.connect());
+		this.async.setCallbackExecutor(this.callbacks);
+	}
+
+	/**
+	 * Stops the server and the callback thread.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+		this.callbacks.shutdownNow();
+	}
+
+	/**
+	 * Checks, that a cancelled operation is reported to the callback.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancel() throws Exception {
+		this.server.setLatency(5000L);
+		Recorder<Vector<CloudFile>> recorder = new Recorder<Vector<CloudFile>>();
+		Future<Vector<CloudFile>> future = this.async.getFileList(recorder);
+		Thread.sleep(100L);
+		assertTrue(future.cancel(true));
+		assertTrue(recorder.await() instanceof CancellationException);
+		assertEquals(AsyncServerConnectorTest.CALLBACK_THREAD,
+				recorder.thread);
+	}
+
+	/**
+	 * Checks, that the result is given to the callback on the callback
+	 * thread and returned by the {@link Future}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCompleted() throws Exception {
+		Recorder<Vector<CloudFile>> recorder = new Recorder<Vector<CloudFile>>();
+		Future<Vector<CloudFile>> future = this.async.getFileList(recorder);
+		assertEquals(1, future.get().size());
+		assertEquals(future.get(), recorder.await());
+		assertEquals(AsyncServerConnectorTest.CALLBACK_THREAD,
+				recorder.thread);
+	}
+
+	/**
+	 * Checks, that the exception of a failed operation is given to the
+	 * callback and thrown by the {@link Future}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailed() throws Exception {
+		Recorder<Void> recorder = new Recorder<Void>();
+		Future<Void> future = this.async.deleteFile("missing", recorder);
+		try {
+			future.get();
+			fail("The file does not exist.");
+		} catch (ExecutionException e) {
+			assertEquals(404, ((HTTPException) e.getCause()).getHTTPCode());
+		}
+		Object result = recorder.await();
+		assertEquals(404, ((HTTPException) result).getHTTPCode());
+	}
+
+	/**
+	 * Checks, that the callback is run by the worker thread without a
+	 * callback executor.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNoCallbackExecutor() throws Exception {
+		this.async.setCallbackExecutor(null);
+		Recorder<String> recorder = new Recorder<String>();
+		this.async.getApiInfo(recorder).get();
+		recorder.await();
+		assertTrue(recorder.thread.startsWith("CloudRAID-async-"));
+	}
+
+	/**
+	 * Checks, that an operation times out and its worker is interrupted.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTimeout() throws Exception {
+		this.server.setLatency(5000L);
+		this.async.setTimeout(200L, TimeUnit.MILLISECONDS);
+		Recorder<Vector<CloudFile>> recorder = new Recorder<Vector<CloudFile>>();
+		long start = System.nanoTime();
+		Future<Vector<CloudFile>> future = this.async.getFileList(recorder);
+		try {
+			future.get();
+			fail("The operation did not time out.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertTrue(recorder.await() instanceof TimeoutException);
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+		assertTrue(future.isDone());
+		assertFalse(future.isCancelled());
+	}
+
+	/**
+	 * Checks, that a timeout interrupts the operation that timed out, but not
+	 * the next operation of the same thread.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTimeoutInterruptsOnlyItsOperation() throws Exception {
+		ExecutorService worker = Executors.newSingleThreadExecutor();
+		try {
+			AsyncServerConnector single = new AsyncServerConnector(null,
+					worker);
+			single.setTimeout(100L, TimeUnit.MILLISECONDS);
+			final CountDownLatch interrupted = new CountDownLatch(1);
+			Future<Void> slow = single.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					try {
+						Thread.sleep(10000L);
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+					}
+					return null;
+				}
+			}, null);
+			try {
+				slow.get();
+				fail("The operation did not time out.");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof TimeoutException);
+			}
+			assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+			single.setTimeout(0L, TimeUnit.MILLISECONDS);
+			Future<Boolean> next = single.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return Thread.currentThread().isInterrupted();
+				}
+			}, null);
+			assertFalse(next.get());
+		} finally {
+			worker.shutdownNow();
+		}
+	}
+}
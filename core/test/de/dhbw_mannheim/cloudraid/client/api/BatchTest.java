@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the batch operations of a {@link ServerConnector}.
+ */
+public class BatchTest {
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+	private File directory;
+
+	/**
+	 * Starts the server, logs in and creates an empty directory.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.sc = this.fixture.connect();
+		this.sc.setBatchParallelism(4);
+		this.directory = this.fixture.getDirectory();
+	}
+
+	/**
+	 * Stops the server and deletes the directory.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Deletes several files, one of which does not exist.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDeleteFiles() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			this.server.putFile(FakeFixture.USER, "file" + i, new byte[1]);
+		}
+		List<String> paths = Arrays.asList("file0", "file1", "file2",
+				"file3", "file4", "file5", "file6", "file7", "file8",
+				"file9", "missing");
+		BatchResult result = this.sc.deleteFiles(paths);
+		assertFalse(result.isSuccessful());
+		assertEquals(10, result.getSucceededCount());
+		assertEquals(1, result.getFailedCount());
+		assertEquals(404,
+				((HTTPException) result.getError("missing")).getHTTPCode());
+		for (int i = 0; i < 10; i++) {
+			assertNull(this.server.getFile(FakeFixture.USER, "file" + i));
+		}
+	}
+
+	/**
+	 * Downloads several files into a directory, also into subdirectories.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetFiles() throws Exception {
+		byte[] a = { 1, 2, 3 };
+		byte[] b = { 4, 5 };
+		this.server.putFile(FakeFixture.USER, "a", a);
+		this.server.putFile(FakeFixture.USER, "dir/b", b);
+		BatchResult result = this.sc.getFiles(Arrays.asList("a", "dir/b"),
+				this.directory);
+		assertTrue(result.isSuccessful());
+		assertArrayEquals(a,
+				FakeFixture.read(new File(this.directory, "a")));
+		assertArrayEquals(b,
+				FakeFixture.read(new File(this.directory, "dir/b")));
+	}
+
+	/**
+	 * Checks, that files are not written outside of the directory.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetFilesOutsideDirectory() throws Exception {
+		String escape = "../" + this.directory.getName() + "-escaped";
+		this.server.putFile(FakeFixture.USER, escape, new byte[1]);
+		this.server.putFile(FakeFixture.USER, "a", new byte[1]);
+		BatchResult result = this.sc.getFiles(Arrays.asList(escape, "a"),
+				this.directory);
+		assertEquals(Arrays.asList("a"), result.getSucceeded());
+		assertTrue(result.getError(escape).getMessage()
+				.startsWith("invalid file name"));
+		assertFalse(new File(this.directory, escape).exists());
+	}
+
+	/**
+	 * Runs a batch on the calling thread.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSequential() throws Exception {
+		this.sc.setBatchParallelism(1);
+		this.server.putFile(FakeFixture.USER, "a", new byte[1]);
+		BatchResult result = this.sc.deleteFiles(Arrays.asList("a",
+				"missing"));
+		assertEquals(Arrays.asList("a"), result.getSucceeded());
+		assertEquals(1, result.getFailedCount());
+	}
+}
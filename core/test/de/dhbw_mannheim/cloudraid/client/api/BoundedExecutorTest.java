@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoundedExecutor} and the choice of the default executors.
+ */
+public class BoundedExecutorTest {
+
+	/**
+	 * Resets the switch for virtual threads.
+	 */
+	@After
+	public void tearDown() {
+		System.clearProperty(BoundedExecutor.VIRTUAL_THREADS);
+	}
+
+	/**
+	 * Checks, that the default executor uses platform threads, unless virtual
+	 * threads are enabled and supported.
+	 */
+	@Test
+	public void testDefaultExecutor() {
+		ExecutorService executor = BoundedExecutor.newDefaultExecutor(3);
+		assertTrue(executor instanceof ThreadPoolExecutor);
+		executor.shutdown();
+		assertFalse(BoundedExecutor.isVirtualThreadsEnabled());
+
+		BoundedExecutor.setVirtualThreadsEnabled(true);
+		executor = BoundedExecutor.newDefaultExecutor(3);
+		if (BoundedExecutor.isVirtualThreadSupported()) {
+			assertTrue(BoundedExecutor.isVirtualThreadsEnabled());
+			assertEquals(3, ((BoundedExecutor) executor).getMaxConcurrent());
+		} else {
+			assertFalse(BoundedExecutor.isVirtualThreadsEnabled());
+			assertEquals(3,
+					((ThreadPoolExecutor) executor).getMaximumPoolSize());
+		}
+		executor.shutdown();
+	}
+
+	/**
+	 * Checks, that a pool of platform threads is created, if virtual threads
+	 * are not available.
+	 */
+	@Test
+	public void testFallback() {
+		ExecutorService executor = BoundedExecutor.newVirtualThreadExecutor(
+				null, 3);
+		assertTrue(executor instanceof ThreadPoolExecutor);
+		assertEquals(3, ((ThreadPoolExecutor) executor).getMaximumPoolSize());
+		executor.shutdown();
+	}
+
+	/**
+	 * Checks, that no more than the given number of tasks run at the same
+	 * time.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLimit() throws Exception {
+		BoundedExecutor executor = new BoundedExecutor(
+				Executors.newCachedThreadPool(), 2);
+		final AtomicInteger running = new AtomicInteger(0);
+		final AtomicInteger peak = new AtomicInteger(0);
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < 10; i++) {
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					int now = running.incrementAndGet();
+					synchronized (peak) {
+						peak.set(Math.max(peak.get(), now));
+					}
+					Thread.sleep(20L);
+					running.decrementAndGet();
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(2, peak.get());
+		assertEquals(0, executor.getRunningCount());
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link BufferPool}.
+ */
+public class BufferPoolTest {
+
+	/**
+	 * Copies a file into a stream and a stream into a file with buffers that
+	 * are not a divisor of the length.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCopy() throws Exception {
+		BufferPool pool = new BufferPool(1000, 1);
+		byte[] data = FakeFixture.random(10500);
+		File file = File.createTempFile("cloudraid-test", ".dat");
+		try {
+			FakeFixture.write(file, data);
+			FileInputStream is = new FileInputStream(file);
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			try {
+				assertEquals(data.length, pool.copy(is.getChannel(), os));
+			} finally {
+				is.close();
+			}
+			assertArrayEquals(data, os.toByteArray());
+
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				assertEquals(100 + data.length, pool.copy(
+						new ByteArrayInputStream(data), raf.getChannel(), 100));
+			} finally {
+				raf.close();
+			}
+			byte[] expected = new byte[100 + data.length];
+			System.arraycopy(data, 0, expected, 0, 100);
+			System.arraycopy(data, 0, expected, 100, data.length);
+			assertArrayEquals(expected, FakeFixture.read(file));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Checks, that a size of 0 is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new BufferPool(0, 1);
+	}
+
+	/**
+	 * Checks, that released buffers are reused up to the maximum number of
+	 * idle buffers.
+	 */
+	@Test
+	public void testReuse() {
+		BufferPool pool = new BufferPool(1024, 1);
+		ByteBuffer first = pool.acquire();
+		ByteBuffer second = pool.acquire();
+		assertEquals(1024, first.capacity());
+		assertNotSame(first, second);
+		first.put((byte) 1);
+		pool.release(first);
+		pool.release(second);
+		ByteBuffer reused = pool.acquire();
+		assertSame(first, reused);
+		assertEquals(0, reused.position());
+		assertNotSame(second, pool.acquire());
+		pool.release(ByteBuffer.allocate(512));
+		assertEquals(1024, pool.acquire().capacity());
+	}
+
+	/**
+	 * Uploads and downloads a file with small buffers.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransfer() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		try {
+			ServerConnector sc = fixture.connect();
+			sc.setBufferPool(new BufferPool(1000, 1));
+			byte[] data = FakeFixture.random(100000);
+			File file = fixture.createFile(data);
+			sc.putFile("file.bin", file, false);
+			assertArrayEquals(data,
+					server.getFile(FakeFixture.USER, "file.bin"));
+			file.delete();
+			sc.getFile("file.bin", file);
+			assertArrayEquals(data, FakeFixture.read(file));
+		} finally {
+			fixture.stop();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the chunked uploads of a {@link ServerConnector} and their
+ * {@link UploadJournal}.
+ */
+public class ChunkedUploadTest {
+
+	private static final String NAME = "file.bin";
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final int CHUNKS = 16;
+
+	/**
+	 * Returns the path of a chunk on the server.
+	 * 
+	 * @param chunk
+	 *            The index of the chunk.
+	 * @return The path.
+	 */
+	private static String chunkPath(int chunk) {
+		return "/file/" + ChunkedUploadTest.NAME + "/chunks/" + chunk + "/";
+	}
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+	private File journals;
+	private File file;
+	private byte[] data;
+
+	/**
+	 * Returns the journal files.
+	 * 
+	 * @return The journal files.
+	 */
+	private File[] getJournals() {
+		File[] files = this.journals.listFiles();
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Starts the server, logs in and creates the uploaded file.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.sc = this.fixture.connect();
+		this.journals = new File(this.fixture.getDirectory(), "journals");
+		this.sc.setJournalDirectory(this.journals);
+		this.data = new byte[ChunkedUploadTest.CHUNKS
+				* ChunkedUploadTest.CHUNK_SIZE - 1000];
+		new Random(42L).nextBytes(this.data);
+		this.file = this.fixture.createFile(this.data);
+	}
+
+	/**
+	 * Stops the server and deletes the files.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Uploads the file, retrying failed chunks once.
+	 * 
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void upload() throws IOException, HTTPException {
+		this.sc.putFileChunked(ChunkedUploadTest.NAME, this.file, false,
+				ChunkedUploadTest.CHUNK_SIZE);
+	}
+
+	/**
+	 * Checks, that a chunk is retried after the server reported a checksum
+	 * mismatch.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testChecksumMismatch() throws Exception {
+		this.server.failNext(ChunkedUploadTest.chunkPath(3), 1, 400);
+		this.upload();
+		assertEquals(2,
+				this.server.getRequestCount(ChunkedUploadTest.chunkPath(3)));
+		assertArrayEquals(this.data, this.server.getFile(
+				FakeFixture.USER, ChunkedUploadTest.NAME));
+	}
+
+	/**
+	 * Checks, that the upload fails, if the checksum mismatches more often
+	 * than the chunk is retried.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testChecksumMismatchRepeated() throws Exception {
+		this.sc.setChunkRetries(1);
+		this.server.failNext(ChunkedUploadTest.chunkPath(3), 2, 400);
+		try {
+			this.upload();
+			fail("The chunk was not accepted.");
+		} catch (HTTPException e) {
+			assertEquals(400, e.getHTTPCode());
+		}
+		assertEquals(2,
+				this.server.getRequestCount(ChunkedUploadTest.chunkPath(3)));
+		assertEquals(0,
+				this.server.getRequestCount(ChunkedUploadTest.chunkPath(4)));
+	}
+
+	/**
+	 * Checks, that a journal with an incomplete last line, as left by a crash
+	 * while it was written, resumes the acknowledged chunks only, and that a
+	 * journal of a changed file is discarded.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testJournalRecovery() throws Exception {
+		String key = "server/user/" + ChunkedUploadTest.NAME;
+		UploadJournal journal = UploadJournal.open(this.journals, key,
+				this.file, ChunkedUploadTest.CHUNK_SIZE, false);
+		assertFalse(journal.isResumed());
+		journal.reset();
+		journal.acknowledge(0);
+		journal.acknowledge(1);
+		journal.close();
+		File[] files = this.getJournals();
+		assertEquals(1, files.length);
+		OutputStream os = new FileOutputStream(files[0], true);
+		try {
+			os.write("2".getBytes("utf-8"));
+		} finally {
+			os.close();
+		}
+
+		journal = UploadJournal.open(this.journals, key, this.file,
+				ChunkedUploadTest.CHUNK_SIZE, false);
+		assertTrue(journal.isResumed());
+		assertTrue(journal.isAcknowledged(0));
+		assertTrue(journal.isAcknowledged(1));
+		assertFalse(journal.isAcknowledged(2));
+		journal.resume();
+		journal.acknowledge(3);
+		journal.close();
+
+		journal = UploadJournal.open(this.journals, key, this.file,
+				ChunkedUploadTest.CHUNK_SIZE, false);
+		assertTrue(journal.isAcknowledged(3));
+		assertFalse(journal.isAcknowledged(2));
+		journal.close();
+
+		assertFalse(UploadJournal.open(this.journals, key, this.file,
+				ChunkedUploadTest.CHUNK_SIZE * 2, false).isResumed());
+		long lastModified = this.file.lastModified() - 10000L;
+		assertTrue(this.file.setLastModified(lastModified));
+		assertFalse(UploadJournal.open(this.journals, key, this.file,
+				ChunkedUploadTest.CHUNK_SIZE, false).isResumed());
+	}
+
+	/**
+	 * Checks, that an interrupted upload is resumed with the chunks that were
+	 * not acknowledged.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResume() throws Exception {
+		this.sc.setChunkRetries(0);
+		this.server.failNext(ChunkedUploadTest.chunkPath(5), 1, 0);
+		try {
+			this.upload();
+			fail("The connection was closed.");
+		} catch (IOException expected) {
+		}
+		assertEquals(1, this.getJournals().length);
+		this.upload();
+		for (int i = 0; i < ChunkedUploadTest.CHUNKS; i++) {
+			String path = ChunkedUploadTest.chunkPath(i);
+			assertEquals(path, i == 5 ? 2 : 1,
+					this.server.getRequestCount(path));
+		}
+		assertArrayEquals(this.data, this.server.getFile(
+				FakeFixture.USER, ChunkedUploadTest.NAME));
+		assertEquals(0, this.getJournals().length);
+	}
+
+	/**
+	 * Checks, that an upload the server does not know any more is started
+	 * again.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResumeDiscarded() throws Exception {
+		this.sc.setChunkRetries(0);
+		this.server.failNext(ChunkedUploadTest.chunkPath(5), 1, 0);
+		try {
+			this.upload();
+			fail("The connection was closed.");
+		} catch (IOException expected) {
+		}
+		this.server.discardUploads();
+		this.upload();
+		assertEquals(2,
+				this.server.getRequestCount(ChunkedUploadTest.chunkPath(0)));
+		assertArrayEquals(this.data, this.server.getFile(
+				FakeFixture.USER, ChunkedUploadTest.NAME));
+	}
+
+	/**
+	 * Uploads a file in chunks.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUpload() throws Exception {
+		this.upload();
+		assertArrayEquals(this.data, this.server.getFile(
+				FakeFixture.USER, ChunkedUploadTest.NAME));
+		for (int i = 0; i < ChunkedUploadTest.CHUNKS; i++) {
+			String path = ChunkedUploadTest.chunkPath(i);
+			assertEquals(path, 1, this.server.getRequestCount(path));
+		}
+		assertEquals(0, this.getJournals().length);
+		try {
+			this.upload();
+			fail("The file exists.");
+		} catch (HTTPException e) {
+			assertEquals(409, e.getHTTPCode());
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.api.CircuitBreaker.State;
+
+/**
+ * Tests the transitions between the states of a {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest {
+
+	private static final long OPEN_TIME = 100L;
+
+	/**
+	 * Checks, that a request is refused.
+	 * 
+	 * @param breaker
+	 *            The {@link CircuitBreaker}.
+	 */
+	private static void assertRefused(CircuitBreaker breaker) {
+		try {
+			breaker.acquire();
+			fail("The request was permitted.");
+		} catch (CircuitOpenException e) {
+		}
+	}
+
+	/**
+	 * Opens a circuit by failed requests.
+	 * 
+	 * @return The open {@link CircuitBreaker}.
+	 * @throws Exception
+	 */
+	private static CircuitBreaker open() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 3,
+				CircuitBreakerTest.OPEN_TIME);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(State.CLOSED, breaker.getState());
+			breaker.acquire();
+			breaker.failed();
+		}
+		assertEquals(State.OPEN, breaker.getState());
+		return breaker;
+	}
+
+	/**
+	 * Waits until the open time has elapsed.
+	 * 
+	 * @throws InterruptedException
+	 */
+	private static void waitOpenTime() throws InterruptedException {
+		Thread.sleep(CircuitBreakerTest.OPEN_TIME + 20L);
+	}
+
+	/**
+	 * Checks, that only failures in a row open the circuit.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testClosed() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000L);
+		breaker.acquire();
+		breaker.failed();
+		breaker.acquire();
+		breaker.succeeded();
+		breaker.acquire();
+		breaker.failed();
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.acquire();
+		breaker.failed();
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	/**
+	 * Checks, that an open circuit refuses requests and lets a single trial
+	 * request through after the open time, which closes it on success.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testHalfOpenSuccess() throws Exception {
+		CircuitBreaker breaker = CircuitBreakerTest.open();
+		CircuitBreakerTest.assertRefused(breaker);
+		CircuitBreakerTest.waitOpenTime();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.acquire();
+		CircuitBreakerTest.assertRefused(breaker);
+		breaker.succeeded();
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.acquire();
+		breaker.acquire();
+	}
+
+	/**
+	 * Checks, that a failed trial request opens the circuit again at once and
+	 * that a cancelled one lets another trial through.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testHalfOpenFailure() throws Exception {
+		CircuitBreaker breaker = CircuitBreakerTest.open();
+		CircuitBreakerTest.waitOpenTime();
+		breaker.acquire();
+		breaker.cancelled();
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.acquire();
+		breaker.failed();
+		assertEquals(State.OPEN, breaker.getState());
+		CircuitBreakerTest.assertRefused(breaker);
+
+		CircuitBreakerTest.waitOpenTime();
+		breaker.acquire();
+		breaker.succeeded();
+		assertEquals(State.CLOSED, breaker.getState());
+	}
+
+	/**
+	 * Checks the remaining time reported by a refused request and a reset.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReset() throws Exception {
+		CircuitBreaker breaker = CircuitBreakerTest.open();
+		try {
+			breaker.acquire();
+			fail("The request was permitted.");
+		} catch (CircuitOpenException e) {
+			assertTrue(e.getRetryAfter() > 0L);
+			assertTrue(e.getRetryAfter() <= CircuitBreakerTest.OPEN_TIME);
+		}
+		breaker.reset();
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.acquire();
+	}
+}
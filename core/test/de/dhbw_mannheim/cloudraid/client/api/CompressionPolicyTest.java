@@ -0,0 +1,259 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link CompressionPolicy}.
+ */
+public class CompressionPolicyTest {
+
+	/**
+	 * Reads a stream to its end.
+	 * 
+	 * @param in
+	 *            The stream.
+	 * @return The data.
+	 * @throws IOException
+	 */
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int len;
+		while ((len = in.read(buf)) != -1) {
+			out.write(buf, 0, len);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Encodes data and decodes it again.
+	 * 
+	 * @param encoding
+	 *            The encoding.
+	 * @param data
+	 *            The data.
+	 * @return The decoded data.
+	 * @throws IOException
+	 */
+	private static byte[] roundTrip(String encoding, byte[] data)
+			throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		OutputStream os = new CompressionPolicy().open(bos, encoding,
+				Deflater.BEST_SPEED, 512);
+		os.write(data);
+		os.close();
+		return CompressionPolicyTest.readAll(CompressionPolicy.decode(
+				new ByteArrayInputStream(bos.toByteArray()), encoding, 512));
+	}
+
+	/**
+	 * Encodes and decodes data with every supported encoding.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDecode() throws Exception {
+		byte[] data = FakeFixture.text(10000);
+		for (String encoding : Arrays.asList(CompressionPolicy.GZIP,
+				CompressionPolicy.DEFLATE, CompressionPolicy.IDENTITY)) {
+			assertArrayEquals(encoding, data,
+					CompressionPolicyTest.roundTrip(encoding, data));
+		}
+		assertArrayEquals(data, CompressionPolicyTest.readAll(CompressionPolicy
+				.decode(new ByteArrayInputStream(data), null, 512)));
+		try {
+			CompressionPolicy.decode(new ByteArrayInputStream(data), "br",
+					512);
+			fail("br is not supported.");
+		} catch (IOException expected) {
+		}
+	}
+
+	/**
+	 * Checks the detection of files, that are not worth compressing.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testIsCompressible() throws Exception {
+		CompressionPolicy policy = new CompressionPolicy();
+		File file = File.createTempFile("cloudraid-test", ".log");
+		File jpg = File.createTempFile("cloudraid-test", ".JPG");
+		try {
+			FakeFixture.write(file, FakeFixture.text(100000));
+			FakeFixture.write(jpg, FakeFixture.text(100));
+			assertTrue(policy.isCompressible(file));
+			assertFalse(policy.isCompressible(jpg));
+			FakeFixture.write(file, FakeFixture.random(100000));
+			assertFalse(policy.isCompressible(file));
+			policy.setEntropyThreshold(8.0);
+			assertTrue(policy.isCompressible(file));
+		} finally {
+			file.delete();
+			jpg.delete();
+		}
+	}
+
+	/**
+	 * Parses <code>Accept-Encoding</code> headers.
+	 */
+	@Test
+	public void testParseAcceptEncoding() {
+		assertEquals(Collections.emptySet(),
+				CompressionPolicy.parseAcceptEncoding(null));
+		String header = "GZIP, deflate;q=0, identity;q=0.5";
+		assertEquals(
+				new HashSet<String>(Arrays.asList("gzip", "identity")),
+				CompressionPolicy.parseAcceptEncoding(header));
+	}
+
+	/**
+	 * Checks the encodings and levels chosen for uploads.
+	 */
+	@Test
+	public void testSelect() {
+		CompressionPolicy policy = new CompressionPolicy();
+		Set<String> none = Collections.emptySet();
+		Set<String> all = new HashSet<String>(Arrays.asList("gzip",
+				"deflate", "identity"));
+		assertEquals("gzip", policy.selectEncoding(true, none));
+		assertEquals("gzip", policy.selectEncoding(false, none));
+		assertEquals("identity", policy.selectEncoding(false, all));
+		policy.setPreferredEncodings(Arrays.asList("deflate", "gzip"));
+		assertEquals("gzip", policy.selectEncoding(true, none));
+		assertEquals("deflate", policy.selectEncoding(true, all));
+
+		assertEquals(Deflater.NO_COMPRESSION, policy.selectLevel(false, 1L));
+		assertEquals(Deflater.DEFAULT_COMPRESSION,
+				policy.selectLevel(true, 1L));
+		assertEquals(Deflater.BEST_SPEED, policy.selectLevel(true,
+				CompressionPolicy.DEFAULT_LARGE_FILE_SIZE));
+	}
+
+	/**
+	 * Uploads a file, that is not compressible, to a server announcing
+	 * identity and to one announcing nothing.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUpload() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		try {
+			byte[] data = FakeFixture.random(100000);
+			File file = fixture.createFile(data);
+			ServerConnector sc = fixture.connect();
+			sc.putFile("gzip", file, false);
+			server.setAcceptEncoding("gzip, identity");
+			sc = fixture.connect();
+			sc.putFile("identity", file, false);
+			assertEquals("gzip",
+					server.getContentEncoding(FakeFixture.USER, "gzip"));
+			assertEquals("identity",
+					server.getContentEncoding(FakeFixture.USER, "identity"));
+			assertArrayEquals(data, server.getFile(FakeFixture.USER, "gzip"));
+			assertArrayEquals(data,
+					server.getFile(FakeFixture.USER, "identity"));
+		} finally {
+			fixture.stop();
+		}
+	}
+
+	/**
+	 * Uploads a file considered compressible, that does not get smaller, to a
+	 * server announcing identity.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUploadNotShrinking() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		server.setAcceptEncoding("gzip, identity");
+		try {
+			byte[] data = FakeFixture.random(100000);
+			File file = fixture.createFile(data);
+			ServerConnector sc = fixture.connect();
+			CompressionPolicy policy = new CompressionPolicy();
+			policy.setEntropyThreshold(8.0);
+			sc.setCompressionPolicy(policy);
+			sc.putFile("file", file, false);
+			assertEquals("identity",
+					server.getContentEncoding(FakeFixture.USER, "file"));
+			assertArrayEquals(data, server.getFile(FakeFixture.USER, "file"));
+		} finally {
+			fixture.stop();
+		}
+	}
+
+	/**
+	 * Uploads a compressible file, whose body is streamed with the length of
+	 * the compressed file.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUploadCompressed() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		File file = new File(fixture.getDirectory(), "file.txt");
+		try {
+			byte[] data = new byte[300000];
+			for (int i = 0; i < data.length; i++) {
+				data[i] = (byte) ('a' + i % 7);
+			}
+			FakeFixture.write(file, data);
+			ServerConnector sc = fixture.connect();
+			sc.putFile("file", file, false);
+			assertEquals("gzip",
+					server.getContentEncoding(FakeFixture.USER, "file"));
+			assertArrayEquals(data, server.getFile(FakeFixture.USER, "file"));
+		} finally {
+			fixture.stop();
+		}
+	}
+}
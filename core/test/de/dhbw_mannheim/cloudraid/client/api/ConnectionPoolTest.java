@@ -0,0 +1,288 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.fake.SilentServer;
+
+/**
+ * Tests the reuse of connections by the {@link ConnectionPool}.
+ */
+public class ConnectionPoolTest {
+
+	private static final int FILES = 20;
+
+	/**
+	 * A {@link ConnectionPool} asking the server to close every connection
+	 * after its response.
+	 */
+	private static class ClosingPool extends PlainConnectionPool {
+		@Override
+		protected HttpURLConnection open(URL url) throws IOException {
+			HttpURLConnection con = super.open(url);
+			con.setRequestProperty("Connection", "close");
+			return con;
+		}
+	}
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private FakeHttpServer http;
+	private File file;
+
+	/**
+	 * Uploads, downloads and deletes files.
+	 * 
+	 * @param sc
+	 *            The {@link ServerConnector}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 */
+	private void run(ServerConnector sc) throws IOException, HTTPException {
+		sc.login();
+		File download = this.fixture.createFile(null);
+		for (int i = 0; i < ConnectionPoolTest.FILES; i++) {
+			sc.putFile("test/" + i, this.file, false);
+			sc.getFile("test/" + i, download);
+			sc.deleteFile("test/" + i);
+		}
+		sc.logout();
+	}
+
+	/**
+	 * Starts the server and creates the uploaded file.
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.http = this.fixture.getHttpServer();
+		this.file = this.fixture.createFile(new byte[4096]);
+	}
+
+	/**
+	 * Stops the server and deletes the uploaded file.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks the counting of connections: without keep-alive, every request
+	 * needs its own connection.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCloseUsesConnectionPerRequest() throws Exception {
+		ServerConnector sc = new ServerConnector(
+				this.http.getServerConnection(FakeFixture.USER,
+						FakeFixture.USER), new ClosingPool());
+		long before = this.server.getRequestCount();
+		this.run(sc);
+		assertEquals(this.server.getRequestCount(),
+				this.http.getConnectionCount());
+		assertEquals(3 * ConnectionPoolTest.FILES + 2,
+				this.server.getRequestCount() - before);
+	}
+
+	/**
+	 * Checks, that {@link ConnectionPool#configure()} keeps the limits that
+	 * are already set.
+	 */
+	@Test
+	public void testConfigureKeepsLimits() {
+		int maxIdlePerHost = ConnectionPool.getMaxIdlePerHost();
+		int idleTimeout = ConnectionPool.getIdleTimeout();
+		try {
+			ConnectionPool.setKeepAliveLimits(3, 7);
+			ConnectionPool.configure();
+			assertEquals(3, ConnectionPool.getMaxIdlePerHost());
+			assertEquals(7, ConnectionPool.getIdleTimeout());
+		} finally {
+			ConnectionPool.setKeepAliveLimits(maxIdlePerHost, idleTimeout);
+		}
+	}
+
+	/**
+	 * Checks, that the default {@link ConnectionPool} is shared.
+	 */
+	@Test
+	public void testGetDefault() {
+		assertSame(ConnectionPool.getDefault(), ConnectionPool.getDefault());
+	}
+
+	/**
+	 * Checks, that the keep-alive limits are set for the whole JVM and
+	 * reported as set.
+	 */
+	@Test
+	public void testKeepAliveLimits() {
+		int maxIdlePerHost = ConnectionPool.getMaxIdlePerHost();
+		int idleTimeout = ConnectionPool.getIdleTimeout();
+		try {
+			ConnectionPool.setKeepAliveLimits(3, 7);
+			assertEquals(3, ConnectionPool.getMaxIdlePerHost());
+			assertEquals(7, ConnectionPool.getIdleTimeout());
+			assertEquals("3", System.getProperty("http.maxConnections"));
+			assertEquals("7", System.getProperty("http.keepAlive.time.server"));
+			assertEquals("7",
+					System.getProperty("jdk.httpclient.keepalive.timeout"));
+		} finally {
+			ConnectionPool.setKeepAliveLimits(maxIdlePerHost, idleTimeout);
+		}
+	}
+
+	/**
+	 * Checks, that the requests of a {@link ServerConnector} reuse one
+	 * connection.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testKeepAlive() throws Exception {
+		ServerConnector sc = new ServerConnector(
+				this.http.getServerConnection(FakeFixture.USER,
+						FakeFixture.USER), new PlainConnectionPool());
+		this.run(sc);
+		assertTrue(this.server.getRequestCount() > 3
+				* ConnectionPoolTest.FILES);
+		assertEquals(1, this.http.getConnectionCount());
+	}
+
+	/**
+	 * Checks, that a connection is kept alive after an error response.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testKeepAliveAfterError() throws Exception {
+		ServerConnector sc = new ServerConnector(
+				this.http.getServerConnection(FakeFixture.USER,
+						FakeFixture.USER), new PlainConnectionPool());
+		sc.login();
+		File download = this.fixture.createFile(null);
+		for (int i = 0; i < ConnectionPoolTest.FILES; i++) {
+			try {
+				sc.getFile("missing", download);
+				fail("The file does not exist.");
+			} catch (HTTPException e) {
+				assertEquals(404, e.getHTTPCode());
+			}
+		}
+		sc.putFile("present", this.file, false);
+		sc.getFile("present", download);
+		assertArrayEquals(new byte[4096],
+				this.server.getFile(FakeFixture.USER, "present"));
+		assertEquals(1, this.http.getConnectionCount());
+	}
+
+	/**
+	 * Checks, that a request to a server that accepts the connection, but
+	 * never answers, times out and is retried by the {@link RetryPolicy}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadTimeout() throws Exception {
+		SilentServer silent = new SilentServer();
+		ServerConnection con = silent.getServerConnection(
+				FakeFixture.USER, FakeFixture.USER);
+		String address = con.getServer() + ":" + con.getPort();
+		// The server cannot be asked for its API version.
+		ServerInfo.put(address, new ServerInfo(false, "CloudRAID/"
+				+ ServerConnector.API_VERSION, null, "", 0L));
+		try {
+			ConnectionPool pool = new PlainConnectionPool();
+			assertEquals(ConnectionPool.DEFAULT_READ_TIMEOUT,
+					pool.getReadTimeout());
+			pool.setReadTimeout(1);
+			ServerConnector sc = new ServerConnector(con, pool);
+			sc.setCacheDirectory(null);
+			sc.setRetryPolicy(new RetryPolicy(2, 0L, 0L));
+			long start = System.nanoTime();
+			try {
+				sc.getFileList();
+				fail("The server did not answer.");
+			} catch (SocketTimeoutException e) {
+				// Expected.
+			}
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS
+					.toNanos(10));
+			assertEquals(3, silent.getConnectionCount());
+		} finally {
+			ServerInfo.forget(address);
+			silent.stop();
+		}
+	}
+
+	/**
+	 * Checks, that the response to an upload is awaited without the read
+	 * timeout, as the server stores the file on its backends before it
+	 * answers.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUploadWithoutReadTimeout() throws Exception {
+		ConnectionPool pool = new PlainConnectionPool();
+		pool.setReadTimeout(1);
+		ServerConnector sc = new ServerConnector(
+				this.http.getServerConnection(FakeFixture.USER,
+						FakeFixture.USER), pool);
+		sc.setRetryPolicy(new RetryPolicy(0, 0L, 0L));
+		sc.login();
+		this.server.setLatency(1500L);
+		try {
+			sc.putFile("test/slow", this.file, false);
+		} finally {
+			this.server.setLatency(0L);
+		}
+		assertEquals(4096,
+				this.server.getFile(FakeFixture.USER, "test/slow").length);
+		sc.logout();
+	}
+}
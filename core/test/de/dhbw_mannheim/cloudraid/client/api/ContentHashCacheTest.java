@@ -0,0 +1,283 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link ContentHashCache} and the skipped updates and verified
+ * downloads of the {@link ServerConnector} based on it.
+ */
+public class ContentHashCacheTest {
+
+	private static final String HASH = "0123456789abcdef";
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+	private File directory;
+
+	/**
+	 * Starts the server, logs in and creates an empty directory.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.sc = this.fixture.connect();
+		this.directory = this.fixture.getDirectory();
+	}
+
+	/**
+	 * Stops the server and deletes the directory.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks, that a local digest is only returned while the size and the
+	 * modification date of the file are unchanged.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLocal() throws Exception {
+		ContentHashCache cache = new ContentHashCache();
+		File file = new File(this.directory, "a");
+		FakeFixture.write(file, new byte[] { 1 });
+		file.setLastModified(100000L);
+		assertNull(cache.getLocal(file));
+		cache.putLocal(file, ContentHashCacheTest.HASH);
+		assertEquals(ContentHashCacheTest.HASH, cache.getLocal(file));
+
+		file.setLastModified(200000L);
+		assertNull(cache.getLocal(file));
+		cache.putLocal(file, ContentHashCacheTest.HASH);
+		FakeFixture.write(file, new byte[] { 1, 2 });
+		file.setLastModified(200000L);
+		assertNull(cache.getLocal(file));
+	}
+
+	/**
+	 * Checks, that a remote digest is only returned for the same size and if
+	 * the file on the server still has the modification date it had after the
+	 * transfer.
+	 */
+	@Test
+	public void testRemote() {
+		ContentHashCache cache = new ContentHashCache();
+		assertNull(cache.getRemote("a", 1L, 0L));
+		cache.putRemote("a", 1L, ContentHashCacheTest.HASH);
+		assertEquals(ContentHashCacheTest.HASH, cache.getRemote("a", 1L, 0L));
+		// The date after the transfer is not known yet.
+		assertNull(cache.getRemote("a", 1L, 100000L));
+		assertEquals(Collections.singleton("a"), cache.getUnlisted());
+		cache.setRemoteLastMod("a", 100000L);
+		cache.setRemoteLastMod("a", 200000L);
+		assertTrue(cache.getUnlisted().isEmpty());
+		assertEquals(ContentHashCacheTest.HASH,
+				cache.getRemote("a", 1L, 100000L));
+		assertNull(cache.getRemote("a", 2L, 0L));
+		// Modified later, or earlier by the clock of the client.
+		assertNull(cache.getRemote("a", 1L, 200000L));
+		assertNull(cache.getRemote("a", 1L, 50000L));
+		cache.removeRemote("a");
+		assertNull(cache.getRemote("a", 1L, 0L));
+	}
+
+	/**
+	 * Stores digests in a file, reads them with a new cache and checks, that
+	 * a partly written last line is ignored.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPersistence() throws Exception {
+		File file = new File(this.directory, "a");
+		FakeFixture.write(file, new byte[] { 1 });
+		File log = new File(this.directory, "cache/hashes");
+		ContentHashCache cache = new ContentHashCache();
+		cache.setFile(log);
+		cache.putLocal(file, ContentHashCacheTest.HASH);
+		cache.putRemote("a", 1L, ContentHashCacheTest.HASH);
+		cache.putRemote("b", 1L, ContentHashCacheTest.HASH);
+		cache.removeRemote("b");
+		assertTrue(log.isFile());
+
+		FileOutputStream out = new FileOutputStream(log, true);
+		try {
+			out.write(("R\t1\t0\t" + ContentHashCacheTest.HASH + "\tc")
+					.getBytes("utf-8"));
+		} finally {
+			out.close();
+		}
+
+		cache = new ContentHashCache();
+		cache.setFile(log);
+		assertEquals(ContentHashCacheTest.HASH, cache.getLocal(file));
+		assertEquals(ContentHashCacheTest.HASH, cache.getRemote("a", 1L, 0L));
+		assertNull(cache.getRemote("b", 1L, 0L));
+		assertNull(cache.getRemote("c", 1L, 0L));
+
+		// Appending after the partial line keeps the following lines valid.
+		cache.putRemote("d", 1L, ContentHashCacheTest.HASH);
+		cache = new ContentHashCache();
+		cache.setFile(log);
+		assertNull(cache.getRemote("c", 1L, 0L));
+		assertEquals(ContentHashCacheTest.HASH, cache.getRemote("d", 1L, 0L));
+	}
+
+	/**
+	 * Checks, that an update of an unchanged file is skipped, but not if the
+	 * file was changed on the server by someone else.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipUpdate() throws Exception {
+		File file = new File(this.directory, "a");
+		FakeFixture.write(file, new byte[] { 1, 2, 3 });
+		this.sc.putFile("a", file, false);
+		assertTrue(this.sc.matchesRemote("a", file));
+		int count = this.server.getRequestCount("/file/a/");
+
+		this.sc.putFile("a", file, true);
+		assertEquals(count, this.server.getRequestCount("/file/a/"));
+
+		// Changed by another client with the same size.
+		this.server.putFile(FakeFixture.USER, "a", new byte[] { 4,
+				5, 6 });
+		this.server.setLastModified(FakeFixture.USER, "a",
+				System.currentTimeMillis() + 60000L);
+		this.sc.putFile("a", file, true);
+		assertEquals(count + 1, this.server.getRequestCount("/file/a/"));
+		assertArrayEquals(new byte[] { 1, 2, 3 },
+				this.server.getFile(FakeFixture.USER, "a"));
+	}
+
+	/**
+	 * Checks, that the file list read to skip an update is not given to the
+	 * {@link DataPresenter}s.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipUpdateQuietly() throws Exception {
+		final List<FileListDelta> deltas = new ArrayList<FileListDelta>();
+		this.sc.registerDataPresenter(new DeltaDataPresenter() {
+			@Override
+			public void giveFileList(Vector<CloudFile> fileList) {
+				fail("The file list was given to the presenter.");
+			}
+
+			@Override
+			public void giveFileListDelta(FileListDelta delta) {
+				deltas.add(delta);
+			}
+		});
+		File file = new File(this.directory, "a");
+		FakeFixture.write(file, new byte[] { 1, 2, 3 });
+		this.sc.putFile("a", file, false);
+		int count = this.server.getRequestCount("/file/a/");
+		this.sc.putFile("a", file, true);
+		assertEquals(count, this.server.getRequestCount("/file/a/"));
+		assertTrue(deltas.isEmpty());
+
+		this.sc.getFileIndex();
+		assertEquals(1, deltas.size());
+	}
+
+	/**
+	 * Checks, that an update is not skipped, if the file was changed on the
+	 * server by someone else with a date before the upload by the clock of
+	 * this client.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipUpdateServerClock() throws Exception {
+		File file = new File(this.directory, "a");
+		FakeFixture.write(file, new byte[] { 1, 2, 3 });
+		this.sc.putFile("a", file, false);
+		this.sc.getFileIndex();
+
+		// The clock of the server is behind the clock of the client.
+		this.server.putFile(FakeFixture.USER, "a", new byte[] { 4,
+				5, 6 });
+		this.server.setLastModified(FakeFixture.USER, "a",
+				System.currentTimeMillis() - 3600000L);
+		this.sc.putFile("a", file, true);
+		assertArrayEquals(new byte[] { 1, 2, 3 },
+				this.server.getFile(FakeFixture.USER, "a"));
+	}
+
+	/**
+	 * Checks, that a download is verified with the digest sent by the server
+	 * and that a corrupted download is deleted.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testVerify() throws Exception {
+		this.server.setContentHashes(true);
+		this.server.putFile(FakeFixture.USER, "a", new byte[] { 1,
+				2, 3 });
+		File file = new File(this.directory, "a");
+		this.sc.getFile("a", file);
+		assertTrue(this.sc.matchesRemote("a", file));
+
+		this.server.setWrongHashes(true);
+		File other = new File(this.directory, "b");
+		try {
+			this.sc.getFile("a", other);
+			fail("The corrupted download was not detected.");
+		} catch (IOException e) {
+		}
+		assertFalse(other.exists());
+	}
+}
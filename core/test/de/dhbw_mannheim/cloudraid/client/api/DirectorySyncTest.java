@@ -0,0 +1,253 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the planning and execution of a {@link DirectorySync} in both
+ * directions for new, changed and deleted files.
+ */
+public class DirectorySyncTest {
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+	private TransferManager tm;
+	private File directory;
+
+	/**
+	 * Plans a synchronization with the current file list of the server.
+	 * 
+	 * @param sync
+	 *            The {@link DirectorySync}.
+	 * @return The number of planned transfers.
+	 * @throws Exception
+	 */
+	private int plan(DirectorySync sync) throws Exception {
+		return sync.plan(this.sc.getFileIndex()).size();
+	}
+
+	/**
+	 * Returns a local file in the directory.
+	 * 
+	 * @param path
+	 *            The path relative to the directory.
+	 * @return The file.
+	 */
+	private File local(String path) {
+		return new File(this.directory, path);
+	}
+
+	/**
+	 * Writes a local file with a modification date.
+	 * 
+	 * @param path
+	 *            The path relative to the directory.
+	 * @param data
+	 *            The content.
+	 * @param lastMod
+	 *            The modification date in milliseconds.
+	 * @throws IOException
+	 */
+	private void write(String path, byte[] data, long lastMod)
+			throws IOException {
+		File file = this.local(path);
+		file.getParentFile().mkdirs();
+		FakeFixture.write(file, data);
+		file.setLastModified(lastMod);
+	}
+
+	/**
+	 * Starts the server, logs in and creates an empty directory.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.sc = this.fixture.connect();
+		this.tm = new TransferManager();
+		this.directory = this.fixture.getDirectory();
+	}
+
+	/**
+	 * Stops the server and deletes the directory.
+	 */
+	@After
+	public void tearDown() {
+		this.tm.shutdown();
+		this.fixture.stop();
+	}
+
+	/**
+	 * Downloads new files, a changed file and keeps a file deleted on the
+	 * server.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDownload() throws Exception {
+		long now = System.currentTimeMillis();
+		this.server.putFile(FakeFixture.USER, "sync/a", new byte[] { 1 });
+		this.server.putFile(FakeFixture.USER, "sync/dir/b",
+				new byte[] { 2 });
+		this.server.putFile(FakeFixture.USER, "other", new byte[] { 3 });
+		DirectorySync sync = new DirectorySync(this.sc, this.directory,
+				"sync", DirectorySync.Direction.DOWNLOAD);
+
+		assertEquals(2, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		assertArrayEquals(new byte[] { 1 },
+				FakeFixture.read(this.local("a")));
+		assertArrayEquals(new byte[] { 2 },
+				FakeFixture.read(this.local("dir/b")));
+		assertFalse(this.local("other").exists());
+		assertEquals(0, this.plan(sync));
+		assertEquals(2, sync.getUnchangedCount());
+
+		// Changed on the server.
+		this.server.putFile(FakeFixture.USER, "sync/a", new byte[] { 4 });
+		this.server.setLastModified(FakeFixture.USER, "sync/a",
+				now + 10000L);
+		assertEquals(1, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		assertArrayEquals(new byte[] { 4 },
+				FakeFixture.read(this.local("a")));
+
+		// Changed locally, so the date differs from the server.
+		this.write("a", new byte[] { 5 }, now + 20000L);
+		assertEquals(1, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		assertArrayEquals(new byte[] { 4 },
+				FakeFixture.read(this.local("a")));
+
+		// Deleted on the server.
+		this.sc.deleteFile("sync/dir/b");
+		assertEquals(0, this.plan(sync));
+		assertTrue(this.local("dir/b").isFile());
+	}
+
+	/**
+	 * Checks, that remote names leaving the directory are not downloaded.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDownloadOutsideDirectory() throws Exception {
+		String escape = "sync/../" + this.directory.getName() + "-escaped";
+		this.server.putFile(FakeFixture.USER, escape, new byte[1]);
+		this.server.putFile(FakeFixture.USER, "sync/a", new byte[1]);
+		DirectorySync sync = new DirectorySync(this.sc, this.directory,
+				"sync", DirectorySync.Direction.DOWNLOAD);
+		assertEquals(1, this.plan(sync));
+		BatchResult result = sync.run(this.tm);
+		assertEquals(Arrays.asList("sync/a"), result.getSucceeded());
+		assertTrue(result.getError(escape) instanceof IOException);
+		assertFalse(new File(this.directory.getParentFile(),
+				this.directory.getName() + "-escaped").exists());
+	}
+
+	/**
+	 * Uploads new files, a changed file and keeps a file deleted locally.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUpload() throws Exception {
+		long past = System.currentTimeMillis() - 60000L;
+		this.write("a", new byte[] { 1 }, past);
+		this.write("dir/b", new byte[] { 2 }, past);
+		DirectorySync sync = new DirectorySync(this.sc, this.directory,
+				"sync", DirectorySync.Direction.UPLOAD);
+
+		assertEquals(2, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		assertArrayEquals(new byte[] { 1 },
+				this.server.getFile(FakeFixture.USER, "sync/a"));
+		assertArrayEquals(new byte[] { 2 },
+				this.server.getFile(FakeFixture.USER, "sync/dir/b"));
+		assertEquals(0, this.plan(sync));
+		assertEquals(2, sync.getUnchangedCount());
+
+		// Changed locally.
+		this.write("a", new byte[] { 3 }, System.currentTimeMillis() + 10000L);
+		assertEquals(1, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		assertArrayEquals(new byte[] { 3 },
+				this.server.getFile(FakeFixture.USER, "sync/a"));
+
+		// Deleted locally.
+		assertTrue(this.local("dir/b").delete());
+		assertEquals(0, this.plan(sync));
+		assertArrayEquals(new byte[] { 2 },
+				this.server.getFile(FakeFixture.USER, "sync/dir/b"));
+	}
+
+	/**
+	 * Checks, that a local change is uploaded, although the modification date
+	 * of the server is ahead of the local file, and that a file whose date
+	 * changed without its content is not uploaded.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testUploadServerClockAhead() throws Exception {
+		long now = System.currentTimeMillis();
+		this.write("a", new byte[] { 1 }, now - 60000L);
+		DirectorySync sync = new DirectorySync(this.sc, this.directory,
+				"sync", DirectorySync.Direction.UPLOAD);
+		assertEquals(1, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		// The clock of the server is an hour ahead.
+		this.server.setLastModified(FakeFixture.USER, "sync/a",
+				now + 3600000L);
+		assertEquals(0, this.plan(sync));
+
+		// Touched locally.
+		this.local("a").setLastModified(now - 30000L);
+		assertEquals(0, this.plan(sync));
+
+		// Changed locally.
+		this.write("a", new byte[] { 2 }, now);
+		assertEquals(1, this.plan(sync));
+		assertTrue(sync.run(this.tm).isSuccessful());
+		assertArrayEquals(new byte[] { 2 },
+				this.server.getFile(FakeFixture.USER, "sync/a"));
+	}
+}
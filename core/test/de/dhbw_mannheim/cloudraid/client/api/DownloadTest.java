@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the resumable and segmented downloads of a {@link ServerConnector}.
+ */
+public class DownloadTest {
+
+	private static final String NAME = "file.bin";
+
+	private static final String PATH = "/file/" + DownloadTest.NAME + "/";
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+	private File destination;
+	private File part;
+
+	/**
+	 * Stores a file with random content on the server.
+	 * 
+	 * @param length
+	 *            The length of the file.
+	 * @return The content.
+	 */
+	private byte[] createFile(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		this.server.putFile(FakeFixture.USER, DownloadTest.NAME, data);
+		return data;
+	}
+
+	/**
+	 * Starts the server and logs in.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.sc = this.fixture.connect();
+		this.destination = new File(this.fixture.getDirectory(),
+				DownloadTest.NAME);
+		this.part = new File(this.destination.getPath() + ".part");
+	}
+
+	/**
+	 * Stops the server and deletes the files.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Downloads a file without a partial file.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResumable() throws Exception {
+		byte[] data = this.createFile(300000);
+		this.sc.getFileResumable(DownloadTest.NAME, this.destination);
+		assertArrayEquals(data, FakeFixture.read(this.destination));
+		assertFalse(this.part.exists());
+		assertEquals(Arrays.asList("bytes=0-"), this.server.getRanges());
+	}
+
+	/**
+	 * Checks, that a partial file is discarded, if it does not match the file
+	 * on the server.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResumeMismatch() throws Exception {
+		byte[] data = this.createFile(1000);
+		FakeFixture.write(this.part, new byte[2000]);
+		this.sc.getFileResumable(DownloadTest.NAME, this.destination);
+		assertArrayEquals(data, FakeFixture.read(this.destination));
+		assertEquals(Arrays.asList("bytes=2000-", "bytes=0-"),
+				this.server.getRanges());
+	}
+
+	/**
+	 * Checks, that the {@link HTTPException} of a missing file is thrown.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResumableMissing() throws Exception {
+		try {
+			this.sc.getFileResumable(DownloadTest.NAME, this.destination);
+			fail("The file does not exist.");
+		} catch (HTTPException e) {
+			assertEquals(404, e.getHTTPCode());
+		}
+		assertFalse(this.destination.exists());
+	}
+
+	/**
+	 * Checks, that only the missing bytes of a partial file are requested.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResumePartial() throws Exception {
+		byte[] data = this.createFile(300000);
+		FakeFixture.write(this.part, Arrays.copyOf(data, 100000));
+		this.sc.getFileResumable(DownloadTest.NAME, this.destination);
+		assertArrayEquals(data, FakeFixture.read(this.destination));
+		assertEquals(Arrays.asList("bytes=100000-"), this.server.getRanges());
+	}
+
+	/**
+	 * Checks, that a failed request is retried.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRetry() throws Exception {
+		byte[] data = this.createFile(300000);
+		this.server.failNext(DownloadTest.PATH, 1, 0);
+		this.sc.getFileResumable(DownloadTest.NAME, this.destination);
+		assertArrayEquals(data, FakeFixture.read(this.destination));
+		assertEquals(2, this.server.getRequestCount(DownloadTest.PATH));
+	}
+
+	/**
+	 * Downloads a file in parallel segments.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSegmented() throws Exception {
+		int mib = (int) ServerConnector.MIN_SEGMENT_SIZE;
+		byte[] data = this.createFile(5 * mib + 1000);
+		this.server.setLatency(100L);
+		this.sc.getFileSegmented(DownloadTest.NAME, this.destination, 4);
+		assertArrayEquals(data, FakeFixture.read(this.destination));
+		assertFalse(this.part.exists());
+		assertEquals(5, this.server.getRanges().size());
+		assertEquals("bytes=0-" + (mib - 1), this.server.getRanges().get(0));
+		assertTrue(this.server.getPeakConcurrentRequests() > 1);
+	}
+
+	/**
+	 * Downloads a file smaller than a segment with a single request.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testSegmentedSmallFile() throws Exception {
+		byte[] data = this.createFile(1000);
+		this.sc.getFileSegmented(DownloadTest.NAME, this.destination, 4);
+		assertArrayEquals(data, FakeFixture.read(this.destination));
+		assertEquals(1, this.server.getRequestCount(DownloadTest.PATH));
+	}
+}
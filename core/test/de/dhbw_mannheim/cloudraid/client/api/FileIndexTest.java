@@ -0,0 +1,231 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link FileIndex}.
+ */
+public class FileIndexTest {
+
+	private static final int FILES = 10000;
+
+	private static final String[] STATES = { "UPLOADED", "UPLOADING",
+			"DELETED" };
+
+	/**
+	 * Creates a {@link FileIndex} with {@link #FILES} files.
+	 * 
+	 * @return The {@link FileIndex}.
+	 */
+	private static FileIndex create() {
+		FileIndex index = new FileIndex(null);
+		for (int i = 0; i < FileIndexTest.FILES; i++) {
+			index.add("dir" + (i % 7) + "/f\u00fcle " + i, "hash" + i, i,
+					FileIndexTest.STATES[i % FileIndexTest.STATES.length]);
+		}
+		return index;
+	}
+
+	/**
+	 * Checks, that the files can be read back by position and iteration.
+	 */
+	@Test
+	public void testGet() {
+		FileIndex index = FileIndexTest.create();
+		assertEquals(FileIndexTest.FILES, index.size());
+		Iterator<CloudFile> it = index.iterator();
+		for (int i = 0; i < FileIndexTest.FILES; i++) {
+			CloudFile file = it.next();
+			assertEquals("dir" + (i % 7) + "/f\u00fcle " + i, file.getName());
+			assertEquals("hash" + i, file.getHashedName());
+			assertEquals(i, file.getLastModTime());
+			assertEquals(FileIndexTest.STATES[i % 3], file.getState());
+			assertEquals(file.getName(), index.getName(i));
+			assertEquals(file.getHashedName(), index.getHashedName(i));
+			assertEquals(i, index.getLastModTime(i));
+			assertEquals(file.getState(), index.getState(i));
+		}
+		assertFalse(it.hasNext());
+		assertSame(index.getState(0), index.getState(3));
+	}
+
+	/**
+	 * Checks the lookup by name and hashed name.
+	 */
+	@Test
+	public void testLookup() {
+		FileIndex index = FileIndexTest.create();
+		for (int i = 0; i < FileIndexTest.FILES; i++) {
+			assertEquals(i, index.indexOfName("dir" + (i % 7) + "/f\u00fcle "
+					+ i));
+			assertEquals(i, index.indexOfHashedName("hash" + i));
+		}
+		assertEquals(-1, index.indexOfName("dir0/f\u00fcle 1"));
+		assertEquals(-1, index.indexOfName(""));
+		assertEquals(-1, index.indexOfHashedName("hash" + FileIndexTest.FILES));
+		assertEquals("hash42", index.getByName("dir0/f\u00fcle 42")
+				.getHashedName());
+		assertEquals("dir0/f\u00fcle 42", index.getByHashedName("hash42")
+				.getName());
+		assertNull(index.getByName("missing"));
+		assertNull(index.getByHashedName("missing"));
+	}
+
+	/**
+	 * Checks, that existing files are updated or replaced.
+	 */
+	@Test
+	public void testPut() {
+		FileIndex index = FileIndexTest.create();
+		index.put("dir1/f\u00fcle 1", "hash1", 12345L, "DELETED");
+		assertEquals(FileIndexTest.FILES, index.size());
+		assertEquals(12345L, index.getLastModTime(1));
+		assertEquals("DELETED", index.getState(1));
+		index.put("dir2/f\u00fcle 2", "other", 2L, "UPLOADED");
+		assertEquals(FileIndexTest.FILES, index.size());
+		assertEquals(-1, index.indexOfHashedName("hash2"));
+		assertEquals("dir2/f\u00fcle 2", index.getByHashedName("other")
+				.getName());
+		index.put("new", "hashnew", 1L, "UPLOADED");
+		assertEquals(FileIndexTest.FILES + 1, index.size());
+		assertEquals(FileIndexTest.FILES, index.indexOfName("new"));
+	}
+
+	/**
+	 * Removes many files and checks, that the remaining ones are still found
+	 * after the entries of the hash tables were shifted and the arena was
+	 * compacted.
+	 */
+	@Test
+	public void testRemove() {
+		FileIndex index = FileIndexTest.create();
+		for (int i = 0; i < FileIndexTest.FILES; i += 3) {
+			assertTrue(index.remove("dir" + (i % 7) + "/f\u00fcle " + i));
+		}
+		assertFalse(index.remove("dir0/f\u00fcle 0"));
+		String moved = index.getName(0);
+		index.remove(0);
+		assertEquals(FileIndexTest.FILES - (FileIndexTest.FILES + 2) / 3 - 1,
+				index.size());
+		for (int i = 0; i < FileIndexTest.FILES; i++) {
+			String name = "dir" + (i % 7) + "/f\u00fcle " + i;
+			int pos = index.indexOfName(name);
+			if (i % 3 == 0 || name.equals(moved)) {
+				assertEquals(name, -1, pos);
+				assertEquals(-1, index.indexOfHashedName("hash" + i));
+			} else {
+				assertEquals(name, index.getName(pos));
+				assertEquals(pos, index.indexOfHashedName("hash" + i));
+				assertEquals(i, index.getLastModTime(pos));
+			}
+		}
+	}
+
+	/**
+	 * Writes indexes with names in Latin-1 and beyond and with removed files
+	 * and reads them back.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteRead() throws Exception {
+		FileIndex latin1 = FileIndexTest.create();
+		FileIndex wide = FileIndexTest.create();
+		wide.add("\u4e2d\u6587", "hash\u4e2d", 1L, "UPLOADED");
+		FileIndex removed = FileIndexTest.create();
+		for (int i = 0; i < FileIndexTest.FILES; i += 2) {
+			removed.remove("dir" + (i % 7) + "/f\u00fcle " + i);
+		}
+		for (FileIndex index : Arrays.asList(latin1, wide, removed)) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			index.write(Channels.newChannel(bos));
+			byte[] data = bos.toByteArray();
+			FileIndex read = FileIndex.read(
+					Channels.newChannel(new ByteArrayInputStream(data)), null);
+			assertEquals(index.size(), read.size());
+			for (int i = 0; i < index.size(); i++) {
+				assertEquals(index.getName(i), read.getName(i));
+				assertEquals(index.getHashedName(i), read.getHashedName(i));
+				assertEquals(index.getLastModTime(i), read.getLastModTime(i));
+				assertEquals(index.getState(i), read.getState(i));
+				assertEquals(i, read.indexOfName(index.getName(i)));
+			}
+			try {
+				FileIndex.read(Channels.newChannel(new ByteArrayInputStream(
+						Arrays.copyOf(data, data.length / 2))), null);
+				fail("The data is incomplete.");
+			} catch (IOException expected) {
+			}
+		}
+	}
+
+	/**
+	 * Checks, that {@link ServerConnector#getFileIndex()} holds the same
+	 * files as {@link ServerConnector#getFileList()}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testGetFileIndex() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		for (int i = 0; i < 100; i++) {
+			server.putFile(FakeFixture.USER, "file &quot; \"" + i + "\", x",
+					new byte[0]);
+		}
+		try {
+			ServerConnector sc = fixture.connect();
+			FileIndex index = sc.getFileIndex();
+			int i = 0;
+			for (CloudFile file : sc.getFileList()) {
+				assertEquals(i, index.indexOfName(file.getName()));
+				assertEquals(i, index.indexOfHashedName(file.getHashedName()));
+				assertEquals(file.getLastModTime(), index.getLastModTime(i));
+				assertSame(sc, index.get(i).getSc());
+				i++;
+			}
+			assertEquals(100, index.size());
+		} finally {
+			fixture.stop();
+		}
+	}
+}
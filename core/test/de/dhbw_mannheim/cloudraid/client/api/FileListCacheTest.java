@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the conditional requests for the file list and the
+ * {@link FileListCache}.
+ */
+public class FileListCacheTest {
+
+	/**
+	 * Returns the names of a list of {@link CloudFile}s.
+	 * 
+	 * @param files
+	 *            The {@link CloudFile}s.
+	 * @return The names.
+	 */
+	private static List<String> names(Iterable<CloudFile> files) {
+		List<String> names = new ArrayList<String>();
+		for (CloudFile file : files) {
+			names.add(file.getName());
+		}
+		return names;
+	}
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+
+	/**
+	 * Starts the server with three files and logs in.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		for (String name : Arrays.asList("a", "b", "c")) {
+			this.server.putFile(FakeFixture.USER, name, new byte[1]);
+		}
+		this.sc = this.fixture.connect();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks, that the list is cached as {@link FileIndex} and returned as
+	 * {@link Vector} and the other way round.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConversion() throws Exception {
+		FileIndex index = this.sc.getFileIndex();
+		assertEquals(Arrays.asList("a", "b", "c"),
+				FileListCacheTest.names(this.sc.getFileList()));
+		assertEquals(1, this.server.getNotModifiedCount());
+		FileIndex cached = this.sc.getFileIndex();
+		assertNotSame(index, cached);
+		assertEquals(FileListCacheTest.names(index),
+				FileListCacheTest.names(cached));
+		assertEquals(2, this.server.getNotModifiedCount());
+	}
+
+	/**
+	 * Checks, that the cache is not used after it was invalidated or after a
+	 * new login.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testInvalidate() throws Exception {
+		this.sc.getFileList();
+		this.sc.invalidateFileListCache();
+		this.sc.getFileList();
+		assertEquals(0, this.server.getNotModifiedCount());
+		this.sc.getFileList();
+		assertEquals(1, this.server.getNotModifiedCount());
+		this.sc.logout();
+		this.sc.login();
+		this.sc.getFileList();
+		assertEquals(1, this.server.getNotModifiedCount());
+	}
+
+	/**
+	 * Checks, that a changed list is read again.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testModified() throws Exception {
+		this.sc.getFileList();
+		this.server.putFile(FakeFixture.USER, "d", new byte[1]);
+		assertEquals(Arrays.asList("a", "b", "c", "d"),
+				FileListCacheTest.names(this.sc.getFileList()));
+		this.sc.deleteFile("a");
+		assertEquals(Arrays.asList("b", "c", "d"),
+				FileListCacheTest.names(this.sc.getFileIndex()));
+		assertEquals(0, this.server.getNotModifiedCount());
+	}
+
+	/**
+	 * Checks, that nothing is cached, if the server sends no validators.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNoValidators() throws Exception {
+		this.server.setListETags(false);
+		this.sc.getFileList();
+		assertEquals(3, this.sc.getFileList().size());
+		assertEquals(0, this.server.getNotModifiedCount());
+		assertEquals(2, this.server.getRequestCount("/list/"));
+	}
+
+	/**
+	 * Checks, that an unchanged list is taken from the cache, given to the
+	 * {@link DataPresenter}s and not shared between the callers.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNotModified() throws Exception {
+		final List<Vector<CloudFile>> given = new ArrayList<Vector<CloudFile>>();
+		this.sc.registerDataPresenter(new DataPresenter() {
+			@Override
+			public void giveFileList(Vector<CloudFile> fileList) {
+				given.add(fileList);
+			}
+		});
+		Vector<CloudFile> first = this.sc.getFileList();
+		first.clear();
+		Vector<CloudFile> second = this.sc.getFileList();
+		assertEquals(1, this.server.getNotModifiedCount());
+		assertEquals(Arrays.asList("a", "b", "c"),
+				FileListCacheTest.names(second));
+		assertEquals(2, given.size());
+		assertEquals(second, given.get(1));
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link FileListDelta} and the {@link DeltaDataPresenter}s.
+ */
+public class FileListDeltaTest {
+
+	/**
+	 * A {@link DeltaDataPresenter} recording the deltas.
+	 */
+	private static class Recorder implements DeltaDataPresenter {
+		List<FileListDelta> deltas = new ArrayList<FileListDelta>();
+		int lists = 0;
+
+		@Override
+		public void giveFileList(Vector<CloudFile> fileList) {
+			this.lists++;
+		}
+
+		@Override
+		public void giveFileListDelta(FileListDelta delta) {
+			this.deltas.add(delta);
+		}
+	}
+
+	/**
+	 * Creates a {@link FileIndex}.
+	 * 
+	 * @param files
+	 *            Name, last modification date and state of every file. The
+	 *            hashed name is the name in upper case.
+	 * @return The {@link FileIndex}.
+	 */
+	private static FileIndex index(Object... files) {
+		FileIndex index = new FileIndex(null);
+		for (int i = 0; i < files.length; i += 3) {
+			String name = (String) files[i];
+			index.add(name, name.toUpperCase(), (Long) files[i + 1],
+					(String) files[i + 2]);
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the names of {@link CloudFile}s.
+	 * 
+	 * @param files
+	 *            The {@link CloudFile}s.
+	 * @return The names.
+	 */
+	private static List<String> names(Iterable<CloudFile> files) {
+		List<String> names = new ArrayList<String>();
+		for (CloudFile file : files) {
+			names.add(file.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Compares two listings and applies the delta to the old one.
+	 */
+	@Test
+	public void testBetween() {
+		FileIndex old = FileListDeltaTest.index("a", 1L, "UPLOADED", "b", 1L,
+				"UPLOADED", "c", 1L, "UPLOADING", "d", 1L, "UPLOADED");
+		FileIndex now = FileListDeltaTest.index("b", 2L, "UPLOADED", "c", 1L,
+				"UPLOADED", "d", 1L, "UPLOADED", "e", 1L, "UPLOADING");
+		FileListDelta delta = FileListDelta.between(old, now);
+		assertEquals(Arrays.asList("e"),
+				FileListDeltaTest.names(delta.getAdded()));
+		assertEquals(Arrays.asList("a"),
+				FileListDeltaTest.names(delta.getRemoved()));
+		assertEquals(Arrays.asList("b", "c"),
+				FileListDeltaTest.names(delta.getModified()));
+		assertEquals(4, delta.size());
+
+		old.apply(delta);
+		assertTrue(FileListDelta.between(old, now).isEmpty());
+		assertEquals(now.size(), old.size());
+		assertEquals(2L, old.getByName("b").getLastModTime());
+		assertEquals("UPLOADED", old.getByName("c").getState());
+	}
+
+	/**
+	 * Checks, that the first listing is a delta of added files only.
+	 */
+	@Test
+	public void testFirst() {
+		FileListDelta delta = FileListDelta.between(null,
+				FileListDeltaTest.index("a", 1L, "UPLOADED", "b", 1L,
+						"UPLOADED"));
+		assertEquals(Arrays.asList("a", "b"),
+				FileListDeltaTest.names(delta.getAdded()));
+		assertTrue(delta.getRemoved().isEmpty());
+		assertTrue(delta.getModified().isEmpty());
+	}
+
+	/**
+	 * Checks, that a registered {@link DeltaDataPresenter} receives only the
+	 * changes of the lists read by a {@link ServerConnector}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPresenter() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		for (String name : Arrays.asList("a", "b", "c")) {
+			server.putFile(FakeFixture.USER, name, new byte[1]);
+		}
+		try {
+			ServerConnector sc = fixture.connect();
+			Recorder recorder = new Recorder();
+			sc.registerDataPresenter(recorder);
+			sc.getFileList();
+			assertEquals(1, recorder.deltas.size());
+			assertEquals(Arrays.asList("a", "b", "c"),
+					FileListDeltaTest.names(recorder.deltas.get(0).getAdded()));
+
+			sc.getFileList();
+			sc.getFileIndex();
+			assertEquals(1, recorder.deltas.size());
+
+			server.putFile(FakeFixture.USER, "d", new byte[1]);
+			sc.deleteFile("a");
+			sc.getFileIndex();
+			assertEquals(2, recorder.deltas.size());
+			FileListDelta delta = recorder.deltas.get(1);
+			assertEquals(Arrays.asList("d"),
+					FileListDeltaTest.names(delta.getAdded()));
+			assertEquals(Arrays.asList("a"),
+					FileListDeltaTest.names(delta.getRemoved()));
+			assertEquals(0, recorder.lists);
+		} finally {
+			fixture.stop();
+		}
+	}
+}
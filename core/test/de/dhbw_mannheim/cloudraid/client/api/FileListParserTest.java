@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.text.SimpleDateFormat;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link FileListParser}.
+ */
+public class FileListParserTest {
+
+	/**
+	 * Parses a date the way the server writes it.
+	 * 
+	 * @param date
+	 *            The date.
+	 * @return The date in milliseconds from 1/1/1970 00:00:00.
+	 * @throws Exception
+	 */
+	private static long parseDate(String date) throws Exception {
+		SimpleDateFormat format = new SimpleDateFormat(
+				"yyyy-MM-dd HH:mm:ss.S");
+		format.setTimeZone(TimestampCodec.getDefault().getTimeZone());
+		return format.parse(date).getTime();
+	}
+
+	/**
+	 * Creates a {@link FileListParser} for a file list.
+	 * 
+	 * @param list
+	 *            The file list.
+	 * @return The {@link FileListParser}.
+	 */
+	private static FileListParser parser(String list) {
+		return new FileListParser(new StringReader(list));
+	}
+
+	/**
+	 * Checks the dates in the time zone of the default
+	 * {@link TimestampCodec}, including the hours 0 and 12 that the old "hh"
+	 * pattern confused. Daylight saving time is covered by
+	 * {@link TimestampCodecTest}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDates() throws Exception {
+		String[] dates = { "2012-01-15 00:05:07.0", "2012-01-15 12:05:07.0",
+				"2012-07-01 23:59:59.9", "2012-03-25 03:00:00.123",
+				"2012-10-28 01:30:00.0" };
+		StringBuilder sb = new StringBuilder();
+		for (String date : dates) {
+			sb.append("\"f\",\"h\",\"").append(date).append("\",\"S\"\n");
+		}
+		FileListParser parser = FileListParserTest.parser(sb.toString());
+		for (String date : dates) {
+			assertTrue(parser.next());
+			assertEquals(date, FileListParserTest.parseDate(date),
+					parser.getLastMod());
+		}
+		assertFalse(parser.next());
+	}
+
+	/**
+	 * Checks, that escapes are undone and commas belong to the names.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testFields() throws IOException {
+		FileListParser parser = FileListParserTest.parser("\"dir/a &quot;b"
+				+ "&quot; &amp; c, d\",\"0a1b\",\"2012-05-06 07:08:09.0\","
+				+ "\"UPLOADED\"\r\n\"e&amp;quot;\",\"ff\","
+				+ "\"2012-05-06 07:08:09.0\",\"UPLOADED\"");
+		assertTrue(parser.next());
+		assertEquals("dir/a \"b\" & c, d", parser.getName());
+		assertEquals("0a1b", parser.getHashedName());
+		String state = parser.getState();
+		assertEquals("UPLOADED", state);
+		assertTrue(parser.next());
+		assertEquals("e&quot;", parser.getName());
+		assertSame(state, parser.getState());
+		assertFalse(parser.next());
+	}
+
+	/**
+	 * Checks, that invalid lines are skipped.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testInvalidLines() throws IOException {
+		FileListParser parser = FileListParserTest.parser("\n"
+				+ "\"a\",\"b\",\"c\"\n"
+				+ "\"a\",\"b\",\"2012-05-06 07:08\",\"S\"\n"
+				+ "\"a\",\"b\",\"2012-05-06 07:08:09.0\",\"S\",\"x\"\n"
+				+ "\"a\",\"b\",\"2012-05-06 07:08:09.0\",\"S\n"
+				+ "\"valid\",\"b\",\"2012-05-06 07:08:09.0\",\"S\"\n"
+				+ "garbage\n");
+		assertTrue(parser.next());
+		assertEquals("valid", parser.getName());
+		assertFalse(parser.next());
+	}
+
+	/**
+	 * Checks lines longer than the initial buffers.
+	 * 
+	 * @throws IOException
+	 */
+	@Test
+	public void testLongLines() throws IOException {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			name.append((char) ('a' + i % 26));
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			sb.append('"').append(name).append(i)
+					.append("\",\"h\",\"2012-05-06 07:08:09.0\",\"S\"\n");
+		}
+		FileListParser parser = FileListParserTest.parser(sb.toString());
+		for (int i = 0; i < 3; i++) {
+			assertTrue(parser.next());
+			assertEquals(name.toString() + i, parser.getName());
+		}
+		assertFalse(parser.next());
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests reading the file list, as a whole and in chunks.
+ */
+public class FileListTest {
+
+	private static final int FILES = 25;
+
+	/**
+	 * An {@link IncrementalDataPresenter} recording the calls.
+	 */
+	private static class Recorder implements IncrementalDataPresenter {
+		int begun = 0;
+		Boolean complete = null;
+		List<List<CloudFile>> chunks = new ArrayList<List<CloudFile>>();
+		Vector<CloudFile> whole = null;
+
+		@Override
+		public void beginFileList() {
+			this.begun++;
+		}
+
+		@Override
+		public void endFileList(boolean complete) {
+			this.complete = Boolean.valueOf(complete);
+		}
+
+		@Override
+		public void giveFileList(Vector<CloudFile> fileList) {
+			this.whole = fileList;
+		}
+
+		@Override
+		public void giveFileListChunk(List<CloudFile> chunk) {
+			this.chunks.add(chunk);
+		}
+	}
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+
+	/**
+	 * Starts the server with some files and logs in.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		for (int i = 0; i < FileListTest.FILES; i++) {
+			this.server.putFile(FakeFixture.USER,
+					String.format("dir/file%02d", Integer.valueOf(i)),
+					new byte[i]);
+		}
+		this.sc = this.fixture.connect();
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks, that escaped quotes and ampersands in file names are decoded.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testEscapedNames() throws Exception {
+		this.server.putFile(FakeFixture.USER, "a \"quoted\" & b", new byte[0]);
+		Vector<CloudFile> list = this.sc.getFileList();
+		assertEquals(FileListTest.FILES + 1, list.size());
+		assertEquals("a \"quoted\" & b", list.get(0).getName());
+	}
+
+	/**
+	 * Checks, that registered {@link IncrementalDataPresenter}s receive the
+	 * file list in chunks, while other {@link DataPresenter}s get it whole.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRegisteredPresenters() throws Exception {
+		Recorder incremental = new Recorder();
+		final List<Vector<CloudFile>> given;
+		given = new ArrayList<Vector<CloudFile>>();
+		this.sc.registerDataPresenter(incremental);
+		this.sc.registerDataPresenter(new DataPresenter() {
+			@Override
+			public void giveFileList(Vector<CloudFile> fileList) {
+				given.add(fileList);
+			}
+		});
+		Vector<CloudFile> list = this.sc.getFileList();
+		assertEquals(FileListTest.FILES, list.size());
+		assertEquals(1, given.size());
+		assertEquals(list, given.get(0));
+		assertEquals(1, incremental.begun);
+		assertEquals(Boolean.TRUE, incremental.complete);
+		assertTrue(incremental.whole == null);
+		int count = 0;
+		for (List<CloudFile> chunk : incremental.chunks) {
+			count += chunk.size();
+		}
+		assertEquals(FileListTest.FILES, count);
+	}
+
+	/**
+	 * Checks, that a streamed file list is split into chunks of the given
+	 * size in the order of the list.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStreamFileList() throws Exception {
+		Recorder recorder = new Recorder();
+		this.sc.streamFileList(recorder, 10);
+		assertEquals(1, recorder.begun);
+		assertEquals(Boolean.TRUE, recorder.complete);
+		assertEquals(3, recorder.chunks.size());
+		assertEquals(10, recorder.chunks.get(0).size());
+		assertEquals(10, recorder.chunks.get(1).size());
+		assertEquals(5, recorder.chunks.get(2).size());
+		assertEquals("dir/file00", recorder.chunks.get(0).get(0).getName());
+		assertEquals("dir/file24", recorder.chunks.get(2).get(4).getName());
+		assertEquals(FakeServer.STATE, recorder.chunks.get(1).get(0)
+				.getState());
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the buckets and the percentiles of a {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+	/**
+	 * Returns the highest value of the bucket of a latency. The latency is
+	 * recorded together with a larger one, so that the first percentile is
+	 * not limited by the maximum.
+	 * 
+	 * @param micros
+	 *            The latency in microseconds.
+	 * @return The highest value of its bucket.
+	 */
+	private static long bucket(long micros) {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(TimeUnit.MICROSECONDS.toNanos(micros));
+		h.record(TimeUnit.MICROSECONDS.toNanos(LatencyHistogram.MAX_VALUE));
+		return h.getPercentile(50.0);
+	}
+
+	/**
+	 * Checks, that every value lies in a bucket at most 1/64 of the value
+	 * wide and that the buckets do not overlap.
+	 */
+	@Test
+	public void testBuckets() {
+		for (long v = 0; v < 2 * LatencyHistogram.SUB_BUCKETS; v++) {
+			assertEquals(v, LatencyHistogramTest.bucket(v));
+		}
+		long previous = 2 * LatencyHistogram.SUB_BUCKETS - 1;
+		for (long v = 2 * LatencyHistogram.SUB_BUCKETS; v < 100000; v++) {
+			long high = LatencyHistogramTest.bucket(v);
+			assertTrue(high >= v);
+			assertTrue(high - v < v / LatencyHistogram.SUB_BUCKETS);
+			// Either the same bucket or the next one.
+			assertTrue(high == previous || previous == v - 1);
+			previous = high;
+		}
+		for (int shift = 7; shift < 40; shift++) {
+			long v = 1L << shift;
+			assertEquals(v + (v / LatencyHistogram.SUB_BUCKETS) - 1,
+					LatencyHistogramTest.bucket(v));
+			assertEquals(v - 1, LatencyHistogramTest.bucket(v - 1));
+		}
+	}
+
+	/**
+	 * Checks the count, the mean and the limits, including values outside of
+	 * the recorded range.
+	 */
+	@Test
+	public void testLimits() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0L, h.getPercentile(99.0));
+		assertEquals(0L, h.getMin());
+		assertEquals(0L, h.getMax());
+		assertEquals(0.0, h.getMean(), 0.0);
+
+		h.record(-5000L);
+		h.record(Long.MAX_VALUE);
+		assertEquals(2L, h.getCount());
+		assertEquals(0L, h.getMin());
+		assertEquals(LatencyHistogram.MAX_VALUE, h.getMax());
+		assertEquals(0L, h.getPercentile(-1.0));
+		assertEquals(LatencyHistogram.MAX_VALUE, h.getPercentile(200.0));
+	}
+
+	/**
+	 * Records the latencies from 1 to 10000 microseconds and checks the
+	 * percentiles, the mean and a copy.
+	 */
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		for (long v = 1; v <= 10000; v++) {
+			h.record(TimeUnit.MICROSECONDS.toNanos(v) + 999L);
+		}
+		assertEquals(10000L, h.getCount());
+		assertEquals(1L, h.getMin());
+		assertEquals(10000L, h.getMax());
+		assertEquals(5000.5, h.getMean(), 1e-9);
+		assertEquals(1L, h.getPercentile(0.0));
+		assertEquals(10000L, h.getPercentile(100.0));
+		double[] percentiles = { 50.0, 90.0, 99.0, 99.9 };
+		for (double p : percentiles) {
+			long exact = (long) Math.ceil(p * 100.0);
+			long value = h.getPercentile(p);
+			assertTrue(value >= exact);
+			assertTrue(value <= exact + exact / LatencyHistogram.SUB_BUCKETS);
+		}
+
+		LatencyHistogram copy = h.copy();
+		h.record(TimeUnit.SECONDS.toNanos(1L));
+		assertEquals(10000L, copy.getCount());
+		assertEquals(10000L, copy.getMax());
+		assertEquals(h.getPercentile(50.0), copy.getPercentile(50.0));
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.api.Metrics.Operation;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+
+/**
+ * Tests the recording, the snapshots and the dumps of {@link Metrics}.
+ */
+public class MetricsTest {
+
+	/**
+	 * Records values of every kind and checks a snapshot and a reset.
+	 */
+	@Test
+	public void testSnapshot() {
+		Metrics metrics = new Metrics();
+		metrics.record(Operation.GET, System.nanoTime());
+		metrics.record(Operation.GET, System.nanoTime());
+		metrics.record(Operation.PUT, System.nanoTime());
+		metrics.addBytes(false, 100L);
+		metrics.addBytes(true, 30L);
+		metrics.recordError(new HTTPException(503, "unavailable"));
+		metrics.recordError(new HTTPException(503, "unavailable"));
+		metrics.recordError(new IOException());
+		metrics.connectionOpened();
+		metrics.connectionOpened();
+		metrics.connectionKeptAlive();
+		metrics.connectionClosed();
+		metrics.connectionKeptAlive();
+		metrics.connectionKeptAlive();
+
+		MetricsSnapshot s = metrics.snapshot();
+		assertEquals(2L, s.getLatencies(Operation.GET).getCount());
+		assertEquals(1L, s.getLatencies(Operation.PUT).getCount());
+		assertEquals(0L, s.getLatencies(Operation.LOGIN).getCount());
+		assertEquals(100L, s.getBytesIn());
+		assertEquals(30L, s.getBytesOut());
+		assertEquals(Long.valueOf(2L), s.getErrors().get(503));
+		assertEquals(Long.valueOf(1L), s.getErrors().get(Metrics.IO_ERROR));
+		assertEquals(2L, s.getConnectionsOpened());
+		assertEquals(0.75, s.getConnectionReuseRate(), 1e-9);
+		assertTrue(s.toString().contains("503 x2"));
+
+		// The snapshot is a copy.
+		metrics.record(Operation.GET, System.nanoTime());
+		assertEquals(2L, s.getLatencies(Operation.GET).getCount());
+
+		metrics.reset();
+		s = metrics.snapshot();
+		assertEquals(0L, s.getLatencies(Operation.GET).getCount());
+		assertEquals(0L, s.getBytesIn());
+		assertTrue(s.getErrors().isEmpty());
+		assertEquals(0.0, s.getConnectionReuseRate(), 0.0);
+	}
+
+	/**
+	 * Checks, that a failed periodic dump is logged and does not stop the
+	 * dump.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDumpFailure() throws Exception {
+		final CountDownLatch failures = new CountDownLatch(2);
+		Handler handler = new Handler() {
+			@Override
+			public void close() {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void publish(LogRecord record) {
+				if (record.getLevel() == Level.WARNING
+						&& record.getThrown() instanceof IOException) {
+					failures.countDown();
+				}
+			}
+		};
+		Logger logger = Logger.getLogger(Metrics.class.getName());
+		logger.addHandler(handler);
+		boolean parent = logger.getUseParentHandlers();
+		logger.setUseParentHandlers(false);
+		File directory = FakeFixture.createDirectory();
+		Metrics metrics = new Metrics();
+		try {
+			// A directory cannot be opened for writing.
+			metrics.startDump(directory, 1L);
+			assertTrue(metrics.isDumping());
+			assertTrue(failures.await(10L, TimeUnit.SECONDS));
+		} finally {
+			metrics.stopDump();
+			logger.removeHandler(handler);
+			logger.setUseParentHandlers(parent);
+			directory.delete();
+		}
+		assertFalse(metrics.isDumping());
+	}
+
+	/**
+	 * Checks, that a dump is appended to a file.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDump() throws Exception {
+		File file = File.createTempFile("cloudraid-test", ".txt");
+		try {
+			Metrics metrics = new Metrics();
+			metrics.dump(file);
+			long length = file.length();
+			assertTrue(length > 0);
+			metrics.dump(file);
+			assertEquals(2 * length, file.length());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Tests writing the file list to the cache directory and restoring it at the
+ * next start.
+ */
+public class RestoreFileListTest {
+
+	private static final List<String> NAMES = Arrays.asList("a",
+			"dir/file 1", "dir/file 2", "x \"y\", z");
+
+	/**
+	 * Returns the names of the files of a {@link FileIndex}.
+	 * 
+	 * @param index
+	 *            The {@link FileIndex}.
+	 * @return The names.
+	 */
+	private static List<String> names(FileIndex index) {
+		List<String> names = new ArrayList<String>();
+		for (int i = 0; i < index.size(); i++) {
+			names.add(index.getName(i));
+		}
+		return names;
+	}
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private FakeHttpServer http;
+	private File cache;
+
+	/**
+	 * Creates a {@link ServerConnector} using the cache directory and logs
+	 * in.
+	 * 
+	 * @return The {@link ServerConnector}.
+	 * @throws Exception
+	 */
+	private ServerConnector connect() throws Exception {
+		ServerConnector sc = new ServerConnector(this.http.getServerConnection(
+				FakeFixture.USER, FakeFixture.USER),
+				new PlainConnectionPool());
+		sc.setCacheDirectory(this.cache);
+		sc.login();
+		return sc;
+	}
+
+	/**
+	 * Starts the server with some files and creates the cache directory.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.http = this.fixture.getHttpServer();
+		for (String name : RestoreFileListTest.NAMES) {
+			this.server.putFile(FakeFixture.USER, name, new byte[1]);
+		}
+		this.cache = this.fixture.getDirectory();
+	}
+
+	/**
+	 * Stops the server and deletes the cache directory.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks, that a damaged file is ignored.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testDamagedFile() throws Exception {
+		this.connect().getFileIndex();
+		File[] files = this.cache.listFiles();
+		assertEquals(1, files.length);
+		RandomAccessFile raf = new RandomAccessFile(files[0], "rw");
+		try {
+			raf.setLength(raf.length() / 2);
+		} finally {
+			raf.close();
+		}
+		ServerConnector sc = this.connect();
+		assertNull(sc.restoreFileList());
+		assertEquals(RestoreFileListTest.NAMES,
+				RestoreFileListTest.names(sc.getFileIndex()));
+		assertEquals(0, this.server.getNotModifiedCount());
+	}
+
+	/**
+	 * Checks, that nothing is restored without a written list or after the
+	 * list was read.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNothingToRestore() throws Exception {
+		ServerConnector sc = this.connect();
+		assertNull(sc.restoreFileList());
+		sc.getFileList();
+		assertNull(sc.restoreFileList());
+	}
+
+	/**
+	 * Writes the list in one session and restores it in the next one, which
+	 * revalidates it with a conditional request.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRestore() throws Exception {
+		ServerConnector sc = this.connect();
+		sc.getFileIndex();
+		sc.logout();
+
+		sc = this.connect();
+		final List<FileListDelta> deltas = new ArrayList<FileListDelta>();
+		sc.registerDataPresenter(new DeltaDataPresenter() {
+			@Override
+			public void giveFileList(Vector<CloudFile> fileList) {
+			}
+
+			@Override
+			public void giveFileListDelta(FileListDelta delta) {
+				deltas.add(delta);
+			}
+		});
+		FileIndex restored = sc.restoreFileList();
+		assertEquals(RestoreFileListTest.NAMES,
+				RestoreFileListTest.names(restored));
+		assertEquals(1, deltas.size());
+		assertEquals(RestoreFileListTest.NAMES.size(), deltas.get(0)
+				.getAdded().size());
+		assertEquals(RestoreFileListTest.NAMES,
+				RestoreFileListTest.names(sc.getFileIndex()));
+		assertEquals(1, this.server.getNotModifiedCount());
+		assertEquals(1, deltas.size());
+
+		this.server.putFile(FakeFixture.USER, "b", new byte[1]);
+		sc.getFileList();
+		assertEquals(2, deltas.size());
+		assertEquals("b", deltas.get(1).getAdded().get(0).getName());
+	}
+}
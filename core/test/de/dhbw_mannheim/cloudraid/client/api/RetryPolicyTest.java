@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the delays of a {@link RetryPolicy} and which errors are retried.
+ */
+public class RetryPolicyTest {
+
+	/**
+	 * Checks, that the delays stay below the doubled initial delay and the
+	 * maximum delay.
+	 */
+	@Test
+	public void testDelay() {
+		RetryPolicy policy = new RetryPolicy(10, 100L, 1000L);
+		long[] bounds = { 100L, 200L, 400L, 800L, 1000L, 1000L };
+		for (int retry = 1; retry <= bounds.length; retry++) {
+			long max = 0L;
+			for (int i = 0; i < 1000; i++) {
+				long delay = policy.getDelay(retry);
+				assertTrue(delay >= 0L);
+				assertTrue(delay < bounds[retry - 1]);
+				max = Math.max(max, delay);
+			}
+			// Full jitter uses the whole range.
+			assertTrue(max >= bounds[retry - 1] / 2);
+		}
+		// No overflow for many retries.
+		assertTrue(policy.getDelay(Integer.MAX_VALUE) < 1000L);
+		assertEquals(0L, new RetryPolicy(3, 0L, 0L).getDelay(2));
+	}
+
+	/**
+	 * Checks, that invalid policies are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalid() {
+		new RetryPolicy(3, 1000L, 100L);
+	}
+
+	/**
+	 * Checks, that only errors of the server and the connection are retried.
+	 */
+	@Test
+	public void testIsRetried() {
+		RetryPolicy policy = new RetryPolicy(2, 0L, 0L);
+		assertTrue(policy.isRetried(new HTTPException(503, ""), 1));
+		assertTrue(policy.isRetried(new HTTPException(502, ""), 2));
+		assertFalse(policy.isRetried(new HTTPException(503, ""), 3));
+		assertFalse(policy.isRetried(new HTTPException(404, ""), 1));
+		assertFalse(policy.isRetried(new HTTPException(500, ""), 1));
+
+		assertTrue(RetryPolicy.isServerFailure(new ConnectException()));
+		assertTrue(RetryPolicy.isServerFailure(new SocketException()));
+		assertTrue(RetryPolicy.isServerFailure(new SocketTimeoutException()));
+		assertFalse(RetryPolicy.isServerFailure(new InterruptedIOException()));
+		assertFalse(RetryPolicy.isServerFailure(new FileNotFoundException()));
+		assertFalse(RetryPolicy.isServerFailure(new IOException()));
+		assertFalse(RetryPolicy.isServerFailure(new CircuitOpenException(
+				"localhost", 0L)));
+	}
+
+	/**
+	 * Checks, that a download failing because of the local file is neither
+	 * retried nor counted as a failure of the server.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testLocalError() throws Exception {
+		FakeFixture fixture = new FakeFixture();
+		FakeServer server = fixture.getServer();
+		server.putFile(FakeFixture.USER, "a", new byte[10]);
+		File directory = new File(fixture.getDirectory(), "a");
+		try {
+			ServerConnector sc = fixture.connect();
+			CircuitBreaker breaker = new CircuitBreaker("test", 1, 60000L);
+			sc.setCircuitBreaker(breaker);
+			sc.setRetryPolicy(new RetryPolicy(3, 0L, 0L));
+			// A non-empty directory cannot be replaced by the download.
+			directory.mkdir();
+			new File(directory, "b").createNewFile();
+			try {
+				sc.getFile("a", directory);
+				fail("The download did not fail.");
+			} catch (FileNotFoundException e) {
+			}
+			assertEquals(1, server.getRequestCount("/file/a/"));
+			assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		} finally {
+			fixture.stop();
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests, when the {@link ServerInfo} of a server is kept, asked again and
+ * checked before an upload.
+ */
+public class ServerInfoTest {
+
+	private static final String INFO = "/api/info/";
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private FakeHttpServer http;
+	private File file;
+
+	/**
+	 * Returns the key of the server.
+	 * 
+	 * @return The server and port.
+	 */
+	private String key() {
+		return "localhost:" + this.http.getPort();
+	}
+
+	/**
+	 * Starts the server and creates the uploaded file.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.http = this.fixture.getHttpServer();
+		this.file = this.fixture.createFile(FakeFixture.random(1000));
+	}
+
+	/**
+	 * Stops the server, deletes the file and restores the maximum age.
+	 */
+	@After
+	public void tearDown() {
+		ServerInfo.setMaxAge(ServerInfo.DEFAULT_MAX_AGE);
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks, that a kept {@link ServerInfo} is used by the next connector,
+	 * whose encodings are checked once before its first upload.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testKept() throws Exception {
+		ServerConnector first = this.http.connect(FakeFixture.USER);
+		assertEquals(1, this.server.getRequestCount(ServerInfoTest.INFO));
+		assertNotNull(ServerInfo.get(this.key()));
+		first.putFile("a", this.file, false);
+		assertEquals(1, this.server.getRequestCount(ServerInfoTest.INFO));
+
+		ServerConnector second = this.http.connect(FakeFixture.USER);
+		assertEquals(1, this.server.getRequestCount(ServerInfoTest.INFO));
+		this.server.setAcceptEncoding("identity");
+		second.putFile("b", this.file, false);
+		second.putFile("c", this.file, false);
+		assertEquals(2, this.server.getRequestCount(ServerInfoTest.INFO));
+		assertEquals("identity",
+				this.server.getContentEncoding(FakeFixture.USER, "c"));
+		assertEquals("identity", ServerInfo.get(this.key())
+				.getAcceptEncoding());
+
+		ServerInfo.forget(this.key());
+		assertNull(ServerInfo.get(this.key()));
+		this.http.connect(FakeFixture.USER);
+		assertEquals(3, this.server.getRequestCount(ServerInfoTest.INFO));
+	}
+
+	/**
+	 * Checks, that a {@link ServerInfo} older than the maximum age is not
+	 * used.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testMaxAge() throws Exception {
+		this.http.connect(FakeFixture.USER);
+		ServerInfo.setMaxAge(0L);
+		assertNull(ServerInfo.get(this.key()));
+		this.http.connect(FakeFixture.USER);
+		this.http.connect(FakeFixture.USER);
+		assertEquals(3, this.server.getRequestCount(ServerInfoTest.INFO));
+
+		ServerInfo.setMaxAge(60000L);
+		this.http.connect(FakeFixture.USER);
+		assertEquals(3, this.server.getRequestCount(ServerInfoTest.INFO));
+	}
+
+	/**
+	 * Checks, that a negative maximum age is rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidMaxAge() {
+		ServerInfo.setMaxAge(-1L);
+	}
+}
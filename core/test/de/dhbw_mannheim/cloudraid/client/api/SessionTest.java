@@ -0,0 +1,248 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttpServer;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+import de.dhbw_mannheim.cloudraid.client.fake.PlainConnectionPool;
+
+/**
+ * Tests the renewal of expired sessions and the encrypted
+ * {@link SessionStore}.
+ */
+public class SessionTest {
+
+	private static final String LOGIN = "/user/auth/";
+	private static final String LIST = "/list/";
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private FakeHttpServer http;
+	private File directory;
+
+	/**
+	 * Creates a {@link ServerConnector} keeping its session in the directory
+	 * and logs in.
+	 * 
+	 * @param password
+	 *            The password.
+	 * @return The {@link ServerConnector}.
+	 * @throws Exception
+	 */
+	private ServerConnector connect(String password) throws Exception {
+		ServerConnector sc = new ServerConnector(
+				this.http.getServerConnection(FakeFixture.USER, password),
+				new PlainConnectionPool());
+		sc.setCacheDirectory(this.directory);
+		sc.setSessionPersistent(true);
+		sc.login();
+		return sc;
+	}
+
+	/**
+	 * Starts the server and creates an empty directory.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.http = this.fixture.getHttpServer();
+		this.directory = this.fixture.getDirectory();
+	}
+
+	/**
+	 * Stops the server and deletes the directory.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Checks, that concurrent requests with an expired session log in again
+	 * once and are answered.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRenew() throws Exception {
+		final ServerConnector sc = this.http.connect(FakeFixture.USER);
+		this.server.putFile(FakeFixture.USER, "a", new byte[1]);
+		assertEquals(1, this.server.getRequestCount(SessionTest.LOGIN));
+		this.server.expireSessions();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for (int i = 0; i < 4; i++) {
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						return sc.getFileList().size();
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertEquals(Integer.valueOf(1), result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(2, this.server.getRequestCount(SessionTest.LOGIN));
+	}
+
+	/**
+	 * Checks, that a request failing with the renewed session as well is not
+	 * renewed again, but handled by the {@link RetryPolicy}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNoRenewalLoop() throws Exception {
+		ServerConnector sc = this.http.connect(FakeFixture.USER);
+		sc.setRetryPolicy(new RetryPolicy(2, 0L, 0L));
+		this.server.failNext(SessionTest.LIST, 100, 503);
+		try {
+			sc.getFileList();
+			fail("The request did not fail.");
+		} catch (HTTPException e) {
+			assertEquals(503, e.getHTTPCode());
+		}
+		assertEquals(2, this.server.getRequestCount(SessionTest.LOGIN));
+		// The first attempt, the attempt after the renewal and two retries.
+		assertEquals(4, this.server.getRequestCount(SessionTest.LIST));
+
+		// A failed renewal ends the request.
+		this.server.failNext(SessionTest.LIST, 0, 503);
+		this.server.expireSessions();
+		this.server.failNext(SessionTest.LOGIN, 1, 403);
+		try {
+			sc.getFileList();
+			fail("The request did not fail.");
+		} catch (HTTPException e) {
+			assertEquals(403, e.getHTTPCode());
+		}
+		assertEquals(3, this.server.getRequestCount(SessionTest.LOGIN));
+	}
+
+	/**
+	 * Checks, that a persistent session is restored by the next client with
+	 * the same password without logging in and renewed, if the server
+	 * discarded it.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPersistent() throws Exception {
+		ServerConnector sc = this.connect(FakeFixture.USER);
+		assertTrue(sc.isSessionPersistent());
+		assertEquals(1, this.server.getRequestCount(SessionTest.LOGIN));
+
+		sc = this.connect(FakeFixture.USER);
+		sc.getFileList();
+		assertEquals(1, this.server.getRequestCount(SessionTest.LOGIN));
+
+		this.server.expireSessions();
+		sc = this.connect(FakeFixture.USER);
+		sc.getFileList();
+		assertEquals(2, this.server.getRequestCount(SessionTest.LOGIN));
+
+		// Another password cannot decrypt the session and logs in.
+		try {
+			this.connect("wrong");
+			fail("The login did not fail.");
+		} catch (HTTPException e) {
+			assertEquals(403, e.getHTTPCode());
+		}
+		assertEquals(3, this.server.getRequestCount(SessionTest.LOGIN));
+
+		sc.setSessionPersistent(false);
+		this.connect(FakeFixture.USER);
+		assertEquals(4, this.server.getRequestCount(SessionTest.LOGIN));
+	}
+
+	/**
+	 * Saves and loads a session and checks, that another password, another
+	 * account and a damaged file do not restore it.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testStore() throws Exception {
+		File file = new File(this.directory, "store/session");
+		SessionStore store = new SessionStore();
+		store.save("JSESSIONID=a", "pw", "account");
+		assertNull(store.load("pw", "account"));
+
+		store.setFile(file);
+		assertNull(store.load("pw", "account"));
+		store.save("JSESSIONID=a", "pw", "account");
+		assertTrue(file.isFile());
+		assertEquals("JSESSIONID=a", store.load("pw", "account"));
+		assertNull(store.load("wrong", "account"));
+		assertNull(store.load("pw", "other"));
+
+		SessionStore other = new SessionStore();
+		other.setFile(file);
+		assertEquals("JSESSIONID=a", other.load("pw", "account"));
+
+		// Flip a bit of the encrypted session.
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.seek(raf.length() - 1);
+			int b = raf.read();
+			raf.seek(raf.length() - 1);
+			raf.write(b ^ 1);
+		} finally {
+			raf.close();
+		}
+		assertNull(store.load("pw", "account"));
+
+		store.delete();
+		assertFalse(file.exists());
+		assertNull(store.load("pw", "account"));
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+/**
+ * Compares the {@link TimestampCodec} with {@link SimpleDateFormat}.
+ */
+public class TimestampCodecTest {
+
+	private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.S";
+
+	private static final String[] ZONES = { "UTC", "Europe/Berlin",
+			"America/New_York", "Australia/Lord_Howe", "Asia/Kolkata" };
+
+	/**
+	 * Creates a {@link SimpleDateFormat} for a time zone.
+	 * 
+	 * @param zone
+	 *            The time zone.
+	 * @return The {@link SimpleDateFormat}.
+	 */
+	private static SimpleDateFormat format(TimeZone zone) {
+		SimpleDateFormat format = new SimpleDateFormat(
+				TimestampCodecTest.PATTERN);
+		format.setTimeZone(zone);
+		return format;
+	}
+
+	/**
+	 * Checks, that formatting matches {@link SimpleDateFormat} for random
+	 * instants from 1970 to 2100.
+	 */
+	@Test
+	public void testFormat() {
+		Random random = new Random(42L);
+		for (String id : TimestampCodecTest.ZONES) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			TimestampCodec codec = new TimestampCodec(zone);
+			SimpleDateFormat format = TimestampCodecTest.format(zone);
+			for (int i = 0; i < 20000; i++) {
+				long millis = (long) (random.nextDouble() * 4102444800000L);
+				assertEquals(format.format(new Date(millis)),
+						codec.format(millis));
+			}
+		}
+	}
+
+	/**
+	 * Checks, that invalid timestamps are rejected.
+	 */
+	@Test
+	public void testInvalid() {
+		TimestampCodec codec = new TimestampCodec(TimeZone.getTimeZone("UTC"));
+		String[] invalid = { "", "2012-05-06", "2012-05-06 07:08:09",
+				"2012-05-06 07:08:09.", "2012/05/06 07:08:09.0",
+				"2012-05-06 07:08:09.0 ", "x012-05-06 07:08:09.0" };
+		for (String timestamp : invalid) {
+			try {
+				codec.parse(timestamp);
+				throw new AssertionError("Accepted: " + timestamp);
+			} catch (ParseException expected) {
+			}
+		}
+	}
+
+	/**
+	 * Checks, that parsing matches {@link SimpleDateFormat}, also for local
+	 * times in the gaps and overlaps of daylight saving time.
+	 * 
+	 * @throws ParseException
+	 */
+	@Test
+	public void testParse() throws ParseException {
+		String[] timestamps = { "1970-01-01 00:00:00.0",
+				"2012-03-25 02:30:00.0", "2012-10-28 02:30:00.0",
+				"2012-03-11 02:30:00.0", "2012-11-04 01:30:00.0",
+				"2012-04-01 01:45:00.0", "2000-02-29 23:59:59.999",
+				"2099-12-31 12:00:00.5" };
+		for (String id : TimestampCodecTest.ZONES) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			TimestampCodec codec = new TimestampCodec(zone);
+			SimpleDateFormat format = TimestampCodecTest.format(zone);
+			for (String timestamp : timestamps) {
+				assertEquals(id + " " + timestamp, format.parse(timestamp)
+						.getTime(), codec.parse(timestamp));
+			}
+		}
+	}
+
+	/**
+	 * Checks, that a formatted timestamp is parsed to the same instant.
+	 * 
+	 * @throws ParseException
+	 */
+	@Test
+	public void testRoundTrip() throws ParseException {
+		Random random = new Random(7L);
+		TimestampCodec codec = new TimestampCodec(TimeZone.getTimeZone("UTC"));
+		for (int i = 0; i < 10000; i++) {
+			long millis = (long) (random.nextDouble() * 4102444800000L);
+			assertEquals(millis, codec.parse(codec.format(millis)));
+		}
+	}
+}
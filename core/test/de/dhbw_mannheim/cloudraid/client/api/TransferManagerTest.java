@@ -0,0 +1,257 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the parallel execution of {@link TransferJob}s by a
+ * {@link TransferManager}.
+ */
+public class TransferManagerTest {
+
+	private static final int FILES = 8;
+
+	private static final int SIZE = 1000;
+
+	private FakeFixture fixture;
+	private FakeServer server;
+	private ServerConnector sc;
+
+	/**
+	 * Starts the server and logs in.
+	 * 
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.fixture = new FakeFixture();
+		this.server = this.fixture.getServer();
+		this.sc = this.fixture.connect();
+	}
+
+	/**
+	 * Stops the server and deletes the temporary files.
+	 */
+	@After
+	public void tearDown() {
+		this.fixture.stop();
+	}
+
+	/**
+	 * Uploads, downloads and deletes a batch of files and checks the
+	 * aggregated counts.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		TransferManager manager = new TransferManager();
+		List<TransferJob> uploads = new ArrayList<TransferJob>();
+		for (int i = 0; i < TransferManagerTest.FILES; i++) {
+			byte[] data = new byte[TransferManagerTest.SIZE];
+			data[i] = (byte) i;
+			uploads.add(TransferJob.upload(this.sc, "file" + i,
+					this.fixture.createFile(data), false));
+		}
+		List<Future<TransferJob>> futures = manager.submitAll(uploads);
+		// The size of an upload is known, when it is submitted.
+		assertEquals((long) TransferManagerTest.FILES
+				* TransferManagerTest.SIZE, manager.getBytesTotal());
+		for (Future<TransferJob> f : futures) {
+			f.get();
+		}
+		assertEquals((long) TransferManagerTest.FILES
+				* TransferManagerTest.SIZE, manager.getBytesTransferred());
+		List<File> downloads = new ArrayList<File>();
+		futures = new ArrayList<Future<TransferJob>>();
+		for (int i = 0; i < TransferManagerTest.FILES; i++) {
+			File file = this.fixture.createFile(null);
+			downloads.add(file);
+			futures.add(manager.download(this.sc, "file" + i, file));
+		}
+		for (int i = 0; i < TransferManagerTest.FILES; i++) {
+			TransferJob job = futures.get(i).get();
+			assertSame(downloads.get(i), job.getFile());
+			assertArrayEquals(this.server.getFile(FakeFixture.USER,
+					"file" + i), FakeFixture.read(downloads.get(i)));
+		}
+		futures.clear();
+		for (int i = 0; i < TransferManagerTest.FILES; i++) {
+			futures.add(manager.delete(this.sc, "file" + i));
+		}
+		for (Future<TransferJob> f : futures) {
+			f.get();
+		}
+		manager.shutdown();
+		assertTrue(manager.awaitTermination(10, TimeUnit.SECONDS));
+		assertNull(this.server.getFile(FakeFixture.USER, "file0"));
+		int jobs = 3 * TransferManagerTest.FILES;
+		assertEquals(jobs, manager.getSubmittedCount());
+		assertEquals(jobs, manager.getCompletedCount());
+		assertEquals(0, manager.getFailedCount());
+		assertEquals(0, manager.getPendingCount());
+		assertEquals(2L * TransferManagerTest.FILES * TransferManagerTest.SIZE,
+				manager.getBytesTransferred());
+		assertEquals(2L * TransferManagerTest.FILES * TransferManagerTest.SIZE,
+				manager.getBytesTotal());
+	}
+
+	/**
+	 * Checks, that a job cancelled while it waits for its server is counted
+	 * as failed, so that all jobs have finished after the shutdown.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancelWaiting() throws Exception {
+		this.server.putFile(FakeFixture.USER, "file", new byte[1]);
+		this.server.setLatency(500L);
+		TransferManager manager = new TransferManager(2, 1);
+		Future<TransferJob> running = manager.download(this.sc, "file",
+				this.fixture.createFile(null));
+		Future<TransferJob> waiting = manager.download(this.sc, "file",
+				this.fixture.createFile(null));
+		assertTrue(waiting.cancel(false));
+		manager.shutdown();
+		assertTrue(manager.awaitTermination(10, TimeUnit.SECONDS));
+		assertTrue(running.isDone());
+		assertEquals(1, manager.getCompletedCount());
+		assertEquals(1, manager.getFailedCount());
+		assertEquals(0, manager.getPendingCount());
+	}
+
+	/**
+	 * Checks, that a failed job is counted and its {@link HTTPException} is
+	 * thrown by its {@link Future}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		TransferManager manager = new TransferManager();
+		try {
+			manager.download(this.sc, "missing", this.fixture.createFile(null))
+					.get();
+			fail("The file does not exist.");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof HTTPException);
+			assertEquals(404, ((HTTPException) e.getCause()).getHTTPCode());
+		}
+		manager.shutdown();
+		assertEquals(1, manager.getFailedCount());
+		assertEquals(0, manager.getCompletedCount());
+		assertEquals(0L, manager.getBytesTransferred());
+	}
+
+	/**
+	 * Checks, that the jobs of a server at its limit wait without occupying
+	 * a worker, so the jobs of another server are not held up.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testNoHeadOfLineBlocking() throws Exception {
+		FakeFixture slow = new FakeFixture();
+		slow.getServer().putFile(FakeFixture.USER, "file", new byte[1]);
+		slow.getServer().setLatency(1000L);
+		try {
+			ServerConnector slowSc = slow.connect();
+			this.server.putFile(FakeFixture.USER, "file", new byte[1]);
+			TransferManager manager = new TransferManager(2, 1);
+			List<Future<TransferJob>> futures;
+			futures = new ArrayList<Future<TransferJob>>();
+			for (int i = 0; i < 3; i++) {
+				futures.add(manager.download(slowSc, "file",
+						this.fixture.createFile(null)));
+			}
+			manager.download(this.sc, "file", this.fixture.createFile(null))
+					.get(500L, TimeUnit.MILLISECONDS);
+			assertFalse(futures.get(2).isDone());
+			manager.shutdown();
+			assertTrue(manager.awaitTermination(10, TimeUnit.SECONDS));
+			assertEquals(4, manager.getCompletedCount());
+			assertEquals(1, slow.getServer().getPeakConcurrentRequests());
+		} finally {
+			slow.stop();
+		}
+	}
+
+	/**
+	 * Checks, that the number of concurrent operations on one server is
+	 * limited.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testPerHostLimit() throws Exception {
+		TransferManager manager = new TransferManager(
+				TransferManagerTest.FILES, 2);
+		this.server.putFile(FakeFixture.USER, "file", new byte[1]);
+		this.server.setLatency(50L);
+		List<Future<TransferJob>> futures;
+		futures = new ArrayList<Future<TransferJob>>();
+		for (int i = 0; i < TransferManagerTest.FILES; i++) {
+			futures.add(manager.download(this.sc, "file",
+					this.fixture.createFile(null)));
+		}
+		for (Future<TransferJob> f : futures) {
+			f.get();
+		}
+		manager.shutdown();
+		assertEquals(2, this.server.getPeakConcurrentRequests());
+	}
+
+	/**
+	 * Checks, that jobs are rejected after a shutdown.
+	 * 
+	 * @throws Exception
+	 */
+	@Test(expected = RejectedExecutionException.class)
+	public void testShutdown() throws Exception {
+		TransferManager manager = new TransferManager();
+		manager.shutdown();
+		manager.delete(this.sc, "file");
+	}
+}
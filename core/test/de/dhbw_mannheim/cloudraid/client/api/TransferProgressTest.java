@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Tests, that a {@link TransferProgress} counts the bytes of several threads
+ * and notifies its listeners one at a time.
+ */
+public class TransferProgressTest {
+
+	private static final int THREADS = 8;
+	private static final int ADDS = 20000;
+
+	/**
+	 * A {@link TransferListener} checking the order of the notifications.
+	 */
+	private static class CheckingListener implements TransferListener {
+		private AtomicInteger active = new AtomicInteger(0);
+		private AtomicInteger overlaps = new AtomicInteger(0);
+		private AtomicInteger progressed = new AtomicInteger(0);
+		private AtomicInteger finished = new AtomicInteger(0);
+		private AtomicLong last = new AtomicLong(0L);
+		private volatile boolean decreasing = false;
+
+		@Override
+		public void transferFinished(TransferProgress progress,
+				boolean success) {
+			this.finished.incrementAndGet();
+		}
+
+		@Override
+		public void transferProgressed(TransferProgress progress) {
+			if (this.active.incrementAndGet() != 1) {
+				this.overlaps.incrementAndGet();
+			}
+			long bytes = progress.getBytesTransferred();
+			if (bytes < this.last.getAndSet(bytes)) {
+				this.decreasing = true;
+			}
+			this.progressed.incrementAndGet();
+			this.active.decrementAndGet();
+		}
+
+		@Override
+		public void transferStarted(TransferProgress progress) {
+		}
+	}
+
+	/**
+	 * Runs a task in several threads at once and waits for them.
+	 * 
+	 * @param task
+	 *            The task.
+	 * @throws InterruptedException
+	 */
+	private static void runConcurrently(final Runnable task)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[TransferProgressTest.THREADS];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					task.run();
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	/**
+	 * Adds bytes from several threads and checks the count, the
+	 * notifications and the throughput.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentAdd() throws Exception {
+		CheckingListener listener = new CheckingListener();
+		final TransferProgress progress = new TransferProgress("a", false,
+				-1L, 100L, Arrays.asList((TransferListener) listener), 0L);
+		TransferProgressTest.runConcurrently(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < TransferProgressTest.ADDS; i++) {
+					progress.add(1L);
+				}
+			}
+		});
+		long total = 100L + TransferProgressTest.THREADS
+				* TransferProgressTest.ADDS;
+		assertEquals(total, progress.getBytesTransferred());
+		assertEquals(0, listener.overlaps.get());
+		assertFalse(listener.decreasing);
+		assertTrue(listener.progressed.get() > 0);
+		assertTrue(listener.last.get() <= total);
+		assertTrue(progress.getThroughput() >= 0.0);
+
+		// Throttled by the interval.
+		CheckingListener throttled = new CheckingListener();
+		final TransferProgress slow = new TransferProgress("b", true, -1L,
+				0L, Arrays.asList((TransferListener) throttled), 60000L);
+		TransferProgressTest.runConcurrently(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < TransferProgressTest.ADDS; i++) {
+					slow.add(1L);
+				}
+			}
+		});
+		assertEquals(TransferProgressTest.THREADS * TransferProgressTest.ADDS,
+				slow.getBytesTransferred());
+		assertEquals(0, throttled.progressed.get());
+	}
+
+	/**
+	 * Finishes a transfer from several threads and checks, that the
+	 * listeners are notified once.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testConcurrentFinish() throws Exception {
+		CheckingListener listener = new CheckingListener();
+		final TransferProgress progress = new TransferProgress("a", false, 3L,
+				0L, Arrays.asList((TransferListener) listener), 0L);
+		InputStream in = progress.wrap(new ByteArrayInputStream(new byte[3]));
+		while (in.read(new byte[2]) != -1) {
+		}
+		TransferProgressTest.runConcurrently(new Runnable() {
+			@Override
+			public void run() {
+				progress.finish(true);
+			}
+		});
+		assertTrue(progress.isFinished());
+		assertEquals(1, listener.finished.get());
+		assertEquals(3L, progress.getBytesTransferred());
+		assertEquals(0L, progress.getRemainingMillis());
+	}
+}
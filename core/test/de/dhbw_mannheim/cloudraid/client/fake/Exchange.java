@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.IOException;
+
+/**
+ * A request received by a {@link FakeServer} and its response. The response
+ * headers have to be set before the response.
+ */
+interface Exchange {
+
+	/**
+	 * Reads the body of the request and drops it.
+	 * 
+	 * @return The number of bytes dropped.
+	 * @throws IOException
+	 */
+	public long discardRequestBody() throws IOException;
+
+	/**
+	 * Returns the HTTP method of the request.
+	 * 
+	 * @return The method.
+	 */
+	public String getMethod();
+
+	/**
+	 * Returns the path of the request without the query.
+	 * 
+	 * @return The path.
+	 */
+	public String getPath();
+
+	/**
+	 * Returns the body of the request.
+	 * 
+	 * @return The body, which is empty, if none was sent.
+	 * @throws IOException
+	 */
+	public byte[] getRequestBody() throws IOException;
+
+	/**
+	 * Returns the value of a request header.
+	 * 
+	 * @param name
+	 *            The name of the header, in any case.
+	 * @return The value or <code>null</code>, if the header was not sent.
+	 */
+	public String getRequestHeader(String name);
+
+	/**
+	 * Sets the status code and the body of the response.
+	 * 
+	 * @param code
+	 *            The status code.
+	 * @param body
+	 *            The body or <code>null</code>, if there is none.
+	 */
+	public void respond(int code, byte[] body);
+
+	/**
+	 * Adds a header to the response.
+	 * 
+	 * @param name
+	 *            The name of the header.
+	 * @param value
+	 *            The value of the header.
+	 */
+	public void setResponseHeader(String name, String value);
+}
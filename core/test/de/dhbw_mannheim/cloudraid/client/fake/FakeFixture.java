@@ -0,0 +1,240 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import de.dhbw_mannheim.cloudraid.client.api.HTTPException;
+import de.dhbw_mannheim.cloudraid.client.api.IncompatibleApiVersionException;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * The common fixture of the tests talking to a server: a {@link FakeServer}
+ * with the user {@link #USER}, served by a {@link FakeHttpServer}, and an
+ * empty temporary directory for the local files of a test. A test creates it
+ * in its <code>@Before</code> method and stops it in its <code>@After</code>
+ * method. The static methods read and write the local files.
+ */
+public class FakeFixture {
+
+	/**
+	 * The name and the password of the user.
+	 */
+	public static final String USER = "test";
+
+	/**
+	 * Creates an empty temporary directory.
+	 * 
+	 * @return The directory.
+	 * @throws IOException
+	 */
+	public static File createDirectory() throws IOException {
+		File directory = File.createTempFile("cloudraid-test", "");
+		directory.delete();
+		if (!directory.mkdir()) {
+			throw new IOException("Cannot create " + directory);
+		}
+		return directory;
+	}
+
+	/**
+	 * Deletes a file or a directory with its contents.
+	 * 
+	 * @param file
+	 *            The file or directory.
+	 */
+	public static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				FakeFixture.delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Returns random data, which is the same for every call with the same
+	 * length.
+	 * 
+	 * @param length
+	 *            The length of the data.
+	 * @return The data.
+	 */
+	public static byte[] random(int length) {
+		byte[] data = new byte[length];
+		new Random(length).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * Reads a file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return The content.
+	 * @throws IOException
+	 */
+	public static byte[] read(File file) throws IOException {
+		byte[] data = new byte[(int) file.length()];
+		InputStream is = new FileInputStream(file);
+		try {
+			int pos = 0;
+			while (pos < data.length) {
+				int read = is.read(data, pos, data.length - pos);
+				if (read == -1) {
+					throw new IOException("Unexpected end of file.");
+				}
+				pos += read;
+			}
+		} finally {
+			is.close();
+		}
+		return data;
+	}
+
+	/**
+	 * Returns the lines of a log file, which compress well.
+	 * 
+	 * @param length
+	 *            The length of the data.
+	 * @return The data.
+	 * @throws IOException
+	 */
+	public static byte[] text(int length) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		Random random = new Random(length);
+		for (int line = 0; sb.length() < length; line++) {
+			sb.append(line).append(" INFO request ")
+					.append(random.nextInt(1000)).append(" ms\n");
+		}
+		return sb.substring(0, length).getBytes("US-ASCII");
+	}
+
+	/**
+	 * Writes a file.
+	 * 
+	 * @param file
+	 *            The file.
+	 * @param data
+	 *            The content.
+	 * @throws IOException
+	 */
+	public static void write(File file, byte[] data) throws IOException {
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(data);
+		} finally {
+			os.close();
+		}
+	}
+
+	private FakeServer server;
+	private FakeHttpServer http;
+	private File directory;
+
+	/**
+	 * Starts a {@link FakeServer} with the user {@link #USER} and creates the
+	 * directory.
+	 * 
+	 * @throws IOException
+	 */
+	public FakeFixture() throws IOException {
+		this.server = new FakeServer();
+		this.server.addUser(FakeFixture.USER, FakeFixture.USER);
+		this.http = new FakeHttpServer(this.server);
+		this.directory = FakeFixture.createDirectory();
+	}
+
+	/**
+	 * Connects to the server as {@link #USER} and logs in, see
+	 * {@link FakeHttpServer#connect(String)}.
+	 * 
+	 * @return The {@link ServerConnector}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 * @throws IncompatibleApiVersionException
+	 */
+	public ServerConnector connect() throws IOException, HTTPException,
+			IncompatibleApiVersionException {
+		return this.http.connect(FakeFixture.USER);
+	}
+
+	/**
+	 * Creates a new file in the directory.
+	 * 
+	 * @param data
+	 *            The content or <code>null</code> for an empty file.
+	 * @return The file.
+	 * @throws IOException
+	 */
+	public File createFile(byte[] data) throws IOException {
+		File file = File.createTempFile("cloudraid-test", ".dat",
+				this.directory);
+		if (data != null) {
+			FakeFixture.write(file, data);
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the directory, which is deleted by {@link #stop()}.
+	 * 
+	 * @return The directory.
+	 */
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Returns the {@link FakeHttpServer}.
+	 * 
+	 * @return The {@link FakeHttpServer}.
+	 */
+	public FakeHttpServer getHttpServer() {
+		return this.http;
+	}
+
+	/**
+	 * Returns the {@link FakeServer}.
+	 * 
+	 * @return The {@link FakeServer}.
+	 */
+	public FakeServer getServer() {
+		return this.server;
+	}
+
+	/**
+	 * Stops the server and deletes the directory.
+	 */
+	public void stop() {
+		this.http.stop();
+		FakeFixture.delete(this.directory);
+	}
+}
@@ -0,0 +1,1086 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+
+/**
+ * Serves a {@link FakeServer} over plain HTTP/2 and HTTP/1.1 on a local port,
+ * so that the HTTP/2 and the HTTP/1.1 transport of a client can be compared
+ * against the same server. A connection speaks HTTP/2, if the client starts
+ * with the HTTP/2 connection preface ("prior knowledge") or asks for it by an
+ * <code>Upgrade: h2c</code> header; otherwise it speaks HTTP/1.1 with
+ * keep-alive. The requests of an HTTP/2 connection are answered in parallel
+ * and their responses are interleaved.
+ * 
+ * A request the {@link FakeServer} fails with an {@link IOException} is
+ * answered by resetting its HTTP/2 stream or by closing its HTTP/1.1
+ * connection. A TLS handshake is answered by closing the connection, so that
+ * a client trying HTTPS first falls back to HTTP.
+ * 
+ * The server implements the parts of HTTP/2 (RFC 7540) a client needs: the
+ * frames are read and written, flow control is obeyed, and the headers are
+ * decoded by {@link Hpack}. Priorities and server push are not supported.
+ */
+public class FakeHttp2Server {
+
+	/**
+	 * The first port tried.
+	 */
+	public static final int FIRST_PORT = 28080;
+
+	/**
+	 * The next port tried, which is not reused within a JVM.
+	 */
+	private static AtomicInteger nextPort = new AtomicInteger(
+			FakeHttp2Server.FIRST_PORT);
+
+	private static final String ENCODING = "ISO-8859-1";
+
+	/**
+	 * The first octet of a TLS handshake.
+	 */
+	private static final int TLS_HANDSHAKE = 0x16;
+
+	/**
+	 * The HTTP/2 connection preface of the client.
+	 */
+	private static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+
+	private static final int DATA = 0x0, HEADERS = 0x1, RST_STREAM = 0x3,
+			SETTINGS = 0x4, PING = 0x6, GOAWAY = 0x7, WINDOW_UPDATE = 0x8,
+			CONTINUATION = 0x9;
+
+	private static final int END_STREAM = 0x1, ACK = 0x1, END_HEADERS = 0x4,
+			PADDED = 0x8, PRIORITY = 0x20;
+
+	private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1,
+			SETTINGS_MAX_CONCURRENT_STREAMS = 0x3,
+			SETTINGS_INITIAL_WINDOW_SIZE = 0x4, SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+	private static final int INTERNAL_ERROR = 0x2;
+
+	private static final int DEFAULT_TABLE_SIZE = 4096;
+	private static final int DEFAULT_WINDOW_SIZE = 65535;
+	private static final int DEFAULT_FRAME_SIZE = 16384;
+
+	/**
+	 * The maximum number of streams a client may open at the same time.
+	 */
+	private static final int MAX_CONCURRENT_STREAMS = 256;
+
+	/**
+	 * The maximum length of a line of an HTTP/1.1 request head.
+	 */
+	private static final int MAX_LINE = 64 * 1024;
+
+	/**
+	 * An {@link Exchange} whose request was read completely.
+	 */
+	private static class StubExchange implements Exchange {
+		private String method;
+		private String path;
+		private Map<String, String> headers = new HashMap<String, String>();
+		private byte[] body = new byte[0];
+		private int code = -1;
+		private List<String[]> responseHeaders = new ArrayList<String[]>();
+		private byte[] responseBody;
+
+		/**
+		 * Adds a request header. The values of repeated headers are joined.
+		 * 
+		 * @param name
+		 *            The name.
+		 * @param value
+		 *            The value.
+		 */
+		void addRequestHeader(String name, String value) {
+			name = name.toLowerCase(Locale.ENGLISH);
+			String previous = this.headers.get(name);
+			if (previous != null) {
+				value = previous + (name.equals("cookie") ? "; " : ", ")
+						+ value;
+			}
+			this.headers.put(name, value);
+		}
+
+		@Override
+		public long discardRequestBody() {
+			return this.body.length;
+		}
+
+		@Override
+		public String getMethod() {
+			return this.method;
+		}
+
+		@Override
+		public String getPath() {
+			return this.path;
+		}
+
+		@Override
+		public byte[] getRequestBody() {
+			return this.body;
+		}
+
+		@Override
+		public String getRequestHeader(String name) {
+			return this.headers.get(name.toLowerCase(Locale.ENGLISH));
+		}
+
+		@Override
+		public void respond(int code, byte[] body) {
+			this.code = code;
+			this.responseBody = body;
+		}
+
+		/**
+		 * Sets the method and the path from the target of the request.
+		 * 
+		 * @param method
+		 *            The method.
+		 * @param target
+		 *            The path and the query.
+		 */
+		void setTarget(String method, String target) {
+			this.method = method;
+			int query = target.indexOf('?');
+			this.path = query < 0 ? target : target.substring(0, query);
+		}
+
+		@Override
+		public void setResponseHeader(String name, String value) {
+			this.responseHeaders.add(new String[] { name, value });
+		}
+	}
+
+	/**
+	 * An HTTP/2 stream.
+	 */
+	private static class Stream {
+		private int id;
+		private StubExchange exchange = new StubExchange();
+		private ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private int window;
+		private boolean reset = false;
+
+		Stream(int id, int window) {
+			this.id = id;
+			this.window = window;
+		}
+	}
+
+	/**
+	 * A connection of a client. The requests are read by one thread; the
+	 * responses of HTTP/2 streams are written by the threads answering them.
+	 * The flow control windows are guarded by the {@link Connection}.
+	 */
+	private class Connection implements Runnable {
+		private Socket socket;
+		private InputStream in;
+		private OutputStream out;
+		private Hpack decoder = new Hpack(FakeHttp2Server.DEFAULT_TABLE_SIZE);
+		private Map<Integer, Stream> streams = new ConcurrentHashMap<Integer, Stream>();
+		private int sendWindow = FakeHttp2Server.DEFAULT_WINDOW_SIZE;
+		private int initialWindow = FakeHttp2Server.DEFAULT_WINDOW_SIZE;
+		private volatile int maxFrameSize = FakeHttp2Server.DEFAULT_FRAME_SIZE;
+		private boolean closed = false;
+
+		/**
+		 * The header block being received by HEADERS and CONTINUATION frames.
+		 */
+		private ByteArrayOutputStream headerBlock = null;
+		private int headerStream;
+		private boolean headerEndStream;
+
+		Connection(Socket socket) {
+			this.socket = socket;
+		}
+
+		/**
+		 * Sets the settings of the client.
+		 * 
+		 * @param b
+		 *            The payload of a SETTINGS frame.
+		 * @param off
+		 *            The start of the settings.
+		 * @param len
+		 *            The length of the settings.
+		 */
+		private synchronized void applySettings(byte[] b, int off, int len) {
+			for (int i = off; i + 6 <= off + len; i += 6) {
+				int id = (b[i] & 0xff) << 8 | b[i + 1] & 0xff;
+				int value = FakeHttp2Server.readInt(b, i + 2);
+				if (id == FakeHttp2Server.SETTINGS_INITIAL_WINDOW_SIZE) {
+					int delta = value - this.initialWindow;
+					this.initialWindow = value;
+					for (Stream stream : this.streams.values()) {
+						stream.window += delta;
+					}
+					this.notifyAll();
+				} else if (id == FakeHttp2Server.SETTINGS_MAX_FRAME_SIZE) {
+					this.maxFrameSize = value;
+				}
+			}
+		}
+
+		/**
+		 * Closes the connection and stops the responses being written.
+		 */
+		private void close() {
+			synchronized (this) {
+				this.closed = true;
+				this.notifyAll();
+			}
+			try {
+				this.socket.close();
+			} catch (IOException ignore) {
+			}
+			FakeHttp2Server.this.connections.remove(this);
+		}
+
+		/**
+		 * Answers a completely received HTTP/2 request on another thread.
+		 * 
+		 * @param stream
+		 *            The {@link Stream}.
+		 */
+		private void dispatch(final Stream stream) {
+			stream.exchange.body = stream.body.toByteArray();
+			stream.body = null;
+			FakeHttp2Server.this.streamCount.incrementAndGet();
+			FakeHttp2Server.this.executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Connection.this.respond(stream);
+					} catch (IOException e) {
+						Connection.this.close();
+					} finally {
+						Connection.this.streams.remove(stream.id);
+					}
+				}
+			});
+		}
+
+		/**
+		 * Handles a complete header block, which starts a request or holds its
+		 * trailers. The trailers are ignored.
+		 * 
+		 * @throws IOException
+		 */
+		private void endHeaders() throws IOException {
+			byte[] block = this.headerBlock.toByteArray();
+			this.headerBlock = null;
+			List<String[]> headers = this.decoder.decode(block, 0,
+					block.length);
+			Stream stream = this.streams.get(this.headerStream);
+			if (stream == null) {
+				synchronized (this) {
+					stream = new Stream(this.headerStream, this.initialWindow);
+				}
+				String method = null;
+				String path = null;
+				for (String[] header : headers) {
+					if (header[0].equals(":method")) {
+						method = header[1];
+					} else if (header[0].equals(":path")) {
+						path = header[1];
+					} else if (!header[0].startsWith(":")) {
+						stream.exchange.addRequestHeader(header[0], header[1]);
+					}
+				}
+				if (method == null || path == null) {
+					throw new IOException("Malformed request.");
+				}
+				stream.exchange.setTarget(method, path);
+				this.streams.put(stream.id, stream);
+			}
+			if (this.headerEndStream) {
+				this.dispatch(stream);
+			}
+		}
+
+		/**
+		 * Handles a frame received.
+		 * 
+		 * @param type
+		 *            The type.
+		 * @param flags
+		 *            The flags.
+		 * @param id
+		 *            The stream.
+		 * @param payload
+		 *            The payload.
+		 * @return false, if the connection shall be closed.
+		 * @throws IOException
+		 */
+		private boolean handleFrame(int type, int flags, int id,
+				byte[] payload) throws IOException {
+			int off = 0;
+			int len = payload.length;
+			if ((flags & FakeHttp2Server.PADDED) != 0
+					&& (type == FakeHttp2Server.DATA
+							|| type == FakeHttp2Server.HEADERS)) {
+				off = 1;
+				len -= 1 + (payload[0] & 0xff);
+			}
+			switch (type) {
+			case DATA:
+				Stream stream = this.streams.get(id);
+				if (stream != null && stream.body != null) {
+					stream.body.write(payload, off, len);
+				}
+				if (payload.length > 0) {
+					// Let the client send as much again.
+					this.writeWindowUpdate(0, payload.length);
+					if ((flags & FakeHttp2Server.END_STREAM) == 0) {
+						this.writeWindowUpdate(id, payload.length);
+					}
+				}
+				if (stream != null && stream.body != null
+						&& (flags & FakeHttp2Server.END_STREAM) != 0) {
+					this.dispatch(stream);
+				}
+				break;
+			case HEADERS:
+				if ((flags & FakeHttp2Server.PRIORITY) != 0) {
+					off += 5;
+					len -= 5;
+				}
+				this.headerBlock = new ByteArrayOutputStream();
+				this.headerBlock.write(payload, off, len);
+				this.headerStream = id;
+				this.headerEndStream = (flags & FakeHttp2Server.END_STREAM) > 0;
+				if ((flags & FakeHttp2Server.END_HEADERS) != 0) {
+					this.endHeaders();
+				}
+				break;
+			case CONTINUATION:
+				if (this.headerBlock == null || id != this.headerStream) {
+					throw new IOException("Unexpected CONTINUATION frame.");
+				}
+				this.headerBlock.write(payload, 0, payload.length);
+				if ((flags & FakeHttp2Server.END_HEADERS) != 0) {
+					this.endHeaders();
+				}
+				break;
+			case RST_STREAM:
+				Stream reset = this.streams.remove(id);
+				if (reset != null) {
+					synchronized (this) {
+						reset.reset = true;
+						this.notifyAll();
+					}
+				}
+				break;
+			case SETTINGS:
+				if ((flags & FakeHttp2Server.ACK) == 0) {
+					this.applySettings(payload, 0, payload.length);
+					this.writeFrame(FakeHttp2Server.SETTINGS,
+							FakeHttp2Server.ACK, 0, new byte[0], 0, 0);
+				}
+				break;
+			case PING:
+				if ((flags & FakeHttp2Server.ACK) == 0) {
+					this.writeFrame(FakeHttp2Server.PING, FakeHttp2Server.ACK,
+							0, payload, 0, payload.length);
+				}
+				break;
+			case GOAWAY:
+				return false;
+			case WINDOW_UPDATE:
+				int increment = FakeHttp2Server.readInt(payload, 0);
+				synchronized (this) {
+					increment &= 0x7fffffff;
+					if (id == 0) {
+						this.sendWindow += increment;
+					} else {
+						Stream updated = this.streams.get(id);
+						if (updated != null) {
+							updated.window += increment;
+						}
+					}
+					this.notifyAll();
+				}
+				break;
+			default:
+				// PRIORITY and unknown frames are ignored.
+			}
+			return true;
+		}
+
+		/**
+		 * Reads an HTTP/1.1 request.
+		 * 
+		 * @param requestLine
+		 *            The request line, which was read already.
+		 * @return The {@link StubExchange}.
+		 * @throws IOException
+		 */
+		private StubExchange readHttp1Request(String requestLine)
+				throws IOException {
+			String[] parts = requestLine.split(" ");
+			if (parts.length != 3) {
+				throw new IOException("Malformed request line.");
+			}
+			StubExchange exchange = new StubExchange();
+			exchange.setTarget(parts[0], parts[1]);
+			String line;
+			while ((line = this.readLine()) != null && line.length() > 0) {
+				int colon = line.indexOf(':');
+				if (colon > 0) {
+					exchange.addRequestHeader(line.substring(0, colon).trim(),
+							line.substring(colon + 1).trim());
+				}
+			}
+			if (line == null) {
+				throw new EOFException();
+			}
+			String length = exchange.getRequestHeader("Content-Length");
+			String encoding = exchange.getRequestHeader("Transfer-Encoding");
+			if (encoding != null && encoding.equalsIgnoreCase("chunked")) {
+				ByteArrayOutputStream body = new ByteArrayOutputStream();
+				int size;
+				do {
+					String chunk = this.readLine();
+					if (chunk == null) {
+						throw new EOFException();
+					}
+					int extension = chunk.indexOf(';');
+					size = Integer.parseInt((extension < 0 ? chunk : chunk
+							.substring(0, extension)).trim(), 16);
+					byte[] data = new byte[size];
+					this.readFully(data);
+					body.write(data, 0, size);
+					if (size > 0) {
+						this.readLine();
+					}
+				} while (size > 0);
+				// Skip the trailers.
+				while ((line = this.readLine()) != null && line.length() > 0) {
+				}
+				exchange.body = body.toByteArray();
+			} else if (length != null) {
+				exchange.body = new byte[Integer.parseInt(length)];
+				this.readFully(exchange.body);
+			}
+			return exchange;
+		}
+
+		/**
+		 * Reads data from the client.
+		 * 
+		 * @param b
+		 *            The buffer, which is filled completely.
+		 * @throws IOException
+		 *             If the connection ends before.
+		 */
+		private void readFully(byte[] b) throws IOException {
+			int off = 0;
+			while (off < b.length) {
+				int len = this.in.read(b, off, b.length - off);
+				if (len < 0) {
+					throw new EOFException();
+				}
+				off += len;
+			}
+		}
+
+		/**
+		 * Reads a line of an HTTP/1.1 request.
+		 * 
+		 * @return The line without CR LF or <code>null</code>, if the
+		 *         connection ended.
+		 * @throws IOException
+		 */
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			int c;
+			while ((c = this.in.read()) != '\n') {
+				if (c < 0) {
+					if (sb.length() == 0) {
+						return null;
+					}
+					throw new EOFException();
+				}
+				if (sb.length() >= FakeHttp2Server.MAX_LINE) {
+					throw new IOException("Line too long.");
+				}
+				sb.append((char) c);
+			}
+			int length = sb.length();
+			if (length > 0 && sb.charAt(length - 1) == '\r') {
+				sb.setLength(length - 1);
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * Answers an HTTP/1.1 request.
+		 * 
+		 * @param exchange
+		 *            The {@link StubExchange}.
+		 * @return false, if the connection has to be closed.
+		 * @throws IOException
+		 */
+		private boolean respondHttp1(StubExchange exchange)
+				throws IOException {
+			try {
+				FakeHttp2Server.this.server.handle(exchange);
+			} catch (IOException e) {
+				return false;
+			}
+			if (exchange.code < 0) {
+				return false;
+			}
+			byte[] body = exchange.responseBody == null ? new byte[0]
+					: exchange.responseBody;
+			StringBuilder head = new StringBuilder();
+			head.append("HTTP/1.1 ").append(exchange.code).append(' ')
+					.append(FakeHttp2Server.reason(exchange.code))
+					.append("\r\n");
+			for (String[] header : exchange.responseHeaders) {
+				head.append(header[0]).append(": ").append(header[1])
+						.append("\r\n");
+			}
+			head.append("Content-Length: ").append(body.length)
+					.append("\r\n\r\n");
+			this.out.write(head.toString().getBytes(FakeHttp2Server.ENCODING));
+			this.out.write(body);
+			this.out.flush();
+			return !"close".equalsIgnoreCase(exchange
+					.getRequestHeader("Connection"));
+		}
+
+		/**
+		 * Answers an HTTP/2 request and writes the response to its stream.
+		 * 
+		 * @param stream
+		 *            The {@link Stream}.
+		 * @throws IOException
+		 *             If the response cannot be written.
+		 */
+		private void respond(Stream stream) throws IOException {
+			StubExchange exchange = stream.exchange;
+			try {
+				FakeHttp2Server.this.server.handle(exchange);
+			} catch (IOException e) {
+				exchange.code = -1;
+			}
+			if (exchange.code < 0) {
+				byte[] error = new byte[4];
+				FakeHttp2Server.writeInt(error, 0,
+						FakeHttp2Server.INTERNAL_ERROR);
+				this.writeFrame(FakeHttp2Server.RST_STREAM, 0, stream.id,
+						error, 0, error.length);
+				return;
+			}
+			byte[] body = exchange.responseBody == null ? new byte[0]
+					: exchange.responseBody;
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			Hpack.encode(block, ":status", String.valueOf(exchange.code));
+			for (String[] header : exchange.responseHeaders) {
+				Hpack.encode(block, header[0].toLowerCase(Locale.ENGLISH),
+						header[1]);
+			}
+			Hpack.encode(block, "content-length", String.valueOf(body.length));
+			this.writeHeaders(stream.id, block.toByteArray(), body.length == 0);
+			int off = 0;
+			while (off < body.length) {
+				int len;
+				synchronized (this) {
+					while (!stream.reset && !this.closed
+							&& (this.sendWindow <= 0 || stream.window <= 0)) {
+						try {
+							this.wait();
+						} catch (InterruptedException e) {
+							throw new InterruptedIOException();
+						}
+					}
+					if (stream.reset || this.closed) {
+						return;
+					}
+					len = Math.min(Math.min(body.length - off,
+							this.maxFrameSize), Math.min(this.sendWindow,
+							stream.window));
+					this.sendWindow -= len;
+					stream.window -= len;
+				}
+				this.writeFrame(FakeHttp2Server.DATA,
+						off + len == body.length ? FakeHttp2Server.END_STREAM
+								: 0, stream.id, body, off, len);
+				off += len;
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.in = new BufferedInputStream(this.socket.getInputStream());
+				this.out = new BufferedOutputStream(
+						this.socket.getOutputStream());
+				this.in.mark(1);
+				int first = this.in.read();
+				if (first < 0 || first == FakeHttp2Server.TLS_HANDSHAKE) {
+					return;
+				}
+				this.in.reset();
+				FakeHttp2Server.this.connectionCount.incrementAndGet();
+				this.serve();
+			} catch (IOException ignore) {
+			} finally {
+				this.close();
+			}
+		}
+
+		/**
+		 * Serves HTTP/1.1 requests, until the client starts or asks for
+		 * HTTP/2.
+		 * 
+		 * @throws IOException
+		 */
+		private void serve() throws IOException {
+			String line;
+			while ((line = this.readLine()) != null) {
+				if (line.length() == 0) {
+					continue;
+				}
+				if (line.equals("PRI * HTTP/2.0")) {
+					// The rest of the preface follows the request line.
+					byte[] rest = new byte[FakeHttp2Server.PREFACE.length()
+							- line.length() - 2];
+					this.readFully(rest);
+					if (!FakeHttp2Server.PREFACE.endsWith(new String(rest,
+							FakeHttp2Server.ENCODING))) {
+						throw new IOException("Invalid preface.");
+					}
+					this.serveHttp2(null);
+					return;
+				}
+				StubExchange exchange = this.readHttp1Request(line);
+				String upgrade = exchange.getRequestHeader("Upgrade");
+				if ("h2c".equalsIgnoreCase(upgrade)) {
+					this.out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+							+ "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n")
+							.getBytes(FakeHttp2Server.ENCODING));
+					String settings = exchange
+							.getRequestHeader("HTTP2-Settings");
+					if (settings != null) {
+						byte[] b = FakeHttp2Server.decodeBase64Url(settings
+								.trim());
+						this.applySettings(b, 0, b.length);
+					}
+					this.serveHttp2(exchange);
+					return;
+				}
+				if (!this.respondHttp1(exchange)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Serves HTTP/2 streams, until the connection ends.
+		 * 
+		 * @param upgrade
+		 *            The HTTP/1.1 request that asked for HTTP/2, which is
+		 *            answered on stream 1, or <code>null</code>.
+		 * @throws IOException
+		 */
+		private void serveHttp2(StubExchange upgrade) throws IOException {
+			byte[] settings = new byte[12];
+			FakeHttp2Server.writeSetting(settings, 0,
+					FakeHttp2Server.SETTINGS_HEADER_TABLE_SIZE,
+					FakeHttp2Server.DEFAULT_TABLE_SIZE);
+			FakeHttp2Server.writeSetting(settings, 6,
+					FakeHttp2Server.SETTINGS_MAX_CONCURRENT_STREAMS,
+					FakeHttp2Server.MAX_CONCURRENT_STREAMS);
+			this.writeFrame(FakeHttp2Server.SETTINGS, 0, 0, settings, 0,
+					settings.length);
+			if (upgrade != null) {
+				byte[] preface = new byte[FakeHttp2Server.PREFACE.length()];
+				this.readFully(preface);
+				if (!FakeHttp2Server.PREFACE.equals(new String(preface,
+						FakeHttp2Server.ENCODING))) {
+					throw new IOException("Invalid preface.");
+				}
+				Stream stream;
+				synchronized (this) {
+					stream = new Stream(1, this.initialWindow);
+				}
+				stream.exchange = upgrade;
+				stream.body.write(upgrade.body);
+				this.streams.put(stream.id, stream);
+				this.dispatch(stream);
+			}
+			byte[] header = new byte[9];
+			while (true) {
+				try {
+					this.readFully(header);
+				} catch (EOFException e) {
+					return;
+				}
+				int length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8
+						| header[2] & 0xff;
+				int id = FakeHttp2Server.readInt(header, 5) & 0x7fffffff;
+				byte[] payload = new byte[length];
+				this.readFully(payload);
+				if (!this.handleFrame(header[3] & 0xff, header[4] & 0xff, id,
+						payload)) {
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Writes a frame.
+		 * 
+		 * @param type
+		 *            The type.
+		 * @param flags
+		 *            The flags.
+		 * @param id
+		 *            The stream.
+		 * @param b
+		 *            The buffer holding the payload.
+		 * @param off
+		 *            The start of the payload.
+		 * @param len
+		 *            The length of the payload.
+		 * @throws IOException
+		 */
+		private void writeFrame(int type, int flags, int id, byte[] b,
+				int off, int len) throws IOException {
+			byte[] header = new byte[9];
+			header[0] = (byte) (len >>> 16);
+			header[1] = (byte) (len >>> 8);
+			header[2] = (byte) len;
+			header[3] = (byte) type;
+			header[4] = (byte) flags;
+			FakeHttp2Server.writeInt(header, 5, id);
+			synchronized (this.out) {
+				this.out.write(header);
+				this.out.write(b, off, len);
+				this.out.flush();
+			}
+		}
+
+		/**
+		 * Writes the header block of a response as a HEADERS frame and
+		 * CONTINUATION frames, if it is larger than a frame.
+		 * 
+		 * @param id
+		 *            The stream.
+		 * @param block
+		 *            The header block.
+		 * @param endStream
+		 *            true, if the response has no body.
+		 * @throws IOException
+		 */
+		private void writeHeaders(int id, byte[] block, boolean endStream)
+				throws IOException {
+			int frameSize = this.maxFrameSize;
+			synchronized (this.out) {
+				int off = 0;
+				do {
+					int len = Math.min(frameSize, block.length - off);
+					int flags = 0;
+					if (off + len == block.length) {
+						flags |= FakeHttp2Server.END_HEADERS;
+					}
+					if (off == 0) {
+						if (endStream) {
+							flags |= FakeHttp2Server.END_STREAM;
+						}
+						this.writeFrame(FakeHttp2Server.HEADERS, flags, id,
+								block, off, len);
+					} else {
+						this.writeFrame(FakeHttp2Server.CONTINUATION, flags,
+								id, block, off, len);
+					}
+					off += len;
+				} while (off < block.length);
+			}
+		}
+
+		/**
+		 * Lets the client send more data.
+		 * 
+		 * @param id
+		 *            The stream or 0 for the connection.
+		 * @param increment
+		 *            The number of bytes.
+		 * @throws IOException
+		 */
+		private void writeWindowUpdate(int id, int increment)
+				throws IOException {
+			byte[] payload = new byte[4];
+			FakeHttp2Server.writeInt(payload, 0, increment);
+			this.writeFrame(FakeHttp2Server.WINDOW_UPDATE, 0, id, payload, 0,
+					payload.length);
+		}
+	}
+
+	/**
+	 * Decodes the URL-safe Base64 of the <code>HTTP2-Settings</code> header,
+	 * which has no padding.
+	 * 
+	 * @param value
+	 *            The encoded value.
+	 * @return The decoded bytes.
+	 * @throws IOException
+	 *             If the value is not URL-safe Base64.
+	 */
+	private static byte[] decodeBase64Url(String value) throws IOException {
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+				+ "abcdefghijklmnopqrstuvwxyz0123456789-_";
+		int length = value.length();
+		while (length > 0 && value.charAt(length - 1) == '=') {
+			length--;
+		}
+		byte[] b = new byte[length * 6 / 8];
+		int bits = 0;
+		int count = 0;
+		int pos = 0;
+		for (int i = 0; i < length; i++) {
+			int digit = alphabet.indexOf(value.charAt(i));
+			if (digit < 0) {
+				throw new IOException("Invalid Base64: " + value);
+			}
+			bits = bits << 6 | digit;
+			count += 6;
+			if (count >= 8) {
+				count -= 8;
+				b[pos++] = (byte) (bits >> count);
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Reads a 32 bit integer in network byte order.
+	 * 
+	 * @param b
+	 *            The buffer.
+	 * @param off
+	 *            The position of the integer.
+	 * @return The integer.
+	 */
+	private static int readInt(byte[] b, int off) {
+		return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16
+				| (b[off + 2] & 0xff) << 8 | b[off + 3] & 0xff;
+	}
+
+	/**
+	 * Returns the reason phrase of an HTTP/1.1 status code.
+	 * 
+	 * @param code
+	 *            The status code.
+	 * @return The reason phrase.
+	 */
+	private static String reason(int code) {
+		if (code < 300) {
+			return "OK";
+		} else if (code < 400) {
+			return "Redirection";
+		} else if (code < 500) {
+			return "Client Error";
+		}
+		return "Server Error";
+	}
+
+	/**
+	 * Writes a 32 bit integer in network byte order.
+	 * 
+	 * @param b
+	 *            The buffer.
+	 * @param off
+	 *            The position of the integer.
+	 * @param value
+	 *            The integer.
+	 */
+	private static void writeInt(byte[] b, int off, int value) {
+		b[off] = (byte) (value >>> 24);
+		b[off + 1] = (byte) (value >>> 16);
+		b[off + 2] = (byte) (value >>> 8);
+		b[off + 3] = (byte) value;
+	}
+
+	/**
+	 * Writes a setting of a SETTINGS frame.
+	 * 
+	 * @param b
+	 *            The buffer.
+	 * @param off
+	 *            The position of the setting.
+	 * @param id
+	 *            The identifier of the setting.
+	 * @param value
+	 *            The value.
+	 */
+	private static void writeSetting(byte[] b, int off, int id, int value) {
+		b[off] = (byte) (id >>> 8);
+		b[off + 1] = (byte) id;
+		FakeHttp2Server.writeInt(b, off + 2, value);
+	}
+
+	private FakeServer server;
+	private ServerSocket socket = null;
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	private Set<Connection> connections = Collections
+			.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+	private AtomicInteger connectionCount = new AtomicInteger(0);
+	private AtomicInteger streamCount = new AtomicInteger(0);
+
+	/**
+	 * Creates a {@link FakeHttp2Server} listening on a free port of the
+	 * loopback interface starting at {@link #FIRST_PORT}.
+	 * 
+	 * @param server
+	 *            The {@link FakeServer} answering the requests.
+	 * @throws IOException
+	 */
+	public FakeHttp2Server(FakeServer server) throws IOException {
+		this.server = server;
+		while (this.socket == null) {
+			int port = FakeHttp2Server.nextPort.getAndIncrement();
+			try {
+				this.socket = new ServerSocket(port, 1024,
+						InetAddress.getLoopbackAddress());
+			} catch (BindException e) {
+				if (port >= Short.MAX_VALUE) {
+					throw e;
+				}
+			}
+		}
+		this.executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				FakeHttp2Server.this.accept();
+			}
+		});
+	}
+
+	/**
+	 * Accepts connections, until the server is stopped.
+	 */
+	private void accept() {
+		try {
+			while (true) {
+				Socket client = this.socket.accept();
+				client.setTcpNoDelay(true);
+				Connection connection = new Connection(client);
+				this.connections.add(connection);
+				this.executor.execute(connection);
+			}
+		} catch (IOException e) {
+			// The server was stopped.
+		}
+	}
+
+	/**
+	 * Returns the number of HTTP connections accepted so far. Closed TLS
+	 * handshakes are not counted.
+	 * 
+	 * @return The number of connections.
+	 */
+	public int getConnectionCount() {
+		return this.connectionCount.get();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * 
+	 * @return The port.
+	 */
+	public int getPort() {
+		return this.socket.getLocalPort();
+	}
+
+	/**
+	 * Returns a {@link ServerConnection} to this server.
+	 * 
+	 * @param user
+	 *            The user name.
+	 * @param password
+	 *            The password.
+	 * @return The {@link ServerConnection}.
+	 * @throws MalformedURLException
+	 */
+	public ServerConnection getServerConnection(String user, String password)
+			throws MalformedURLException {
+		return new ServerConnection("http://localhost", user, password,
+				(short) this.getPort());
+	}
+
+	/**
+	 * Returns the number of HTTP/2 requests received so far.
+	 * 
+	 * @return The number of streams.
+	 */
+	public int getStreamCount() {
+		return this.streamCount.get();
+	}
+
+	/**
+	 * Stops the server and closes all connections.
+	 */
+	public void stop() {
+		try {
+			this.socket.close();
+		} catch (IOException ignore) {
+		}
+		for (Connection connection : this.connections
+				.toArray(new Connection[0])) {
+			connection.close();
+		}
+		this.executor.shutdown();
+	}
+}
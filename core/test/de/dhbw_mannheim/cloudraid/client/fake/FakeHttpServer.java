@@ -0,0 +1,269 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.dhbw_mannheim.cloudraid.client.api.HTTPException;
+import de.dhbw_mannheim.cloudraid.client.api.IncompatibleApiVersionException;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * Serves a {@link FakeServer} over plain HTTP on a local port. Every request
+ * received is handed to the {@link FakeServer} and its answer is sent back. A
+ * request the {@link FakeServer} fails with an {@link IOException} is
+ * answered by closing the connection.
+ * 
+ * The server counts the TCP connections it accepted by their remote address,
+ * which tells how many connections a client reused.
+ */
+public class FakeHttpServer implements HttpHandler {
+
+	/**
+	 * The first port tried.
+	 */
+	public static final int FIRST_PORT = 18080;
+
+	/**
+	 * The number of connections waiting to be accepted, which is high, so
+	 * that thousands of clients can connect at the same time.
+	 */
+	private static final int BACKLOG = 1024;
+
+	/**
+	 * The next port tried. Ports are not reused within a JVM, so that no
+	 * client reuses a connection kept alive to an earlier server.
+	 */
+	private static AtomicInteger nextPort = new AtomicInteger(
+			FakeHttpServer.FIRST_PORT);
+
+	/**
+	 * An {@link Exchange} backed by an {@link HttpExchange}.
+	 */
+	private static class HttpServerExchange implements Exchange {
+		private HttpExchange exchange;
+		private int code = -1;
+		private byte[] body;
+
+		HttpServerExchange(HttpExchange exchange) {
+			this.exchange = exchange;
+		}
+
+		@Override
+		public String getMethod() {
+			return this.exchange.getRequestMethod();
+		}
+
+		@Override
+		public String getPath() {
+			return this.exchange.getRequestURI().getRawPath();
+		}
+
+		@Override
+		public long discardRequestBody() throws IOException {
+			InputStream is = this.exchange.getRequestBody();
+			byte[] buf = new byte[64 * 1024];
+			long count = 0L;
+			int len;
+			while ((len = is.read(buf)) != -1) {
+				count += len;
+			}
+			return count;
+		}
+
+		@Override
+		public byte[] getRequestBody() throws IOException {
+			return FakeServer.readAll(this.exchange.getRequestBody());
+		}
+
+		@Override
+		public String getRequestHeader(String name) {
+			return this.exchange.getRequestHeaders().getFirst(name);
+		}
+
+		@Override
+		public void respond(int code, byte[] body) {
+			this.code = code;
+			this.body = body;
+		}
+
+		@Override
+		public void setResponseHeader(String name, String value) {
+			this.exchange.getResponseHeaders().add(name, value);
+		}
+
+		/**
+		 * Sends the response set before.
+		 * 
+		 * @throws IOException
+		 */
+		void send() throws IOException {
+			if (this.code < 0) {
+				throw new IOException("No response.");
+			}
+			FakeServer.readAll(this.exchange.getRequestBody());
+			// Confirms the close, so that the client does not reuse the socket.
+			if ("close".equalsIgnoreCase(this.getRequestHeader("Connection"))) {
+				this.setResponseHeader("Connection", "close");
+			}
+			int length = this.body == null ? 0 : this.body.length;
+			this.exchange.sendResponseHeaders(this.code, length == 0 ? -1L
+					: length);
+			if (length > 0) {
+				OutputStream os = this.exchange.getResponseBody();
+				os.write(this.body);
+				os.close();
+			}
+		}
+	}
+
+	private FakeServer server;
+	private HttpServer http;
+	private ExecutorService executor = Executors.newCachedThreadPool();
+	private Set<InetSocketAddress> connections = Collections
+			.newSetFromMap(new ConcurrentHashMap<InetSocketAddress, Boolean>());
+
+	/**
+	 * Creates a {@link FakeHttpServer} listening on a free port of the
+	 * loopback interface starting at {@link #FIRST_PORT}. Ephemeral ports are
+	 * not used, as a {@link ServerConnection} cannot hold ports above 32767.
+	 * Nagle's algorithm is disabled for all servers of the JVM, unless
+	 * sun.net.httpserver.nodelay was set, as it delays small responses.
+	 * 
+	 * @param server
+	 *            The {@link FakeServer} answering the requests.
+	 * @throws IOException
+	 */
+	public FakeHttpServer(FakeServer server) throws IOException {
+		this.server = server;
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		while (this.http == null) {
+			int port = FakeHttpServer.nextPort.getAndIncrement();
+			try {
+				this.http = HttpServer.create(new InetSocketAddress(
+						InetAddress.getLoopbackAddress(), port),
+						FakeHttpServer.BACKLOG);
+			} catch (BindException e) {
+				if (port >= Short.MAX_VALUE) {
+					throw e;
+				}
+			}
+		}
+		this.http.createContext("/", this);
+		this.http.setExecutor(this.executor);
+		this.http.start();
+	}
+
+	/**
+	 * Connects to this server and logs in. The file list is not written to a
+	 * cache directory.
+	 * 
+	 * @param user
+	 *            The user name, which is also the password.
+	 * @return The {@link ServerConnector}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 * @throws IncompatibleApiVersionException
+	 */
+	public ServerConnector connect(String user) throws IOException,
+			HTTPException, IncompatibleApiVersionException {
+		ServerConnector sc = new ServerConnector(this.getServerConnection(
+				user, user), new PlainConnectionPool());
+		sc.setCacheDirectory(null);
+		sc.login();
+		return sc;
+	}
+
+	/**
+	 * Returns the number of TCP connections accepted so far.
+	 * 
+	 * @return The number of connections.
+	 */
+	public int getConnectionCount() {
+		return this.connections.size();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * 
+	 * @return The port.
+	 */
+	public int getPort() {
+		return this.http.getAddress().getPort();
+	}
+
+	/**
+	 * Returns a {@link ServerConnection} to this server.
+	 * 
+	 * @param user
+	 *            The user name.
+	 * @param password
+	 *            The password.
+	 * @return The {@link ServerConnection}.
+	 * @throws MalformedURLException
+	 */
+	public ServerConnection getServerConnection(String user, String password)
+			throws MalformedURLException {
+		return new ServerConnection("http://localhost", user, password,
+				(short) this.getPort());
+	}
+
+	@Override
+	public void handle(HttpExchange exchange) throws IOException {
+		this.connections.add(exchange.getRemoteAddress());
+		try {
+			HttpServerExchange response = new HttpServerExchange(exchange);
+			this.server.handle(response);
+			response.send();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Stops the server.
+	 */
+	public void stop() {
+		this.http.stop(0);
+		this.executor.shutdown();
+	}
+}
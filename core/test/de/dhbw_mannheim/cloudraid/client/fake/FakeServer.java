@@ -0,0 +1,1149 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import de.dhbw_mannheim.cloudraid.client.api.CompressionPolicy;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * A CloudRAID server keeping its files in memory, which answers the requests
+ * of a {@link ServerConnector} in tests and benchmarks without a real server.
+ * The server implements <code>/api/info/</code>, <code>/user/auth/</code>,
+ * <code>/user/add/</code>, <code>/user/chgpw/</code>, <code>/list/</code>
+ * and <code>/file/</code> as the CloudRAID server does: uploaded bodies are
+ * compressed with gzip and responses are compressed with gzip, if the client
+ * accepts it. The files are kept per user account. In addition, the server
+ * accepts chunked uploads as sent by
+ * {@link ServerConnector#putFileChunked(String, java.io.File, boolean, int)},
+ * which the CloudRAID server does not implement.
+ * 
+ * The latency is added to every request and the bodies can be limited to a
+ * bandwidth. Requests to a path can be made to fail on purpose, and a share
+ * of all requests can be made to fail at random. A {@link FakeServer} is
+ * thread-safe. It is reached over the network through a
+ * {@link FakeHttpServer} or in-process through an
+ * {@link InProcessConnectionPool}.
+ */
+public class FakeServer {
+
+	/**
+	 * The state of the files in the file list.
+	 */
+	public static final String STATE = "UPLOADED";
+
+	private static final String ENCODING = "utf-8";
+
+	/**
+	 * The request encodings the server decodes.
+	 */
+	private static final Set<String> DECODED = new HashSet<String>(
+			Arrays.asList(CompressionPolicy.GZIP, CompressionPolicy.DEFLATE,
+					CompressionPolicy.IDENTITY));
+
+	/**
+	 * The account of a user with its files and unfinished chunked uploads.
+	 */
+	private static class Account {
+		String password;
+		TreeMap<String, StoredFile> files = new TreeMap<String, StoredFile>();
+		Map<String, Upload> uploads = new HashMap<String, Upload>();
+
+		/**
+		 * Counts the changes of the files. It is the ETag of the file list.
+		 */
+		long version = 0L;
+
+		Account(String password) {
+			this.password = password;
+		}
+	}
+
+	/**
+	 * A file stored on the server.
+	 */
+	private static class StoredFile {
+		byte[] data;
+		long lastModified;
+		String encoding;
+
+		StoredFile(byte[] data, String encoding) {
+			this.data = data;
+			this.lastModified = System.currentTimeMillis();
+			this.encoding = encoding;
+		}
+	}
+
+	/**
+	 * An unfinished chunked upload.
+	 */
+	private static class Upload {
+		long length;
+		int chunkSize;
+		TreeMap<Integer, byte[]> chunks = new TreeMap<Integer, byte[]>();
+
+		Upload(long length, int chunkSize) {
+			this.length = length;
+			this.chunkSize = chunkSize;
+		}
+	}
+
+	/**
+	 * Requests failing on purpose.
+	 */
+	private static class Failure {
+		int count;
+		int code;
+
+		Failure(int count, int code) {
+			this.count = count;
+			this.code = code;
+		}
+	}
+
+	/**
+	 * An {@link Exchange} whose response is delayed by the time its request
+	 * and response bodies take at a limited bandwidth.
+	 */
+	private static class ThrottledExchange implements Exchange {
+		private Exchange exchange;
+		private long bandwidth;
+		private long received = 0L;
+
+		ThrottledExchange(Exchange exchange, long bandwidth) {
+			this.exchange = exchange;
+			this.bandwidth = bandwidth;
+		}
+
+		@Override
+		public long discardRequestBody() throws IOException {
+			long length = this.exchange.discardRequestBody();
+			this.received += length;
+			return length;
+		}
+
+		@Override
+		public String getMethod() {
+			return this.exchange.getMethod();
+		}
+
+		@Override
+		public String getPath() {
+			return this.exchange.getPath();
+		}
+
+		@Override
+		public byte[] getRequestBody() throws IOException {
+			byte[] body = this.exchange.getRequestBody();
+			this.received += body.length;
+			return body;
+		}
+
+		@Override
+		public String getRequestHeader(String name) {
+			return this.exchange.getRequestHeader(name);
+		}
+
+		@Override
+		public void respond(int code, byte[] body) {
+			long bytes = this.received + (body == null ? 0 : body.length);
+			try {
+				Thread.sleep(bytes * 1000L / this.bandwidth);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.exchange.respond(code, body);
+		}
+
+		@Override
+		public void setResponseHeader(String name, String value) {
+			this.exchange.setResponseHeader(name, value);
+		}
+	}
+
+	/**
+	 * Compresses the body of a response with gzip, if the client accepts it.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param body
+	 *            The body.
+	 * @return The body to send.
+	 * @throws IOException
+	 */
+	private static byte[] encode(Exchange exchange, byte[] body)
+			throws IOException {
+		String accepted = exchange.getRequestHeader("Accept-Encoding");
+		if (accepted == null || accepted.indexOf("gzip") < 0) {
+			return body;
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gz = new GZIPOutputStream(out);
+		gz.write(body);
+		gz.close();
+		exchange.setResponseHeader("Content-Encoding", "gzip");
+		return out.toByteArray();
+	}
+
+	/**
+	 * Parses a number sent in a request header.
+	 * 
+	 * @param value
+	 *            The value of the header or <code>null</code>.
+	 * @return The number or -1, if the value is missing or invalid.
+	 */
+	static long parseNumber(String value) {
+		try {
+			return value == null ? -1L : Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1L;
+		}
+	}
+
+	/**
+	 * Reads an {@link InputStream} to its end.
+	 * 
+	 * @param in
+	 *            The {@link InputStream}.
+	 * @return The bytes read.
+	 * @throws IOException
+	 */
+	static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int len;
+		while ((len = in.read(buf)) != -1) {
+			out.write(buf, 0, len);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Computes the SHA-256 digest of a file.
+	 * 
+	 * @param data
+	 *            The content of the file.
+	 * @return The digest as hexadecimal String.
+	 */
+	static String sha256(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+			StringBuilder sb = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<String, Account>();
+	private ConcurrentHashMap<String, String> sessions = new ConcurrentHashMap<String, String>();
+	private AtomicLong sessionCount = new AtomicLong(0L);
+	private AtomicLong requests = new AtomicLong(0L);
+	private AtomicInteger active = new AtomicInteger(0);
+	private AtomicInteger peak = new AtomicInteger(0);
+	private volatile long latency = 0L;
+	private volatile long bandwidth = 0L;
+	private volatile boolean discardFiles = false;
+	private volatile String acceptEncoding = null;
+	private volatile boolean listETags = true;
+	private volatile boolean contentHashes = false;
+	private volatile boolean wrongHashes = false;
+	private volatile double faultRate = 0.0;
+	private volatile int faultCode = 503;
+	private Random random = new Random(0L);
+	private AtomicInteger notModified = new AtomicInteger(0);
+	private ConcurrentHashMap<String, AtomicInteger> pathCounts = new ConcurrentHashMap<String, AtomicInteger>();
+	private Map<String, Failure> failures = new HashMap<String, Failure>();
+	private List<String> ranges = new ArrayList<String>();
+
+	/**
+	 * Creates a user account or changes its password.
+	 * 
+	 * @param user
+	 *            The user name.
+	 * @param password
+	 *            The password.
+	 */
+	public void addUser(String user, String password) {
+		Account account = this.accounts.putIfAbsent(user, new Account(
+				password));
+		if (account != null) {
+			synchronized (account) {
+				account.password = password;
+			}
+		}
+	}
+
+	/**
+	 * Answers a request after the latency.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}. Its response is set by this method.
+	 * @throws IOException
+	 */
+	private void answer(Exchange exchange) throws IOException {
+		if (this.latency > 0L) {
+			try {
+				Thread.sleep(this.latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted.");
+			}
+		}
+		String path = exchange.getPath();
+		exchange.setResponseHeader("X-Powered-By", "CloudRAID/"
+				+ ServerConnector.API_VERSION);
+		if (path.equals("/api/info/")) {
+			if (this.acceptEncoding != null) {
+				exchange.setResponseHeader("Accept-Encoding",
+						this.acceptEncoding);
+			}
+			exchange.respond(200, FakeServer.encode(exchange,
+					("{\"version\":\"" + ServerConnector.API_VERSION + "\"}")
+							.getBytes(FakeServer.ENCODING)));
+		} else if (path.equals("/user/auth/") || path.equals("/user/add/")) {
+			this.answerUser(exchange, path);
+		} else if (path.equals("/user/auth/logout/")
+				|| path.equals("/user/chgpw/") || path.equals("/list/")
+				|| path.startsWith("/file/")) {
+			this.answerWithSession(exchange, path);
+		} else {
+			exchange.respond(404, null);
+		}
+	}
+
+	/**
+	 * Stores a chunk of a chunked upload, if its offset and checksum are
+	 * correct.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @param name
+	 *            The name of the file.
+	 * @param index
+	 *            The index of the chunk from the path.
+	 * @throws IOException
+	 */
+	private void answerChunk(Exchange exchange, Account account, String name,
+			String index) throws IOException {
+		Upload upload = account.uploads.get(name);
+		long chunk = FakeServer.parseNumber(index);
+		if (upload == null) {
+			exchange.respond(404, null);
+			return;
+		}
+		byte[] body = exchange.getRequestBody();
+		CRC32 crc = new CRC32();
+		crc.update(body, 0, body.length);
+		long offset = FakeServer.parseNumber(exchange
+				.getRequestHeader("X-Chunk-Offset"));
+		if (chunk < 0 || chunk > Integer.MAX_VALUE
+				|| offset != chunk * upload.chunkSize
+				|| offset + body.length > upload.length
+				|| !Long.toHexString(crc.getValue()).equals(
+						exchange.getRequestHeader("X-Chunk-CRC32"))) {
+			exchange.respond(400, null);
+			return;
+		}
+		upload.chunks.put(Integer.valueOf((int) chunk), body);
+		exchange.respond(200, null);
+	}
+
+	/**
+	 * Joins the chunks of a chunked upload to a file, if all chunks were
+	 * received.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @param name
+	 *            The name of the file.
+	 */
+	private void answerCommit(Exchange exchange, Account account, String name) {
+		Upload upload = account.uploads.get(name);
+		if (upload == null) {
+			exchange.respond(404, null);
+			return;
+		}
+		long count = Math.max(1L, (upload.length + upload.chunkSize - 1)
+				/ upload.chunkSize);
+		if (count != upload.chunks.size()
+				|| count != FakeServer.parseNumber(exchange
+						.getRequestHeader("X-Chunk-Count"))
+				|| upload.length > Integer.MAX_VALUE) {
+			exchange.respond(409, null);
+			return;
+		}
+		byte[] data = new byte[(int) upload.length];
+		int pos = 0;
+		for (byte[] chunk : upload.chunks.values()) {
+			if (pos + chunk.length > data.length) {
+				exchange.respond(409, null);
+				return;
+			}
+			System.arraycopy(chunk, 0, data, pos, chunk.length);
+			pos += chunk.length;
+		}
+		if (pos != data.length) {
+			exchange.respond(409, null);
+			return;
+		}
+		account.uploads.remove(name);
+		account.files.put(name, new StoredFile(data,
+				CompressionPolicy.IDENTITY));
+		account.version++;
+		exchange.respond(201, null);
+	}
+
+	/**
+	 * Answers a request for a file or a chunked upload.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @param resource
+	 *            The path after <code>/file/</code>.
+	 * @throws IOException
+	 */
+	private void answerFile(Exchange exchange, Account account,
+			String resource) throws IOException {
+		int slash = resource.indexOf('/');
+		if (slash <= 0) {
+			exchange.respond(404, null);
+			return;
+		}
+		String name;
+		try {
+			name = URLDecoder.decode(resource.substring(0, slash),
+					FakeServer.ENCODING);
+		} catch (IllegalArgumentException e) {
+			exchange.respond(400, null);
+			return;
+		}
+		String rest = resource.substring(slash + 1);
+		String method = exchange.getMethod();
+		synchronized (account) {
+			if (rest.length() == 0) {
+				if (method.equals("GET")) {
+					this.answerGet(exchange, account, name);
+				} else if (method.equals("DELETE")) {
+					if (account.files.remove(name) == null) {
+						exchange.respond(404, null);
+					} else {
+						account.version++;
+						exchange.respond(200, null);
+					}
+				} else if (method.equals("POST") || method.equals("PUT")) {
+					this.answerPut(exchange, account, name);
+				} else {
+					exchange.respond(405, null);
+				}
+			} else if (rest.equals("chunks/")) {
+				this.answerUpload(exchange, account, name);
+			} else if (rest.equals("chunks/commit/")) {
+				this.answerCommit(exchange, account, name);
+			} else if (rest.startsWith("chunks/") && rest.endsWith("/")) {
+				this.answerChunk(exchange, account, name,
+						rest.substring(7, rest.length() - 1));
+			} else {
+				exchange.respond(404, null);
+			}
+		}
+	}
+
+	/**
+	 * Sends a file or the requested range of it.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @param name
+	 *            The name of the file.
+	 * @throws IOException
+	 */
+	private void answerGet(Exchange exchange, Account account, String name)
+			throws IOException {
+		StoredFile file = account.files.get(name);
+		if (file == null) {
+			exchange.respond(404, null);
+			return;
+		}
+		byte[] data = file.data;
+		exchange.setResponseHeader("Accept-Ranges", "bytes");
+		if (this.contentHashes) {
+			byte[] hashed = this.wrongHashes ? new byte[data.length + 1]
+					: data;
+			exchange.setResponseHeader("X-Content-SHA256", sha256(hashed));
+		}
+		String range = exchange.getRequestHeader("Range");
+		if (range != null) {
+			synchronized (this.ranges) {
+				this.ranges.add(range);
+			}
+		}
+		if (range != null && range.startsWith("bytes=")
+				&& range.indexOf(',') < 0) {
+			String[] bounds = range.substring(6).split("-", -1);
+			long start = bounds.length == 2 ? parseNumber(bounds[0]) : -1L;
+			long end = data.length - 1L;
+			if (bounds.length == 2 && bounds[1].length() > 0) {
+				end = parseNumber(bounds[1]);
+			}
+			if (start >= data.length) {
+				exchange.setResponseHeader("Content-Range", "bytes */"
+						+ data.length);
+				exchange.respond(416, null);
+				return;
+			}
+			if (start >= 0 && end >= start) {
+				end = Math.min(end, data.length - 1L);
+				byte[] part = new byte[(int) (end - start + 1)];
+				System.arraycopy(data, (int) start, part, 0, part.length);
+				exchange.setResponseHeader("Content-Range", "bytes " + start
+						+ "-" + end + "/" + data.length);
+				exchange.respond(206, part);
+				return;
+			}
+		}
+		exchange.respond(200, FakeServer.encode(exchange, data));
+	}
+
+	/**
+	 * Sends the file list of an account.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @throws IOException
+	 */
+	private void answerList(Exchange exchange, Account account)
+			throws IOException {
+		SimpleDateFormat format = new SimpleDateFormat(
+				"yyyy-MM-dd HH:mm:ss.S");
+		StringBuilder sb = new StringBuilder();
+		String tag;
+		synchronized (account) {
+			tag = "\"" + account.version + "\"";
+			if (this.listETags
+					&& tag.equals(exchange.getRequestHeader("If-None-Match"))) {
+				this.notModified.incrementAndGet();
+				exchange.setResponseHeader("ETag", tag);
+				exchange.respond(304, null);
+				return;
+			}
+			for (Map.Entry<String, StoredFile> e : account.files.entrySet()) {
+				String name = e.getKey().replace("&", "&amp;")
+						.replace("\"", "&quot;");
+				sb.append('"').append(name).append("\",\"")
+						.append(Integer.toHexString(e.getKey().hashCode()))
+						.append("\",\"")
+						.append(format.format(new Date(e.getValue()
+								.lastModified))).append("\",\"")
+						.append(FakeServer.STATE).append("\"\n");
+			}
+		}
+		if (this.listETags) {
+			exchange.setResponseHeader("ETag", tag);
+		}
+		exchange.respond(200, FakeServer.encode(exchange, sb.toString()
+				.getBytes(FakeServer.ENCODING)));
+	}
+
+	/**
+	 * Stores an uploaded file. POST creates a new file, PUT replaces an
+	 * existing file.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @param name
+	 *            The name of the file.
+	 * @throws IOException
+	 */
+	private void answerPut(Exchange exchange, Account account, String name)
+			throws IOException {
+		String encoding = exchange.getRequestHeader("Content-Encoding");
+		if (encoding == null) {
+			encoding = CompressionPolicy.GZIP;
+		}
+		boolean exists = account.files.containsKey(name);
+		if (exchange.getMethod().equals("POST") && exists) {
+			exchange.respond(409, null);
+		} else if (exchange.getMethod().equals("PUT") && !exists) {
+			exchange.respond(404, null);
+		} else if (exchange.getRequestHeader("Content-Length") == null) {
+			exchange.respond(411, null);
+		} else if (!FakeServer.DECODED.contains(encoding)) {
+			exchange.respond(415, null);
+		} else if (this.discardFiles) {
+			exchange.discardRequestBody();
+			account.files.put(name, new StoredFile(new byte[0], encoding));
+			account.version++;
+			exchange.respond(201, null);
+		} else {
+			byte[] data = FakeServer.readAll(CompressionPolicy.decode(
+					new ByteArrayInputStream(exchange.getRequestBody()),
+					encoding, 8192));
+			account.files.put(name, new StoredFile(data, encoding));
+			account.version++;
+			exchange.respond(201, null);
+		}
+	}
+
+	/**
+	 * Starts a chunked upload. POST starts the upload of a new file, PUT the
+	 * update of an existing file.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param account
+	 *            The account of the session.
+	 * @param name
+	 *            The name of the file.
+	 */
+	private void answerUpload(Exchange exchange, Account account, String name) {
+		boolean exists = account.files.containsKey(name);
+		long length = FakeServer.parseNumber(exchange
+				.getRequestHeader("X-Upload-Length"));
+		long size = FakeServer.parseNumber(exchange
+				.getRequestHeader("X-Chunk-Size"));
+		if (exchange.getMethod().equals("POST") && exists) {
+			exchange.respond(409, null);
+		} else if (exchange.getMethod().equals("PUT") && !exists) {
+			exchange.respond(404, null);
+		} else if (length < 0 || size <= 0 || size > Integer.MAX_VALUE) {
+			exchange.respond(400, null);
+		} else {
+			account.uploads.put(name, new Upload(length, (int) size));
+			exchange.respond(201, null);
+		}
+	}
+
+	/**
+	 * Answers a request for a user account.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param path
+	 *            The path of the request.
+	 */
+	private void answerUser(Exchange exchange, String path) {
+		String user = exchange.getRequestHeader("X-Username");
+		String password = exchange.getRequestHeader("X-Password");
+		if (path.equals("/user/auth/")) {
+			Account account = user == null ? null : this.accounts.get(user);
+			if (account == null || password == null
+					|| !password.equals(account.password)) {
+				exchange.respond(403, null);
+				return;
+			}
+			String session = "JSESSIONID=fake"
+					+ this.sessionCount.incrementAndGet();
+			this.sessions.put(session, user);
+			exchange.setResponseHeader("Set-Cookie", session + ";Path=/");
+			exchange.respond(202, null);
+		} else if (user == null || user.length() == 0 || password == null
+				|| password.length() == 0
+				|| !password.equals(exchange.getRequestHeader("X-Confirm"))) {
+			exchange.respond(400, null);
+		} else if (this.accounts.putIfAbsent(user,
+				new Account(password)) != null) {
+			exchange.respond(406, null);
+		} else {
+			exchange.respond(200, null);
+		}
+	}
+
+	/**
+	 * Answers a request that needs a session.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}.
+	 * @param path
+	 *            The path of the request.
+	 * @throws IOException
+	 */
+	private void answerWithSession(Exchange exchange, String path)
+			throws IOException {
+		String session = exchange.getRequestHeader("Cookie");
+		if (session == null || session.length() == 0) {
+			exchange.respond(405, null);
+			return;
+		}
+		String user = this.sessions.get(session);
+		Account account = user == null ? null : this.accounts.get(user);
+		if (account == null) {
+			exchange.respond(503, null);
+			return;
+		}
+		if (path.equals("/user/auth/logout/")) {
+			this.sessions.remove(session);
+			exchange.respond(200, null);
+		} else if (path.equals("/user/chgpw/")) {
+			String password = exchange.getRequestHeader("X-Password");
+			String confirm = exchange.getRequestHeader("X-Confirm");
+			if (password == null || password.length() == 0
+					|| !password.equals(confirm)) {
+				exchange.respond(400, null);
+			} else {
+				synchronized (account) {
+					account.password = password;
+				}
+				exchange.respond(200, null);
+			}
+		} else if (path.equals("/list/")) {
+			this.answerList(exchange, account);
+		} else {
+			this.answerFile(exchange, account, path.substring(6));
+		}
+	}
+
+	/**
+	 * Discards the unfinished chunked uploads of all accounts, as a restart
+	 * of the server would do.
+	 */
+	public void discardUploads() {
+		for (Account account : this.accounts.values()) {
+			synchronized (account) {
+				account.uploads.clear();
+			}
+		}
+	}
+
+	/**
+	 * Forgets all sessions, as a restarted server would. Requests with one of
+	 * the sessions are answered with 503.
+	 */
+	public void expireSessions() {
+		this.sessions.clear();
+	}
+
+	/**
+	 * Makes the next requests to a path fail.
+	 * 
+	 * @param path
+	 *            The path of the requests, e.g.
+	 *            <code>/file/name/chunks/0/</code>.
+	 * @param count
+	 *            The number of requests that fail.
+	 * @param code
+	 *            The HTTP status code of the failing requests or 0, if the
+	 *            connection shall be closed without a response.
+	 */
+	public void failNext(String path, int count, int code) {
+		synchronized (this.failures) {
+			this.failures.put(path, new Failure(count, code));
+		}
+	}
+
+	/**
+	 * Returns the request encodings announced to the clients.
+	 * 
+	 * @return The value of the <code>Accept-Encoding</code> header of
+	 *         <code>/api/info/</code> or <code>null</code>, if none is sent.
+	 */
+	public String getAcceptEncoding() {
+		return this.acceptEncoding;
+	}
+
+	/**
+	 * Returns the bandwidth every request is limited to.
+	 * 
+	 * @return The bandwidth in bytes per second or 0, if it is not limited.
+	 */
+	public long getBandwidth() {
+		return this.bandwidth;
+	}
+
+	/**
+	 * Returns the <code>Content-Encoding</code> a file was uploaded with.
+	 * 
+	 * @param user
+	 *            The owner of the file.
+	 * @param name
+	 *            The name of the file.
+	 * @return The encoding or <code>null</code>, if the file does not exist
+	 *         or was not uploaded.
+	 */
+	public String getContentEncoding(String user, String name) {
+		Account account = this.accounts.get(user);
+		if (account == null) {
+			return null;
+		}
+		synchronized (account) {
+			StoredFile file = account.files.get(name);
+			return file == null ? null : file.encoding;
+		}
+	}
+
+	/**
+	 * Returns the share of the requests failing at random.
+	 * 
+	 * @return The share from 0 to 1.
+	 */
+	public double getFaultRate() {
+		return this.faultRate;
+	}
+
+	/**
+	 * Returns a copy of the content of a file.
+	 * 
+	 * @param user
+	 *            The owner of the file.
+	 * @param name
+	 *            The name of the file.
+	 * @return The content or <code>null</code>, if the file does not exist.
+	 */
+	public byte[] getFile(String user, String name) {
+		Account account = this.accounts.get(user);
+		if (account == null) {
+			return null;
+		}
+		synchronized (account) {
+			StoredFile file = account.files.get(name);
+			return file == null ? null : file.data.clone();
+		}
+	}
+
+	/**
+	 * Returns the latency added to every request.
+	 * 
+	 * @return The latency in milliseconds.
+	 */
+	public long getLatency() {
+		return this.latency;
+	}
+
+	/**
+	 * Returns the number of requests for the file list answered with 304 (not
+	 * modified).
+	 * 
+	 * @return The number of requests.
+	 */
+	public int getNotModifiedCount() {
+		return this.notModified.get();
+	}
+
+	/**
+	 * Returns the highest number of requests answered at the same time.
+	 * 
+	 * @return The number of requests.
+	 */
+	public int getPeakConcurrentRequests() {
+		return this.peak.get();
+	}
+
+	/**
+	 * Returns the <code>Range</code> headers of the downloads in the order
+	 * they were received.
+	 * 
+	 * @return The ranges, e.g. <code>bytes=0-1023</code>.
+	 */
+	public List<String> getRanges() {
+		synchronized (this.ranges) {
+			return new ArrayList<String>(this.ranges);
+		}
+	}
+
+	/**
+	 * Returns the number of requests answered by this server.
+	 * 
+	 * @return The number of requests.
+	 */
+	public long getRequestCount() {
+		return this.requests.get();
+	}
+
+	/**
+	 * Returns the number of requests to a path, including failed ones.
+	 * 
+	 * @param path
+	 *            The path, e.g. <code>/file/name/chunks/0/</code>.
+	 * @return The number of requests.
+	 */
+	public int getRequestCount(String path) {
+		AtomicInteger count = this.pathCounts.get(path);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * Answers a request.
+	 * 
+	 * @param exchange
+	 *            The {@link Exchange}. Its response is set by this method.
+	 * @throws IOException
+	 *             If the request fails on purpose without a response.
+	 */
+	void handle(Exchange exchange) throws IOException {
+		this.requests.incrementAndGet();
+		long bandwidth = this.bandwidth;
+		if (bandwidth > 0L) {
+			exchange = new ThrottledExchange(exchange, bandwidth);
+		}
+		String path = exchange.getPath();
+		AtomicInteger count = this.pathCounts.get(path);
+		if (count == null) {
+			this.pathCounts.putIfAbsent(path, new AtomicInteger(0));
+			count = this.pathCounts.get(path);
+		}
+		count.incrementAndGet();
+		synchronized (this.failures) {
+			Failure failure = this.failures.get(path);
+			if (failure != null && failure.count > 0) {
+				failure.count--;
+				if (failure.code <= 0) {
+					throw new IOException("Connection closed on purpose.");
+				}
+				exchange.respond(failure.code, null);
+				return;
+			}
+		}
+		if (this.faultRate > 0.0) {
+			boolean fail;
+			synchronized (this.random) {
+				fail = this.random.nextDouble() < this.faultRate;
+			}
+			if (fail) {
+				if (this.faultCode <= 0) {
+					throw new IOException("Connection closed on purpose.");
+				}
+				exchange.respond(this.faultCode, null);
+				return;
+			}
+		}
+		int current = this.active.incrementAndGet();
+		try {
+			for (int max = this.peak.get(); current > max; max = this.peak
+					.get()) {
+				this.peak.compareAndSet(max, current);
+			}
+			this.answer(exchange);
+		} finally {
+			this.active.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Checks, if downloads are sent with the SHA-256 digest of the file.
+	 * 
+	 * @return true, if the digest is sent.
+	 */
+	public boolean isContentHashes() {
+		return this.contentHashes;
+	}
+
+	/**
+	 * Checks, if the contents of uploaded files are discarded.
+	 * 
+	 * @return true, if the contents are discarded.
+	 */
+	public boolean isDiscardFiles() {
+		return this.discardFiles;
+	}
+
+	/**
+	 * Checks, if the file list is sent with an <code>ETag</code>.
+	 * 
+	 * @return true, if the file list has an <code>ETag</code>.
+	 */
+	public boolean isListETags() {
+		return this.listETags;
+	}
+
+	/**
+	 * Stores a file, e.g. to prepare a download.
+	 * 
+	 * @param user
+	 *            The owner of the file. The account must exist.
+	 * @param name
+	 *            The name of the file.
+	 * @param data
+	 *            The content of the file.
+	 */
+	public void putFile(String user, String name, byte[] data) {
+		Account account = this.accounts.get(user);
+		if (account == null) {
+			throw new IllegalArgumentException("Unknown user: " + user);
+		}
+		synchronized (account) {
+			account.files.put(name, new StoredFile(data.clone(), null));
+			account.version++;
+		}
+	}
+
+	/**
+	 * Sets the request encodings announced to the clients. A CloudRAID server
+	 * does not announce any and expects gzip.
+	 * 
+	 * @param acceptEncoding
+	 *            The value of the <code>Accept-Encoding</code> header of
+	 *            <code>/api/info/</code> or <code>null</code> for none.
+	 */
+	public void setAcceptEncoding(String acceptEncoding) {
+		this.acceptEncoding = acceptEncoding;
+	}
+
+	/**
+	 * Sets, if downloads are sent with the SHA-256 digest of the file in the
+	 * <code>X-Content-SHA256</code> header.
+	 * 
+	 * @param contentHashes
+	 *            true, if the digest shall be sent.
+	 */
+	public void setContentHashes(boolean contentHashes) {
+		this.contentHashes = contentHashes;
+	}
+
+	/**
+	 * Sets, if the digests sent by {@link #setContentHashes(boolean)} are
+	 * wrong, like for a file corrupted in transfer.
+	 * 
+	 * @param wrongHashes
+	 *            true, if wrong digests shall be sent.
+	 */
+	public void setWrongHashes(boolean wrongHashes) {
+		this.wrongHashes = wrongHashes;
+	}
+
+	/**
+	 * Sets, if the contents of uploaded files are discarded. The bodies of
+	 * uploads that are not chunked are then dropped as they are read instead
+	 * of being collected and decoded, so that files larger than the heap can
+	 * be uploaded and the server adds no work to a measurement. The files are
+	 * stored, but empty.
+	 * 
+	 * @param discardFiles
+	 *            true, if the contents shall be discarded.
+	 */
+	public void setDiscardFiles(boolean discardFiles) {
+		this.discardFiles = discardFiles;
+	}
+
+	/**
+	 * Makes a share of all requests fail at random, e.g. to simulate an
+	 * overloaded server. The random numbers are seeded, so a run can be
+	 * repeated.
+	 * 
+	 * @param faultRate
+	 *            The share from 0 to 1. 0 disables the faults.
+	 * @param code
+	 *            The HTTP status code of the failing requests or 0, if the
+	 *            connection shall be closed without a response.
+	 */
+	public void setFaultRate(double faultRate, int code) {
+		this.faultCode = code;
+		this.faultRate = faultRate;
+	}
+
+	/**
+	 * Limits the bandwidth of every request. The response is delayed by the
+	 * time the request and response bodies take at this bandwidth.
+	 * 
+	 * @param bandwidth
+	 *            The bandwidth in bytes per second. 0 disables the limit.
+	 */
+	public void setBandwidth(long bandwidth) {
+		this.bandwidth = bandwidth;
+	}
+
+	/**
+	 * Sets the modification date of a stored file.
+	 * 
+	 * @param user
+	 *            The owner of the file. The account must exist.
+	 * @param name
+	 *            The name of the file. The file must exist.
+	 * @param lastModified
+	 *            The modification date in milliseconds.
+	 */
+	public void setLastModified(String user, String name, long lastModified) {
+		Account account = this.accounts.get(user);
+		if (account == null) {
+			throw new IllegalArgumentException("Unknown user: " + user);
+		}
+		synchronized (account) {
+			StoredFile file = account.files.get(name);
+			if (file == null) {
+				throw new IllegalArgumentException("Unknown file: " + name);
+			}
+			file.lastModified = lastModified;
+			account.version++;
+		}
+	}
+
+	/**
+	 * Sets the latency added to every request.
+	 * 
+	 * @param latency
+	 *            The latency in milliseconds.
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets, if the file list is sent with an <code>ETag</code> and answered
+	 * with 304 (not modified), if the client's <code>If-None-Match</code>
+	 * matches.
+	 * 
+	 * @param listETags
+	 *            true, if the file list has an <code>ETag</code>.
+	 */
+	public void setListETags(boolean listETags) {
+		this.listETags = listETags;
+	}
+}
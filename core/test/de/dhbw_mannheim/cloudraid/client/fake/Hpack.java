@@ -0,0 +1,461 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Encodes and decodes the header blocks of HTTP/2 (HPACK, RFC 7541) for the
+ * {@link FakeHttp2Server}. The decoder understands the whole format including
+ * the dynamic table and Huffman coded strings. The encoder writes every
+ * header as a literal that is not indexed and not Huffman coded, which every
+ * decoder understands. Names and values are ISO-8859-1 strings.
+ */
+class Hpack {
+
+	/**
+	 * The static table of RFC 7541, Appendix A. Index 1 is the first entry.
+	 */
+	private static final String[][] STATIC_TABLE = {
+			{ ":authority", "" },
+			{ ":method", "GET" },
+			{ ":method", "POST" },
+			{ ":path", "/" },
+			{ ":path", "/index.html" },
+			{ ":scheme", "http" },
+			{ ":scheme", "https" },
+			{ ":status", "200" },
+			{ ":status", "204" },
+			{ ":status", "206" },
+			{ ":status", "304" },
+			{ ":status", "400" },
+			{ ":status", "404" },
+			{ ":status", "500" },
+			{ "accept-charset", "" },
+			{ "accept-encoding", "gzip, deflate" },
+			{ "accept-language", "" },
+			{ "accept-ranges", "" },
+			{ "accept", "" },
+			{ "access-control-allow-origin", "" },
+			{ "age", "" },
+			{ "allow", "" },
+			{ "authorization", "" },
+			{ "cache-control", "" },
+			{ "content-disposition", "" },
+			{ "content-encoding", "" },
+			{ "content-language", "" },
+			{ "content-length", "" },
+			{ "content-location", "" },
+			{ "content-range", "" },
+			{ "content-type", "" },
+			{ "cookie", "" },
+			{ "date", "" },
+			{ "etag", "" },
+			{ "expect", "" },
+			{ "expires", "" },
+			{ "from", "" },
+			{ "host", "" },
+			{ "if-match", "" },
+			{ "if-modified-since", "" },
+			{ "if-none-match", "" },
+			{ "if-range", "" },
+			{ "if-unmodified-since", "" },
+			{ "last-modified", "" },
+			{ "link", "" },
+			{ "location", "" },
+			{ "max-forwards", "" },
+			{ "proxy-authenticate", "" },
+			{ "proxy-authorization", "" },
+			{ "range", "" },
+			{ "referer", "" },
+			{ "refresh", "" },
+			{ "retry-after", "" },
+			{ "server", "" },
+			{ "set-cookie", "" },
+			{ "strict-transport-security", "" },
+			{ "transfer-encoding", "" },
+			{ "user-agent", "" },
+			{ "vary", "" },
+			{ "via", "" },
+			{ "www-authenticate", "" }
+	};
+
+	/**
+	 * The lengths in bits of the Huffman codes of the 256 octets and EOS (RFC
+	 * 7541, Appendix B). The code is canonical, so it follows from the
+	 * lengths: shorter codes come first, codes of the same length are
+	 * ordered by their symbol.
+	 */
+	private static final int[] HUFFMAN_LENGTHS = {
+			13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28, 28,
+			28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28, 6, 10,
+			10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6, 5, 5, 5, 6, 6, 6,
+			6, 6, 6, 6, 7, 8, 15, 6, 12, 10, 13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+			7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+			15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5, 6, 7, 6, 5, 5, 6,
+			7, 7, 7, 7, 7, 15, 11, 14, 13, 28, 20, 22, 20, 20, 22, 22, 22, 23,
+			22, 23, 23, 23, 23, 23, 24, 23, 24, 24, 22, 23, 24, 23, 23, 23, 23,
+			21, 22, 23, 22, 23, 23, 24, 22, 21, 20, 22, 22, 23, 23, 21, 23, 22,
+			22, 24, 21, 22, 23, 23, 21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22,
+			22, 23, 22, 22, 23, 26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27,
+			27, 26, 24, 25, 19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28,
+			27, 27, 27, 20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24,
+			26, 23, 26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27,
+			26, 30
+	};
+
+	/**
+	 * The symbol of end of string.
+	 */
+	private static final int EOS = 256;
+
+	/**
+	 * The size a dynamic table entry takes in addition to its name and value.
+	 */
+	private static final int ENTRY_OVERHEAD = 32;
+
+	/**
+	 * The first canonical code, the number of codes and the position of the
+	 * first symbol in {@link #symbols} per code length.
+	 */
+	private static int[] firstCode = new int[31];
+	private static int[] codeCount = new int[31];
+	private static int[] firstSymbol = new int[31];
+	private static int[] symbols = new int[Hpack.HUFFMAN_LENGTHS.length];
+
+	static {
+		int code = 0;
+		int index = 0;
+		for (int length = 1; length <= 30; length++) {
+			Hpack.firstCode[length] = code;
+			Hpack.firstSymbol[length] = index;
+			for (int symbol = 0; symbol <= Hpack.EOS; symbol++) {
+				if (Hpack.HUFFMAN_LENGTHS[symbol] == length) {
+					Hpack.symbols[index++] = symbol;
+					Hpack.codeCount[length]++;
+					code++;
+				}
+			}
+			code <<= 1;
+		}
+	}
+
+	/**
+	 * Writes a header as a literal without indexing and with a new name.
+	 * 
+	 * @param out
+	 *            The header block.
+	 * @param name
+	 *            The name, which has to be lower case.
+	 * @param value
+	 *            The value.
+	 */
+	static void encode(ByteArrayOutputStream out, String name, String value) {
+		out.write(0);
+		Hpack.encodeString(out, name);
+		Hpack.encodeString(out, value);
+	}
+
+	/**
+	 * Writes an integer with a prefix of the given number of bits.
+	 * 
+	 * @param out
+	 *            The header block.
+	 * @param flags
+	 *            The bits of the first octet above the prefix.
+	 * @param prefix
+	 *            The number of bits of the prefix.
+	 * @param value
+	 *            The integer.
+	 */
+	private static void encodeInteger(ByteArrayOutputStream out, int flags,
+			int prefix, int value) {
+		int max = (1 << prefix) - 1;
+		if (value < max) {
+			out.write(flags | value);
+			return;
+		}
+		out.write(flags | max);
+		value -= max;
+		while (value >= 0x80) {
+			out.write(value & 0x7f | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Writes a string without Huffman coding.
+	 * 
+	 * @param out
+	 *            The header block.
+	 * @param s
+	 *            The string.
+	 */
+	private static void encodeString(ByteArrayOutputStream out, String s) {
+		int length = s.length();
+		Hpack.encodeInteger(out, 0, 7, length);
+		for (int i = 0; i < length; i++) {
+			out.write(s.charAt(i));
+		}
+	}
+
+	/**
+	 * The dynamic table, whose first entry is the newest.
+	 */
+	private LinkedList<String[]> dynamicTable = new LinkedList<String[]>();
+	private int tableSize = 0;
+	private int maxTableSize;
+
+	private byte[] block;
+	private int position;
+	private int end;
+
+	/**
+	 * Creates a decoder.
+	 * 
+	 * @param maxTableSize
+	 *            The maximum size of the dynamic table announced to the
+	 *            encoder.
+	 */
+	Hpack(int maxTableSize) {
+		this.maxTableSize = maxTableSize;
+	}
+
+	/**
+	 * Adds an entry to the dynamic table.
+	 * 
+	 * @param name
+	 *            The name.
+	 * @param value
+	 *            The value.
+	 */
+	private void add(String name, String value) {
+		this.dynamicTable.addFirst(new String[] { name, value });
+		this.tableSize += name.length() + value.length()
+				+ Hpack.ENTRY_OVERHEAD;
+		this.evict();
+	}
+
+	/**
+	 * Decodes a header block. The headers are decoded in the order of the
+	 * blocks, as they change the dynamic table.
+	 * 
+	 * @param b
+	 *            The header block.
+	 * @param off
+	 *            The start of the header block.
+	 * @param len
+	 *            The length of the header block.
+	 * @return The headers as pairs of name and value.
+	 * @throws IOException
+	 *             If the header block is malformed.
+	 */
+	List<String[]> decode(byte[] b, int off, int len) throws IOException {
+		this.block = b;
+		this.position = off;
+		this.end = off + len;
+		List<String[]> headers = new ArrayList<String[]>();
+		while (this.position < this.end) {
+			int first = this.block[this.position] & 0xff;
+			if ((first & 0x80) != 0) {
+				// Indexed header field
+				String[] entry = this.entry(this.readInteger(7));
+				headers.add(new String[] { entry[0], entry[1] });
+			} else if ((first & 0x40) != 0) {
+				// Literal header field with incremental indexing
+				String[] header = this.readLiteral(6);
+				this.add(header[0], header[1]);
+				headers.add(header);
+			} else if ((first & 0x20) != 0) {
+				// Dynamic table size update
+				int size = this.readInteger(5);
+				if (size > this.maxTableSize) {
+					throw new IOException("Table size too large: " + size);
+				}
+				this.maxTableSize = size;
+				this.evict();
+			} else {
+				// Literal header field without indexing or never indexed
+				headers.add(this.readLiteral(4));
+			}
+		}
+		return headers;
+	}
+
+	/**
+	 * Returns an entry of the static or dynamic table.
+	 * 
+	 * @param index
+	 *            The index, where 1 is the first entry of the static table.
+	 * @return The entry.
+	 * @throws IOException
+	 *             If there is no such entry.
+	 */
+	private String[] entry(int index) throws IOException {
+		if (index >= 1 && index <= Hpack.STATIC_TABLE.length) {
+			return Hpack.STATIC_TABLE[index - 1];
+		}
+		index -= Hpack.STATIC_TABLE.length + 1;
+		if (index < 0 || index >= this.dynamicTable.size()) {
+			throw new IOException("Invalid table index.");
+		}
+		return this.dynamicTable.get(index);
+	}
+
+	/**
+	 * Removes the oldest entries from the dynamic table, until it fits the
+	 * maximum size.
+	 */
+	private void evict() {
+		while (this.tableSize > this.maxTableSize) {
+			String[] entry = this.dynamicTable.removeLast();
+			this.tableSize -= entry[0].length() + entry[1].length()
+					+ Hpack.ENTRY_OVERHEAD;
+		}
+	}
+
+	/**
+	 * Reads the next octet of the header block.
+	 * 
+	 * @return The octet.
+	 * @throws IOException
+	 *             If the header block ends.
+	 */
+	private int read() throws IOException {
+		if (this.position >= this.end) {
+			throw new IOException("Truncated header block.");
+		}
+		return this.block[this.position++] & 0xff;
+	}
+
+	/**
+	 * Decodes Huffman coded octets.
+	 * 
+	 * @param length
+	 *            The number of octets.
+	 * @return The string.
+	 * @throws IOException
+	 *             If the code is invalid.
+	 */
+	private String readHuffman(int length) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		int code = 0;
+		int bits = 0;
+		for (int i = 0; i < length; i++) {
+			int octet = this.read();
+			for (int bit = 7; bit >= 0; bit--) {
+				code = code << 1 | octet >> bit & 1;
+				bits++;
+				int index = code - Hpack.firstCode[bits];
+				if (index >= 0 && index < Hpack.codeCount[bits]) {
+					int symbol = Hpack.symbols[Hpack.firstSymbol[bits] + index];
+					if (symbol == Hpack.EOS) {
+						throw new IOException("EOS in Huffman code.");
+					}
+					sb.append((char) symbol);
+					code = 0;
+					bits = 0;
+				} else if (bits == 30) {
+					throw new IOException("Invalid Huffman code.");
+				}
+			}
+		}
+		// The padding is a prefix of EOS of at most 7 bits.
+		if (bits > 7 || code != (1 << bits) - 1) {
+			throw new IOException("Invalid Huffman padding.");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Reads an integer with a prefix of the given number of bits.
+	 * 
+	 * @param prefix
+	 *            The number of bits of the prefix.
+	 * @return The integer.
+	 * @throws IOException
+	 *             If the integer is too large or truncated.
+	 */
+	private int readInteger(int prefix) throws IOException {
+		int max = (1 << prefix) - 1;
+		int value = this.read() & max;
+		if (value < max) {
+			return value;
+		}
+		int shift = 0;
+		int octet;
+		do {
+			if (shift > 21) {
+				throw new IOException("Integer too large.");
+			}
+			octet = this.read();
+			value += (octet & 0x7f) << shift;
+			shift += 7;
+		} while ((octet & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Reads a literal header field, whose name is indexed or a literal.
+	 * 
+	 * @param prefix
+	 *            The number of bits of the prefix of the name index.
+	 * @return The name and the value.
+	 * @throws IOException
+	 */
+	private String[] readLiteral(int prefix) throws IOException {
+		int index = this.readInteger(prefix);
+		String name = index == 0 ? this.readString() : this.entry(index)[0];
+		return new String[] { name, this.readString() };
+	}
+
+	/**
+	 * Reads a string, which may be Huffman coded.
+	 * 
+	 * @return The string.
+	 * @throws IOException
+	 */
+	private String readString() throws IOException {
+		if (this.position >= this.end) {
+			throw new IOException("Truncated header block.");
+		}
+		boolean huffman = (this.block[this.position] & 0x80) != 0;
+		int length = this.readInteger(7);
+		if (length > this.end - this.position) {
+			throw new IOException("Truncated header block.");
+		}
+		if (huffman) {
+			return this.readHuffman(length);
+		}
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append((char) this.read());
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An {@link HttpURLConnection} whose request is answered by a
+ * {@link FakeServer} in the same JVM without a socket. The request body is
+ * buffered and the request is handed to the {@link FakeServer}, when the
+ * response is read first. A request the {@link FakeServer} fails on purpose
+ * without a response throws an {@link IOException}, as a closed connection
+ * does.
+ */
+class InProcessConnection extends HttpURLConnection {
+
+	/**
+	 * The request and the response handed to the {@link FakeServer}.
+	 */
+	private static class InProcessExchange implements Exchange {
+		private String method;
+		private String path;
+		private Map<String, String> headers;
+		private byte[] body;
+		private int code = -1;
+		private List<String[]> responseHeaders = new ArrayList<String[]>();
+		private byte[] responseBody;
+
+		InProcessExchange(String method, String path,
+				Map<String, String> headers, byte[] body) {
+			this.method = method;
+			this.path = path;
+			this.headers = headers;
+			this.body = body;
+		}
+
+		@Override
+		public long discardRequestBody() {
+			return this.body.length;
+		}
+
+		@Override
+		public String getMethod() {
+			return this.method;
+		}
+
+		@Override
+		public String getPath() {
+			return this.path;
+		}
+
+		@Override
+		public byte[] getRequestBody() {
+			return this.body;
+		}
+
+		@Override
+		public String getRequestHeader(String name) {
+			return this.headers.get(name.toLowerCase(Locale.ENGLISH));
+		}
+
+		@Override
+		public void respond(int code, byte[] body) {
+			this.code = code;
+			this.responseBody = body;
+		}
+
+		@Override
+		public void setResponseHeader(String name, String value) {
+			this.responseHeaders.add(new String[] { name, value });
+		}
+	}
+
+	private FakeServer server;
+	private Map<String, String> headers;
+	private ByteArrayOutputStream buffer = null;
+	private InProcessExchange exchange = null;
+	private IOException failure = null;
+	private List<String[]> headerFields = null;
+
+	/**
+	 * Creates a connection to a {@link FakeServer}.
+	 * 
+	 * @param url
+	 *            The {@link URL} of the resource. Only its path is used.
+	 * @param server
+	 *            The {@link FakeServer} answering the request.
+	 */
+	InProcessConnection(URL url, FakeServer server) {
+		super(url);
+		this.server = server;
+	}
+
+	/**
+	 * Hands the request to the {@link FakeServer}, if that has not been done
+	 * yet.
+	 * 
+	 * @throws IOException
+	 *             If the request failed.
+	 */
+	private synchronized void answer() throws IOException {
+		if (this.failure != null) {
+			throw this.failure;
+		} else if (this.exchange != null) {
+			return;
+		}
+		this.connect();
+		byte[] body = new byte[0];
+		if (this.buffer != null) {
+			body = this.buffer.toByteArray();
+			this.headers.put("content-length", String.valueOf(body.length));
+		}
+		InProcessExchange answered = new InProcessExchange(this.method,
+				this.url.getPath(), this.headers, body);
+		try {
+			this.server.handle(answered);
+		} catch (IOException e) {
+			this.failure = e;
+			throw e;
+		}
+		if (answered.code < 0) {
+			this.failure = new IOException("No response.");
+			throw this.failure;
+		}
+		List<String[]> fields = new ArrayList<String[]>();
+		fields.add(new String[] { null, "HTTP/1.1 " + answered.code });
+		fields.addAll(answered.responseHeaders);
+		int length = answered.responseBody == null ? 0
+				: answered.responseBody.length;
+		fields.add(new String[] { "Content-Length", String.valueOf(length) });
+		this.headerFields = fields;
+		this.exchange = answered;
+	}
+
+	/**
+	 * Returns the body of the response.
+	 * 
+	 * @return The body as stream.
+	 */
+	private InputStream body() {
+		byte[] body = this.exchange.responseBody;
+		return new ByteArrayInputStream(body == null ? new byte[0] : body);
+	}
+
+	@Override
+	public synchronized void connect() throws IOException {
+		if (this.connected) {
+			return;
+		}
+		Map<String, String> requestHeaders = new HashMap<String, String>();
+		for (Map.Entry<String, List<String>> header : this
+				.getRequestProperties().entrySet()) {
+			if (header.getKey() == null) {
+				continue;
+			}
+			String name = header.getKey().toLowerCase(Locale.ENGLISH);
+			for (String value : header.getValue()) {
+				if (value == null) {
+					continue;
+				}
+				String previous = requestHeaders.get(name);
+				if (previous != null) {
+					value = previous + (name.equals("cookie") ? "; " : ", ")
+							+ value;
+				}
+				requestHeaders.put(name, value);
+			}
+		}
+		this.headers = requestHeaders;
+		if (this.doOutput) {
+			this.buffer = new ByteArrayOutputStream();
+		}
+		this.connected = true;
+	}
+
+	@Override
+	public void disconnect() {
+	}
+
+	@Override
+	public synchronized InputStream getErrorStream() {
+		if (this.exchange == null || this.exchange.code < 400) {
+			return null;
+		}
+		return this.body();
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		List<String[]> fields = this.getHeaderFieldList();
+		return n < 0 || n >= fields.size() ? null : fields.get(n)[1];
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		List<String[]> fields = this.getHeaderFieldList();
+		String value = null;
+		for (String[] field : fields) {
+			if (field[0] != null && field[0].equalsIgnoreCase(name)) {
+				value = field[1];
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		List<String[]> fields = this.getHeaderFieldList();
+		return n < 0 || n >= fields.size() ? null : fields.get(n)[0];
+	}
+
+	/**
+	 * Returns the header fields of the response with the status line first.
+	 * 
+	 * @return The header fields or an empty list, if the request failed.
+	 */
+	private synchronized List<String[]> getHeaderFieldList() {
+		try {
+			this.answer();
+		} catch (IOException e) {
+			return new ArrayList<String[]>();
+		}
+		return this.headerFields;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		Map<String, List<String>> fields = new LinkedHashMap<String, List<String>>();
+		for (String[] field : this.getHeaderFieldList()) {
+			List<String> values = fields.get(field[0]);
+			if (values == null) {
+				values = new ArrayList<String>();
+				fields.put(field[0], values);
+			}
+			values.add(field[1]);
+		}
+		return Collections.unmodifiableMap(fields);
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (!this.doInput) {
+			throw new ProtocolException("The input is disabled.");
+		}
+		this.answer();
+		int code = this.exchange.code;
+		if (code == 404 || code == 410) {
+			throw new FileNotFoundException(this.url.toString());
+		} else if (code >= 400) {
+			throw new IOException("Server returned HTTP response code: "
+					+ code + " for URL: " + this.url);
+		}
+		return this.body();
+	}
+
+	@Override
+	public synchronized OutputStream getOutputStream() throws IOException {
+		if (!this.doOutput) {
+			throw new ProtocolException("The output is disabled.");
+		} else if (this.exchange != null) {
+			throw new ProtocolException("The request was already sent.");
+		}
+		this.connect();
+		return this.buffer;
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		this.answer();
+		return this.exchange.code;
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		// The FakeServer sets no reason phrase.
+		this.answer();
+		return null;
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+}
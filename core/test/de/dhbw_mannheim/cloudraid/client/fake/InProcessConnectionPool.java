@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.api.HTTPException;
+import de.dhbw_mannheim.cloudraid.client.api.IncompatibleApiVersionException;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * A {@link ConnectionPool} whose connections are answered by a
+ * {@link FakeServer} in the same JVM. A {@link ServerConnector} using it runs
+ * without sockets, so benchmarks measure the client and the latency, the
+ * bandwidth and the faults set at the {@link FakeServer} only. The host and
+ * the port of the {@link ServerConnector} are ignored, and the TLS handshake
+ * it tries first succeeds.
+ */
+public class InProcessConnectionPool extends ConnectionPool {
+
+	private FakeServer server;
+
+	/**
+	 * Creates an {@link InProcessConnectionPool}.
+	 * 
+	 * @param server
+	 *            The {@link FakeServer} answering the requests.
+	 */
+	public InProcessConnectionPool(FakeServer server) {
+		this.server = server;
+	}
+
+	/**
+	 * Connects to the {@link FakeServer} and logs in. The file list is not
+	 * written to a cache directory.
+	 * 
+	 * @param user
+	 *            The user name, which is also the password.
+	 * @return The {@link ServerConnector}.
+	 * @throws IOException
+	 * @throws HTTPException
+	 * @throws IncompatibleApiVersionException
+	 */
+	public ServerConnector connect(String user) throws IOException,
+			HTTPException, IncompatibleApiVersionException {
+		ServerConnector sc = new ServerConnector(this.getServerConnection(
+				user, user), this);
+		sc.setCacheDirectory(null);
+		sc.login();
+		return sc;
+	}
+
+	/**
+	 * Returns the {@link FakeServer} answering the requests.
+	 * 
+	 * @return The {@link FakeServer}.
+	 */
+	public FakeServer getServer() {
+		return this.server;
+	}
+
+	/**
+	 * Returns a {@link ServerConnection} to the {@link FakeServer}. Its host
+	 * and port are never connected to.
+	 * 
+	 * @param user
+	 *            The user name.
+	 * @param password
+	 *            The password.
+	 * @return The {@link ServerConnection}.
+	 * @throws MalformedURLException
+	 */
+	public ServerConnection getServerConnection(String user, String password)
+			throws MalformedURLException {
+		return new ServerConnection("http://localhost", user, password,
+				(short) 80);
+	}
+
+	@Override
+	protected HttpURLConnection open(URL url) throws IOException {
+		return new InProcessConnection(url, this.server);
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.api.BatchResult;
+import de.dhbw_mannheim.cloudraid.client.api.CloudFile;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * Tests the {@link InProcessConnectionPool} and its
+ * {@link InProcessConnection} by the requests of a {@link ServerConnector}.
+ */
+public class InProcessConnectionPoolTest {
+
+	private static final int FILES = 10;
+
+	private FakeServer server;
+	private InProcessConnectionPool pool;
+	private File directory;
+
+	/**
+	 * Creates the server and the directory of the files.
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.server = new FakeServer();
+		this.server.addUser(FakeFixture.USER, FakeFixture.USER);
+		this.pool = new InProcessConnectionPool(this.server);
+		this.directory = FakeFixture.createDirectory();
+	}
+
+	/**
+	 * Deletes the directory of the files.
+	 */
+	@After
+	public void tearDown() {
+		FakeFixture.delete(this.directory);
+	}
+
+	/**
+	 * Checks, that a failure of the {@link FakeServer} reaches the client:
+	 * a dropped connection as {@link IOException} and an error status as
+	 * response, which is retried.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		ServerConnector sc = this.pool
+				.connect(FakeFixture.USER);
+		this.server.failNext("/list/", 1, 0);
+		try {
+			sc.getFileList();
+			fail("The dropped connection was not reported.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		this.server.failNext("/list/", 1, 503);
+		sc.getFileList();
+		assertEquals(3, this.server.getRequestCount("/list/"));
+	}
+
+	/**
+	 * Checks the response of a single connection: the status line, the
+	 * headers, the error stream and the request body sent once.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testResponse() throws Exception {
+		HttpURLConnection con = this.pool.open(new URL(
+				"http://localhost/user/auth/"));
+		con.setRequestMethod("POST");
+		con.setRequestProperty("X-Username", FakeFixture.USER);
+		con.setRequestProperty("X-Password", FakeFixture.USER);
+		con.setDoOutput(true);
+		OutputStream os = con.getOutputStream();
+		os.write(new byte[100]);
+		os.close();
+		assertEquals(202, con.getResponseCode());
+		assertEquals("HTTP/1.1 202", con.getHeaderField(0));
+		assertTrue(con.getHeaderField("Set-Cookie").startsWith("JSESSIONID="));
+		assertEquals("0", con.getHeaderField("Content-Length"));
+		assertNull(con.getErrorStream());
+		try {
+			con.getOutputStream();
+			fail("The request body was written after it was sent.");
+		} catch (ProtocolException e) {
+			// Expected.
+		}
+
+		con = this.pool.open(new URL("http://localhost/unknown/"));
+		assertEquals(404, con.getResponseCode());
+		assertNotNull(con.getErrorStream());
+		try {
+			con.getInputStream();
+			fail("The missing resource was read.");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Uploads, lists, downloads and deletes files without a socket and checks
+	 * the files kept by the {@link FakeServer}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		byte[] data = new byte[10000];
+		new Random(1).nextBytes(data);
+		File upload = new File(this.directory, "upload");
+		OutputStream os = new FileOutputStream(upload);
+		try {
+			os.write(data);
+		} finally {
+			os.close();
+		}
+		ServerConnector sc = this.pool
+				.connect(FakeFixture.USER);
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < InProcessConnectionPoolTest.FILES; i++) {
+			paths.add("test/" + i);
+			sc.putFile("test/" + i, upload, false);
+			assertArrayEquals(data, this.server.getFile(
+					FakeFixture.USER, "test/" + i));
+		}
+
+		int listed = 0;
+		for (CloudFile file : sc.getFileList()) {
+			if (paths.contains(file.getName())) {
+				listed++;
+			}
+		}
+		assertEquals(InProcessConnectionPoolTest.FILES, listed);
+
+		File download = new File(this.directory, "download");
+		sc.getFile("test/0", download);
+		assertArrayEquals(data, FakeFixture.read(download));
+		File batch = new File(this.directory, "batch");
+		BatchResult result = sc.getFiles(paths, batch);
+		assertTrue(result.toString(), result.isSuccessful());
+		for (String path : paths) {
+			assertArrayEquals(data,
+					FakeFixture.read(new File(batch, path)));
+		}
+
+		sc.deleteFile("test/0");
+		assertNull(this.server.getFile(FakeFixture.USER, "test/0"));
+		sc.logout();
+	}
+}
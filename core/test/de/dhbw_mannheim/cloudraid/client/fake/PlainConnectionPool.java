@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * A {@link ConnectionPool} sending the requests for https:// URLs by plain
+ * HTTP. A {@link FakeHttpServer} only speaks plain HTTP and does not answer
+ * the TLS handshake a {@link ServerConnector} tries first, so the
+ * {@link ServerConnector}s connected to it use this pool.
+ */
+public class PlainConnectionPool extends ConnectionPool {
+
+	@Override
+	protected HttpURLConnection open(URL url) throws IOException {
+		if ("https".equals(url.getProtocol())) {
+			url = new URL("http", url.getHost(), url.getPort(), url.getFile());
+		}
+		return super.open(url);
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.fake;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.MalformedURLException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
+
+/**
+ * A server on a local port that accepts every connection, but never reads a
+ * request nor sends a response, like a hung server. The connections are kept
+ * open until the server is stopped.
+ */
+public class SilentServer {
+
+	/**
+	 * The first port tried.
+	 */
+	public static final int FIRST_PORT = 30080;
+
+	/**
+	 * The next port tried.
+	 */
+	private static AtomicInteger nextPort = new AtomicInteger(
+			SilentServer.FIRST_PORT);
+
+	private ServerSocket socket = null;
+	private List<Socket> connections = new Vector<Socket>();
+
+	/**
+	 * Creates a {@link SilentServer} listening on a free port of the loopback
+	 * interface starting at {@link #FIRST_PORT}.
+	 * 
+	 * @throws IOException
+	 */
+	public SilentServer() throws IOException {
+		while (this.socket == null) {
+			int port = SilentServer.nextPort.getAndIncrement();
+			try {
+				this.socket = new ServerSocket(port, 50,
+						InetAddress.getLoopbackAddress());
+			} catch (BindException e) {
+				if (port >= Short.MAX_VALUE) {
+					throw e;
+				}
+			}
+		}
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						SilentServer.this.connections.add(SilentServer.this.socket
+								.accept());
+					}
+				} catch (IOException e) {
+					// Stopped.
+				}
+			}
+		}, "SilentServer-" + this.getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * Returns the number of TCP connections accepted so far.
+	 * 
+	 * @return The number of connections.
+	 */
+	public int getConnectionCount() {
+		return this.connections.size();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 * 
+	 * @return The port.
+	 */
+	public int getPort() {
+		return this.socket.getLocalPort();
+	}
+
+	/**
+	 * Returns a {@link ServerConnection} to this server.
+	 * 
+	 * @param user
+	 *            The user name.
+	 * @param password
+	 *            The password.
+	 * @return The {@link ServerConnection}.
+	 * @throws MalformedURLException
+	 */
+	public ServerConnection getServerConnection(String user, String password)
+			throws MalformedURLException {
+		return new ServerConnection("http://localhost", user, password,
+				(short) this.getPort());
+	}
+
+	/**
+	 * Stops the server and closes all connections.
+	 */
+	public void stop() {
+		try {
+			this.socket.close();
+		} catch (IOException ignore) {
+		}
+		synchronized (this.connections) {
+			for (Socket connection : this.connections) {
+				try {
+					connection.close();
+				} catch (IOException ignore) {
+				}
+			}
+		}
+	}
+}
@@ -23,7 +23,13 @@
 package de.dhbw_mannheim.cloudraid.client.gui;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
+import javax.swing.SwingUtilities;
+
+import de.dhbw_mannheim.cloudraid.client.api.AsyncServerConnector;
+import de.dhbw_mannheim.cloudraid.client.api.BoundedExecutor;
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
 import de.dhbw_mannheim.cloudraid.client.api.IncompatibleApiVersionException;
 import de.dhbw_mannheim.cloudraid.client.api.ServerConnection;
 import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
@@ -44,8 +50,20 @@ public class ClientMain {
 
 	private static ServerConnection serverConnection = null;
 	private static ServerConnector serverConnector = null;
+	private static AsyncServerConnector asyncServerConnector = null;
 	private static MainWindow mainWindow = null;
 
+	/**
+	 * Returns an {@link AsyncServerConnector} for the current
+	 * {@link ServerConnector}. Its callbacks are run on the event dispatch
+	 * thread.
+	 * 
+	 * @return An {@link AsyncServerConnector}.
+	 */
+	public static synchronized AsyncServerConnector getAsyncServerConnector() {
+		return ClientMain.asyncServerConnector;
+	}
+
 	/**
 	 * Get the current {@link ServerConnection}.
 	 * 
@@ -69,9 +87,17 @@ public class ClientMain {
 	 * The applications main method.
 	 * 
 	 * @param args
-	 *            The String array containing the command-line parameters.
+	 *            The String array containing the command-line parameters. The
+	 *            option <code>--virtual-threads</code> runs the operations on
+	 *            virtual threads, if the Java runtime supports them.
 	 */
 	public static void main(String[] args) {
+		ConnectionPool.configure();
+		for (String arg : args) {
+			if ("--virtual-threads".equals(arg)) {
+				BoundedExecutor.setVirtualThreadsEnabled(true);
+			}
+		}
 		ClientMain.mainWindow = new MainWindow();
 	}
 
@@ -82,6 +108,7 @@ public class ClientMain {
 	public static synchronized void resetServerConnection() {
 		ClientMain.serverConnection = null;
 		ClientMain.serverConnector = null;
+		ClientMain.asyncServerConnector = null;
 	}
 
 	/**
@@ -98,6 +125,17 @@ public class ClientMain {
 		try {
 			ClientMain.serverConnector = new ServerConnector(sc,
 					ClientMain.mainWindow);
+			ClientMain.serverConnector
+					.setCacheDirectory(ServerConnector.DEFAULT_CACHE_DIRECTORY);
+			ClientMain.asyncServerConnector = new AsyncServerConnector(
+					ClientMain.serverConnector);
+			ClientMain.asyncServerConnector
+					.setCallbackExecutor(new Executor() {
+						@Override
+						public void execute(Runnable command) {
+							SwingUtilities.invokeLater(command);
+						}
+					});
 		} catch (IncompatibleApiVersionException e) {
 			ClientMain.resetServerConnection();
 			throw e;
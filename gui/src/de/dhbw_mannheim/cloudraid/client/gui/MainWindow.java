@@ -30,7 +30,11 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.AbstractButton;
@@ -43,17 +47,24 @@ import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.Timer;
 import javax.swing.WindowConstants;
 import javax.swing.table.DefaultTableModel;
 
+import de.dhbw_mannheim.cloudraid.client.api.AsyncCallback;
+import de.dhbw_mannheim.cloudraid.client.api.AsyncServerConnector;
+import de.dhbw_mannheim.cloudraid.client.api.BatchResult;
 import de.dhbw_mannheim.cloudraid.client.api.CloudFile;
-import de.dhbw_mannheim.cloudraid.client.api.DataPresenter;
+import de.dhbw_mannheim.cloudraid.client.api.DeltaDataPresenter;
+import de.dhbw_mannheim.cloudraid.client.api.FileListDelta;
 import de.dhbw_mannheim.cloudraid.client.api.HTTPException;
+import de.dhbw_mannheim.cloudraid.client.api.IncrementalDataPresenter;
 import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
 
-public class MainWindow extends JFrame implements DataPresenter {
+public class MainWindow extends JFrame implements IncrementalDataPresenter,
+		DeltaDataPresenter {
 
 	/**
 	 * A {@link SwingWorker} implementation for downloading or deleting a
@@ -132,10 +143,7 @@ public class MainWindow extends JFrame implements DataPresenter {
 				JOptionPane.showMessageDialog(MainWindow.this, this.msg, I18n
 						.getInstance().getString("success"),
 						JOptionPane.INFORMATION_MESSAGE);
-				try {
-					this.sc.getFileList();
-				} catch (Exception e1) {
-				}
+				MainWindow.this.refreshFileList(false);
 			} else if (e instanceof IOException) {
 				showError((IOException) e);
 			} else if (e instanceof HTTPException) {
@@ -157,8 +165,15 @@ public class MainWindow extends JFrame implements DataPresenter {
 	private JTable table;
 	private JPopupMenu popup;
 	private JScrollPane scrollPane;
+	private TransferProgressBar progressBar = new TransferProgressBar();
 	private CloudFile clickedCloudFile;
 
+	/**
+	 * Maps the hashed names of the {@link CloudFile}s to their rows in the
+	 * table. Built on demand and discarded, if rows are added otherwise.
+	 */
+	private HashMap<String, Integer> rows = null;
+
 	private static final String[] HEADINGS = new String[] {
 			I18n.getInstance().getString("name"),
 			I18n.getInstance().getString("state"),
@@ -209,27 +224,34 @@ public class MainWindow extends JFrame implements DataPresenter {
 				MainWindow.this.emptyTable();
 				ClientMain.resetServerConnection();
 				new ConnectionDialog(MainWindow.this);
-				ServerConnector sc = ClientMain.getServerConnector();
-				if (sc != null) {
-					try {
-						sc.login();
-						MainWindow.this.deActivateComponents(true);
-					} catch (IOException e1) {
-						MainWindow.this.showError(e1);
-						ClientMain.resetServerConnection();
-						return;
-					} catch (HTTPException e1) {
-						MainWindow.this.showError(e1);
-						ClientMain.resetServerConnection();
-						return;
-					}
-					try {
-						sc.getFileList();
-					} catch (IOException e1) {
-						MainWindow.this.showError(e1);
-					} catch (HTTPException e1) {
-						MainWindow.this.showError(e1);
-					}
+				final AsyncServerConnector async = ClientMain
+						.getAsyncServerConnector();
+				if (async != null) {
+					async.login(new AsyncCallback<Void>() {
+						@Override
+						public void completed(Void result) {
+							MainWindow.this.deActivateComponents(true);
+							final ServerConnector sc = async
+									.getServerConnector();
+							sc.registerTransferListener(MainWindow.this.progressBar);
+							async.submit(new Callable<Vector<CloudFile>>() {
+								@Override
+								public Vector<CloudFile> call()
+										throws Exception {
+									// Show the list of the last session, until
+									// the current list is read.
+									sc.restoreFileList();
+									return sc.getFileList();
+								}
+							}, MainWindow.this.errorReporter(true));
+						}
+
+						@Override
+						public void failed(Throwable e) {
+							MainWindow.this.showError(e);
+							ClientMain.resetServerConnection();
+						}
+					});
 				}
 			}
 		});
@@ -268,19 +290,24 @@ public class MainWindow extends JFrame implements DataPresenter {
 		this.disconnectItem.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				try {
-					ServerConnector sc = ClientMain.getServerConnector();
-					if (sc != null) {
-						sc.logout();
-					}
-					MainWindow.this.deActivateComponents(false);
-					MainWindow.this.emptyTable();
-					ClientMain.resetServerConnection();
-				} catch (IOException e1) {
-					MainWindow.this.showError(e1);
-				} catch (HTTPException e1) {
-					MainWindow.this.showError(e1);
+				AsyncServerConnector async = ClientMain
+						.getAsyncServerConnector();
+				if (async == null) {
+					return;
 				}
+				async.logout(new AsyncCallback<Void>() {
+					@Override
+					public void completed(Void result) {
+						MainWindow.this.deActivateComponents(false);
+						MainWindow.this.emptyTable();
+						ClientMain.resetServerConnection();
+					}
+
+					@Override
+					public void failed(Throwable e) {
+						MainWindow.this.showError(e);
+					}
+				});
 			}
 		});
 		this.disconnectItem.setEnabled(false);
@@ -343,26 +370,7 @@ public class MainWindow extends JFrame implements DataPresenter {
 				int state = fc.showOpenDialog(MainWindow.this);
 				File f = fc.getSelectedFile();
 				if (state == JFileChooser.APPROVE_OPTION) {
-					ServerConnector sc = ClientMain.getServerConnector();
-					try {
-						sc.putFile(f.getName(), f, false);
-						sc.getFileList();
-					} catch (IOException e1) {
-						MainWindow.this.showError(e1);
-					} catch (HTTPException e1) {
-						if (e1.getHTTPCode() == 409) {
-							try {
-								sc.putFile(f.getName(), f, true);
-								sc.getFileList();
-							} catch (IOException e2) {
-								MainWindow.this.showError(e2);
-							} catch (HTTPException e2) {
-								MainWindow.this.showError(e2);
-							}
-						} else {
-							MainWindow.this.showError(e1);
-						}
-					}
+					MainWindow.this.upload(f, false);
 				}
 			}
 		});
@@ -372,16 +380,7 @@ public class MainWindow extends JFrame implements DataPresenter {
 		this.refreshItem.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				ServerConnector sc = ClientMain.getServerConnector();
-				if (sc != null) {
-					try {
-						sc.getFileList();
-					} catch (IOException e1) {
-						MainWindow.this.showError(e1);
-					} catch (HTTPException e1) {
-						MainWindow.this.showError(e1);
-					}
-				}
+				MainWindow.this.refreshFileList(true);
 			}
 		});
 		this.refreshItem.setEnabled(false);
@@ -413,8 +412,11 @@ public class MainWindow extends JFrame implements DataPresenter {
 				if (row < 0) {
 					return;
 				}
-				MainWindow.this.table.getSelectionModel().setSelectionInterval(
-						row, row);
+				if (!MainWindow.this.table.isRowSelected(row)) {
+					// Keep a multiple selection containing the clicked row.
+					MainWindow.this.table.getSelectionModel()
+							.setSelectionInterval(row, row);
+				}
 				Object o = MainWindow.this.table.getModel().getValueAt(row, 3);
 				CloudFile file;
 				if (o != null) {
@@ -444,10 +446,12 @@ public class MainWindow extends JFrame implements DataPresenter {
 		});
 
 		this.scrollPane = new JScrollPane(this.table);
-		this.scrollPane.setBounds(0, 0, 598, 384);
+		this.scrollPane.setBounds(0, 0, 598, 362);
 		this.table.setFillsViewportHeight(true);
+		this.progressBar.setBounds(0, 364, 598, 20);
 
 		this.getContentPane().add(this.scrollPane);
+		this.getContentPane().add(this.progressBar);
 
 		this.setResizable(false);
 		this.setJMenuBar(this.menuBar);
@@ -457,10 +461,7 @@ public class MainWindow extends JFrame implements DataPresenter {
 		this.listUpdater = new Timer(30000, new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				try {
-					ClientMain.getServerConnector().getFileList();
-				} catch (Exception ignore) {
-				}
+				MainWindow.this.refreshFileList(false);
 			}
 		});
 		this.listUpdater.start();
@@ -495,6 +496,52 @@ public class MainWindow extends JFrame implements DataPresenter {
 		this.refreshTable(new Object[][] { { "", "", "", null } });
 	}
 
+	/**
+	 * Returns an {@link AsyncCallback} showing the errors of an asynchronous
+	 * operation.
+	 * 
+	 * @param showErrors
+	 *            true, if errors shall be shown to the user; false, if they
+	 *            shall be ignored.
+	 * @return The {@link AsyncCallback}.
+	 */
+	private AsyncCallback<Object> errorReporter(final boolean showErrors) {
+		return new AsyncCallback<Object>() {
+			@Override
+			public void completed(Object result) {
+			}
+
+			@Override
+			public void failed(Throwable e) {
+				if (showErrors) {
+					MainWindow.this.showError(e);
+				}
+			}
+		};
+	}
+
+	@Override
+	public void beginFileList() {
+		this.runOnEventDispatchThread(new Runnable() {
+			@Override
+			public void run() {
+				MainWindow.this.refreshTable(new Object[0][4]);
+			}
+		});
+	}
+
+	@Override
+	public void endFileList(boolean complete) {
+		this.runOnEventDispatchThread(new Runnable() {
+			@Override
+			public void run() {
+				if (MainWindow.this.table.getModel().getRowCount() == 0) {
+					MainWindow.this.emptyTable();
+				}
+			}
+		});
+	}
+
 	@Override
 	public synchronized void giveFileList(Vector<CloudFile> fileList) {
 		Object[][] data = new Object[fileList.size()][4];
@@ -510,10 +557,49 @@ public class MainWindow extends JFrame implements DataPresenter {
 		this.refreshTable(data);
 	}
 
+	@Override
+	public void giveFileListChunk(final List<CloudFile> chunk) {
+		this.runOnEventDispatchThread(new Runnable() {
+			@Override
+			public void run() {
+				MainWindow.this.rows = null;
+				DefaultTableModel model = (DefaultTableModel) MainWindow.this.table
+						.getModel();
+				for (CloudFile cf : chunk) {
+					model.addRow(new Object[] { cf.getName(), cf.getState(),
+							cf.getLastModAsString(), cf });
+				}
+			}
+		});
+	}
+
+	@Override
+	public void giveFileListDelta(final FileListDelta delta) {
+		this.runOnEventDispatchThread(new Runnable() {
+			@Override
+			public void run() {
+				MainWindow.this.updateTable(delta);
+			}
+		});
+	}
+
 	/**
-	 * Performs the actual deletion of a {@link CloudFile};
+	 * Performs the actual deletion of the selected {@link CloudFile}s. Several
+	 * files are deleted in parallel by one batch operation.
 	 */
 	private void performDelete() {
+		final List<String> selected = new ArrayList<String>();
+		for (int row : this.table.getSelectedRows()) {
+			Object o = this.table.getModel().getValueAt(
+					this.table.convertRowIndexToModel(row), 3);
+			if (o != null) {
+				selected.add(((CloudFile) o).getName());
+			}
+		}
+		if (selected.size() > 1) {
+			this.performDelete(selected);
+			return;
+		}
 		I18n i = I18n.getInstance();
 		int state = JOptionPane.showConfirmDialog(this,
 				i.getString("deleteConfirm"),
@@ -526,6 +612,58 @@ public class MainWindow extends JFrame implements DataPresenter {
 		new DownloadDeleteWorker(this.clickedCloudFile).execute();
 	}
 
+	/**
+	 * Deletes several {@link CloudFile}s in the background and reads the file
+	 * list afterwards.
+	 * 
+	 * @param names
+	 *            The names of the {@link CloudFile}s.
+	 */
+	private void performDelete(List<String> names) {
+		AsyncServerConnector async = ClientMain.getAsyncServerConnector();
+		if (async == null) {
+			return;
+		}
+		I18n i = I18n.getInstance();
+		int state = JOptionPane.showConfirmDialog(this,
+				i.getString("deleteMultipleConfirm") + " (" + names.size()
+						+ ")", i.getString("deleteConfirmTitle"),
+				JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
+		if (state != JOptionPane.YES_OPTION) {
+			return;
+		}
+		registerThread(true);
+		async.deleteFiles(names, new AsyncCallback<BatchResult>() {
+			@Override
+			public void completed(BatchResult result) {
+				MainWindow.this.registerThread(false);
+				I18n i = I18n.getInstance();
+				if (result.isSuccessful()) {
+					JOptionPane.showMessageDialog(MainWindow.this,
+							i.getString("deletionMultipleSuccessMessage")
+									+ result.size(), i.getString("success"),
+							JOptionPane.INFORMATION_MESSAGE);
+				} else {
+					StringBuilder msg = new StringBuilder(
+							i.getString("deletionFailedMessage"));
+					for (String name : result.getFailed().keySet()) {
+						msg.append("\n").append(name);
+					}
+					JOptionPane.showMessageDialog(MainWindow.this,
+							msg.toString(), i.getString("error"),
+							JOptionPane.ERROR_MESSAGE);
+				}
+				MainWindow.this.refreshFileList(false);
+			}
+
+			@Override
+			public void failed(Throwable e) {
+				MainWindow.this.registerThread(false);
+				MainWindow.this.showError(e);
+			}
+		});
+	}
+
 	/**
 	 * Performs the actual download of a {@link CloudFile};
 	 */
@@ -579,6 +717,22 @@ public class MainWindow extends JFrame implements DataPresenter {
 		this.dispose();
 	}
 
+	/**
+	 * Reads the file list in the background. The {@link MainWindow} receives
+	 * the list as registered data presenter.
+	 * 
+	 * @param showErrors
+	 *            true, if errors shall be shown to the user.
+	 */
+	private void refreshFileList(final boolean showErrors) {
+		AsyncServerConnector async = ClientMain.getAsyncServerConnector();
+		if (async == null) {
+			return;
+		}
+		async.getFileList(this.errorReporter(showErrors));
+
+	}
+
 	/**
 	 * Refreshes the table containing the file list with the given data.
 	 * 
@@ -590,6 +744,7 @@ public class MainWindow extends JFrame implements DataPresenter {
 				MainWindow.HEADINGS);
 		this.table.setModel(model);
 		this.table.removeColumn(this.table.getColumnModel().getColumn(3));
+		this.rows = null;
 	}
 
 	/**
@@ -608,6 +763,21 @@ public class MainWindow extends JFrame implements DataPresenter {
 		}
 	}
 
+	/**
+	 * Runs a {@link Runnable} on the event dispatch thread. If the current
+	 * thread is the event dispatch thread, it is run immediately.
+	 * 
+	 * @param r
+	 *            The {@link Runnable}.
+	 */
+	private void runOnEventDispatchThread(Runnable r) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			r.run();
+		} else {
+			SwingUtilities.invokeLater(r);
+		}
+	}
+
 	/**
 	 * Sets the text and the mnemonic of an {@link AbstractButton}. As text of
 	 * the {@link AbstractButton} the localization text ({@link I18n}) is used.
@@ -682,4 +852,111 @@ public class MainWindow extends JFrame implements DataPresenter {
 		JOptionPane.showMessageDialog(this, e.getMessage(), I18n.getInstance()
 				.getString("connectionError"), JOptionPane.ERROR_MESSAGE);
 	}
+
+	/**
+	 * Shows an error message for an error of an asynchronous operation.
+	 * 
+	 * @param e
+	 *            The error.
+	 */
+	private void showError(Throwable e) {
+		if (e instanceof HTTPException) {
+			this.showError((HTTPException) e);
+		} else if (e instanceof IOException) {
+			this.showError((IOException) e);
+		} else {
+			this.showError(new IOException(e.getMessage(), e));
+		}
+	}
+
+	/**
+	 * Uploads a file in the background and reads the file list afterwards. If
+	 * the file exists on the server, it is updated.
+	 * 
+	 * @param f
+	 *            The file.
+	 * @param update
+	 *            true, if an existing file shall be updated.
+	 */
+	private void upload(final File f, final boolean update) {
+		AsyncServerConnector async = ClientMain.getAsyncServerConnector();
+		if (async == null) {
+			return;
+		}
+		async.putFile(f.getName(), f, update, new AsyncCallback<Void>() {
+			@Override
+			public void completed(Void result) {
+				MainWindow.this.refreshFileList(true);
+			}
+
+			@Override
+			public void failed(Throwable e) {
+				if (!update && e instanceof HTTPException
+						&& ((HTTPException) e).getHTTPCode() == 409) {
+					MainWindow.this.upload(f, true);
+				} else {
+					MainWindow.this.showError(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Applies the changes of the file list to the table. Only the rows of the
+	 * changed files are touched. A removed row is replaced by the last row of
+	 * the table.
+	 * 
+	 * @param delta
+	 *            The {@link FileListDelta}.
+	 */
+	private void updateTable(FileListDelta delta) {
+		DefaultTableModel model = (DefaultTableModel) this.table.getModel();
+		if (model.getRowCount() == 1 && model.getValueAt(0, 3) == null) {
+			// Remove the placeholder of an empty table.
+			model.removeRow(0);
+			this.rows = null;
+		}
+		if (this.rows == null) {
+			this.rows = new HashMap<String, Integer>();
+			for (int row = 0; row < model.getRowCount(); row++) {
+				this.rows.put(((CloudFile) model.getValueAt(row, 3))
+						.getHashedName(), row);
+			}
+		}
+		for (CloudFile cf : delta.getRemoved()) {
+			Integer row = this.rows.remove(cf.getHashedName());
+			if (row == null) {
+				continue;
+			}
+			int last = model.getRowCount() - 1;
+			if (row != last) {
+				for (int col = 0; col < 4; col++) {
+					model.setValueAt(model.getValueAt(last, col), row, col);
+				}
+				this.rows.put(((CloudFile) model.getValueAt(row, 3))
+						.getHashedName(), row);
+			}
+			model.removeRow(last);
+		}
+		for (CloudFile cf : delta.getModified()) {
+			Integer row = this.rows.get(cf.getHashedName());
+			if (row == null) {
+				this.rows.put(cf.getHashedName(), model.getRowCount());
+				model.addRow(new Object[] { cf.getName(), cf.getState(),
+						cf.getLastModAsString(), cf });
+			} else {
+				model.setValueAt(cf.getState(), row, 1);
+				model.setValueAt(cf.getLastModAsString(), row, 2);
+				model.setValueAt(cf, row, 3);
+			}
+		}
+		for (CloudFile cf : delta.getAdded()) {
+			this.rows.put(cf.getHashedName(), model.getRowCount());
+			model.addRow(new Object[] { cf.getName(), cf.getState(),
+					cf.getLastModAsString(), cf });
+		}
+		if (model.getRowCount() == 0) {
+			this.emptyTable();
+		}
+	}
 }
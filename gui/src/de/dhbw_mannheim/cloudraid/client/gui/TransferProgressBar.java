@@ -0,0 +1,119 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.gui;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+import de.dhbw_mannheim.cloudraid.client.api.TransferListener;
+import de.dhbw_mannheim.cloudraid.client.api.TransferProgress;
+
+/**
+ * A {@link JProgressBar} showing the progress of the transfers of a
+ * {@link de.dhbw_mannheim.cloudraid.client.api.ServerConnector}. If several
+ * transfers run, the transfer that reported last is shown. The bar is updated
+ * on the event dispatch thread.
+ */
+public class TransferProgressBar extends JProgressBar implements
+		TransferListener {
+
+	private static final long serialVersionUID = -3071581453386626327L;
+
+	/**
+	 * The number of running transfers. Only accessed on the event dispatch
+	 * thread.
+	 */
+	private int running = 0;
+
+	public TransferProgressBar() {
+		super(0, 1000);
+		this.setStringPainted(true);
+		this.reset();
+	}
+
+	private void reset() {
+		this.setIndeterminate(false);
+		this.setValue(0);
+		this.setString("");
+	}
+
+	private void show(TransferProgress progress) {
+		long total = progress.getTotalBytes();
+		long bytes = progress.getBytesTransferred();
+		this.setIndeterminate(total <= 0);
+		if (total > 0) {
+			this.setValue((int) (Math.min(bytes, total) * 1000 / total));
+		}
+		StringBuilder sb = new StringBuilder(progress.getPath());
+		sb.append(": ").append(TransferProgress.formatBytes(bytes));
+		if (total > 0) {
+			sb.append(" / ").append(TransferProgress.formatBytes(total));
+		}
+		sb.append(", ")
+				.append(TransferProgress.formatBytes(progress.getThroughput()))
+				.append("/s");
+		long remaining = progress.getRemainingMillis();
+		if (remaining >= 0) {
+			long seconds = (remaining + 999) / 1000;
+			sb.append(String.format(", %d:%02d", seconds / 60, seconds % 60));
+		}
+		this.setString(sb.toString());
+	}
+
+	@Override
+	public void transferFinished(final TransferProgress progress,
+			boolean success) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (--TransferProgressBar.this.running <= 0) {
+					TransferProgressBar.this.running = 0;
+					TransferProgressBar.this.reset();
+				}
+			}
+		});
+	}
+
+	@Override
+	public void transferProgressed(final TransferProgress progress) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (TransferProgressBar.this.running > 0) {
+					TransferProgressBar.this.show(progress);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void transferStarted(final TransferProgress progress) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				TransferProgressBar.this.running++;
+				TransferProgressBar.this.show(progress);
+			}
+		});
+	}
+}
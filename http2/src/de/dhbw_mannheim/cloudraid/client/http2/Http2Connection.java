@@ -0,0 +1,484 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package de.dhbw_mannheim.cloudraid.client.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+
+/**
+ * An {@link HttpURLConnection} sending its request through an
+ * {@link HttpClient}, so that the {@link ServerConnector} can use HTTP/2
+ * without knowing it. The request is sent, when the connection is connected.
+ * A request body written to {@link #getOutputStream()} in a streaming mode is
+ * streamed to the {@link HttpClient} while it is written. Without a streaming
+ * mode, the body is buffered and sent with its length, when the response is
+ * read, as an {@link HttpURLConnection} does. The response is awaited by the
+ * first method reading it. If the request failed, the methods reading the
+ * response headers throw the failure as an {@link UncheckedIOException}, as
+ * they cannot throw an {@link IOException}; a timeout is reported as a
+ * {@link SocketTimeoutException}.
+ * 
+ * The headers the {@link HttpClient} sets itself, e.g.
+ * <code>Content-Length</code>, are not sent. The connect timeout is set for
+ * the whole {@link HttpClient} by the {@link Http2ConnectionPool}; the read
+ * timeout limits the time until the response headers are received. As that
+ * time includes sending the body, the read timeout is only set for requests
+ * without a body.
+ */
+class Http2Connection extends HttpURLConnection {
+
+	/**
+	 * The request headers set by the {@link HttpClient}.
+	 */
+	private static final Set<String> RESTRICTED_HEADERS = new HashSet<String>(
+			Arrays.asList("connection", "content-length", "expect", "host",
+					"keep-alive", "transfer-encoding", "upgrade"));
+
+	/**
+	 * The number of chunks of a request body buffered for the
+	 * {@link HttpClient}.
+	 */
+	private static final int PIPE_CAPACITY = 16;
+
+	/**
+	 * Buffers a request body and hands it to the {@link HttpClient} without
+	 * copying it.
+	 */
+	private static class Buffer extends ByteArrayOutputStream {
+		/**
+		 * @return The {@link BodyPublisher} of the buffered bytes.
+		 */
+		BodyPublisher publish() {
+			return BodyPublishers.ofByteArray(this.buf, 0, this.count);
+		}
+	}
+
+	/**
+	 * Hands the request body from the thread writing it to the
+	 * {@link HttpClient} reading it. The writer blocks, while the buffered
+	 * chunks are not read. If the request is aborted, the reader fails, so
+	 * that an incomplete body is never sent as a complete one.
+	 */
+	private static class Pipe extends InputStream {
+		private static final byte[] END = new byte[0];
+		private static final byte[] ABORT = new byte[0];
+
+		private ArrayBlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(
+				Http2Connection.PIPE_CAPACITY);
+		private volatile CompletableFuture<?> response = null;
+		private volatile boolean aborted = false;
+		private boolean closed = false;
+		private byte[] chunk = null;
+		private int position = 0;
+
+		/**
+		 * The stream the request body is written to.
+		 */
+		private OutputStream out = new OutputStream() {
+			@Override
+			public void close() throws IOException {
+				if (!Pipe.this.closed) {
+					Pipe.this.closed = true;
+					Pipe.this.put(Pipe.END);
+				}
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (Pipe.this.closed) {
+					throw new IOException("Stream closed.");
+				}
+				if (len > 0) {
+					Pipe.this.put(Arrays.copyOfRange(b, off, off + len));
+				}
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				this.write(new byte[] { (byte) b }, 0, 1);
+			}
+		};
+
+		/**
+		 * Aborts the request.
+		 */
+		void abort() {
+			this.aborted = true;
+			this.chunks.clear();
+			this.chunks.offer(Pipe.ABORT);
+		}
+
+		/**
+		 * Hands a chunk to the reader. If the request was aborted or the
+		 * response was received before the body was read, the chunk is
+		 * dropped.
+		 * 
+		 * @param b
+		 *            The chunk.
+		 * @throws IOException
+		 */
+		private void put(byte[] b) throws IOException {
+			try {
+				while (!this.chunks.offer(b, 50L, TimeUnit.MILLISECONDS)) {
+					if (this.aborted || this.response != null
+							&& this.response.isDone()) {
+						throw new IOException("The request was aborted.");
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (this.chunk == null || this.position == this.chunk.length) {
+				if (this.chunk == Pipe.END) {
+					return -1;
+				}
+				try {
+					this.chunk = this.chunks.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				this.position = 0;
+				if (this.chunk == Pipe.ABORT) {
+					throw new IOException("The request was aborted.");
+				} else if (this.chunk == Pipe.END) {
+					return -1;
+				}
+			}
+			int n = Math.min(len, this.chunk.length - this.position);
+			System.arraycopy(this.chunk, this.position, b, off, n);
+			this.position += n;
+			return n;
+		}
+	}
+
+	private HttpClient client;
+	private HttpRequest.Builder request = null;
+	private Buffer buffer = null;
+	private Pipe pipe = null;
+	private CompletableFuture<HttpResponse<InputStream>> response = null;
+	private HttpResponse<InputStream> received = null;
+	private IOException failure = null;
+	private List<String[]> headerFields = null;
+
+	/**
+	 * Creates an {@link Http2Connection}.
+	 * 
+	 * @param url
+	 *            The {@link URL} of the resource.
+	 * @param client
+	 *            The {@link HttpClient} sending the request.
+	 */
+	Http2Connection(URL url, HttpClient client) {
+		super(url);
+		this.client = client;
+	}
+
+	/**
+	 * Waits for the response.
+	 * 
+	 * @throws IOException
+	 *             If the request failed.
+	 */
+	private synchronized void await() throws IOException {
+		this.connect();
+		if (this.received != null) {
+			return;
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+		if (this.pipe != null && !this.pipe.closed) {
+			this.pipe.out.close();
+		}
+		if (this.response == null) {
+			this.send(this.buffer.publish());
+		}
+		try {
+			this.received = this.response.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof HttpTimeoutException) {
+				this.failure = new SocketTimeoutException(cause.getMessage());
+				this.failure.initCause(cause);
+			} else if (cause instanceof IOException) {
+				this.failure = (IOException) cause;
+			} else {
+				this.failure = new IOException(cause);
+			}
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Waits for the response headers.
+	 * 
+	 * @throws UncheckedIOException
+	 *             If the request failed.
+	 */
+	private void awaitHeaders() {
+		try {
+			this.await();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public synchronized void connect() throws IOException {
+		if (this.connected) {
+			return;
+		}
+		try {
+			this.request = HttpRequest.newBuilder(this.url.toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+		for (Map.Entry<String, List<String>> header : this
+				.getRequestProperties().entrySet()) {
+			if (header.getKey() == null
+					|| Http2Connection.RESTRICTED_HEADERS.contains(header
+							.getKey().toLowerCase(Locale.ENGLISH))) {
+				continue;
+			}
+			for (String value : header.getValue()) {
+				if (value != null) {
+					this.request.header(header.getKey(), value);
+				}
+			}
+		}
+		if (this.getReadTimeout() > 0 && !this.doOutput) {
+			this.request.timeout(Duration.ofMillis(this.getReadTimeout()));
+		}
+		this.connected = true;
+		if (!this.doOutput) {
+			this.send(BodyPublishers.noBody());
+		} else if (this.fixedContentLengthLong < 0
+				&& this.fixedContentLength < 0 && this.chunkLength < 0) {
+			// Sent, when the response is read.
+			this.buffer = new Buffer();
+		} else {
+			final Pipe requestBody = new Pipe();
+			BodyPublisher body = BodyPublishers
+					.ofInputStream(new Supplier<InputStream>() {
+						@Override
+						public InputStream get() {
+							return requestBody;
+						}
+					});
+			long length = this.fixedContentLengthLong;
+			if (length < 0) {
+				length = this.fixedContentLength;
+			}
+			if (length == 0) {
+				body = BodyPublishers.noBody();
+			} else if (length > 0) {
+				body = BodyPublishers.fromPublisher(body, length);
+			}
+			this.pipe = requestBody;
+			this.send(body);
+			requestBody.response = this.response;
+		}
+	}
+
+	@Override
+	public synchronized void disconnect() {
+		if (this.pipe != null) {
+			this.pipe.abort();
+		}
+		if (this.received != null) {
+			// Resets the stream; the connection is kept for other requests.
+			try {
+				this.received.body().close();
+			} catch (IOException ignore) {
+			}
+		} else if (this.response != null) {
+			this.response.cancel(true);
+		}
+	}
+
+	@Override
+	public synchronized InputStream getErrorStream() {
+		if (this.received == null || this.received.statusCode() < 400) {
+			return null;
+		}
+		return this.received.body();
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		List<String[]> fields = this.getHeaderFieldList();
+		return n < 0 || n >= fields.size() ? null : fields.get(n)[1];
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		this.awaitHeaders();
+		return this.received.headers().firstValue(name).orElse(null);
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		List<String[]> fields = this.getHeaderFieldList();
+		return n < 0 || n >= fields.size() ? null : fields.get(n)[0];
+	}
+
+	/**
+	 * Returns the status line and the response headers as pairs of name and
+	 * value, as {@link #getHeaderField(int)} counts them.
+	 * 
+	 * @return The header fields.
+	 */
+	private synchronized List<String[]> getHeaderFieldList() {
+		if (this.headerFields == null) {
+			this.awaitHeaders();
+			List<String[]> fields = new ArrayList<String[]>();
+			fields.add(new String[] { null,
+					"HTTP/2 " + this.received.statusCode() });
+			HttpHeaders headers = this.received.headers();
+			for (Map.Entry<String, List<String>> header : headers.map()
+					.entrySet()) {
+				for (String value : header.getValue()) {
+					fields.add(new String[] { header.getKey(), value });
+				}
+			}
+			this.headerFields = fields;
+		}
+		return this.headerFields;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		this.awaitHeaders();
+		return this.received.headers().map();
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (!this.doInput) {
+			throw new ProtocolException("The input is disabled.");
+		}
+		this.await();
+		int code = this.received.statusCode();
+		if (code == 404 || code == 410) {
+			throw new FileNotFoundException(this.url.toString());
+		} else if (code >= 400) {
+			throw new IOException("Server returned HTTP response code: "
+					+ code + " for URL: " + this.url);
+		}
+		return this.received.body();
+	}
+
+	@Override
+	public synchronized OutputStream getOutputStream() throws IOException {
+		if (!this.doOutput) {
+			throw new ProtocolException("The output is disabled.");
+		}
+		this.connect();
+		if (this.response != null && this.pipe == null
+				|| this.pipe != null && this.pipe.closed) {
+			throw new ProtocolException(
+					"The request body was already sent.");
+		}
+		return this.pipe == null ? this.buffer : this.pipe.out;
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		this.await();
+		return this.received.statusCode();
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		// HTTP/2 has no reason phrase.
+		this.await();
+		return null;
+	}
+
+	/**
+	 * Sends the request.
+	 * 
+	 * @param body
+	 *            The {@link BodyPublisher} of the request body.
+	 */
+	private void send(BodyPublisher body) {
+		this.request.method(this.method, body);
+		this.response = this.client.sendAsync(this.request.build(),
+				BodyHandlers.ofInputStream());
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+}
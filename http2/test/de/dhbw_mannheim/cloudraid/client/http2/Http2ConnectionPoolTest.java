@@ -0,0 +1,290 @@
+/*
+ * Copyright 2011 - 2012 by the CloudRAID Team
+ * see AUTHORS for more details
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package de.dhbw_mannheim.cloudraid.client.http2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.dhbw_mannheim.cloudraid.client.api.BatchResult;
+import de.dhbw_mannheim.cloudraid.client.api.CloudFile;
+import de.dhbw_mannheim.cloudraid.client.api.ConnectionPool;
+import de.dhbw_mannheim.cloudraid.client.api.IncompatibleApiVersionException;
+import de.dhbw_mannheim.cloudraid.client.api.ServerConnector;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeFixture;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeHttp2Server;
+import de.dhbw_mannheim.cloudraid.client.fake.FakeServer;
+
+/**
+ * Tests the {@link Http2ConnectionPool} and its {@link Http2Connection}
+ * against a {@link FakeHttp2Server}.
+ */
+public class Http2ConnectionPoolTest {
+
+	private static final int FILES = 20;
+
+	private FakeServer server;
+	private FakeHttp2Server http2;
+	private Http2ConnectionPool pool;
+	private File directory;
+
+	/**
+	 * Creates a {@link ServerConnector} using the {@link Http2ConnectionPool}.
+	 * 
+	 * @return The {@link ServerConnector}.
+	 * @throws IOException
+	 * @throws IncompatibleApiVersionException
+	 */
+	private ServerConnector connect() throws IOException,
+			IncompatibleApiVersionException {
+		ServerConnector sc = new ServerConnector(
+				this.http2.getServerConnection(FakeFixture.USER,
+						FakeFixture.USER), this.pool);
+		sc.setCacheDirectory(null);
+		return sc;
+	}
+
+	/**
+	 * Opens a connection to a path of the server.
+	 * 
+	 * @param path
+	 *            The path.
+	 * @return The connection.
+	 * @throws IOException
+	 */
+	private HttpURLConnection open(String path) throws IOException {
+		return this.pool.open(new URL("http://localhost:"
+				+ this.http2.getPort() + path));
+	}
+
+	/**
+	 * Starts the server.
+	 * 
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		this.server = new FakeServer();
+		this.server.addUser(FakeFixture.USER, FakeFixture.USER);
+		this.http2 = new FakeHttp2Server(this.server);
+		this.pool = new Http2ConnectionPool();
+		this.directory = FakeFixture.createDirectory();
+	}
+
+	/**
+	 * Stops the server and deletes the downloads.
+	 */
+	@After
+	public void tearDown() {
+		this.http2.stop();
+		FakeFixture.delete(this.directory);
+	}
+
+	/**
+	 * Checks, that a buffered request body is sent and the response headers
+	 * are read.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testBufferedBody() throws Exception {
+		HttpURLConnection con = this.open("/user/auth/");
+		con.setRequestMethod("POST");
+		con.setRequestProperty("X-Username", FakeFixture.USER);
+		con.setRequestProperty("X-Password", FakeFixture.USER);
+		con.setDoOutput(true);
+		OutputStream os = con.getOutputStream();
+		os.write(new byte[1000]);
+		os.close();
+		assertEquals(202, con.getResponseCode());
+		assertTrue(con.getHeaderField("Set-Cookie").startsWith("JSESSIONID="));
+		assertEquals("HTTP/2 202", con.getHeaderField(0));
+		assertNotNull(con.getHeaderFields().get("set-cookie"));
+		try {
+			con.getOutputStream();
+			fail("The request body was written after it was sent.");
+		} catch (IOException e) {
+			// Expected.
+		}
+		this.pool.release(con);
+		assertEquals(1, this.http2.getStreamCount());
+	}
+
+	/**
+	 * Checks, that a failed request is reported by the methods reading the
+	 * response headers instead of being hidden.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		this.http2.stop();
+		HttpURLConnection con = this.open("/api/info/");
+		try {
+			con.getResponseCode();
+			fail("The stopped server answered.");
+		} catch (IOException e) {
+			try {
+				con.getHeaderField("Content-Type");
+				fail("The failure was hidden.");
+			} catch (UncheckedIOException expected) {
+				assertSame(e, expected.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Checks, that a new {@link Http2ConnectionPool} does not set the idle
+	 * timeout of the whole JVM on its own.
+	 */
+	@Test
+	public void testKeepsIdleTimeout() {
+		String key = "jdk.httpclient.keepalive.timeout";
+		String idleTimeout = System.clearProperty(key);
+		try {
+			new Http2ConnectionPool();
+			assertNull(System.getProperty(key));
+		} finally {
+			if (idleTimeout != null) {
+				System.setProperty(key, idleTimeout);
+			}
+		}
+	}
+
+	/**
+	 * Checks, that {@link ConnectionPool} creates an
+	 * {@link Http2ConnectionPool}, when this class is on the class path.
+	 */
+	@Test
+	public void testNewHttp2Pool() {
+		assertTrue(ConnectionPool.isHttp2Supported());
+		assertTrue(ConnectionPool.newHttp2Pool()
+				instanceof Http2ConnectionPool);
+	}
+
+	/**
+	 * Checks, that parallel downloads share one connection.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallelRequests() throws Exception {
+		byte[] data = new byte[4096];
+		new Random(1).nextBytes(data);
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < Http2ConnectionPoolTest.FILES; i++) {
+			paths.add("test/" + i);
+			this.server.putFile(FakeFixture.USER, "test/" + i,
+					data);
+		}
+		this.server.setLatency(50);
+		ServerConnector sc = this.connect();
+		sc.setBatchParallelism(8);
+		sc.login();
+		BatchResult result = sc.getFiles(paths, this.directory);
+		assertTrue(result.toString(), result.isSuccessful());
+		assertEquals(Http2ConnectionPoolTest.FILES, result.getSucceededCount());
+		for (int i = 0; i < Http2ConnectionPoolTest.FILES; i++) {
+			assertArrayEquals(data,
+					FakeFixture.read(new File(this.directory, "test/" + i)));
+		}
+		assertTrue(this.server.getPeakConcurrentRequests() > 1);
+		assertEquals(1, this.http2.getConnectionCount());
+	}
+
+	/**
+	 * Checks, that a read timeout is reported as a
+	 * {@link SocketTimeoutException}.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadTimeout() throws Exception {
+		this.server.setLatency(2000);
+		HttpURLConnection con = this.open("/api/info/");
+		con.setReadTimeout(100);
+		try {
+			con.getResponseCode();
+			fail("The response was not awaited.");
+		} catch (SocketTimeoutException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Uploads, lists, downloads and deletes a file over one connection.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		byte[] data = new byte[100000];
+		new Random(2).nextBytes(data);
+		File upload = new File(this.directory, "upload");
+		OutputStream os = new FileOutputStream(upload);
+		try {
+			os.write(data);
+		} finally {
+			os.close();
+		}
+		ServerConnector sc = this.connect();
+		sc.login();
+		sc.putFile("test/file", upload, false);
+		assertArrayEquals(data,
+				this.server.getFile(FakeFixture.USER, "test/file"));
+		boolean listed = false;
+		for (CloudFile file : sc.getFileList()) {
+			listed |= file.getName().equals("test/file");
+		}
+		assertTrue(listed);
+		File download = new File(this.directory, "download");
+		sc.getFile("test/file", download);
+		assertArrayEquals(data, FakeFixture.read(download));
+		sc.deleteFile("test/file");
+		assertEquals(null, this.server.getFile(FakeFixture.USER, "test/file"));
+		sc.logout();
+		assertEquals(1, this.http2.getConnectionCount());
+		assertTrue(this.http2.getStreamCount() >= 6);
+	}
+}